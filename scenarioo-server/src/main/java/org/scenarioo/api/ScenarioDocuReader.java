@@ -28,6 +28,7 @@ import org.scenarioo.api.util.xml.ScenarioDocuXMLFileUtil;
 import org.scenarioo.model.docu.entities.*;
 
 import java.io.File;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.scenarioo.api.rules.CharacterChecker.checkIdentifier;
@@ -99,6 +100,45 @@ public class ScenarioDocuReader {
 		return ScenarioDocuXMLFileUtil.unmarshalListOfFiles(Step.class, files);
 	}
 
+	/**
+	 * Load the steps of a scenario lazily one after the other while iterating, such that not all steps of the scenario
+	 * have to be in memory at the same time.
+	 *
+	 * @param withHtml
+	 *            false to skip reading the HTML source of the steps, {@link Step#getHtml()} is null then.
+	 */
+	public Iterable<Step> loadStepsOneByOne(final String branchName, final String buildName,
+			final String featureName, final String scenarioName, final boolean withHtml) {
+		final List<File> files = docuFiles.getStepFiles(checkIdentifier(branchName), checkIdentifier(buildName),
+				checkIdentifier(featureName), checkIdentifier(scenarioName));
+		return new Iterable<Step>() {
+			@Override
+			public Iterator<Step> iterator() {
+				final Iterator<File> fileIterator = files.iterator();
+				return new Iterator<Step>() {
+					@Override
+					public boolean hasNext() {
+						return fileIterator.hasNext();
+					}
+
+					@Override
+					public Step next() {
+						File file = fileIterator.next();
+						if (withHtml) {
+							return ScenarioDocuXMLFileUtil.unmarshal(Step.class, file);
+						}
+						return ScenarioDocuXMLFileUtil.unmarshalSkippingElements(Step.class, file, "html");
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
 	public Step loadStep(final String branchName, final String buildName, final String featureName,
 			final String scenarioName, final int stepIndex) {
 		File file = docuFiles.getStepFile(checkIdentifier(branchName), checkIdentifier(buildName),
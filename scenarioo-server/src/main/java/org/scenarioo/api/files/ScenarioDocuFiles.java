@@ -26,6 +26,7 @@ import org.scenarioo.api.util.files.FilesUtil;
 
 import java.io.File;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -45,7 +46,15 @@ public class ScenarioDocuFiles {
 
 	private static final String FILE_NAME_BRANCH = "branch.xml";
 
-	private static NumberFormat THREE_DIGIT_NUM_FORMAT = createNumberFormatWithMinimumIntegerDigits(3);
+	/**
+	 * One number format per thread, because number formats are not thread safe.
+	 */
+	private static final ThreadLocal<NumberFormat> THREE_DIGIT_NUM_FORMAT = new ThreadLocal<NumberFormat>() {
+		@Override
+		protected NumberFormat initialValue() {
+			return createNumberFormatWithMinimumIntegerDigits(3);
+		}
+	};
 
 	private final File rootDirectory;
 
@@ -137,12 +146,21 @@ public class ScenarioDocuFiles {
 	public File getStepFile(final String branchName, final String buildName, final String featureName,
 			final String scenarioName, final int stepIndex) {
 		return new File(getStepsDirectory(branchName, buildName, featureName, scenarioName),
-				THREE_DIGIT_NUM_FORMAT.format(stepIndex) + ".xml");
+				THREE_DIGIT_NUM_FORMAT.get().format(stepIndex) + ".xml");
 	}
 
+	/**
+	 * @return the XML files of all steps, other files in the steps directory (e.g. derived files) are ignored.
+	 */
 	public List<File> getStepFiles(final String branchName, final String buildName, final String featureName,
 			final String scenarioName) {
-		return FilesUtil.getListOfFiles(getStepsDirectory(branchName, buildName, featureName, scenarioName));
+		List<File> stepFiles = new ArrayList<File>();
+		for (File file : FilesUtil.getListOfFiles(getStepsDirectory(branchName, buildName, featureName, scenarioName))) {
+			if (file.getName().endsWith(".xml")) {
+				stepFiles.add(file);
+			}
+		}
+		return stepFiles;
 	}
 
 	public File getScreenshotsDirectory(final String branchName, final String buildName,
@@ -158,7 +176,7 @@ public class ScenarioDocuFiles {
 	public File getScreenshotFile(final String branchName, final String buildName,
 			final String featureName, final String scenarioName, final int stepIndex) {
 		return new File(getScreenshotsDirectory(branchName, buildName, featureName, scenarioName),
-				THREE_DIGIT_NUM_FORMAT.format(stepIndex) + ".png");
+				THREE_DIGIT_NUM_FORMAT.get().format(stepIndex) + ".png");
 	}
 
 	private static NumberFormat createNumberFormatWithMinimumIntegerDigits(
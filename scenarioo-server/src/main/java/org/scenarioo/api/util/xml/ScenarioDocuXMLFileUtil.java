@@ -39,10 +39,18 @@ import java.util.List;
 public class ScenarioDocuXMLFileUtil {
 
 	public static <T> void marshal(final T object, final File destFile) {
+		marshal(object, destFile, true);
+	}
+
+	/**
+	 * @param formattedOutput
+	 *            false to write the XML without line breaks and indentation.
+	 */
+	public static <T> void marshal(final T object, final File destFile, final boolean formattedOutput) {
 		FileOutputStream fos = null;
 		try {
 			fos = new FileOutputStream(destFile);
-			ScenarioDocuXMLUtil.marshal(object, fos);
+			ScenarioDocuXMLUtil.marshal(object, fos, formattedOutput);
 		} catch (Exception e) {
 			throw new RuntimeException("Could not marshall Object of type " + object.getClass().getName()
 					+ " into file: " + destFile.getAbsolutePath(), e);
@@ -78,6 +86,31 @@ public class ScenarioDocuXMLFileUtil {
 		}
 	}
 
+	/**
+	 * @see ScenarioDocuXMLUtil#unmarshalSkippingElements(Class, java.io.InputStream, String...)
+	 */
+	public static <T> T unmarshalSkippingElements(final Class<T> targetClass, final File srcFile,
+			final String... skippedElements) {
+		if (!srcFile.exists()) {
+			throw new ResourceNotFoundException(srcFile.getAbsolutePath());
+		}
+		FileInputStream fis = null;
+		try {
+			fis = new FileInputStream(srcFile);
+			return ScenarioDocuXMLUtil.unmarshalSkippingElements(targetClass, fis, skippedElements);
+		} catch (Exception e) {
+			throw new RuntimeException("Could not unmarshall " + srcFile.getAbsolutePath(), e);
+		} finally {
+			try {
+				if (fis != null) {
+					fis.close();
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not close file input stream for " + srcFile.getAbsolutePath(), e);
+			}
+		}
+	}
+
 	public static <T> List<T> unmarshalListOfFiles(final Class<T> targetClass, final List<File> files) {
 		List<T> result = new ArrayList<T>();
 		for (File file : files) {
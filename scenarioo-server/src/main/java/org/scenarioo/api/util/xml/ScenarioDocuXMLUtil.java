@@ -23,23 +23,48 @@
 
 package org.scenarioo.api.util.xml;
 
-import org.apache.commons.lang3.StringUtils;
 import org.scenarioo.model.docu.entities.generic.*;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.StreamFilter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Streaming of all ScenarioDocu entities to XML and back from input streams or to output streams.
+ *
+ * The JAXB contexts are cached per bound class and shared by all threads. Marshallers and unmarshallers are not thread
+ * safe, therefore they are taken from a bounded pool per class and used by one thread at a time. They are not bound to
+ * threads, such that long living threads of the servlet container do not keep them (and the web application) alive.
  */
 public class ScenarioDocuXMLUtil {
 
-    private static Map<String, JAXBContext> jaxbContextCache = new HashMap<String, JAXBContext>();
+	private static final ConcurrentMap<Class<?>, JAXBContext> jaxbContextCache = new ConcurrentHashMap<Class<?>, JAXBContext>();
+
+	private static final ConcurrentMap<List<Class<?>>, JAXBContext> jaxbContextCacheForMultipleClasses = new ConcurrentHashMap<List<Class<?>>, JAXBContext>();
+
+	/**
+	 * Maximum number of idle marshallers and of idle unmarshallers kept per class.
+	 */
+	private static final int MAX_IDLE_INSTANCES_PER_CLASS = Runtime.getRuntime().availableProcessors();
+
+	private static final ConcurrentMap<Class<?>, JAXBInstancePool<Marshaller>> marshallerPools = new ConcurrentHashMap<Class<?>, JAXBInstancePool<Marshaller>>();
+
+	private static final ConcurrentMap<Class<?>, JAXBInstancePool<Unmarshaller>> unmarshallerPools = new ConcurrentHashMap<Class<?>, JAXBInstancePool<Unmarshaller>>();
+
+	private static final XMLInputFactory xmlInputFactory = createXMLInputFactory();
 
 	private static final Class<?>[] SUPPORTED_COLLECTION_CLASSES = new Class<?>[] { HashMap.class, ArrayList.class };
 
@@ -47,50 +72,159 @@ public class ScenarioDocuXMLUtil {
 			ObjectReference.class, ObjectList.class, ObjectTreeNode.class, Details.class };
 
 	public static <T> void marshal(final T object, final OutputStream outStream) {
+		marshal(object, outStream, true);
+	}
 
+	/**
+	 * @param formattedOutput
+	 *            false to write the XML without line breaks and indentation, e.g. for files that are not read by
+	 *            humans.
+	 */
+	public static <T> void marshal(final T object, final OutputStream outStream, final boolean formattedOutput) {
+		Class<?> objectClass = object.getClass();
+		JAXBInstancePool<Marshaller> pool = getMarshallerPool(objectClass);
 		try {
-			JAXBContext contextObj = createJAXBContext(object.getClass());
-			Marshaller marshallerObj = contextObj.createMarshaller();
-			marshallerObj.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+			Marshaller marshallerObj = pool.acquire();
+			marshallerObj.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formattedOutput);
 			marshallerObj.marshal(object, outStream);
+			pool.release(marshallerObj);
 		} catch (Exception e) {
-			throw new RuntimeException("Could not marshall Object of type " + object.getClass().getName(), e);
+			// a marshaller that failed is not reused, it might be in an inconsistent state
+			throw new RuntimeException("Could not marshall Object of type " + objectClass.getName(), e);
 		}
 	}
 
 	@SuppressWarnings("unchecked")
 	public static <T> T unmarshal(final Class<T> targetClass, final InputStream inStream) {
+		JAXBInstancePool<Unmarshaller> pool = getUnmarshallerPool(targetClass);
 		try {
-			JAXBContext contextObj = createJAXBContext(targetClass);
-			Unmarshaller unmarshallerObj = contextObj.createUnmarshaller();
-			return (T) unmarshallerObj.unmarshal(inStream);
+			Unmarshaller unmarshallerObj = pool.acquire();
+			T object = (T) unmarshallerObj.unmarshal(inStream);
+			pool.release(unmarshallerObj);
+			return object;
 		} catch (Exception e) {
 			throw new RuntimeException("Could not unmarshall object of type " + targetClass.getName(), e);
 		}
 	}
 
-	public static JAXBContext createJAXBContext(Class<?>... classesToBind) throws JAXBException {
-        String key = getKeyFromClassesArray(classesToBind);
-        JAXBContext cachedJaxbContext = jaxbContextCache.get(key);
-        if(cachedJaxbContext != null) {
-            return cachedJaxbContext;
-        }
-		classesToBind = appendClasses(classesToBind, SUPPORTED_COLLECTION_CLASSES);
-		classesToBind = appendClasses(classesToBind, SUPPORTED_GENERIC_CLASSES);
-        JAXBContext jaxbContext = JAXBContext.newInstance(classesToBind);
-        jaxbContextCache.put(key, jaxbContext);
-        return jaxbContext;
+	/**
+	 * Unmarshal the object without reading the passed child elements of the root element, which are streamed over
+	 * instead. This saves memory for big elements that are not needed (e.g. the HTML source of a step).
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T unmarshalSkippingElements(final Class<T> targetClass, final InputStream inStream,
+			final String... skippedElements) {
+		JAXBInstancePool<Unmarshaller> pool = getUnmarshallerPool(targetClass);
+		XMLStreamReader xmlReader = null;
+		try {
+			Unmarshaller unmarshallerObj = pool.acquire();
+			xmlReader = xmlInputFactory.createFilteredReader(xmlInputFactory.createXMLStreamReader(inStream),
+					new SkipChildElementsOfRootFilter(skippedElements));
+			T object = (T) unmarshallerObj.unmarshal(xmlReader);
+			pool.release(unmarshallerObj);
+			return object;
+		} catch (Exception e) {
+			throw new RuntimeException("Could not unmarshall object of type " + targetClass.getName(), e);
+		} finally {
+			closeQuietly(xmlReader);
+		}
+	}
+
+	/**
+	 * @return the number of marshallers for the class that are kept for reuse.
+	 */
+	static int getNumberOfIdleMarshallers(final Class<?> objectClass) {
+		return getMarshallerPool(objectClass).getNumberOfIdleInstances();
+	}
+
+	/**
+	 * @return the number of unmarshallers for the class that are kept for reuse.
+	 */
+	static int getNumberOfIdleUnmarshallers(final Class<?> targetClass) {
+		return getUnmarshallerPool(targetClass).getNumberOfIdleInstances();
+	}
+
+	private static JAXBInstancePool<Marshaller> getMarshallerPool(final Class<?> objectClass) {
+		JAXBInstancePool<Marshaller> pool = marshallerPools.get(objectClass);
+		if (pool == null) {
+			pool = new JAXBInstancePool<Marshaller>(objectClass) {
+				@Override
+				protected Marshaller create(final JAXBContext context) throws JAXBException {
+					return context.createMarshaller();
+				}
+			};
+			JAXBInstancePool<Marshaller> existingPool = marshallerPools.putIfAbsent(objectClass, pool);
+			if (existingPool != null) {
+				pool = existingPool;
+			}
+		}
+		return pool;
+	}
+
+	private static JAXBInstancePool<Unmarshaller> getUnmarshallerPool(final Class<?> targetClass) {
+		JAXBInstancePool<Unmarshaller> pool = unmarshallerPools.get(targetClass);
+		if (pool == null) {
+			pool = new JAXBInstancePool<Unmarshaller>(targetClass) {
+				@Override
+				protected Unmarshaller create(final JAXBContext context) throws JAXBException {
+					return context.createUnmarshaller();
+				}
+			};
+			JAXBInstancePool<Unmarshaller> existingPool = unmarshallerPools.putIfAbsent(targetClass, pool);
+			if (existingPool != null) {
+				pool = existingPool;
+			}
+		}
+		return pool;
+	}
+
+	private static void closeQuietly(final XMLStreamReader xmlReader) {
+		if (xmlReader != null) {
+			try {
+				xmlReader.close();
+			} catch (XMLStreamException e) {
+				// the underlying stream is closed by the caller anyway
+			}
+		}
+	}
+
+	private static XMLInputFactory createXMLInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+
+	public static JAXBContext createJAXBContext(final Class<?>... classesToBind) throws JAXBException {
+		if (classesToBind.length == 1) {
+			return getCachedJAXBContext(jaxbContextCache, classesToBind[0], classesToBind);
+		}
+		return getCachedJAXBContext(jaxbContextCacheForMultipleClasses, Arrays.asList(classesToBind), classesToBind);
 	}
 
-    private static String getKeyFromClassesArray(Class<?>[] classesToBind) {
-        List<String> keys = new ArrayList<String>();
-        for (Class<?> aClass : classesToBind) {
-            keys.add(aClass.getCanonicalName());
-        }
-        return StringUtils.join(keys, ",");
-    }
+	/**
+	 * Contexts are only created while holding the lock of the cache, because creating a context is expensive.
+	 */
+	private static <K> JAXBContext getCachedJAXBContext(final ConcurrentMap<K, JAXBContext> cache, final K key,
+			final Class<?>[] classesToBind) throws JAXBException {
+		JAXBContext cachedJaxbContext = cache.get(key);
+		if (cachedJaxbContext != null) {
+			return cachedJaxbContext;
+		}
+		synchronized (cache) {
+			cachedJaxbContext = cache.get(key);
+			if (cachedJaxbContext != null) {
+				return cachedJaxbContext;
+			}
+			Class<?>[] allClassesToBind = appendClasses(classesToBind, SUPPORTED_COLLECTION_CLASSES);
+			allClassesToBind = appendClasses(allClassesToBind, SUPPORTED_GENERIC_CLASSES);
+			JAXBContext jaxbContext = JAXBContext.newInstance(allClassesToBind);
+			cache.put(key, jaxbContext);
+			return jaxbContext;
+		}
+	}
 
-    private static Class<?>[] appendClasses(Class<?>[] classesToBind, final Class<?>... additionalClasses) {
+	private static Class<?>[] appendClasses(Class<?>[] classesToBind, final Class<?>... additionalClasses) {
 		int index = classesToBind.length;
 		classesToBind = Arrays.copyOf(classesToBind, classesToBind.length + additionalClasses.length);
 		for (Class<?> additionalClass : additionalClasses) {
@@ -100,4 +234,86 @@ public class ScenarioDocuXMLUtil {
 		return classesToBind;
 	}
 
+	/**
+	 * Idle marshallers or unmarshallers of one bound class. An instance is acquired by one thread at a time and only
+	 * released again if it was used successfully. Idle instances beyond the maximum are discarded.
+	 */
+	private static abstract class JAXBInstancePool<T> {
+
+		private final Class<?> boundClass;
+
+		private final Queue<T> idleInstances = new ConcurrentLinkedQueue<T>();
+
+		private final AtomicInteger numberOfIdleInstances = new AtomicInteger();
+
+		private JAXBInstancePool(final Class<?> boundClass) {
+			this.boundClass = boundClass;
+		}
+
+		T acquire() throws JAXBException {
+			T instance = idleInstances.poll();
+			if (instance == null) {
+				return create(createJAXBContext(boundClass));
+			}
+			numberOfIdleInstances.decrementAndGet();
+			return instance;
+		}
+
+		void release(final T instance) {
+			if (numberOfIdleInstances.incrementAndGet() <= MAX_IDLE_INSTANCES_PER_CLASS) {
+				idleInstances.offer(instance);
+			} else {
+				numberOfIdleInstances.decrementAndGet();
+			}
+		}
+
+		int getNumberOfIdleInstances() {
+			return numberOfIdleInstances.get();
+		}
+
+		protected abstract T create(JAXBContext context) throws JAXBException;
+
+	}
+
+	/**
+	 * Filters out the passed child elements of the root element including all their content.
+	 */
+	private static class SkipChildElementsOfRootFilter implements StreamFilter {
+
+		private final Set<String> skippedElements;
+
+		private int depth = 0;
+
+		private int skippedDepth = 0;
+
+		private SkipChildElementsOfRootFilter(final String... skippedElements) {
+			this.skippedElements = new HashSet<String>(Arrays.asList(skippedElements));
+		}
+
+		@Override
+		public boolean accept(final XMLStreamReader reader) {
+			int eventType = reader.getEventType();
+			if (skippedDepth > 0) {
+				if (eventType == XMLStreamConstants.START_ELEMENT) {
+					skippedDepth++;
+				} else if (eventType == XMLStreamConstants.END_ELEMENT) {
+					skippedDepth--;
+				}
+				return false;
+			}
+			if (eventType == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				if (depth == 2 && skippedElements.contains(reader.getLocalName())) {
+					depth--;
+					skippedDepth = 1;
+					return false;
+				}
+			} else if (eventType == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+			return true;
+		}
+
+	}
+
 }
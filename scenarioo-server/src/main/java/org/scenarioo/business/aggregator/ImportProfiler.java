@@ -0,0 +1,373 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportProfile;
+import org.scenarioo.model.docu.aggregates.branches.ImportPhaseProfile;
+import org.scenarioo.utils.FileAccessCounter;
+
+/**
+ * Measures the time and resources used by the phases of aggregating a build: wall time, CPU time and memory allocated
+ * by the measuring thread, and the files read and written as counted by {@link FileAccessCounter}.
+ *
+ * Measurements can be nested, the outer measurement is paused while a nested one is running, such that each phase only
+ * contains its own work. Measurements of the same phase on several threads are summed up.
+ *
+ * Work that is done in many small pieces (like for each step of a scenario) is measured by resuming and pausing one
+ * measurement for all pieces, such that the totals of the profiler are only updated once the measurement is stopped.
+ */
+public class ImportProfiler {
+
+	private static final Logger LOGGER = Logger.getLogger(ImportProfiler.class);
+
+	public enum Phase {
+
+		FEATURE_LOADING("featureLoading"),
+
+		STEP_LOADING("stepLoading"),
+
+		STEP_AGGREGATION("stepAggregation"),
+
+		OBJECT_REPOSITORY("objectRepository"),
+
+		SEARCH_INDEXING("searchIndexing"),
+
+		PAGE_STEPS_WRITES("pageStepsWrites"),
+
+		NAVIGATION_WRITES("navigationWrites"),
+
+		OBJECT_INDEX_WRITES("objectIndexWrites"),
+
+		OBJECT_LIST_WRITES("objectListWrites"),
+
+		OBJECT_TAB_TREE_WRITES("objectTabTreeWrites"),
+
+		SCREENSHOT_FINGERPRINTS("screenshotFingerprints");
+
+		private final String name;
+
+		private Phase(final String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+	}
+
+	/**
+	 * Profiler that does not measure anything, for aggregating data outside of build imports.
+	 */
+	public static final ImportProfiler NONE = new ImportProfiler(false);
+
+	private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+	private static final int WALL_TIME = 0;
+	private static final int CPU_TIME = 1;
+	private static final int ALLOCATED_BYTES = 2;
+	private static final int FILES_READ = 3;
+	private static final int BYTES_READ = 4;
+	private static final int FILES_WRITTEN = 5;
+	private static final int BYTES_WRITTEN = 6;
+	private static final int NUMBER_OF_VALUES = 7;
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private static final boolean CPU_TIME_MEASURED = enableCpuTimeMeasurement();
+
+	private static final boolean ALLOCATED_BYTES_MEASURED = enableAllocatedBytesMeasurement();
+
+	private final boolean enabled;
+
+	private final long startTime = System.nanoTime();
+
+	/**
+	 * Measured values of all phases, the values of phase i start at index i * {@link #NUMBER_OF_VALUES}.
+	 */
+	private final AtomicLongArray totals = new AtomicLongArray(Phase.values().length * NUMBER_OF_VALUES);
+
+	private final AtomicLong numberOfSteps = new AtomicLong();
+
+	private final ThreadLocal<Deque<Measurement>> runningMeasurements = new ThreadLocal<Deque<Measurement>>() {
+		@Override
+		protected Deque<Measurement> initialValue() {
+			return new ArrayDeque<Measurement>();
+		}
+	};
+
+	private final Measurement noMeasurement = new Measurement(null);
+
+	public ImportProfiler() {
+		this(true);
+	}
+
+	private ImportProfiler(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Start measuring a phase on the current thread, the returned measurement has to be stopped on the same thread.
+	 */
+	public Measurement start(final Phase phase) {
+		Measurement measurement = createMeasurement(phase);
+		measurement.resume();
+		return measurement;
+	}
+
+	/**
+	 * Create a paused measurement of a phase, that is {@link Measurement#resume() resumed} and
+	 * {@link Measurement#pause() paused} for each piece of work on the current thread.
+	 */
+	public Measurement createMeasurement(final Phase phase) {
+		if (!enabled) {
+			return noMeasurement;
+		}
+		return new Measurement(phase);
+	}
+
+	public void addSteps(final int steps) {
+		numberOfSteps.addAndGet(steps);
+	}
+
+	/**
+	 * @return the profile of everything measured since this profiler was created.
+	 */
+	public BuildImportProfile createProfile() {
+		BuildImportProfile profile = new BuildImportProfile();
+		long wallTimeInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		double seconds = Math.max(wallTimeInMillis, 1) / 1000.0;
+		profile.setWallTimeInMillis(wallTimeInMillis);
+		profile.setNumberOfSteps(numberOfSteps.get());
+		profile.setStepsPerSecond(numberOfSteps.get() / seconds);
+
+		long bytesRead = 0;
+		long bytesWritten = 0;
+		for (Phase phase : Phase.values()) {
+			ImportPhaseProfile phaseProfile = createPhaseProfile(phase);
+			bytesRead += phaseProfile.getBytesRead();
+			bytesWritten += phaseProfile.getBytesWritten();
+			profile.getPhases().add(phaseProfile);
+		}
+		profile.setMegabytesReadPerSecond(bytesRead / BYTES_PER_MEGABYTE / seconds);
+		profile.setMegabytesWrittenPerSecond(bytesWritten / BYTES_PER_MEGABYTE / seconds);
+		return profile;
+	}
+
+	private ImportPhaseProfile createPhaseProfile(final Phase phase) {
+		ImportPhaseProfile phaseProfile = new ImportPhaseProfile();
+		phaseProfile.setPhase(phase.getName());
+		phaseProfile.setWallTimeInMillis(TimeUnit.NANOSECONDS.toMillis(getTotal(phase, WALL_TIME)));
+		phaseProfile.setCpuTimeInMillis(CPU_TIME_MEASURED ? TimeUnit.NANOSECONDS.toMillis(getTotal(phase, CPU_TIME))
+				: -1);
+		phaseProfile.setAllocatedBytes(ALLOCATED_BYTES_MEASURED ? getTotal(phase, ALLOCATED_BYTES) : -1);
+		phaseProfile.setFilesRead(getTotal(phase, FILES_READ));
+		phaseProfile.setBytesRead(getTotal(phase, BYTES_READ));
+		phaseProfile.setFilesWritten(getTotal(phase, FILES_WRITTEN));
+		phaseProfile.setBytesWritten(getTotal(phase, BYTES_WRITTEN));
+		return phaseProfile;
+	}
+
+	private long getTotal(final Phase phase, final int value) {
+		return totals.get(phase.ordinal() * NUMBER_OF_VALUES + value);
+	}
+
+	private static long[] getCurrentValues() {
+		long[] values = new long[NUMBER_OF_VALUES];
+		values[WALL_TIME] = System.nanoTime();
+		if (CPU_TIME_MEASURED) {
+			values[CPU_TIME] = THREADS.getCurrentThreadCpuTime();
+		}
+		if (ALLOCATED_BYTES_MEASURED) {
+			values[ALLOCATED_BYTES] = ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread
+					.currentThread().getId());
+		}
+		long[] fileAccesses = FileAccessCounter.getCountsOfCurrentThread();
+		values[FILES_READ] = fileAccesses[FileAccessCounter.FILES_READ];
+		values[BYTES_READ] = fileAccesses[FileAccessCounter.BYTES_READ];
+		values[FILES_WRITTEN] = fileAccesses[FileAccessCounter.FILES_WRITTEN];
+		values[BYTES_WRITTEN] = fileAccesses[FileAccessCounter.BYTES_WRITTEN];
+		return values;
+	}
+
+	private static boolean enableCpuTimeMeasurement() {
+		try {
+			if (THREADS.isCurrentThreadCpuTimeSupported()) {
+				THREADS.setThreadCpuTimeEnabled(true);
+				return true;
+			}
+		} catch (UnsupportedOperationException e) {
+			LOGGER.warn("Measuring CPU time of build imports is not supported.");
+		}
+		return false;
+	}
+
+	private static boolean enableAllocatedBytesMeasurement() {
+		if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+			return false;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+		try {
+			if (threads.isThreadAllocatedMemorySupported()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+				return true;
+			}
+		} catch (UnsupportedOperationException e) {
+			LOGGER.warn("Measuring allocated memory of build imports is not supported.");
+		}
+		return false;
+	}
+
+	/**
+	 * Measurement of a phase on one thread, started by {@link ImportProfiler#start(Phase)} or created by
+	 * {@link ImportProfiler#createMeasurement(Phase)}.
+	 */
+	public class Measurement {
+
+		private final Phase phase;
+
+		/**
+		 * Values measured so far, added to the totals of the profiler when the measurement is stopped.
+		 */
+		private final long[] values = new long[NUMBER_OF_VALUES];
+
+		private long[] valuesOnResume;
+
+		private boolean running = false;
+
+		private Measurement(final Phase phase) {
+			this.phase = phase;
+		}
+
+		/**
+		 * Continue measuring on the current thread, the outer measurement (if any) is paused meanwhile.
+		 */
+		public void resume() {
+			if (phase == null || running) {
+				return;
+			}
+			Deque<Measurement> measurements = runningMeasurements.get();
+			Measurement outerMeasurement = measurements.peek();
+			if (outerMeasurement != null) {
+				outerMeasurement.stopCounting();
+			}
+			measurements.push(this);
+			running = true;
+			startCounting();
+		}
+
+		/**
+		 * Pause measuring and continue the outer measurement (if any).
+		 */
+		public void pause() {
+			if (phase == null || !running) {
+				return;
+			}
+			stopCounting();
+			running = false;
+			Deque<Measurement> measurements = runningMeasurements.get();
+			boolean innermostMeasurement = measurements.peek() == this;
+			measurements.remove(this);
+			Measurement outerMeasurement = measurements.peek();
+			if (innermostMeasurement && outerMeasurement != null) {
+				outerMeasurement.startCounting();
+			}
+		}
+
+		/**
+		 * Stop the measurement, continue the outer measurement (if any) and add the measured values to the totals of
+		 * the profiler.
+		 */
+		public void stop() {
+			if (phase == null) {
+				return;
+			}
+			pause();
+			int offset = phase.ordinal() * NUMBER_OF_VALUES;
+			for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+				totals.addAndGet(offset + i, values[i]);
+				values[i] = 0;
+			}
+		}
+
+		/**
+		 * Measures getting the elements of the passed iterable (e.g. loading steps one by one), without the work done
+		 * with the elements.
+		 */
+		public <T> Iterable<T> measureIteration(final Iterable<T> iterable) {
+			if (phase == null) {
+				return iterable;
+			}
+			return new Iterable<T>() {
+				@Override
+				public Iterator<T> iterator() {
+					final Iterator<T> iterator = iterable.iterator();
+					return new Iterator<T>() {
+						@Override
+						public boolean hasNext() {
+							resume();
+							try {
+								return iterator.hasNext();
+							} finally {
+								pause();
+							}
+						}
+
+						@Override
+						public T next() {
+							resume();
+							try {
+								return iterator.next();
+							} finally {
+								pause();
+							}
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+
+		private void startCounting() {
+			valuesOnResume = getCurrentValues();
+		}
+
+		private void stopCounting() {
+			long[] currentValues = getCurrentValues();
+			for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+				values[i] += currentValues[i] - valuesOnResume[i];
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,223 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+
+import org.apache.log4j.Logger;
+import org.scenarioo.dao.aggregates.ObjectIndexSegment;
+import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
+import org.scenarioo.model.docu.aggregates.objects.ObjectIndex;
+import org.scenarioo.model.docu.entities.generic.ObjectDescription;
+import org.scenarioo.model.docu.entities.generic.ObjectReference;
+import org.scenarioo.model.docu.entities.generic.ObjectTreeNode;
+import org.scenarioo.rest.base.BuildIdentifier;
+
+/**
+ * Collects the reference trees of the objects of a build in append-only segments (one per feature) and merges them
+ * into the object index files at the end of the aggregation.
+ *
+ * The reference tree of an object in the saved index contains the references of all segments in the order the
+ * segments were written.
+ */
+public class ObjectIndexSegments {
+
+	private static final Logger LOGGER = Logger.getLogger(ObjectIndexSegments.class);
+
+	/**
+	 * Maximal number of segments that are read at the same time, more segments are merged in several passes.
+	 */
+	private static final int MAX_SEGMENTS_PER_MERGE = 64;
+
+	private final BuildIdentifier buildIdentifier;
+
+	private final ScenarioDocuAggregationDao dao;
+
+	private final List<ObjectIndexSegment> segments = new ArrayList<ObjectIndexSegment>();
+
+	private int segmentsCreated = 0;
+
+	public ObjectIndexSegments(final BuildIdentifier buildIdentifier, final ScenarioDocuAggregationDao dao) {
+		this.buildIdentifier = buildIdentifier;
+		this.dao = dao;
+	}
+
+	/**
+	 * Append a segment with the passed reference trees, the map has to be sorted by
+	 * {@link ObjectIndexSegment#ENTRY_ORDER}.
+	 */
+	public void writeSegment(final SortedMap<ObjectReference, ObjectTreeNode<ObjectReference>> referenceTrees) {
+		if (referenceTrees.isEmpty()) {
+			return;
+		}
+		ObjectIndexSegment segment = createSegment();
+		ObjectIndexSegment.Writer writer = segment.createWriter();
+		try {
+			for (Entry<ObjectReference, ObjectTreeNode<ObjectReference>> referenceTree : referenceTrees.entrySet()) {
+				writer.add(referenceTree.getKey(), referenceTree.getValue());
+			}
+		} finally {
+			writer.close();
+		}
+		segments.add(segment);
+	}
+
+	/**
+	 * Merge all segments and save one object index file per object. The segments are deleted afterwards.
+	 */
+	public void mergeAndSaveObjectIndexes() {
+		LOGGER.info("    Merging " + segments.size() + " object index segments ...");
+		while (segments.size() > MAX_SEGMENTS_PER_MERGE) {
+			List<ObjectIndexSegment> mergedSegments = new ArrayList<ObjectIndexSegment>();
+			for (int i = 0; i < segments.size(); i += MAX_SEGMENTS_PER_MERGE) {
+				List<ObjectIndexSegment> segmentsToMerge = segments.subList(i,
+						Math.min(i + MAX_SEGMENTS_PER_MERGE, segments.size()));
+				mergedSegments.add(mergeIntoSegment(segmentsToMerge));
+			}
+			segments.clear();
+			segments.addAll(mergedSegments);
+		}
+
+		merge(segments, new MergedEntryHandler() {
+			@Override
+			public void handle(final ObjectReference object, final ObjectTreeNode<ObjectReference> referenceTree) {
+				ObjectDescription objectDescription = dao.loadObjectDescription(buildIdentifier, object);
+				ObjectIndex objectIndex = new ObjectIndex();
+				objectIndex.setObject(objectDescription);
+				objectIndex.setReferenceTree(referenceTree);
+				dao.saveObjectIndex(buildIdentifier, objectIndex);
+			}
+		});
+		segments.clear();
+		dao.getFiles().getObjectIndexSegmentsDirectory(buildIdentifier).delete();
+		LOGGER.info("    Finished successfully writing object index files.");
+	}
+
+	private ObjectIndexSegment mergeIntoSegment(final List<ObjectIndexSegment> segmentsToMerge) {
+		ObjectIndexSegment mergedSegment = createSegment();
+		final ObjectIndexSegment.Writer writer = mergedSegment.createWriter();
+		try {
+			merge(segmentsToMerge, new MergedEntryHandler() {
+				@Override
+				public void handle(final ObjectReference object, final ObjectTreeNode<ObjectReference> referenceTree) {
+					writer.add(object, referenceTree);
+				}
+			});
+		} finally {
+			writer.close();
+		}
+		return mergedSegment;
+	}
+
+	/**
+	 * K-way merge of the passed segments. The reference trees of the same object are combined in order of the segments
+	 * and passed to the handler in {@link ObjectIndexSegment#ENTRY_ORDER}. The merged segments are deleted.
+	 */
+	private void merge(final List<ObjectIndexSegment> segmentsToMerge, final MergedEntryHandler handler) {
+		PriorityQueue<SegmentCursor> cursors = new PriorityQueue<SegmentCursor>();
+		try {
+			for (int i = 0; i < segmentsToMerge.size(); i++) {
+				SegmentCursor cursor = new SegmentCursor(i, segmentsToMerge.get(i).createReader());
+				if (cursor.next()) {
+					cursors.add(cursor);
+				} else {
+					cursor.close();
+				}
+			}
+
+			while (!cursors.isEmpty()) {
+				SegmentCursor cursor = cursors.poll();
+				ObjectReference object = cursor.reader.getObject();
+				ObjectTreeNode<ObjectReference> referenceTree = cursor.reader.getReferenceTree();
+				advance(cursor, cursors);
+				while (!cursors.isEmpty()
+						&& ObjectIndexSegment.ENTRY_ORDER.compare(cursors.peek().reader.getObject(), object) == 0) {
+					SegmentCursor sameObjectCursor = cursors.poll();
+					referenceTree.addChildren(sameObjectCursor.reader.getReferenceTree().getChildren());
+					advance(sameObjectCursor, cursors);
+				}
+				handler.handle(object, referenceTree);
+			}
+		} finally {
+			for (SegmentCursor cursor : cursors) {
+				cursor.close();
+			}
+		}
+
+		for (ObjectIndexSegment segment : segmentsToMerge) {
+			segment.delete();
+		}
+	}
+
+	private void advance(final SegmentCursor cursor, final PriorityQueue<SegmentCursor> cursors) {
+		if (cursor.next()) {
+			cursors.add(cursor);
+		} else {
+			cursor.close();
+		}
+	}
+
+	private ObjectIndexSegment createSegment() {
+		segmentsCreated++;
+		return new ObjectIndexSegment(dao.getFiles().getObjectIndexSegmentFile(buildIdentifier, segmentsCreated));
+	}
+
+	private interface MergedEntryHandler {
+
+		void handle(ObjectReference object, ObjectTreeNode<ObjectReference> referenceTree);
+
+	}
+
+	/**
+	 * Current entry of a segment during the merge, ordered by object and by the order of the segments for same object.
+	 */
+	private static class SegmentCursor implements Comparable<SegmentCursor> {
+
+		private final int segmentIndex;
+
+		private final ObjectIndexSegment.Reader reader;
+
+		private SegmentCursor(final int segmentIndex, final ObjectIndexSegment.Reader reader) {
+			this.segmentIndex = segmentIndex;
+			this.reader = reader;
+		}
+
+		private boolean next() {
+			return reader.next();
+		}
+
+		private void close() {
+			reader.close();
+		}
+
+		@Override
+		public int compareTo(final SegmentCursor other) {
+			int result = ObjectIndexSegment.ENTRY_ORDER.compare(reader.getObject(), other.reader.getObject());
+			if (result == 0) {
+				result = segmentIndex - other.segmentIndex;
+			}
+			return result;
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.scenarioo.model.docu.entities.generic.ObjectReference;
+
+/**
+ * Symbol table that assigns a dense int id to each distinct object reference of a build, such that reference pathes
+ * and reference trees only need to store ids during aggregation. References are only resolved when the trees are
+ * written.
+ *
+ * References are distinguished as by {@link ObjectReference#equals(Object)}, e.g. an
+ * {@link ObjectReferenceWithLabels} gets another id than the plain reference to the same object.
+ *
+ * Ids can be assigned and resolved concurrently.
+ */
+public class ObjectReferenceSymbols {
+
+	private static final Logger LOGGER = Logger.getLogger(ObjectReferenceSymbols.class);
+
+	private static final int INITIAL_CAPACITY = 100000;
+
+	private final ConcurrentMap<ObjectReference, Integer> ids = new ConcurrentHashMap<ObjectReference, Integer>(
+			INITIAL_CAPACITY);
+
+	/**
+	 * References by id, replaced by a larger copy when full. Ids are only published through {@link #ids} after the
+	 * reference has been stored here.
+	 */
+	private volatile ObjectReference[] references = new ObjectReference[INITIAL_CAPACITY];
+
+	private int size = 0;
+
+	/**
+	 * @return the id of the passed reference, a new id is assigned if the reference is not yet known.
+	 */
+	public int getId(final ObjectReference reference) {
+		Integer id = ids.get(reference);
+		if (id != null) {
+			return id;
+		}
+		return addReference(reference);
+	}
+
+	private synchronized int addReference(final ObjectReference reference) {
+		Integer existingId = ids.get(reference);
+		if (existingId != null) {
+			return existingId;
+		}
+		int id = size;
+		if (id == references.length) {
+			ObjectReference[] grownReferences = new ObjectReference[references.length * 2];
+			System.arraycopy(references, 0, grownReferences, 0, references.length);
+			references = grownReferences;
+		}
+		references[id] = reference;
+		size++;
+		ids.put(reference, id);
+		if (size % 1000 == 0) {
+			LOGGER.info("******* Added another 1000 object references, objects in total: " + size);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the reference with the passed id.
+	 */
+	public ObjectReference getReference(final int id) {
+		return references[id];
+	}
+
+}
@@ -18,53 +18,60 @@
 package org.scenarioo.business.aggregator;
 
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
 import org.scenarioo.model.docu.entities.generic.ObjectReference;
 import org.scenarioo.model.docu.entities.generic.ObjectTreeNode;
 
 /**
- * Builder for collecting trees of object reference pathes and building according reference trees
+ * Builder for collecting trees of object reference pathes and building according reference trees. The nodes are
+ * stored as ids of {@link ObjectReferenceSymbols} and only resolved when the tree is built.
  */
 public class ObjectReferenceTreeBuilder {
 
-	private final ObjectReference node;
+	private final int node;
 
-	private final Map<ObjectReference, ObjectReferenceTreeBuilder> children = new LinkedHashMap<ObjectReference, ObjectReferenceTreeBuilder>();
+	private final Map<Integer, ObjectReferenceTreeBuilder> children = new LinkedHashMap<Integer, ObjectReferenceTreeBuilder>();
 
-	ObjectReferenceTreeBuilder(final ObjectReference node) {
+	ObjectReferenceTreeBuilder(final int node) {
 		this.node = node;
 	}
 
-	public void addPath(final List<ObjectReference> path) {
-		if (!path.isEmpty()) {
-			LinkedList<ObjectReference> copiedPath = new LinkedList<ObjectReference>(path);
-			addPathInternal(copiedPath);
+	public void addPath(final ReferencePath path) {
+		ObjectReferenceTreeBuilder tree = this;
+		for (int object : path.toIds()) {
+			ObjectReferenceTreeBuilder child = tree.children.get(object);
+			if (child == null) {
+				child = new ObjectReferenceTreeBuilder(object);
+				tree.children.put(object, child);
+			}
+			tree = child;
 		}
 	}
 
-	private void addPathInternal(final List<ObjectReference> path) {
-		if (!path.isEmpty()) {
-			ObjectReference object = path.remove(0);
-			ObjectReferenceTreeBuilder tree = children.get(object);
-			if (tree == null) {
-				tree = new ObjectReferenceTreeBuilder(object);
-				children.put(object, tree);
+	/**
+	 * Add all pathes collected by another builder for the same node, after the pathes collected by this builder.
+	 */
+	public void merge(final ObjectReferenceTreeBuilder other) {
+		for (ObjectReferenceTreeBuilder otherChild : other.children.values()) {
+			ObjectReferenceTreeBuilder child = children.get(otherChild.node);
+			if (child == null) {
+				children.put(otherChild.node, otherChild);
+			} else {
+				child.merge(otherChild);
 			}
-			tree.addPathInternal(path);
 		}
 	}
 
-	public ObjectTreeNode<ObjectReference> build() {
+	public ObjectTreeNode<ObjectReference> build(final ObjectReferenceSymbols symbols) {
 		ObjectTreeNode<ObjectReference> result = new ObjectTreeNode<ObjectReference>();
-		result.setItem(node);
-		if (node instanceof ObjectReferenceWithLabels) {
-			result.getDetails().putAll(((ObjectReferenceWithLabels) node).getDetails());
+		ObjectReference reference = symbols.getReference(node);
+		result.setItem(reference);
+		if (reference instanceof ObjectReferenceWithLabels) {
+			result.getDetails().putAll(((ObjectReferenceWithLabels) reference).getDetails());
 		}
 		for (ObjectReferenceTreeBuilder childTreeBuilder : children.values()) {
-			result.addChild(childTreeBuilder.build());
+			result.addChild(childTreeBuilder.build(symbols));
 		}
 		return result;
 	}
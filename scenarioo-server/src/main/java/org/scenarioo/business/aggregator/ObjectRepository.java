@@ -22,16 +22,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
+import org.scenarioo.api.util.files.AlphanumericFileComparator;
 import org.scenarioo.business.aggregator.customTabs.CustomObjectTabsAggregator;
+import org.scenarioo.dao.aggregates.ObjectIndexSegment;
 import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
-import org.scenarioo.model.docu.aggregates.objects.ObjectIndex;
 import org.scenarioo.model.docu.aggregates.steps.StepLink;
 import org.scenarioo.model.docu.entities.Labels;
 import org.scenarioo.model.docu.entities.Page;
@@ -48,6 +52,15 @@ import org.scenarioo.repository.ConfigurationRepository;
 import org.scenarioo.repository.RepositoryLocator;
 import org.scenarioo.rest.base.BuildIdentifier;
 
+/**
+ * Collects all objects referenced in a build and the pathes how they are referenced, to save them as object
+ * descriptions, object indexes, object lists and custom object tab trees.
+ *
+ * Different parts of a build can be collected in parallel by partial repositories (see
+ * {@link #createPartialRepository()}). The collected objects are only saved after merging the partial repositories in
+ * the order of the parts in the build, such that the saved data is the same as if the parts had been collected one
+ * after the other.
+ */
 public class ObjectRepository {
 
 	private static final Logger LOGGER = Logger.getLogger(ObjectRepository.class);
@@ -59,30 +72,100 @@ public class ObjectRepository {
 
 	private final BuildIdentifier buildIdentifier;
 
-	private final Map<ObjectReference, ObjectReferenceTreeBuilder> objectReferences = new HashMap<ObjectReference, ObjectReferenceTreeBuilder>();
+	/**
+	 * Reference trees by id of the referenced object.
+	 */
+	private final Map<Integer, ObjectReferenceTreeBuilder> objectReferences = new HashMap<Integer, ObjectReferenceTreeBuilder>();
 
 	private final Set<String> objectTypes = new HashSet<String>();
 
-	private final Map<ObjectReference, ObjectReference> objectReferencePool = new HashMap<ObjectReference, ObjectReference>(
-			100000);
+	/**
+	 * Collected objects that have not yet been saved, only the first occurrence of each object is saved.
+	 */
+	private final Map<Integer, ObjectDescription> objectsToSave = new LinkedHashMap<Integer, ObjectDescription>();
+
+	/**
+	 * Files of all saved object descriptions, to check whether an object is already saved without accessing the file
+	 * system (all object data of the build is removed before aggregation).
+	 */
+	private final Set<File> savedObjectFiles = new HashSet<File>();
+
+	/**
+	 * All saved object descriptions per type, sorted in the same order as the object files in the directory of the
+	 * type.
+	 */
+	private final Map<String, SortedMap<File, ObjectDescription>> savedObjects = new HashMap<String, SortedMap<File, ObjectDescription>>();
+
+	/**
+	 * Collected objects for the custom object tabs, that have not yet been added to the custom object tab trees.
+	 */
+	private final List<CustomObjectTabObject> customObjectTabObjects = new ArrayList<CustomObjectTabObject>();
+
+	/**
+	 * Shared by all partial repositories of same build.
+	 */
+	private final ObjectReferenceSymbols symbols;
 
 	private final CustomObjectTabsAggregator customObjectTabsAggregator;
 
+	private final ObjectIndexSegments objectIndexSegments;
+
 	public ObjectRepository(final BuildIdentifier buildIdentifier, final ScenarioDocuAggregationDao dao) {
 		this.buildIdentifier = buildIdentifier;
 		this.dao = dao;
+		symbols = new ObjectReferenceSymbols();
 		customObjectTabsAggregator = new CustomObjectTabsAggregator(configurationRepository.getConfiguration()
 				.getCustomObjectTabs(), dao, buildIdentifier);
+		objectIndexSegments = new ObjectIndexSegments(buildIdentifier, dao);
+	}
+
+	private ObjectRepository(final ObjectRepository repository) {
+		this.buildIdentifier = repository.buildIdentifier;
+		this.dao = repository.dao;
+		this.symbols = repository.symbols;
+		this.customObjectTabsAggregator = repository.customObjectTabsAggregator;
+		this.objectIndexSegments = repository.objectIndexSegments;
+	}
+
+	/**
+	 * Create an empty repository to collect objects of one part of the build (e.g. one scenario), that can be merged
+	 * into this repository afterwards.
+	 */
+	public ObjectRepository createPartialRepository() {
+		return new ObjectRepository(this);
+	}
+
+	/**
+	 * Add all objects and reference pathes collected by the passed partial repository to this repository. The collected
+	 * data of the partial repository is considered to come after the data collected by this repository so far.
+	 */
+	public void merge(final ObjectRepository partialRepository) {
+		objectTypes.addAll(partialRepository.objectTypes);
+		for (Entry<Integer, ObjectDescription> objectToSave : partialRepository.objectsToSave.entrySet()) {
+			if (!objectsToSave.containsKey(objectToSave.getKey())) {
+				objectsToSave.put(objectToSave.getKey(), objectToSave.getValue());
+			}
+		}
+		customObjectTabObjects.addAll(partialRepository.customObjectTabObjects);
+		for (Entry<Integer, ObjectReferenceTreeBuilder> objectRefTreeBuilder : partialRepository.objectReferences
+				.entrySet()) {
+			ObjectReferenceTreeBuilder refTreeBuilder = objectReferences.get(objectRefTreeBuilder.getKey());
+			if (refTreeBuilder == null) {
+				objectReferences.put(objectRefTreeBuilder.getKey(), objectRefTreeBuilder.getValue());
+			} else {
+				refTreeBuilder.merge(objectRefTreeBuilder.getValue());
+			}
+		}
 	}
 
 	/**
 	 * Add all objects inside the passed generic object to the object repository for later saving.
 	 */
-	private void addObject(final List<ObjectReference> referencePath, final Object object) {
+	private void addObject(final ReferencePath referencePath, final Object object) {
 		if (object instanceof ObjectDescription) {
 			addObject(referencePath, (ObjectDescription) object);
 		} else if (object instanceof ObjectReference) {
-			addObjectReference(referencePath, (ObjectReference) object);
+			addObjectReference(referencePath, createObjectReference((ObjectReference) object));
 		} else if (object instanceof Details) {
 			addObjects(referencePath, (Details) object);
 		} else if (object instanceof ObjectList) {
@@ -92,27 +175,25 @@ public class ObjectRepository {
 		}
 	}
 
-	private void addTreeObjects(final List<ObjectReference> referencePath, final ObjectTreeNode<?> objectTree) {
+	private void addTreeObjects(final ReferencePath referencePath, final ObjectTreeNode<?> objectTree) {
 
 		// Add node
 		Object node = objectTree.getItem();
 		addObject(referencePath, node);
 
 		// Is there a node object to add to the referencePath?
-		ObjectReference nodeRef = null;
+		ReferencePath nodePath = null;
 		if (node instanceof ObjectDescription) {
 			ObjectDescription objectDesc = (ObjectDescription) node;
-			nodeRef = createObjectReference(objectDesc.getType(), objectDesc.getName());
+			nodePath = referencePath.extend(createObjectReference(objectDesc.getType(), objectDesc.getName()));
 		} else if (node instanceof ObjectReference) {
-			nodeRef = createObjectReference((ObjectReference) node);
+			nodePath = referencePath.extend(createObjectReference((ObjectReference) node));
 		}
 
 		// Add children and details with correct path
-		if (nodeRef != null) {
-			referencePath.add(nodeRef);
-			addObjects(referencePath, objectTree.getDetails());
-			addListObjects(referencePath, objectTree.getChildren());
-			referencePath.remove(referencePath.size() - 1);
+		if (nodePath != null) {
+			addObjects(nodePath, objectTree.getDetails());
+			addListObjects(nodePath, objectTree.getChildren());
 		} else {
 			addObjects(referencePath, objectTree.getDetails());
 			addListObjects(referencePath, objectTree.getChildren());
@@ -127,7 +208,7 @@ public class ObjectRepository {
 	 * @param referencePath
 	 *            the path of objects that referenced these list.
 	 */
-	private void addListObjects(final List<ObjectReference> referencePath, final List<?> objects) {
+	private void addListObjects(final ReferencePath referencePath, final List<?> objects) {
 		for (Object object : objects) {
 			addObject(referencePath, object);
 		}
@@ -141,7 +222,7 @@ public class ObjectRepository {
 	 * @param referencePath
 	 *            the path of objects that referenced these details.
 	 */
-	private void addObjects(final List<ObjectReference> referencePath, final Details details) {
+	private void addObjects(final ReferencePath referencePath, final Details details) {
 		for (Entry<String, Object> entry : details.getProperties().entrySet()) {
 			addObject(referencePath, entry.getValue());
 		}
@@ -156,7 +237,7 @@ public class ObjectRepository {
 	 * @param referencePath
 	 *            the path of objects that referenced these details.
 	 */
-	private void addObject(final List<ObjectReference> referencePath, final ObjectDescription object) {
+	private void addObject(final ReferencePath referencePath, final ObjectDescription object) {
 		addObject(referencePath, object, null);
 	}
 
@@ -171,75 +252,82 @@ public class ObjectRepository {
 	 * @param labels
 	 *            labels that were available on the same object, to add too.
 	 */
-	private void addObject(final List<ObjectReference> referencePath, final ObjectDescription object,
+	private void addObject(final ReferencePath referencePath, final ObjectDescription object,
 			final Labels labels) {
 
-		customObjectTabsAggregator.aggregateRelevantObjectIntoCustomObjectTabTrees(referencePath, object);
+		if (customObjectTabsAggregator.isRelevantObjectType(object.getType())) {
+			customObjectTabObjects.add(new CustomObjectTabObject(referencePath, object));
+		}
 
-		ObjectReference ref = createObjectReference(object.getType(), object.getName());
-		saveObject(object);
+		int ref = createObjectReference(object.getType(), object.getName());
+		collectObjectToSave(ref, object);
 		addObjectReference(referencePath, ref);
-		referencePath.add(ref);
-		addObjects(referencePath, object.getDetails());
+		ReferencePath objectPath = referencePath.extend(ref);
+		addObjects(objectPath, object.getDetails());
 		if (labels != null) {
-			addLabels(referencePath, labels);
+			addLabels(objectPath, labels);
 		}
-		referencePath.remove(referencePath.size() - 1);
 	}
 
 	/**
-	 * Create reference or get it from pool if already available. This is done just to avoid out of memory because of a
-	 * lot of same references loaded from xml files.
+	 * Get the id of the reference from the symbol table. Only ids are stored in reference pathes and trees, to avoid out
+	 * of memory because of a lot of same references loaded from xml files.
 	 */
-	private ObjectReference createObjectReference(final ObjectReference node) {
+	private int createObjectReference(final ObjectReference node) {
 		return createObjectReference(node.getType(), node.getName());
 	}
 
+	private int createObjectReference(final String type, final String name) {
+		return symbols.getId(new ObjectReference(type, name));
+	}
+
+	private int createObjectReference(final String type, final String name, final Labels labels) {
+		return symbols.getId(new ObjectReferenceWithLabels(type, name, labels));
+	}
+
+	private void collectObjectToSave(final int ref, final ObjectDescription object) {
+		objectTypes.add(object.getType());
+		if (!objectsToSave.containsKey(ref)) {
+			objectsToSave.put(ref, object);
+		}
+	}
+
 	/**
-	 * Create reference or get it from pool if already available. This is done just to avoid out of memory because of a
-	 * lot of same references loaded from xml files.
+	 * Save all collected objects that are not yet saved and add them to the custom object tab trees.
 	 */
-	private ObjectReference createObjectReference(final String type, final String name) {
-		ObjectReference newRef = new ObjectReference(type, name);
-		ObjectReference existingRef = objectReferencePool.get(newRef);
-		if (existingRef != null) {
-			return existingRef;
-		} else {
-			objectReferencePool.put(newRef, newRef);
-			if (objectReferencePool.size() % 1000 == 0) {
-				LOGGER.info("******* Added another 1000 object references, objects in total: "
-						+ objectReferencePool.size());
+	public void saveCollectedObjects() {
+		for (ObjectDescription object : objectsToSave.values()) {
+			File objectFile = dao.getObjectFile(buildIdentifier, object.getType(), object.getName());
+			if (savedObjectFiles.add(objectFile)) {
+				dao.saveObjectDescription(buildIdentifier, object);
+				getSavedObjects(object.getType()).put(objectFile, object);
 			}
-			return newRef;
 		}
+		objectsToSave.clear();
+		for (CustomObjectTabObject customObjectTabObject : customObjectTabObjects) {
+			customObjectTabsAggregator.aggregateRelevantObjectIntoCustomObjectTabTrees(
+					customObjectTabObject.referencePath.toReferences(symbols), customObjectTabObject.object);
+		}
+		customObjectTabObjects.clear();
 	}
 
-	private ObjectReference createObjectReference(final String type, final String name, final Labels labels) {
-		ObjectReferenceWithLabels newRef = new ObjectReferenceWithLabels(type, name, labels);
-		ObjectReference existingRef = objectReferencePool.get(newRef);
-		if (existingRef != null) {
-			return existingRef;
-		} else {
-			objectReferencePool.put(newRef, newRef);
-			if (objectReferencePool.size() % 1000 == 0) {
-				LOGGER.info("******* Added another 1000 object references, objects in total: "
-						+ objectReferencePool.size());
-			}
-			return newRef;
-		}
+	private boolean isObjectSaved(final ObjectReference objectRef) {
+		return savedObjectFiles.contains(dao.getObjectFile(buildIdentifier, objectRef.getType(), objectRef.getName()));
 	}
 
-	private void saveObject(final ObjectDescription object) {
-		objectTypes.add(object.getType());
-		if (!dao.isObjectDescriptionSaved(buildIdentifier, object)) {
-			dao.saveObjectDescription(buildIdentifier, object);
+	private SortedMap<File, ObjectDescription> getSavedObjects(final String type) {
+		SortedMap<File, ObjectDescription> savedObjectsOfType = savedObjects.get(type);
+		if (savedObjectsOfType == null) {
+			savedObjectsOfType = new TreeMap<File, ObjectDescription>(new AlphanumericFileComparator());
+			savedObjects.put(type, savedObjectsOfType);
 		}
+		return savedObjectsOfType;
 	}
 
 	/**
 	 * Put the object reference to an object into the objectReferences.
 	 */
-	private void addObjectReference(final List<ObjectReference> referencePath, final ObjectReference ref) {
+	private void addObjectReference(final ReferencePath referencePath, final int ref) {
 		ObjectReferenceTreeBuilder refTreeBuilder = objectReferences.get(ref);
 		if (refTreeBuilder == null) {
 			refTreeBuilder = new ObjectReferenceTreeBuilder(ref);
@@ -248,46 +336,31 @@ public class ObjectRepository {
 		refTreeBuilder.addPath(referencePath);
 	}
 
-	private List<ObjectReference> createPath(final ObjectReference objectReference) {
-		List<ObjectReference> result = new ArrayList<ObjectReference>(1);
-		result.add(objectReference);
-		return result;
-	}
-
-	private List<ObjectReference> extendPath(final List<ObjectReference> referencePath,
-			final ObjectReference objectReference) {
-		List<ObjectReference> result = new ArrayList<ObjectReference>(referencePath.size() + 1);
-		result.addAll(referencePath);
-		result.add(objectReference);
-		return result;
-	}
-
 	/**
 	 * Add all objects referenced directly by this feature to the object repository.
 	 *
 	 * @return the reference path for the passed feature to use as base path for belonging scenarios etc.
 	 */
-	public List<ObjectReference> addReferencedFeatureObjects(final Feature feature) {
-		List<ObjectReference> referencePath = createPath(createObjectReference("feature", feature.getName(),
+	public ReferencePath addReferencedFeatureObjects(final Feature feature) {
+		ReferencePath referencePath = ReferencePath.EMPTY.extend(createObjectReference("feature", feature.getName(),
 				feature.getLabels()));
 		addObjects(referencePath, feature.getDetails());
 		addLabels(referencePath, feature.getLabels());
 		return referencePath;
 	}
 
-	public List<ObjectReference> addReferencedScenarioObjects(List<ObjectReference> referencePath,
-			final Scenario scenario) {
-		referencePath = extendPath(referencePath,
-				createObjectReference("scenario", scenario.getName(), scenario.getLabels()));
+	public ReferencePath addReferencedScenarioObjects(ReferencePath referencePath, final Scenario scenario) {
+		referencePath = referencePath.extend(createObjectReference("scenario", scenario.getName(),
+				scenario.getLabels()));
 		addObjects(referencePath, scenario.getDetails());
 		addLabels(referencePath, scenario.getLabels());
 		return referencePath;
 	}
 
-	public void addPageAndStep(List<ObjectReference> referencePath, final Step step, final StepLink stepLink) {
-		ObjectReference stepReference = createObjectReference("step", stepLink.getStepIdentifierForObjectRepository(),
-				step.getStepDescription().getLabels());
-		referencePath = extendPath(referencePath, stepReference);
+	public void addPageAndStep(ReferencePath referencePath, final Step step, final StepLink stepLink) {
+		int stepReference = createObjectReference("step", stepLink.getStepIdentifierForObjectRepository(), step
+				.getStepDescription().getLabels());
+		referencePath = referencePath.extend(stepReference);
 		addObjects(referencePath, step.getStepDescription().getDetails());
 		addObjects(referencePath, step.getMetadata().getDetails());
 		addScreenAnnotationObjects(referencePath, step.getScreenAnnotations());
@@ -295,7 +368,7 @@ public class ObjectRepository {
 		addLabels(referencePath, step.getStepDescription().getLabels());
 	}
 
-	private void addScreenAnnotationObjects(final List<ObjectReference> referencePath,
+	private void addScreenAnnotationObjects(final ReferencePath referencePath,
 			final List<ScreenAnnotation> screenAnnotations) {
 		for (ScreenAnnotation screenAnnotation : screenAnnotations) {
 			addObjects(referencePath, screenAnnotation.getDetails());
@@ -305,7 +378,7 @@ public class ObjectRepository {
 	/**
 	 * Add description of a page and all referenced objects
 	 */
-	private void addPage(final List<ObjectReference> referencePath, final Page page) {
+	private void addPage(final ReferencePath referencePath, final Page page) {
 		if (page == null) {
 			return;
 		}
@@ -319,7 +392,7 @@ public class ObjectRepository {
 	/**
 	 * Add labels also as objects to the repository
 	 */
-	private void addLabels(final List<ObjectReference> referencePath, final Labels labels) {
+	private void addLabels(final ReferencePath referencePath, final Labels labels) {
 		for (String label : labels.getLabels()) {
 			// Save label description (if not yet)
 			ObjectDescription labelDescription = new ObjectDescription("label", label);
@@ -327,13 +400,14 @@ public class ObjectRepository {
 		}
 	}
 
+	/**
+	 * Save the list of all objects of each type, from the object descriptions that were saved during aggregation.
+	 */
 	public void calculateAndSaveObjectLists() {
 		for (String type : objectTypes) {
 			LOGGER.info("    Writing object list for type '" + type + "' ...");
 			ObjectList<ObjectDescription> objectsList = new ObjectList<ObjectDescription>();
-			List<File> objectFiles = dao.getFiles().getObjectFiles(buildIdentifier, type);
-			for (File file : objectFiles) {
-				ObjectDescription object = dao.loadObjectDescription(file);
+			for (ObjectDescription object : getSavedObjects(type).values()) {
 				objectsList.add(object);
 			}
 			dao.saveObjectsList(buildIdentifier, type, objectsList);
@@ -345,36 +419,50 @@ public class ObjectRepository {
 		customObjectTabsAggregator.saveAggregatedTreeStructures();
 	}
 
-	public void updateAndSaveObjectIndexesForCurrentCase() {
-		LOGGER.info("      Writing object repository index files for last feature. This might take a while ...");
-		for (Entry<ObjectReference, ObjectReferenceTreeBuilder> objectRefTreeBuilder : objectReferences.entrySet()) {
-			ObjectReference objectRef = objectRefTreeBuilder.getKey();
-			ObjectReferenceTreeBuilder referenceTreeBuilder = objectRefTreeBuilder.getValue();
-			if (dao.isObjectDescriptionSaved(buildIdentifier, objectRef.getType(), objectRef.getName())) {
-				ObjectIndex index = dao.loadObjectIndexIfExistant(buildIdentifier, objectRef.getType(),
-						objectRef.getName());
-				if (index == null) {
-					ObjectDescription object = dao
-							.loadObjectDescription(buildIdentifier, objectRefTreeBuilder.getKey());
-					ObjectIndex objectIndex = new ObjectIndex();
-					objectIndex.setObject(object);
-					ObjectTreeNode<ObjectReference> referenceTree = referenceTreeBuilder.build();
-					objectIndex.setReferenceTree(referenceTree);
-					dao.saveObjectIndex(buildIdentifier, objectIndex);
-				} else {
-					index.getReferenceTree().addChildren(referenceTreeBuilder.build().getChildren());
-					dao.saveObjectIndex(buildIdentifier, index);
-				}
+	/**
+	 * Write the reference trees of all saved objects that were collected for the last feature as an object index
+	 * segment.
+	 */
+	public void writeObjectIndexSegmentForCurrentCase() {
+		SortedMap<ObjectReference, ObjectTreeNode<ObjectReference>> referenceTrees = new TreeMap<ObjectReference, ObjectTreeNode<ObjectReference>>(
+				ObjectIndexSegment.ENTRY_ORDER);
+		for (Entry<Integer, ObjectReferenceTreeBuilder> objectRefTreeBuilder : objectReferences.entrySet()) {
+			ObjectReference objectRef = symbols.getReference(objectRefTreeBuilder.getKey());
+			if (isObjectSaved(objectRef)) {
+				referenceTrees.put(objectRef, objectRefTreeBuilder.getValue().build(symbols));
 			}
 		}
+		objectIndexSegments.writeSegment(referenceTrees);
 		objectReferences.clear();
-		LOGGER.info("      Writing object repository index files for last feature finished (success).");
+	}
+
+	/**
+	 * Save the object index files of all objects, after all features have been processed.
+	 */
+	public void saveObjectIndexes() {
+		objectIndexSegments.mergeAndSaveObjectIndexes();
 	}
 
 	public void removeAnyExistingObjectData() {
 		deleteDirectory(dao.getFiles().getObjectsDirectory(buildIdentifier));
 	}
 
+	/**
+	 * An object for the custom object tabs together with the path how it was referenced.
+	 */
+	private static class CustomObjectTabObject {
+
+		private final ReferencePath referencePath;
+
+		private final ObjectDescription object;
+
+		private CustomObjectTabObject(final ReferencePath referencePath, final ObjectDescription object) {
+			this.referencePath = referencePath;
+			this.object = object;
+		}
+
+	}
+
 	private static void deleteDirectory(final File directory) {
 		if (directory.exists()) {
 			try {
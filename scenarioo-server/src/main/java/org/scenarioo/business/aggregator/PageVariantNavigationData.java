@@ -17,56 +17,108 @@
 
 package org.scenarioo.business.aggregator;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.scenarioo.model.docu.aggregates.steps.StepLink;
+import org.scenarioo.model.docu.aggregates.steps.StepNavigation;
 
 /**
+ * Collects all steps of one page (the page variants) in the order they appear in the build.
  * 
+ * Steps of different parts of a build can be collected separately and merged afterwards in the order of the parts.
+ * After all steps are collected, {@link #calculatePageVariantData()} has to be called before the page variant data
+ * can be set on the step navigations.
  */
 public class PageVariantNavigationData {
 	
-	private StepLink lastStep;
-	private StepLink lastStepFromDifferentScenario;
+	private final List<StepLink> steps = new ArrayList<StepLink>();
+	
+	/**
+	 * The navigation data of the scenario of each step in {@link #steps}.
+	 */
+	private final List<ScenarioNavigationData> scenarios = new ArrayList<ScenarioNavigationData>();
+	
 	private int scenariosCount = 0;
-	private int stepsCount = 0;
 	
-	public void increaseScenariosCount() {
-		scenariosCount++;
-	}
+	private int[] scenarioIndexes;
 	
-	public void increaseStepsCount() {
-		stepsCount++;
-	}
+	private StepLink[] previousStepVariantsInOtherScenario;
 	
-	public StepLink getLastStep() {
-		return lastStep;
-	}
+	private StepLink[] nextStepVariantsInOtherScenario;
 	
-	public void setLastStep(final StepLink lastStep) {
-		this.lastStep = lastStep;
+	public void addStep(final StepLink step, final ScenarioNavigationData scenario) {
+		steps.add(step);
+		scenarios.add(scenario);
 	}
 	
-	public StepLink getLastStepFromDifferentScenario() {
-		return lastStepFromDifferentScenario;
+	/**
+	 * Append the steps of the same page collected for a part of the build that comes after all steps collected so far.
+	 */
+	public void addSteps(final PageVariantNavigationData pageVariantOfFollowingPart) {
+		steps.addAll(pageVariantOfFollowingPart.steps);
+		scenarios.addAll(pageVariantOfFollowingPart.scenarios);
 	}
 	
-	public void setLastStepFromDifferentScenario(final StepLink lastStepFromDifferentScenario) {
-		this.lastStepFromDifferentScenario = lastStepFromDifferentScenario;
+	public List<StepLink> getSteps() {
+		return steps;
 	}
 	
-	public int getScenariosCount() {
-		return scenariosCount;
+	public int getStepsCount() {
+		return steps.size();
 	}
 	
-	public void setScenariosCount(final int scenariosCount) {
-		this.scenariosCount = scenariosCount;
+	/**
+	 * Calculate the scenario index and the neighbor steps in other scenarios for all steps of this page and store the
+	 * index of each step inside this page variant in the navigation data of its scenario.
+	 */
+	public void calculatePageVariantData() {
+		int stepsCount = steps.size();
+		scenarioIndexes = new int[stepsCount];
+		previousStepVariantsInOtherScenario = new StepLink[stepsCount];
+		nextStepVariantsInOtherScenario = new StepLink[stepsCount];
+		scenariosCount = 0;
+		
+		StepLink lastStepFromDifferentScenario = null;
+		for (int i = 0; i < stepsCount; i++) {
+			if (i == 0) {
+				scenariosCount++;
+			} else if (!isSameScenario(steps.get(i), steps.get(i - 1))) {
+				scenariosCount++;
+				lastStepFromDifferentScenario = steps.get(i - 1);
+			}
+			scenarioIndexes[i] = scenariosCount - 1;
+			previousStepVariantsInOtherScenario[i] = lastStepFromDifferentScenario;
+			scenarios.get(i).setPageVariantIndex(steps.get(i).getStepIndex(), i);
+		}
+		
+		StepLink nextStepFromDifferentScenario = null;
+		for (int i = stepsCount - 1; i >= 0; i--) {
+			if (i < stepsCount - 1 && !isSameScenario(steps.get(i), steps.get(i + 1))) {
+				nextStepFromDifferentScenario = steps.get(i + 1);
+			}
+			nextStepVariantsInOtherScenario[i] = nextStepFromDifferentScenario;
+		}
 	}
 	
-	public int getStepsCount() {
-		return stepsCount;
+	/**
+	 * Set the page variant data of the step with passed index inside this page variant.
+	 */
+	public void setPageVariantData(final StepNavigation stepNavigation, final int pageVariantIndex) {
+		int i = pageVariantIndex;
+		stepNavigation.setPreviousStepVariant(i > 0 ? steps.get(i - 1) : null);
+		stepNavigation.setPreviousStepVariantInOtherScenario(previousStepVariantsInOtherScenario[i]);
+		stepNavigation.setPageVariantIndex(i);
+		stepNavigation.setPageVariantScenarioIndex(scenarioIndexes[i]);
+		stepNavigation.setPageVariantsCount(steps.size());
+		stepNavigation.setPageVariantScenariosCount(scenariosCount);
+		stepNavigation.setNextStepVariant(i < steps.size() - 1 ? steps.get(i + 1) : null);
+		stepNavigation.setNextStepVariantInOtherScenario(nextStepVariantsInOtherScenario[i]);
 	}
 	
-	public void setStepsCount(final int stepsCount) {
-		this.stepsCount = stepsCount;
+	private boolean isSameScenario(final StepLink step1, final StepLink step2) {
+		return step1.getFeatureName().equals(step2.getFeatureName())
+			&& step1.getScenarioName().equals(step2.getScenarioName());
 	}
 	
 }
@@ -0,0 +1,84 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.scenarioo.model.docu.entities.generic.ObjectReference;
+
+/**
+ * Immutable path of object references (as ids of {@link ObjectReferenceSymbols}) through which an object is
+ * referenced. Extended pathes share the nodes of their parent path, so extending a path does not copy it.
+ */
+public class ReferencePath {
+
+	public static final ReferencePath EMPTY = new ReferencePath(null, -1);
+
+	private final ReferencePath parent;
+
+	private final int objectId;
+
+	private final int length;
+
+	private ReferencePath(final ReferencePath parent, final int objectId) {
+		this.parent = parent;
+		this.objectId = objectId;
+		this.length = parent == null ? 0 : parent.length + 1;
+	}
+
+	/**
+	 * @return a new path with the passed object appended to this path.
+	 */
+	public ReferencePath extend(final int objectId) {
+		return new ReferencePath(this, objectId);
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	/**
+	 * @return the ids of the path, starting at the root.
+	 */
+	public int[] toIds() {
+		int[] result = new int[length];
+		ReferencePath path = this;
+		for (int i = length - 1; i >= 0; i--) {
+			result[i] = path.objectId;
+			path = path.parent;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the resolved references of the path, starting at the root.
+	 */
+	public List<ObjectReference> toReferences(final ObjectReferenceSymbols symbols) {
+		List<ObjectReference> result = new ArrayList<ObjectReference>(length);
+		for (int id : toIds()) {
+			result.add(symbols.getReference(id));
+		}
+		return result;
+	}
+
+}
@@ -17,20 +17,33 @@
 
 package org.scenarioo.business.aggregator;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
 import org.scenarioo.api.ScenarioDocuReader;
 import org.scenarioo.api.exception.ResourceNotFoundException;
+import org.scenarioo.api.files.ScenarioDocuFiles;
+import org.scenarioo.api.util.xml.ScenarioDocuXMLFileUtil;
+import org.scenarioo.business.aggregator.ImportProfiler.Phase;
 import org.scenarioo.business.builds.BuildLink;
 import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
+import org.scenarioo.dao.aggregates.StepsCacheFile;
 import org.scenarioo.dao.search.FullTextSearch;
 import org.scenarioo.dao.version.ApplicationVersionHolder;
+import org.scenarioo.model.configuration.ComparisonConfiguration;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportProfile;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportStatus;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
 import org.scenarioo.model.docu.aggregates.branches.BuildStatistics;
+import org.scenarioo.model.docu.aggregates.branches.ImportPhaseProfile;
 import org.scenarioo.model.docu.aggregates.objects.LongObjectNamesResolver;
 import org.scenarioo.model.docu.aggregates.scenarios.PageSteps;
 import org.scenarioo.model.docu.aggregates.scenarios.ScenarioPageSteps;
@@ -38,10 +51,13 @@ import org.scenarioo.model.docu.aggregates.features.FeatureScenarios;
 import org.scenarioo.model.docu.aggregates.features.ScenarioSummary;
 import org.scenarioo.model.docu.aggregates.features.FeatureScenariosList;
 import org.scenarioo.model.docu.entities.*;
-import org.scenarioo.model.docu.entities.generic.ObjectReference;
 import org.scenarioo.repository.ConfigurationRepository;
 import org.scenarioo.repository.RepositoryLocator;
 import org.scenarioo.rest.base.BuildIdentifier;
+import org.scenarioo.rest.base.ScenarioIdentifier;
+import org.scenarioo.utils.FileAccessCounter;
+import org.scenarioo.utils.ImportIoThrottle;
+import org.scenarioo.utils.ThreadLogAppender;
 
 /**
  * The aggregator reads the input docu files of a build and generates the aggregated docu files with additional
@@ -50,6 +66,18 @@ import org.scenarioo.rest.base.BuildIdentifier;
  * Make sure to adjust the value of `scenariooAggregatedDataFormatVersion` in gradle.build when the format of
  * generated data is extended or changed.
  *
+ * Features and scenarios of a build are aggregated in parallel. The data collected for each feature and scenario is
+ * merged in the order of the features and scenarios in the build, such that the aggregated data is exactly the same as
+ * if they were aggregated one after the other.
+ *
+ * The steps of each scenario are cached in a derived file together with a fingerprint of the scenario and step files.
+ * When a build is aggregated again (e.g. on reimport, after a change of the aggregated data format, or when updating
+ * the last successful scenarios build), the steps of unchanged scenarios are read from this cache instead of from all
+ * the step files. This only saves reading the step files: the aggregation is not incremental, the data of the whole
+ * build (page variants, object indexes, feature list and all other derived files) is still calculated from all
+ * scenarios and written again. While the full text search is running the steps are cached with their HTML source,
+ * because they are indexed together with it.
+ *
  * TODO #194: Make build import more friendly:<br>
  * Make aggregator more fail safe ... let him continue in case of exceptions or unexpected data (null pointers?) to
  * aggregate at least that part of a documentation build that is okay, such that this part can be accessed and read.
@@ -78,6 +106,9 @@ public class ScenarioDocuAggregator {
 	private final ScenarioDocuReader reader = new ScenarioDocuReader(
 			configurationRepository.getDocumentationDataDirectory());
 
+	private final ScenarioDocuFiles docuFiles = new ScenarioDocuFiles(
+			configurationRepository.getDocumentationDataDirectory());
+
 	private final LongObjectNamesResolver longObjectNamesResolver = new LongObjectNamesResolver();
 
 	private final ScenarioDocuAggregationDao dao = new ScenarioDocuAggregationDao(
@@ -89,8 +120,13 @@ public class ScenarioDocuAggregator {
 
 	private ObjectRepository objectRepository;
 
+	private volatile boolean cancelled = false;
+
+	private final ImportProfiler profiler = new ImportProfiler();
+
 	public ScenarioDocuAggregator(final BuildImportSummary buildSummary) {
 		this.buildSummary = buildSummary;
+		dao.setFormattedDerivedFiles(configurationRepository.getConfiguration().isFormattedDerivedFiles());
 	}
 
 	private BuildIdentifier getBuildIdentifier() {
@@ -102,43 +138,91 @@ public class ScenarioDocuAggregator {
 		return !StringUtils.isBlank(version) && version.equals(internalFormatVersion);
 	}
 
+	/**
+	 * Cancel a running aggregation, it stops with an {@link AggregationCancelledException} before aggregating the next
+	 * feature or scenario. The aggregated data of the build is incomplete then.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	private void failIfCancelled() {
+		if (cancelled) {
+			throw new AggregationCancelledException("Import of build " + getBuildIdentifier() + " was cancelled.");
+		}
+	}
+
 	public void removeAggregatedDataForBuild() {
 		dao.deleteDerivedFiles(getBuildIdentifier());
 		objectRepository = new ObjectRepository(getBuildIdentifier(), dao);
 		objectRepository.removeAnyExistingObjectData();
 	}
 
+	/**
+	 * Calculate all aggregated data of the build, the time and resources used for it are stored in the import profile
+	 * of the build summary.
+	 */
 	public void calculateAggregatedDataForBuild() {
-		stepsAndPagesAggregator = new StepsAndPagesAggregator(getBuildIdentifier(), dao);
+		stepsAndPagesAggregator = new StepsAndPagesAggregator(getBuildIdentifier(), dao, profiler);
 
 		objectRepository = new ObjectRepository(getBuildIdentifier(), dao);
 		objectRepository.removeAnyExistingObjectData();
 
 		LOGGER.info("  calculating aggregated data for build " + getBuildIdentifier() + " ... ");
+		ImportProfiler.Measurement measurement = profiler.start(Phase.FEATURE_LOADING);
 		FeatureScenariosList featureScenariosList = calculateFeatureScenariosList();
+		measurement.stop();
 
+		measurement = profiler.start(Phase.SEARCH_INDEXING);
 		FullTextSearch fullTextSearch = new FullTextSearch();
 		fullTextSearch.indexFeatures(featureScenariosList, getBuildIdentifier());
+		measurement.stop();
 
-		for (FeatureScenarios scenarios : featureScenariosList.getFeatureScenarios()) {
-			calulateAggregatedDataForFeature(scenarios);
-			addFeatureToBuildStatistics(scenarios.getFeature());
-		}
-		stepsAndPagesAggregator.completeAggregatedPageVariantDataInStepNavigations();
+		calculateAggregatedDataForFeatures(featureScenariosList.getFeatureScenarios());
+		measurement = profiler.start(Phase.NAVIGATION_WRITES);
+		stepsAndPagesAggregator.saveStepNavigations();
+		measurement.stop();
 
 		saveAggregatedBuildStatusInBuildDescriptionIfEmpty();
 
 		dao.saveFeatureScenariosList(getBuildIdentifier(), featureScenariosList);
 
+		measurement = profiler.start(Phase.OBJECT_INDEX_WRITES);
+		objectRepository.saveObjectIndexes();
+		measurement.stop();
+
+		measurement = profiler.start(Phase.OBJECT_LIST_WRITES);
 		objectRepository.calculateAndSaveObjectLists();
+		measurement.stop();
 
+		measurement = profiler.start(Phase.OBJECT_TAB_TREE_WRITES);
 		objectRepository.saveCustomObjectTabTrees();
+		measurement.stop();
 
 		dao.saveLongObjectNamesIndex(getBuildIdentifier(), longObjectNamesResolver);
 
 		dao.saveVersion(getBuildIdentifier(), internalFormatVersion);
 
 		buildSummary.setBuildStatistics(buildStatistics);
+		BuildImportProfile importProfile = profiler.createProfile();
+		importProfile.setServerVersion(ApplicationVersionHolder.INSTANCE.getApplicationVersion().getVersion());
+		importProfile.setInternalFormatVersion(internalFormatVersion);
+		buildSummary.setImportProfile(importProfile);
+		logImportProfile(importProfile);
+	}
+
+	private void logImportProfile(final BuildImportProfile profile) {
+		LOGGER.info("  import profile of build " + getBuildIdentifier() + " (server version "
+				+ profile.getServerVersion() + ", format version " + profile.getInternalFormatVersion() + "): "
+				+ profile.getWallTimeInMillis() + " ms, " + profile.getNumberOfSteps() + " steps, "
+				+ String.format("%.1f steps/s, %.2f MB/s read, %.2f MB/s written", profile.getStepsPerSecond(),
+						profile.getMegabytesReadPerSecond(), profile.getMegabytesWrittenPerSecond()));
+		for (ImportPhaseProfile phase : profile.getPhases()) {
+			LOGGER.info("    " + phase.getPhase() + ": " + phase.getWallTimeInMillis() + " ms wall time, "
+					+ phase.getCpuTimeInMillis() + " ms CPU time, " + phase.getAllocatedBytes() + " bytes allocated, "
+					+ phase.getFilesRead() + " files read (" + phase.getBytesRead() + " bytes), "
+					+ phase.getFilesWritten() + " files written (" + phase.getBytesWritten() + " bytes)");
+		}
 	}
 
 	private void saveAggregatedBuildStatusInBuildDescriptionIfEmpty() {
@@ -161,11 +245,13 @@ public class ScenarioDocuAggregator {
 
 		FeatureScenariosList result = new FeatureScenariosList();
 		List<FeatureScenarios> featureScenarios = new ArrayList<FeatureScenarios>();
-		List<Feature> features = reader.loadFeatures(getBuildIdentifier().getBranchName(), getBuildIdentifier().getBuildName());
+		// the files are listed here instead of using the reader, to count the files read for the import profile
+		List<Feature> features = loadFiles(Feature.class, docuFiles.getFeatureFiles(getBuildIdentifier()
+				.getBranchName(), getBuildIdentifier().getBuildName()));
 		for (Feature feature : features) {
 			FeatureScenarios featureWithScenarios = new FeatureScenarios();
-			List<Scenario> scenarios = reader.loadScenarios(getBuildIdentifier().getBranchName(),
-					getBuildIdentifier().getBuildName(), feature.getId());
+			List<Scenario> scenarios = loadFiles(Scenario.class, docuFiles.getScenarioFiles(getBuildIdentifier()
+					.getBranchName(), getBuildIdentifier().getBuildName(), feature.getId()));
 
 			boolean atLeastOneScenarioFailed = false;
 			for (Scenario scenario : scenarios) {
@@ -186,6 +272,13 @@ public class ScenarioDocuAggregator {
 		return result;
 	}
 
+	private <T> List<T> loadFiles(final Class<T> targetClass, final List<File> files) {
+		for (File file : files) {
+			FileAccessCounter.fileRead(file);
+		}
+		return ScenarioDocuXMLFileUtil.unmarshalListOfFiles(targetClass, files);
+	}
+
 	private List<ScenarioSummary> createScenarioSummaries(final List<Scenario> scenarios) {
 		List<ScenarioSummary> scenarioSummaries = new ArrayList<ScenarioSummary>(scenarios.size());
 		for (Scenario scenario : scenarios) {
@@ -200,29 +293,85 @@ public class ScenarioDocuAggregator {
 		return summary;
 	}
 
-	private void calulateAggregatedDataForFeature(final FeatureScenarios featureScenarios) {
+	private void calculateAggregatedDataForFeatures(final List<FeatureScenarios> featureScenariosList) {
+		ForkJoinPool pool = new ForkJoinPool(getAggregationParallelism(), new AggregationWorkerThreadFactory(), null,
+				false);
+		try {
+			List<FeatureAggregationTask> featureTasks = new ArrayList<FeatureAggregationTask>();
+			for (FeatureScenarios featureScenarios : featureScenariosList) {
+				FeatureAggregationTask featureTask = new FeatureAggregationTask(featureScenarios);
+				featureTasks.add(featureTask);
+				pool.execute(featureTask);
+			}
+			for (FeatureAggregationTask featureTask : featureTasks) {
+				mergeAggregatedDataForFeature(featureTask.join());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private int getAggregationParallelism() {
+		int configuredThreads = configurationRepository.getConfiguration().getAggregationThreadsPerBuildImport();
+		return configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Merge data of next feature into the data of the build and save the collected objects and object indexes.
+	 */
+	private void mergeAggregatedDataForFeature(final AggregatedDataPart featureData) {
+		ImportProfiler.Measurement measurement = profiler.start(Phase.OBJECT_REPOSITORY);
+		objectRepository.merge(featureData.objectRepository);
+		objectRepository.saveCollectedObjects();
+		measurement.stop();
+		measurement = profiler.start(Phase.OBJECT_INDEX_WRITES);
+		objectRepository.writeObjectIndexSegmentForCurrentCase();
+		measurement.stop();
+		stepsAndPagesAggregator.merge(featureData.stepsAndPagesAggregator);
+		buildStatistics.add(featureData.buildStatistics);
+	}
 
+	private AggregatedDataPart calulateAggregatedDataForFeature(final FeatureScenarios featureScenarios) {
+
+		failIfCancelled();
 		LOGGER.info("    calculating aggregated data for feature : " + featureScenarios.getFeature().getId());
 
-		List<ObjectReference> referencePath = objectRepository.addReferencedFeatureObjects(featureScenarios
+		AggregatedDataPart featureData = new AggregatedDataPart();
+		ImportProfiler.Measurement measurement = profiler.start(Phase.OBJECT_REPOSITORY);
+		ReferencePath referencePath = featureData.objectRepository.addReferencedFeatureObjects(featureScenarios
 				.getFeature());
+		measurement.stop();
 
+		List<ScenarioAggregationTask> scenarioTasks = new ArrayList<ScenarioAggregationTask>();
 		for (ScenarioSummary scenario : featureScenarios.getScenarios()) {
-			try {
-				calculateAggregatedDataForScenario(referencePath, featureScenarios.getFeature(), scenario);
-				addScenarioToBuildStatistics(scenario.getScenario());
-			} catch (ResourceNotFoundException ex) {
-				LOGGER.warn("could not load scenario " + scenario.getScenario().getName() + " in feature"
-						+ featureScenarios.getFeature().getId());
-			}
+			scenarioTasks.add(new ScenarioAggregationTask(referencePath, featureScenarios.getFeature(), scenario));
+		}
+		ForkJoinTask.invokeAll(scenarioTasks);
+		for (ScenarioAggregationTask scenarioTask : scenarioTasks) {
+			featureData.merge(scenarioTask.join());
 		}
 
 		dao.saveFeatureScenarios(getBuildIdentifier(), featureScenarios);
 
-		objectRepository.updateAndSaveObjectIndexesForCurrentCase();
+		addFeatureToBuildStatistics(featureData.buildStatistics, featureScenarios.getFeature());
+		return featureData;
+	}
+
+	private AggregatedDataPart calculateAggregatedDataForScenario(final ReferencePath featureReferencePath,
+			final Feature feature, final ScenarioSummary scenario) {
+		failIfCancelled();
+		AggregatedDataPart scenarioData = new AggregatedDataPart();
+		try {
+			calculateAggregatedDataForScenario(scenarioData, featureReferencePath, feature, scenario);
+			addScenarioToBuildStatistics(scenarioData.buildStatistics, scenario.getScenario());
+		} catch (ResourceNotFoundException ex) {
+			LOGGER.warn("could not load scenario " + scenario.getScenario().getName() + " in feature"
+					+ feature.getId());
+		}
+		return scenarioData;
 	}
 
-	private void addFeatureToBuildStatistics(final Feature feature) {
+	private void addFeatureToBuildStatistics(final BuildStatistics buildStatistics, final Feature feature) {
 		String status = feature.getStatus();
 		if (SUCCESS_STATE.equals(status)) {
 			buildStatistics.incrementSuccessfulFeature();
@@ -231,7 +380,7 @@ public class ScenarioDocuAggregator {
 		}
 	}
 
-	private void addScenarioToBuildStatistics(final Scenario scenario) {
+	private void addScenarioToBuildStatistics(final BuildStatistics buildStatistics, final Scenario scenario) {
 		String status = scenario.getStatus();
 		if (SUCCESS_STATE.equals(status)) {
 			buildStatistics.incrementSuccessfulScenario();
@@ -240,30 +389,113 @@ public class ScenarioDocuAggregator {
 		}
 	}
 
-	private void calculateAggregatedDataForScenario(List<ObjectReference> referencePath, final Feature feature,
-			final ScenarioSummary scenarioSummary) {
+	private void calculateAggregatedDataForScenario(final AggregatedDataPart scenarioData,
+			ReferencePath referencePath, final Feature feature, final ScenarioSummary scenarioSummary) {
 		Scenario scenario = scenarioSummary.getScenario();
 
-		referencePath = objectRepository.addReferencedScenarioObjects(referencePath, scenario);
+		ImportProfiler.Measurement measurement = profiler.start(Phase.OBJECT_REPOSITORY);
+		referencePath = scenarioData.objectRepository.addReferencedScenarioObjects(referencePath, scenario);
+		measurement.stop();
 
 		LOGGER.info("      calculating aggregated data for scenario : " + scenario.getName());
-		ScenarioPageSteps scenarioPageSteps = calculateAggregatedDataForSteps(feature, scenario, referencePath);
+		ScenarioPageSteps scenarioPageSteps;
+		measurement = profiler.start(Phase.STEP_AGGREGATION);
+		try {
+			scenarioPageSteps = calculateAggregatedDataForSteps(scenarioData, feature, scenario, referencePath);
+
+			scenarioSummary.setNumberOfSteps(scenarioPageSteps.getTotalNumberOfStepsInScenario());
+			profiler.addSteps(scenarioSummary.getNumberOfSteps());
+		} finally {
+			measurement.stop();
+		}
+
+		measurement = profiler.start(Phase.PAGE_STEPS_WRITES);
+		try {
+			dao.saveScenarioPageSteps(getBuildIdentifier(), scenarioPageSteps);
+		} finally {
+			measurement.stop();
+		}
+
+		if (isAnyBuildComparisonConfigured()) {
+			measurement = profiler.start(Phase.SCREENSHOT_FINGERPRINTS);
+			try {
+				fingerprintScreenshots(new ScenarioIdentifier(getBuildIdentifier(), feature.getId(),
+						scenario.getName()));
+			} finally {
+				measurement.stop();
+			}
+		}
+	}
 
-		scenarioSummary.setNumberOfSteps(scenarioPageSteps.getTotalNumberOfStepsInScenario());
+	private boolean isAnyBuildComparisonConfigured() {
+		List<ComparisonConfiguration> comparisonConfigurations = configurationRepository.getConfiguration()
+				.getComparisonConfigurations();
+		return comparisonConfigurations != null && !comparisonConfigurations.isEmpty();
+	}
 
-		dao.saveScenarioPageSteps(getBuildIdentifier(), scenarioPageSteps);
+	/**
+	 * Fingerprints of the screenshots let build comparisons skip identical screenshots, a failure only means that the
+	 * screenshots have to be compared.
+	 */
+	private void fingerprintScreenshots(final ScenarioIdentifier scenarioIdentifier) {
+		try {
+			dao.updateScreenshotFingerprints(scenarioIdentifier);
+		} catch (RuntimeException e) {
+			LOGGER.warn("could not fingerprint screenshots of scenario " + scenarioIdentifier.getScenarioName(), e);
+		}
 	}
 
-	private ScenarioPageSteps calculateAggregatedDataForSteps(final Feature feature, final Scenario scenario,
-															  final List<ObjectReference> referencePath) {
+	private ScenarioPageSteps calculateAggregatedDataForSteps(final AggregatedDataPart scenarioData,
+			final Feature feature, final Scenario scenario, final ReferencePath referencePath) {
 
 		ScenarioPageSteps scenarioPageSteps = new ScenarioPageSteps();
 		scenarioPageSteps.setFeature(feature);
 		scenarioPageSteps.setScenario(scenario);
-		List<Step> steps = reader.loadSteps(getBuildIdentifier().getBranchName(), getBuildIdentifier().getBuildName(), feature.getId(), scenario.getName());
-		PageNameSanitizer.sanitizePageNames(steps);
-		List<PageSteps> pageStepsList = stepsAndPagesAggregator.calculateScenarioPageSteps(feature, scenario, steps, referencePath, objectRepository);
-		scenarioPageSteps.setPagesAndSteps(pageStepsList);
+		// the HTML source of the steps is only needed for the full text search
+		FullTextSearch fullTextSearch = new FullTextSearch();
+		boolean indexSteps = fullTextSearch.isEngineRunning();
+
+		// only loading the steps is measured as step loading, processing them is measured by the calling phases
+		ImportProfiler.Measurement stepLoading = profiler.start(Phase.STEP_LOADING);
+		ScenarioIdentifier scenarioIdentifier = new ScenarioIdentifier(getBuildIdentifier(), feature.getId(),
+				scenario.getName());
+		StepsCacheFile stepsCache = dao.getStepsCache(scenarioIdentifier);
+		List<File> stepFiles = dao.getFiles().getStepFiles(scenarioIdentifier);
+		String fingerprint = dao.calculateStepsFingerprint(scenarioIdentifier, stepFiles);
+		StepsCacheFile.Reader cachedSteps = null;
+		StepsCacheFile.Writer stepsCacheWriter = null;
+		try {
+			Iterable<Step> steps;
+			if (stepsCache.isUpToDate(fingerprint, indexSteps)) {
+				LOGGER.info("      steps of scenario " + scenario.getName() + " are unchanged, reading cached steps");
+				cachedSteps = stepsCache.createReader(indexSteps);
+				steps = stepLoading.measureIteration(cachedSteps);
+			} else {
+				for (File stepFile : stepFiles) {
+					FileAccessCounter.fileRead(stepFile);
+				}
+				steps = stepLoading.measureIteration(reader.loadStepsOneByOne(getBuildIdentifier().getBranchName(),
+						getBuildIdentifier().getBuildName(), feature.getId(), scenario.getName(), indexSteps));
+				// while the steps are indexed they are cached with their HTML source, to be indexed from the cache
+				stepsCacheWriter = stepsCache.createWriter(fingerprint, indexSteps);
+				steps = stepsCacheWriter.addWhileIterating(steps);
+			}
+			stepLoading.pause();
+			List<PageSteps> pageStepsList = scenarioData.stepsAndPagesAggregator.calculateScenarioPageSteps(feature,
+					scenario, steps, referencePath, scenarioData.objectRepository, indexSteps ? fullTextSearch : null);
+			scenarioPageSteps.setPagesAndSteps(pageStepsList);
+			if (stepsCacheWriter != null) {
+				stepsCacheWriter.commit();
+			}
+		} finally {
+			if (cachedSteps != null) {
+				cachedSteps.close();
+			}
+			if (stepsCacheWriter != null) {
+				stepsCacheWriter.close();
+			}
+			stepLoading.stop();
+		}
 
 		return scenarioPageSteps;
 	}
@@ -289,4 +521,91 @@ public class ScenarioDocuAggregator {
 	public BuildStatistics getBuildStatistics() {
 		return this.buildStatistics;
 	}
+
+	/**
+	 * Data collected while aggregating one part of the build (a feature or a scenario), that has to be merged into the
+	 * data of the whole build in the order of the parts.
+	 */
+	private class AggregatedDataPart {
+
+		private final ObjectRepository objectRepository = ScenarioDocuAggregator.this.objectRepository
+				.createPartialRepository();
+
+		private final StepsAndPagesAggregator stepsAndPagesAggregator = new StepsAndPagesAggregator(
+				getBuildIdentifier(), dao, profiler);
+
+		private final BuildStatistics buildStatistics = new BuildStatistics();
+
+		private void merge(final AggregatedDataPart followingPart) {
+			objectRepository.merge(followingPart.objectRepository);
+			stepsAndPagesAggregator.merge(followingPart.stepsAndPagesAggregator);
+			buildStatistics.add(followingPart.buildStatistics);
+		}
+
+	}
+
+	private class FeatureAggregationTask extends RecursiveTask<AggregatedDataPart> {
+
+		private final FeatureScenarios featureScenarios;
+
+		private FeatureAggregationTask(final FeatureScenarios featureScenarios) {
+			this.featureScenarios = featureScenarios;
+		}
+
+		@Override
+		protected AggregatedDataPart compute() {
+			return calulateAggregatedDataForFeature(featureScenarios);
+		}
+
+	}
+
+	private class ScenarioAggregationTask extends RecursiveTask<AggregatedDataPart> {
+
+		private final ReferencePath featureReferencePath;
+
+		private final Feature feature;
+
+		private final ScenarioSummary scenario;
+
+		private ScenarioAggregationTask(final ReferencePath featureReferencePath, final Feature feature,
+				final ScenarioSummary scenario) {
+			this.featureReferencePath = featureReferencePath;
+			this.feature = feature;
+			this.scenario = scenario;
+		}
+
+		@Override
+		protected AggregatedDataPart compute() {
+			return calculateAggregatedDataForScenario(featureReferencePath, feature, scenario);
+		}
+
+	}
+
+	/**
+	 * Creates the worker threads for aggregating a build, such that their logs are written to the import log of the
+	 * build as well and their file I/O is throttled like the I/O of the import thread.
+	 */
+	private static class AggregationWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+		private final Object logIdentifier = MDC.get(ThreadLogAppender.MDC_IDENTIFIER_KEY);
+
+		private final boolean ioThrottled = ImportIoThrottle.INSTANCE.isCurrentThreadThrottled();
+
+		@Override
+		public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+			return new ForkJoinWorkerThread(pool) {
+				@Override
+				protected void onStart() {
+					super.onStart();
+					if (logIdentifier != null) {
+						MDC.put(ThreadLogAppender.MDC_IDENTIFIER_KEY, logIdentifier);
+					}
+					if (ioThrottled) {
+						ImportIoThrottle.INSTANCE.throttleCurrentThread();
+					}
+				}
+			};
+		}
+
+	}
 }
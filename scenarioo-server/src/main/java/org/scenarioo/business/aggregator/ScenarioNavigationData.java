@@ -0,0 +1,63 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.scenarioo.model.docu.aggregates.steps.StepLink;
+
+/**
+ * Compact navigation data of all steps of one scenario, kept in memory until the page variants of the whole build are
+ * known.
+ *
+ * Only the step links and the index of each step inside the steps of its page (over all scenarios) are stored, all
+ * other navigation data of a step can be derived from these when the step navigation is written.
+ */
+public class ScenarioNavigationData {
+
+	private final List<StepLink> stepLinks;
+
+	private final int[] pageVariantIndexes;
+
+	public ScenarioNavigationData(final List<StepLink> stepLinks) {
+		this.stepLinks = stepLinks;
+		this.pageVariantIndexes = new int[stepLinks.size()];
+		Arrays.fill(pageVariantIndexes, -1);
+	}
+
+	public List<StepLink> getStepLinks() {
+		return stepLinks;
+	}
+
+	public int getStepsCount() {
+		return stepLinks.size();
+	}
+
+	/**
+	 * @return index of the step inside all steps of the same page, or -1 if the step has no page variant.
+	 */
+	public int getPageVariantIndex(final int stepIndex) {
+		return pageVariantIndexes[stepIndex];
+	}
+
+	public void setPageVariantIndex(final int stepIndex, final int pageVariantIndex) {
+		pageVariantIndexes[stepIndex] = pageVariantIndex;
+	}
+
+}
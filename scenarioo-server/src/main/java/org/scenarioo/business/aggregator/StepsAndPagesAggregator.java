@@ -24,6 +24,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.commons.lang3.StringUtils;
+import org.scenarioo.business.aggregator.ImportProfiler.Phase;
 import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
 import org.scenarioo.dao.search.FullTextSearch;
 import org.scenarioo.model.docu.aggregates.scenarios.PageSteps;
@@ -31,89 +32,66 @@ import org.scenarioo.model.docu.aggregates.steps.NeighborStep;
 import org.scenarioo.model.docu.aggregates.steps.StepLink;
 import org.scenarioo.model.docu.aggregates.steps.StepNavigation;
 import org.scenarioo.model.docu.entities.*;
-import org.scenarioo.model.docu.entities.generic.ObjectReference;
 import org.scenarioo.rest.base.BuildIdentifier;
+import org.scenarioo.rest.base.ScenarioIdentifier;
 
 /**
  * Handles calculation of all page steps for each scenario and collection of additional needed information for step
  * navigation per step and especially for page variants (all steps of one page over all scenarios).
+ *
+ * Scenarios can be processed in parallel by separate aggregators, as long as the collected page variants are merged
+ * into one aggregator in the order of the scenarios in the build (see {@link #merge(StepsAndPagesAggregator)}).
+ *
+ * The navigation data of all steps is kept in memory and each step navigation is only written once, after the page
+ * variants of all scenarios are known (see {@link #saveStepNavigations()}).
  */
 public class StepsAndPagesAggregator {
 
 	private final Map<String, PageVariantNavigationData> pageVariants = new HashMap<String, PageVariantNavigationData>();
 
+	private final List<ScenarioNavigationData> scenarios = new ArrayList<ScenarioNavigationData>();
+
 	private final BuildIdentifier build;
 
 	private final ScenarioDocuAggregationDao dao;
 
+	private final ImportProfiler profiler;
+
 	public StepsAndPagesAggregator(final BuildIdentifier build, final ScenarioDocuAggregationDao dao) {
-		this.build = build;
-		this.dao = dao;
+		this(build, dao, ImportProfiler.NONE);
 	}
 
-	List<PageSteps> calculateScenarioPageSteps(final Feature feature,
-											   final Scenario scenario, final List<Step> steps, final List<ObjectReference> referencePath,
-											   final ObjectRepository objectRepository) {
-
-		List<StepLink> stepLinks = calculateStepLinks(steps, feature.getId(), scenario.getName());
-		List<PageSteps> pageStepsList = getPageSteps(stepLinks, steps, referencePath, objectRepository);
-
-		new FullTextSearch().indexSteps(steps, stepLinks, scenario, feature, build);
-
-		calculateNavigationAndPageVariantsData(stepLinks);
-
-		return pageStepsList;
+	public StepsAndPagesAggregator(final BuildIdentifier build, final ScenarioDocuAggregationDao dao,
+			final ImportProfiler profiler) {
+		this.build = build;
+		this.dao = dao;
+		this.profiler = profiler;
 	}
 
-	public List<StepLink> calculateStepLinks(final List<Step> steps, final String featureName, final String scenarioName) {
-		List<StepLink> stepLinks = new ArrayList<StepLink>(steps.size());
-		Map<String, Integer> pageOccurrences = new HashMap<String, Integer>();
-		Page page = null;
-		int pageIndex = 0;
-		int index = 0;
-		int pageOccurrence = 0;
-		int stepInPageOccurrence = 0;
-
-		for (Step step : steps) {
-
-			// Introduce a special dummy page for all steps not having any page to avoid problems.
-			if (step.getPage() == null || StringUtils.isBlank(step.getPage().getName())) {
-				step.setPage(new Page());
-				step.getPage().setName("unknownPage");
-			}
-
-			// Check for new page and update indexes and occurrence accordingly
-			if (isNewPage(page, step)) {
-				page = step.getPage();
-
-				stepInPageOccurrence = 0;
-				pageOccurrence = increasePageOccurrence(pageOccurrences, page);
-				if (index > 0) {
-					pageIndex++;
-				}
-			}
-
-			StepLink stepLink = new StepLink(featureName,
-					scenarioName, index, pageIndex, getPageName(page),
-				pageOccurrence, stepInPageOccurrence);
-			stepLinks.add(stepLink);
-
-			index++;
-			stepInPageOccurrence++;
-		}
-
-		return stepLinks;
-	}
+	/**
+	 * Calculate the page steps of a scenario and collect the navigation data of its steps. The steps are processed one
+	 * after the other, only the step descriptions and pages are kept.
+	 *
+	 * @param fullTextSearch
+	 *            to index the steps, null if the steps are not indexed.
+	 */
+	List<PageSteps> calculateScenarioPageSteps(final Feature feature, final Scenario scenario,
+											   final Iterable<Step> steps, final ReferencePath referencePath,
+											   final ObjectRepository objectRepository, final FullTextSearch fullTextSearch) {
 
-	private List<PageSteps> getPageSteps(final List<StepLink> stepLinks, final List<Step> steps,
-										 final List<ObjectReference> referencePath, final ObjectRepository objectRepository) {
+		StepLinkCalculator stepLinkCalculator = new StepLinkCalculator(feature.getId(), scenario.getName());
+		StepsIndexer stepsIndexer = new StepsIndexer(fullTextSearch, scenario, feature);
+		List<StepLink> stepLinks = new ArrayList<StepLink>();
 		List<PageSteps> pageStepsList = new ArrayList<PageSteps>();
 		PageSteps pageSteps = null;
 		Page page = null;
 
-		for (StepLink stepLink : stepLinks) {
-			int stepIndex = stepLink.getStepIndex();
-			Step step = steps.get(stepIndex);
+		// measured for all steps of the scenario together to keep measuring cheap
+		ImportProfiler.Measurement objectRepositoryMeasurement = profiler.createMeasurement(Phase.OBJECT_REPOSITORY);
+		for (Step step : steps) {
+			PageNameSanitizer.sanitizePageName(step);
+			StepLink stepLink = stepLinkCalculator.calculateStepLink(step);
+			stepLinks.add(stepLink);
 
 			if (isNewPage(page, step)) {
 				page = step.getPage();
@@ -124,25 +102,51 @@ public class StepsAndPagesAggregator {
 			}
 
 			pageSteps.getSteps().add(step.getStepDescription());
+			objectRepositoryMeasurement.resume();
 			objectRepository.addPageAndStep(referencePath, step, stepLink);
+			objectRepositoryMeasurement.pause();
+			stepsIndexer.add(step, stepLink);
 		}
+		objectRepositoryMeasurement.stop();
+		stepsIndexer.flush();
+
+		calculateNavigationAndPageVariantsData(stepLinks);
 
 		return pageStepsList;
 	}
 
+	public List<StepLink> calculateStepLinks(final List<Step> steps, final String featureName, final String scenarioName) {
+		List<StepLink> stepLinks = new ArrayList<StepLink>(steps.size());
+		StepLinkCalculator stepLinkCalculator = new StepLinkCalculator(featureName, scenarioName);
+		for (Step step : steps) {
+			stepLinks.add(stepLinkCalculator.calculateStepLink(step));
+		}
+		return stepLinks;
+	}
+
+	/**
+	 * Append the scenarios and page variants collected by another aggregator for scenarios that come after all
+	 * scenarios processed by this aggregator so far.
+	 */
+	public void merge(final StepsAndPagesAggregator aggregatorOfFollowingScenarios) {
+		scenarios.addAll(aggregatorOfFollowingScenarios.scenarios);
+		for (Entry<String, PageVariantNavigationData> pageVariant : aggregatorOfFollowingScenarios.pageVariants
+			.entrySet()) {
+			getPageVariantNavigationData(pageVariant.getKey()).addSteps(pageVariant.getValue());
+		}
+	}
+
 	private void calculateNavigationAndPageVariantsData(final List<StepLink> stepLinks) {
 		if (stepLinks.size() == 0) {
 			return;
 		}
 
-		NeighborStep firstStep = new NeighborStep(stepLinks.get(0));
-		NeighborStep lastStep = new NeighborStep(stepLinks.get(stepLinks.size() - 1));
-
-		for (int i = 0; i < stepLinks.size(); i++) {
-			calculateNavigationAndPageVariantData(
-				firstStep, getPreviousPage(stepLinks, i),
-				getPreviousStep(stepLinks, i), stepLinks.get(i),
-				getNextStep(stepLinks, i), getNextPage(stepLinks, i), lastStep);
+		ScenarioNavigationData scenario = new ScenarioNavigationData(stepLinks);
+		scenarios.add(scenario);
+		for (StepLink stepLink : stepLinks) {
+			if (stepLink.getPageName() != null) {
+				getPageVariantNavigationData(stepLink.getPageName()).addStep(stepLink, scenario);
+			}
 		}
 	}
 
@@ -211,138 +215,152 @@ public class StepsAndPagesAggregator {
 	}
 
 	/**
-	 * Calculate and save the step and page variant navigation data for current step.
-	 * <p>
-	 * The written data in this method is not yet complete, because the next step for the current page variant will only
-	 * be processed later.
+	 * Get or create a page variant navigation data for a page
 	 */
-	private void calculateNavigationAndPageVariantData(
-		final NeighborStep firstStep,
-		final NeighborStep previousPage, final NeighborStep previousStep,
-		final StepLink currentStep, final NeighborStep nextStep,
-		final NeighborStep nextPage, final NeighborStep lastStep) {
-
-		PageVariantNavigationData pageVariant = getPageVariantNavigationData(currentStep);
-
-		// Calculate page variant data:
-		StepLink previousPageVariantStep = null;
-		StepLink previousPageVariantStepOtherSceanrio = null;
-		if (pageVariant != null) {
-			pageVariant.increaseStepsCount();
-			previousPageVariantStep = pageVariant.getLastStep();
-			if (previousPageVariantStep == null) {
-				// first scenario, count it:
-				pageVariant.increaseScenariosCount();
-			} else if (!isSameScenario(currentStep, previousPageVariantStep)) {
-				// different scenario than the last page variant:
-				pageVariant.increaseScenariosCount();
-				pageVariant
-					.setLastStepFromDifferentScenario(previousPageVariantStep);
-			}
-			previousPageVariantStepOtherSceanrio = pageVariant
-				.getLastStepFromDifferentScenario();
-			pageVariant.setLastStep(currentStep);
+	private PageVariantNavigationData getPageVariantNavigationData(final String pageName) {
+		PageVariantNavigationData pageVariant = pageVariants.get(pageName);
+		if (pageVariant == null) {
+			pageVariant = new PageVariantNavigationData();
+			pageVariants.put(pageName, pageVariant);
 		}
+		return pageVariant;
+	}
 
-		// Create step navigation for current step (not yet complete, because
-		// next page variant step is only processed
-		// and added later)
-		StepNavigation stepNavigation = new StepNavigation();
-		stepNavigation.setPageName(currentStep.getPageName());
-		stepNavigation.setPageIndex(currentStep.getPageIndex());
-		stepNavigation.setStepIndex(currentStep.getStepIndex());
-		stepNavigation.setPageOccurrence(currentStep.getPageOccurrence());
-		stepNavigation.setStepInPageOccurrence(currentStep.getStepInPageOccurrence());
-		stepNavigation.setFirstStep(firstStep);
-		stepNavigation.setPreviousPage(previousPage);
-		stepNavigation.setPreviousStep(previousStep);
-		stepNavigation.setNextStep(nextStep);
-		stepNavigation.setNextPage(nextPage);
-		stepNavigation.setLastStep(lastStep);
-		if (pageVariant != null) {
-			stepNavigation.setPreviousStepVariant(previousPageVariantStep);
-			stepNavigation
-				.setPreviousStepVariantInOtherScenario(previousPageVariantStepOtherSceanrio);
-			stepNavigation.setPageVariantIndex(pageVariant.getStepsCount() - 1);
-			stepNavigation.setPageVariantScenarioIndex(pageVariant
-				.getScenariosCount() - 1);
-			// next page variant steps will be saved later, when all steps and
-			// scenarios have been processed.
+	/**
+	 * Calculate the page variant data of all steps and write the step navigations file of each scenario.
+	 */
+	void saveStepNavigations() {
+		for (PageVariantNavigationData pageVariant : pageVariants.values()) {
+			pageVariant.calculatePageVariantData();
 		}
 
-		// save navigation data
-		dao.saveStepNavigation(build, currentStep, stepNavigation);
+		for (ScenarioNavigationData scenario : scenarios) {
+			saveStepNavigations(scenario);
+		}
+	}
+
+	private void saveStepNavigations(final ScenarioNavigationData scenario) {
+		List<StepLink> stepLinks = scenario.getStepLinks();
+		NeighborStep firstStep = new NeighborStep(stepLinks.get(0));
+		NeighborStep lastStep = new NeighborStep(stepLinks.get(stepLinks.size() - 1));
+		List<StepNavigation> stepNavigations = new ArrayList<StepNavigation>(stepLinks.size());
+
+		for (int i = 0; i < stepLinks.size(); i++) {
+			StepLink currentStep = stepLinks.get(i);
+
+			StepNavigation stepNavigation = new StepNavigation();
+			stepNavigation.setPageName(currentStep.getPageName());
+			stepNavigation.setPageIndex(currentStep.getPageIndex());
+			stepNavigation.setStepIndex(currentStep.getStepIndex());
+			stepNavigation.setPageOccurrence(currentStep.getPageOccurrence());
+			stepNavigation.setStepInPageOccurrence(currentStep.getStepInPageOccurrence());
+			stepNavigation.setFirstStep(firstStep);
+			stepNavigation.setPreviousPage(getPreviousPage(stepLinks, i));
+			stepNavigation.setPreviousStep(getPreviousStep(stepLinks, i));
+			stepNavigation.setNextStep(getNextStep(stepLinks, i));
+			stepNavigation.setNextPage(getNextPage(stepLinks, i));
+			stepNavigation.setLastStep(lastStep);
+
+			int pageVariantIndex = scenario.getPageVariantIndex(i);
+			if (pageVariantIndex >= 0) {
+				pageVariants.get(currentStep.getPageName()).setPageVariantData(stepNavigation, pageVariantIndex);
+			}
+
+			stepNavigations.add(stepNavigation);
+		}
 
+		dao.saveStepNavigations(ScenarioIdentifier.fromStepLink(build, stepLinks.get(0)), stepNavigations);
 	}
 
 	/**
-	 * Get or create a page variant navigation data for current step's page
+	 * Calculates the step links of the steps of one scenario, the steps have to be passed in order.
 	 */
-	private PageVariantNavigationData getPageVariantNavigationData(
-		final StepLink stepLink) {
-		String pageName = stepLink.getPageName();
-		if (pageName == null) {
-			return null;
+	private class StepLinkCalculator {
+
+		private final String featureName;
+		private final String scenarioName;
+		private final Map<String, Integer> pageOccurrences = new HashMap<String, Integer>();
+		private Page page = null;
+		private int pageIndex = 0;
+		private int index = 0;
+		private int pageOccurrence = 0;
+		private int stepInPageOccurrence = 0;
+
+		private StepLinkCalculator(final String featureName, final String scenarioName) {
+			this.featureName = featureName;
+			this.scenarioName = scenarioName;
 		}
-		PageVariantNavigationData pageVariant = pageVariants.get(stepLink
-			.getPageName());
-		if (pageVariant == null) {
-			pageVariant = new PageVariantNavigationData();
-			pageVariants.put(pageName, pageVariant);
+
+		private StepLink calculateStepLink(final Step step) {
+
+			// Introduce a special dummy page for all steps not having any page to avoid problems.
+			if (step.getPage() == null || StringUtils.isBlank(step.getPage().getName())) {
+				step.setPage(new Page());
+				step.getPage().setName("unknownPage");
+			}
+
+			// Check for new page and update indexes and occurrence accordingly
+			if (isNewPage(page, step)) {
+				page = step.getPage();
+
+				stepInPageOccurrence = 0;
+				pageOccurrence = increasePageOccurrence(pageOccurrences, page);
+				if (index > 0) {
+					pageIndex++;
+				}
+			}
+
+			StepLink stepLink = new StepLink(featureName,
+					scenarioName, index, pageIndex, getPageName(page),
+				pageOccurrence, stepInPageOccurrence);
+
+			index++;
+			stepInPageOccurrence++;
+			return stepLink;
 		}
-		return pageVariant;
-	}
 
-	private boolean isSameScenario(final StepLink step1, final StepLink step2) {
-		return step1.getFeatureName().equals(step2.getFeatureName())
-			&& step1.getScenarioName().equals(step2.getScenarioName());
 	}
 
 	/**
-	 * Write data that has been collected into all step's navigation files.
-	 * <ul>
-	 * <li>count of scenarios for same page</li>
-	 * <li>count of steps for same page over all scenarios</li>
-	 * <li>next step with same page</li>
-	 * </ul>
+	 * Passes the steps of a scenario to the full text search in small batches, such that the steps do not have to be
+	 * kept until the whole scenario is processed.
 	 */
-	void completeAggregatedPageVariantDataInStepNavigations() {
+	private class StepsIndexer {
 
-		for (Entry<String, PageVariantNavigationData> pageVariant : pageVariants
-			.entrySet()) {
-
-			PageVariantNavigationData pageVariantNavigation = pageVariant
-				.getValue();
+		private static final int STEPS_PER_BATCH = 50;
 
-			// Process all step navigations for this page by passing backwards
-			// through it and complete the navigation
-			// data.
-			StepLink lastStep = pageVariantNavigation.getLastStep();
-			StepLink nextStepVariant = null;
-			StepLink nextStepVariantInOtherScenario = null;
-			while (lastStep != null) {
+		private final FullTextSearch fullTextSearch;
+		private final Scenario scenario;
+		private final Feature feature;
+		private List<Step> steps = new ArrayList<Step>(STEPS_PER_BATCH);
+		private List<StepLink> stepLinks = new ArrayList<StepLink>(STEPS_PER_BATCH);
 
-				if (nextStepVariant != null
-					&& !isSameScenario(nextStepVariant, lastStep)) {
-					nextStepVariantInOtherScenario = nextStepVariant;
-				}
+		private StepsIndexer(final FullTextSearch fullTextSearch, final Scenario scenario, final Feature feature) {
+			this.fullTextSearch = fullTextSearch;
+			this.scenario = scenario;
+			this.feature = feature;
+		}
 
-				StepNavigation stepNavigation = dao.loadStepNavigation(build,
-					lastStep);
-				stepNavigation.setPageVariantsCount(pageVariantNavigation
-					.getStepsCount());
-				stepNavigation
-					.setPageVariantScenariosCount(pageVariantNavigation
-						.getScenariosCount());
-				stepNavigation.setNextStepVariant(nextStepVariant);
-				stepNavigation
-					.setNextStepVariantInOtherScenario(nextStepVariantInOtherScenario);
-				dao.saveStepNavigation(build, lastStep, stepNavigation);
-
-				nextStepVariant = lastStep;
-				lastStep = stepNavigation.getPreviousStepVariant();
+		private void add(final Step step, final StepLink stepLink) {
+			if (fullTextSearch == null) {
+				return;
 			}
+			steps.add(step);
+			stepLinks.add(stepLink);
+			if (steps.size() == STEPS_PER_BATCH) {
+				flush();
+			}
+		}
 
+		private void flush() {
+			if (fullTextSearch == null || steps.isEmpty()) {
+				return;
+			}
+			ImportProfiler.Measurement measurement = profiler.start(Phase.SEARCH_INDEXING);
+			fullTextSearch.indexSteps(steps, stepLinks, scenario, feature, build);
+			measurement.stop();
+			steps = new ArrayList<Step>(STEPS_PER_BATCH);
+			stepLinks = new ArrayList<StepLink>(STEPS_PER_BATCH);
 		}
 
 	}
@@ -49,7 +49,7 @@ public class CustomObjectTabTreeBuilder {
 	 */
 	public void addRelevantObjectIntoTreeStructure(final List<ObjectReference> referencePath,
 			final ObjectDescription object) {
-		if (objectTypesToAggregate.contains(object.getType())) {
+		if (isRelevantObjectType(object.getType())) {
 			List<ObjectReference> relevantReferencePath = getPathFilteredForRelevantTypes(referencePath);
 			ObjectReferenceTreeBuilder builder = treeToBuild.findNode(relevantReferencePath);
 			if (!builder.containsChild(object)) {
@@ -58,6 +58,10 @@ public class CustomObjectTabTreeBuilder {
 		}
 	}
 	
+	public boolean isRelevantObjectType(final String objectType) {
+		return objectTypesToAggregate.contains(objectType);
+	}
+	
 	private List<ObjectReference> getPathFilteredForRelevantTypes(final List<ObjectReference> referencePath) {
 		List<ObjectReference> result = new LinkedList<ObjectReference>();
 		for (ObjectReference ref : referencePath) {
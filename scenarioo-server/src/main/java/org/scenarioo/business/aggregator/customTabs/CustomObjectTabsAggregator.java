@@ -35,6 +35,18 @@ public class CustomObjectTabsAggregator {
 		}
 	}
 
+	/**
+	 * Whether objects of this type are displayed in any of the custom object tabs.
+	 */
+	public boolean isRelevantObjectType(final String objectType) {
+		for (CustomObjectTabTreeBuilder treeBuilder : customObjectTabTreeBuilders) {
+			if (treeBuilder.isRelevantObjectType(objectType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public void saveAggregatedTreeStructures() {
 		for (CustomObjectTabTreeBuilder treeBuilder : customObjectTabTreeBuilders) {
 			treeBuilder.saveAggregatedTreeStructure();
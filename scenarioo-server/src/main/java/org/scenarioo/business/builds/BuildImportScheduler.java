@@ -0,0 +1,346 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.builds;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.scenarioo.rest.base.BuildIdentifier;
+
+/**
+ * Schedules build imports to be executed asynchronously by a limited number of worker threads.
+ *
+ * Imports of different branches can run at the same time, as long as the configured maximum of concurrent imports
+ * in total and per branch is not exceeded. Imports are started in the order of their priority (highest first), imports
+ * with the same priority in the order they were submitted. Imports of the same branch are always started in this
+ * order. Pending imports can be reprioritized or cancelled.
+ *
+ * Tasks passed to {@link #execute(Runnable)} (like build comparisons) are only started after all tasks that were
+ * submitted before them have finished, as it was the case with the previous single threaded import executor.
+ */
+public class BuildImportScheduler implements Executor {
+
+	private static final Logger LOGGER = Logger.getLogger(BuildImportScheduler.class);
+
+	public static final int DEFAULT_PRIORITY = 0;
+
+	/**
+	 * Priority of tasks that do not belong to a build, they are started depending on the previously submitted tasks
+	 * anyway.
+	 */
+	private static final int NO_PRIORITY = Integer.MIN_VALUE;
+
+	private final int maxConcurrentImports;
+
+	private final int maxConcurrentImportsPerBranch;
+
+	private final ThreadPoolExecutor workers;
+
+	/**
+	 * Tasks waiting to be started, in order of priority and submission.
+	 */
+	private final List<ScheduledTask> pendingTasks = new LinkedList<ScheduledTask>();
+
+	/**
+	 * Sequence numbers of all tasks that are pending or running.
+	 */
+	private final TreeSet<Long> unfinishedTasks = new TreeSet<Long>();
+
+	private final Map<String, Integer> runningTasksPerBranch = new HashMap<String, Integer>();
+
+	private final Set<ScheduledTask> runningImports = new LinkedHashSet<ScheduledTask>();
+
+	private int runningTasks = 0;
+
+	private long nextSequenceNumber = 0;
+
+	public BuildImportScheduler(final int maxConcurrentImports, final int maxConcurrentImportsPerBranch) {
+		this.maxConcurrentImports = Math.max(1, maxConcurrentImports);
+		this.maxConcurrentImportsPerBranch = Math.max(1, maxConcurrentImportsPerBranch);
+		workers = new ThreadPoolExecutor(this.maxConcurrentImports, this.maxConcurrentImports, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ImportThreadFactory());
+		workers.allowCoreThreadTimeOut(true);
+		LOGGER.info("Build import scheduler: max concurrent imports = " + this.maxConcurrentImports
+				+ ", max concurrent imports per branch = " + this.maxConcurrentImportsPerBranch);
+	}
+
+	/**
+	 * Submit the import of a build with default priority.
+	 */
+	public synchronized void submitImport(final BuildIdentifier buildIdentifier, final Runnable importTask) {
+		submitImport(buildIdentifier, DEFAULT_PRIORITY, importTask);
+	}
+
+	/**
+	 * Submit the import of a build, it is started as soon as all pending imports with higher priority are started and
+	 * the concurrency limits for its branch allow it.
+	 */
+	public synchronized void submitImport(final BuildIdentifier buildIdentifier, final int priority,
+			final Runnable importTask) {
+		addTask(new ScheduledTask(nextSequenceNumber++, buildIdentifier, priority, importTask));
+	}
+
+	/**
+	 * Submit a task that is executed as soon as all previously submitted tasks have finished.
+	 */
+	@Override
+	public synchronized void execute(final Runnable task) {
+		addTask(new ScheduledTask(nextSequenceNumber++, null, NO_PRIORITY, task));
+	}
+
+	/**
+	 * @return the running imports followed by the pending imports in the order they will be started (as far as the
+	 *         concurrency limits allow).
+	 */
+	public synchronized List<ScheduledImport> getScheduledImports() {
+		List<ScheduledImport> scheduledImports = new ArrayList<ScheduledImport>();
+		for (ScheduledTask task : runningImports) {
+			scheduledImports.add(new ScheduledImport(task.buildIdentifier, task.priority, true));
+		}
+		for (ScheduledTask task : pendingTasks) {
+			if (task.buildIdentifier != null) {
+				scheduledImports.add(new ScheduledImport(task.buildIdentifier, task.priority, false));
+			}
+		}
+		return scheduledImports;
+	}
+
+	/**
+	 * Change the priority of a pending import.
+	 *
+	 * @return false if there is no pending import for this build.
+	 */
+	public synchronized boolean changePriority(final BuildIdentifier buildIdentifier, final int priority) {
+		ScheduledTask task = removePendingImport(buildIdentifier);
+		if (task == null) {
+			return false;
+		}
+		insertPendingTask(new ScheduledTask(task.sequenceNumber, buildIdentifier, priority, task.task));
+		startTasksWhereLimitsAllow();
+		return true;
+	}
+
+	/**
+	 * Remove a pending import, such that it is never started.
+	 *
+	 * @return false if there is no pending import for this build.
+	 */
+	public synchronized boolean cancel(final BuildIdentifier buildIdentifier) {
+		ScheduledTask task = removePendingImport(buildIdentifier);
+		if (task == null) {
+			return false;
+		}
+		unfinishedTasks.remove(task.sequenceNumber);
+		startTasksWhereLimitsAllow();
+		return true;
+	}
+
+	public synchronized int getNumberOfRunningTasks() {
+		return runningTasks;
+	}
+
+	public synchronized int getNumberOfPendingTasks() {
+		return pendingTasks.size();
+	}
+
+	private void addTask(final ScheduledTask scheduledTask) {
+		insertPendingTask(scheduledTask);
+		unfinishedTasks.add(scheduledTask.sequenceNumber);
+		startTasksWhereLimitsAllow();
+	}
+
+	private void insertPendingTask(final ScheduledTask scheduledTask) {
+		ListIterator<ScheduledTask> iterator = pendingTasks.listIterator();
+		while (iterator.hasNext()) {
+			if (scheduledTask.isBefore(iterator.next())) {
+				iterator.previous();
+				break;
+			}
+		}
+		iterator.add(scheduledTask);
+	}
+
+	private ScheduledTask removePendingImport(final BuildIdentifier buildIdentifier) {
+		Iterator<ScheduledTask> iterator = pendingTasks.iterator();
+		while (iterator.hasNext()) {
+			ScheduledTask task = iterator.next();
+			if (buildIdentifier.equals(task.buildIdentifier)) {
+				iterator.remove();
+				return task;
+			}
+		}
+		return null;
+	}
+
+	private void startTasksWhereLimitsAllow() {
+		Set<String> branchesWithWaitingTasks = new HashSet<String>();
+		Iterator<ScheduledTask> iterator = pendingTasks.iterator();
+		while (iterator.hasNext() && runningTasks < maxConcurrentImports) {
+			ScheduledTask task = iterator.next();
+			if (isStartable(task, branchesWithWaitingTasks)) {
+				iterator.remove();
+				start(task);
+			} else if (task.branchName != null) {
+				branchesWithWaitingTasks.add(task.branchName);
+			}
+		}
+	}
+
+	private boolean isStartable(final ScheduledTask task, final Set<String> branchesWithWaitingTasks) {
+		if (task.branchName == null) {
+			return unfinishedTasks.first() == task.sequenceNumber;
+		}
+		return !branchesWithWaitingTasks.contains(task.branchName)
+				&& getRunningTasks(task.branchName) < maxConcurrentImportsPerBranch;
+	}
+
+	private int getRunningTasks(final String branchName) {
+		Integer count = runningTasksPerBranch.get(branchName);
+		return count == null ? 0 : count;
+	}
+
+	private void start(final ScheduledTask task) {
+		runningTasks++;
+		if (task.branchName != null) {
+			runningImports.add(task);
+			runningTasksPerBranch.put(task.branchName, getRunningTasks(task.branchName) + 1);
+		}
+		workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.task.run();
+				} catch (Throwable e) {
+					LOGGER.error("Unexpected error in scheduled build import task.", e);
+				} finally {
+					finished(task);
+				}
+			}
+		});
+	}
+
+	private synchronized void finished(final ScheduledTask task) {
+		runningTasks--;
+		if (task.branchName != null) {
+			runningImports.remove(task);
+			int remaining = getRunningTasks(task.branchName) - 1;
+			if (remaining > 0) {
+				runningTasksPerBranch.put(task.branchName, remaining);
+			} else {
+				runningTasksPerBranch.remove(task.branchName);
+			}
+		}
+		unfinishedTasks.remove(task.sequenceNumber);
+		startTasksWhereLimitsAllow();
+	}
+
+	private static class ScheduledTask {
+
+		private final long sequenceNumber;
+
+		/**
+		 * The imported build, or null for tasks that have to wait for all previously submitted tasks.
+		 */
+		private final BuildIdentifier buildIdentifier;
+
+		/**
+		 * Branch of the imported build, or null for tasks that have to wait for all previously submitted tasks.
+		 */
+		private final String branchName;
+
+		private final int priority;
+
+		private final Runnable task;
+
+		private ScheduledTask(final long sequenceNumber, final BuildIdentifier buildIdentifier, final int priority,
+				final Runnable task) {
+			this.sequenceNumber = sequenceNumber;
+			this.buildIdentifier = buildIdentifier;
+			this.branchName = buildIdentifier != null ? buildIdentifier.getBranchName() : null;
+			this.priority = priority;
+			this.task = task;
+		}
+
+		private boolean isBefore(final ScheduledTask other) {
+			if (priority != other.priority) {
+				return priority > other.priority;
+			}
+			return sequenceNumber < other.sequenceNumber;
+		}
+
+	}
+
+	/**
+	 * An import that is running or waiting to be started.
+	 */
+	public static class ScheduledImport {
+
+		private final BuildIdentifier buildIdentifier;
+
+		private final int priority;
+
+		private final boolean running;
+
+		private ScheduledImport(final BuildIdentifier buildIdentifier, final int priority, final boolean running) {
+			this.buildIdentifier = buildIdentifier;
+			this.priority = priority;
+			this.running = running;
+		}
+
+		public BuildIdentifier getBuildIdentifier() {
+			return buildIdentifier;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+
+		public boolean isRunning() {
+			return running;
+		}
+
+	}
+
+	private static class ImportThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(runnable, "scenarioo-build-import-" + threadNumber.getAndIncrement());
+		}
+
+	}
+
+}
@@ -19,6 +19,7 @@ package org.scenarioo.business.builds;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -26,22 +27,24 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.scenarioo.business.aggregator.ScenarioDocuAggregator;
+import org.scenarioo.business.builds.BuildImportScheduler.ScheduledImport;
 import org.scenarioo.business.diffViewer.ComparisonExecutor;
 import org.scenarioo.business.lastSuccessfulScenarios.LastSuccessfulScenariosBuild;
 import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
+import org.scenarioo.model.configuration.BranchAlias;
+import org.scenarioo.model.configuration.Configuration;
 import org.scenarioo.model.docu.aggregates.branches.BranchBuilds;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportQueueEntry;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportStatus;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
 import org.scenarioo.repository.ConfigurationRepository;
 import org.scenarioo.repository.RepositoryLocator;
 import org.scenarioo.rest.base.BuildIdentifier;
+import org.scenarioo.utils.ImportIoThrottle;
 import org.scenarioo.utils.ThreadLogAppender;
 
 /**
@@ -51,6 +54,23 @@ public class BuildImporter {
 
 	private static final Logger LOGGER = Logger.getLogger(BuildImporter.class);
 
+	/**
+	 * Import priority of the most recent build of the default branch, the build users see first.
+	 */
+	public static final int PRIORITY_MOST_RECENT_BUILD_OF_DEFAULT_BRANCH = 200;
+
+	/**
+	 * Import priority of builds referenced by the "most recent" and "last successful" build aliases.
+	 */
+	public static final int PRIORITY_BUILD_ALIAS_TARGET = 100;
+
+	/**
+	 * Import priority of builds explicitly submitted for reimport by a user.
+	 */
+	public static final int PRIORITY_REIMPORT = 150;
+
+	private static final String CANCELLED_STATUS_MESSAGE = "Import was cancelled.";
+
 	private final ConfigurationRepository configurationRepository = RepositoryLocator.INSTANCE
 			.getConfigurationRepository();
 
@@ -60,24 +80,34 @@ public class BuildImporter {
 	/**
 	 * Current state for all builds whether imported and aggregated correctly.
 	 */
-	private Map<BuildIdentifier, BuildImportSummary> buildImportSummaries = new HashMap<BuildIdentifier, BuildImportSummary>();
+	private volatile Map<BuildIdentifier, BuildImportSummary> buildImportSummaries = new ConcurrentHashMap<BuildIdentifier, BuildImportSummary>();
 
 	/**
 	 * Builds that have been scheduled for processing (waiting for import)
 	 */
-	private final Set<BuildIdentifier> buildsInProcessingQueue = new HashSet<BuildIdentifier>();
+	private final Set<BuildIdentifier> buildsInProcessingQueue = newConcurrentSet();
 
 	/**
 	 * Builds currently beeing imported.
 	 */
-	private Set<BuildIdentifier> buildsBeeingImported = new HashSet<BuildIdentifier>();
+	private final Set<BuildIdentifier> buildsBeeingImported = newConcurrentSet();
+
+	/**
+	 * Aggregators of the builds currently beeing imported, to cancel a running import.
+	 */
+	private final Map<BuildIdentifier, ScenarioDocuAggregator> runningAggregators = new ConcurrentHashMap<BuildIdentifier, ScenarioDocuAggregator>();
 
 	/**
-	 * Executor to execute one import task after the other asynchronously.
+	 * Builds whose import has been cancelled after it was started but before its aggregator was registered.
 	 */
-	private final ExecutorService asyncBuildImportExecutor = newAsyncBuildImportExecutor();
+	private final Set<BuildIdentifier> cancelledImports = newConcurrentSet();
 
-	private ComparisonExecutor comparisonExecutor = new ComparisonExecutor(asyncBuildImportExecutor);
+	/**
+	 * Scheduler to execute import tasks asynchronously, several builds at the same time as configured.
+	 */
+	private final BuildImportScheduler asyncBuildImportScheduler = newAsyncBuildImportScheduler();
+
+	private ComparisonExecutor comparisonExecutor = new ComparisonExecutor(asyncBuildImportScheduler);
 
 	private final LastSuccessfulScenariosBuild lastSuccessfulScenarioBuild = new LastSuccessfulScenariosBuild();
 
@@ -89,13 +119,13 @@ public class BuildImporter {
 		return new ArrayList<BuildImportSummary>(buildImportSummaries.values());
 	}
 
-	public ExecutorService getAsyncBuildImportExecutor() {
-		return asyncBuildImportExecutor;
+	public BuildImportScheduler getAsyncBuildImportScheduler() {
+		return asyncBuildImportScheduler;
 	}
 
 	public synchronized void updateBuildImportStates(List<BranchBuilds> branchBuildsList,
 			Map<BuildIdentifier, BuildImportSummary> loadedBuildSummaries) {
-		Map<BuildIdentifier, BuildImportSummary> result = new HashMap<BuildIdentifier, BuildImportSummary>();
+		Map<BuildIdentifier, BuildImportSummary> result = new ConcurrentHashMap<BuildIdentifier, BuildImportSummary>();
 		for (BranchBuilds branchBuilds : branchBuildsList) {
 			for (BuildLink buildLink : branchBuilds.getBuilds()) {
 				// Take existent summary or create new one.
@@ -120,19 +150,56 @@ public class BuildImporter {
 	}
 
 	/**
-	 * Loops over given builds and submits all builds that are not yet imported.
+	 * Take over the saved build import states without checking the aggregated data of the builds, such that the builds
+	 * can be accessed before {@link #updateBuildImportStates(List, Map)} is called.
+	 */
+	public synchronized void restoreBuildImportStates(Map<BuildIdentifier, BuildImportSummary> loadedBuildSummaries) {
+		buildImportSummaries = new ConcurrentHashMap<BuildIdentifier, BuildImportSummary>(loadedBuildSummaries);
+	}
+
+	/**
+	 * Add the state of a build that has been added to the documentation directory, without updating the states of all
+	 * other builds.
+	 */
+	public synchronized void addBuild(String branchName, BuildLink buildLink) {
+		BuildImportSummary buildSummary = new BuildImportSummary(branchName, buildLink.getBuild());
+		ScenarioDocuAggregator aggregator = new ScenarioDocuAggregator(buildSummary);
+		aggregator.updateBuildSummary(buildLink);
+		buildImportSummaries.put(buildSummary.getIdentifier(), buildSummary);
+		saveBuildImportSummary(buildSummary);
+	}
+
+	/**
+	 * Remove the state of a build that has been removed from the documentation directory.
+	 */
+	public synchronized void removeBuild(AvailableBuildsList availableBuilds, BuildIdentifier buildIdentifier) {
+		availableBuilds.removeBuild(buildIdentifier);
+		if (buildImportSummaries.remove(buildIdentifier) != null) {
+			saveBuildImportSummaries(buildImportSummaries);
+		}
+		removeUnreferencedScreenshotsIfConfigured();
+	}
+
+	/**
+	 * Loops over given builds and submits all builds that are not yet imported. The most recent build of the default
+	 * branch is imported first, then the builds the build aliases of the branches point to, then all other builds from
+	 * the most recent to the oldest.
 	 *
 	 * @return Returns the number of builds that were submitted (that need to be imported)
 	 */
 	public synchronized int submitUnprocessedBuildsForImport(AvailableBuildsList availableBuilds) {
 		List<BuildImportSummary> buildsSortedByDateDescending = BuildByDateSorter
 				.sortBuildsByDateDescending(buildImportSummaries.values());
+		Map<BuildIdentifier, Integer> importPriorities = calculateImportPriorities(buildsSortedByDateDescending);
 
 		List<BuildIdentifier> importNeededBuilds = new LinkedList<BuildIdentifier>();
 		for (BuildImportSummary buildImportSummary : buildsSortedByDateDescending) {
 			if (buildImportSummary != null && buildImportSummary.getStatus().isImportNeeded()) {
-				importNeededBuilds.add(buildImportSummary.getIdentifier());
-				submitBuildForImport(availableBuilds, buildImportSummary.getIdentifier());
+				BuildIdentifier buildIdentifier = buildImportSummary.getIdentifier();
+				importNeededBuilds.add(buildIdentifier);
+				Integer priority = importPriorities.get(buildIdentifier);
+				submitBuildForImport(availableBuilds, buildIdentifier,
+						priority != null ? priority : BuildImportScheduler.DEFAULT_PRIORITY);
 			}
 		}
 
@@ -146,9 +213,65 @@ public class BuildImporter {
 	public synchronized void submitBuildForReimport(AvailableBuildsList availableBuilds,
 			BuildIdentifier buildIdentifier) {
 		removeImportedBuildAndDerivedData(availableBuilds, buildIdentifier);
-		submitBuildForImport(availableBuilds, buildIdentifier);
+		submitBuildForImport(availableBuilds, buildIdentifier, PRIORITY_REIMPORT);
 		submitBuildForComparison(buildIdentifier);
-		saveBuildImportSummaries(buildImportSummaries);
+		BuildImportSummary summary = buildImportSummaries.get(buildIdentifier);
+		if (summary != null) {
+			saveBuildImportSummary(summary);
+		}
+	}
+
+	/**
+	 * @return the running imports followed by the queued imports in the order they will be started.
+	 */
+	public List<BuildImportQueueEntry> getImportQueue() {
+		List<BuildImportQueueEntry> importQueue = new ArrayList<BuildImportQueueEntry>();
+		for (ScheduledImport scheduledImport : asyncBuildImportScheduler.getScheduledImports()) {
+			importQueue.add(new BuildImportQueueEntry(scheduledImport.getBuildIdentifier(), scheduledImport
+					.getPriority(), scheduledImport.isRunning()));
+		}
+		return importQueue;
+	}
+
+	/**
+	 * Change the priority of a queued import, imports with higher priority are started first.
+	 *
+	 * @return false if the build is not queued for import (anymore).
+	 */
+	public boolean changeImportPriority(BuildIdentifier buildIdentifier, int priority) {
+		return asyncBuildImportScheduler.changePriority(buildIdentifier, priority);
+	}
+
+	/**
+	 * Cancel the import of a build. A queued import is removed from the queue, a running import is stopped before the
+	 * next feature or scenario is aggregated. The build is marked as failed in both cases and is only imported again
+	 * when it is reimported explicitly or the build changes.
+	 *
+	 * @return false if the build is neither queued nor beeing imported.
+	 */
+	public synchronized boolean cancelImport(BuildIdentifier buildIdentifier) {
+		BuildImportSummary summary = buildImportSummaries.get(buildIdentifier);
+		if (summary == null) {
+			return false;
+		}
+		if (asyncBuildImportScheduler.cancel(buildIdentifier)) {
+			LOGGER.info("  Cancelled queued import of build: " + buildIdentifier.getBranchName() + "/"
+					+ buildIdentifier.getBuildName());
+			recordBuildImportFinished(summary, BuildImportStatus.FAILED, CANCELLED_STATUS_MESSAGE);
+			return true;
+		}
+		if (!buildsBeeingImported.contains(buildIdentifier)) {
+			return false;
+		}
+		LOGGER.info("  Cancelling running import of build: " + buildIdentifier.getBranchName() + "/"
+				+ buildIdentifier.getBuildName());
+		ScenarioDocuAggregator aggregator = runningAggregators.get(buildIdentifier);
+		if (aggregator != null) {
+			aggregator.cancel();
+		} else {
+			cancelledImports.add(buildIdentifier);
+		}
+		return true;
 	}
 
 	/**
@@ -174,7 +297,7 @@ public class BuildImporter {
 	 * Submit any build for import.
 	 */
 	private synchronized void submitBuildForImport(final AvailableBuildsList availableBuilds,
-			BuildIdentifier buildIdentifier) {
+			BuildIdentifier buildIdentifier, int priority) {
 
 		// Do not do anything when build is unknown or already queued
 		final BuildImportSummary summary = buildImportSummaries.get(buildIdentifier);
@@ -186,7 +309,7 @@ public class BuildImporter {
 				+ buildIdentifier.getBuildName());
 		buildsInProcessingQueue.add(buildIdentifier);
 		summary.setStatus(BuildImportStatus.QUEUED_FOR_PROCESSING);
-		asyncBuildImportExecutor.execute(new Runnable() {
+		asyncBuildImportScheduler.submitImport(buildIdentifier, priority, new Runnable() {
 			@Override
 			public void run() {
 				try {
@@ -198,6 +321,46 @@ public class BuildImporter {
 		});
 	}
 
+	/**
+	 * @param buildsSortedByDateDescending
+	 *            all builds, the most recent first.
+	 * @return the import priority of the most recent build of the default branch and of the most recent and last
+	 *         successful build of each branch.
+	 */
+	private Map<BuildIdentifier, Integer> calculateImportPriorities(
+			List<BuildImportSummary> buildsSortedByDateDescending) {
+		Configuration configuration = configurationRepository.getConfiguration();
+		String defaultBranchName = resolveBranchAlias(configuration, configuration.getDefaultBranchName());
+		String buildStatusForSuccessfulBuilds = configuration.getBuildStatusForSuccessfulBuilds();
+
+		Map<BuildIdentifier, Integer> importPriorities = new HashMap<BuildIdentifier, Integer>();
+		Set<String> branchesWithMostRecentBuild = new HashSet<String>();
+		Set<String> branchesWithLastSuccessfulBuild = new HashSet<String>();
+		for (BuildImportSummary summary : buildsSortedByDateDescending) {
+			BuildIdentifier buildIdentifier = summary.getIdentifier();
+			String branchName = buildIdentifier.getBranchName();
+			if (branchesWithMostRecentBuild.add(branchName)) {
+				importPriorities.put(buildIdentifier, branchName.equals(defaultBranchName)
+						? PRIORITY_MOST_RECENT_BUILD_OF_DEFAULT_BRANCH : PRIORITY_BUILD_ALIAS_TARGET);
+			}
+			if (summary.getBuildDescription() != null
+					&& buildStatusForSuccessfulBuilds.equals(summary.getBuildDescription().getStatus())
+					&& branchesWithLastSuccessfulBuild.add(branchName) && !importPriorities.containsKey(buildIdentifier)) {
+				importPriorities.put(buildIdentifier, PRIORITY_BUILD_ALIAS_TARGET);
+			}
+		}
+		return importPriorities;
+	}
+
+	private String resolveBranchAlias(Configuration configuration, String aliasOrRealBranchName) {
+		for (BranchAlias branchAlias : configuration.getBranchAliases()) {
+			if (branchAlias.getName().equals(aliasOrRealBranchName)) {
+				return branchAlias.getReferencedBranch();
+			}
+		}
+		return aliasOrRealBranchName;
+	}
+
 	private void submitBuildForComparison(BuildIdentifier buildIdentifier) {
 		comparisonExecutor.doComparison(buildIdentifier.getBranchName(), buildIdentifier.getBuildName());
 	}
@@ -210,19 +373,19 @@ public class BuildImporter {
 			File importLogFile = dao.getBuildImportLogFile(summary.getIdentifier());
 			buildImportLog = ThreadLogAppender.createAndRegisterForLogs(summary.getIdentifier(), importLogFile);
 
-			buildsBeeingImported.add(summary.getIdentifier());
-
 			LOGGER.info(" ============= START OF BUILD IMPORT ================");
 			LOGGER.info("  Importing build: " + summary.getIdentifier().getBranchName() + "/"
 					+ summary.getIdentifier().getBuildName());
 			LOGGER.info("  This might take a while ...");
 
-			summary = buildImportSummaries.get(summary.getIdentifier());
-			summary.setStatus(BuildImportStatus.PROCESSING);
+			summary = recordBuildImportStarted(summary);
+			throttleImportIo();
 
 			ScenarioDocuAggregator aggregator = new ScenarioDocuAggregator(summary);
+			registerRunningAggregator(summary.getIdentifier(), aggregator);
 			if (!aggregator.isAggregatedDataForBuildAlreadyAvailableAndCurrentVersion()) {
 				aggregator.calculateAggregatedDataForBuild();
+				deduplicateScreenshotsIfConfigured(summary.getIdentifier());
 				addSuccessfullyImportedBuild(availableBuilds, summary);
 				lastSuccessfulScenarioBuild.updateLastSuccessfulScenarioBuild(summary, this, availableBuilds);
 				LOGGER.info("  SUCCESS on importing build: " + summary.getIdentifier().getBranchName() + "/"
@@ -240,18 +403,80 @@ public class BuildImporter {
 					+ summary.getBuildDescription().getName(), e);
 			LOGGER.info(" ============= END OF BUILD IMPORT (failed) ===========");
 		} finally {
+			ImportIoThrottle.INSTANCE.stopThrottlingCurrentThread();
+			runningAggregators.remove(summary.getIdentifier());
 			if (buildImportLog != null) {
 				buildImportLog.unregisterAndFlush();
 			}
 		}
 	}
 
+	/**
+	 * Replace screenshots that are identical to screenshots of other builds by links, a failure only leaves the
+	 * screenshots as they are.
+	 */
+	private void deduplicateScreenshotsIfConfigured(BuildIdentifier buildIdentifier) {
+		if (!configurationRepository.getConfiguration().isDeduplicateScreenshots()) {
+			return;
+		}
+		try {
+			int deduplicatedScreenshots = dao.getScreenshotStore().deduplicateScreenshotsOfBuild(
+					dao.getFiles().getBuildDirectory(buildIdentifier));
+			LOGGER.info("  Replaced " + deduplicatedScreenshots + " screenshots by links to identical screenshots.");
+		} catch (RuntimeException e) {
+			LOGGER.warn("  Could not deduplicate screenshots of build " + buildIdentifier, e);
+		}
+	}
+
+	/**
+	 * Remove the screenshots of removed builds from the screenshot store, after all imports submitted so far are
+	 * done.
+	 */
+	private void removeUnreferencedScreenshotsIfConfigured() {
+		if (!configurationRepository.getConfiguration().isDeduplicateScreenshots()) {
+			return;
+		}
+		asyncBuildImportScheduler.execute(new Runnable() {
+			@Override
+			public void run() {
+				int removedScreenshots = dao.getScreenshotStore().removeUnreferencedScreenshots();
+				LOGGER.info("Removed " + removedScreenshots + " screenshots of removed builds from screenshot store.");
+			}
+		});
+	}
+
+	/**
+	 * Limit the file I/O of the import on the current thread as currently configured.
+	 */
+	private void throttleImportIo() {
+		Configuration configuration = configurationRepository.getConfiguration();
+		ImportIoThrottle.INSTANCE.configure(configuration.getImportIoMegabytesPerSecond() * 1024L * 1024L,
+				configuration.getImportIoFileOperationsPerSecond(),
+				configuration.getImportBackOffRequestLatencyInMillis());
+		ImportIoThrottle.INSTANCE.throttleCurrentThread();
+	}
+
+	private synchronized void registerRunningAggregator(BuildIdentifier buildIdentifier,
+			ScenarioDocuAggregator aggregator) {
+		runningAggregators.put(buildIdentifier, aggregator);
+		if (cancelledImports.remove(buildIdentifier)) {
+			aggregator.cancel();
+		}
+	}
+
 	private synchronized void addSuccessfullyImportedBuild(AvailableBuildsList availableBuilds,
 			BuildImportSummary summary) {
 		recordBuildImportFinished(summary, BuildImportStatus.SUCCESS);
 		availableBuilds.addImportedBuild(summary);
 	}
 
+	private synchronized BuildImportSummary recordBuildImportStarted(BuildImportSummary summary) {
+		buildsBeeingImported.add(summary.getIdentifier());
+		summary = buildImportSummaries.get(summary.getIdentifier());
+		summary.setStatus(BuildImportStatus.PROCESSING);
+		return summary;
+	}
+
 	private synchronized void recordBuildImportFinished(BuildImportSummary summary,
 			BuildImportStatus buildStatus) {
 		recordBuildImportFinished(summary, buildStatus, null);
@@ -265,7 +490,8 @@ public class BuildImporter {
 		summary.setImportDate(new Date());
 		buildsBeeingImported.remove(summary.getIdentifier());
 		buildsInProcessingQueue.remove(summary.getIdentifier());
-		saveBuildImportSummaries(buildImportSummaries);
+		cancelledImports.remove(summary.getIdentifier());
+		saveBuildImportSummary(summary);
 	}
 
 	private void saveBuildImportSummaries(Map<BuildIdentifier, BuildImportSummary> buildImportSummaries) {
@@ -277,10 +503,27 @@ public class BuildImporter {
 	}
 
 	/**
-	 * Creates an executor that queues the passed tasks for execution by one single additional thread.
+	 * Save the changed state of one build, this only appends the summary of the build to the journal of changed
+	 * build import states most of the time.
+	 */
+	private void saveBuildImportSummary(BuildImportSummary changedSummary) {
+		ScenarioDocuAggregationDao dao = new ScenarioDocuAggregationDao(
+				configurationRepository.getDocumentationDataDirectory());
+		dao.saveBuildImportSummary(changedSummary, getBuildImportSummariesAsList());
+	}
+
+	/**
+	 * Creates a scheduler that limits the number of concurrent imports as configured, to not use up all resources of
+	 * the server when a lot of builds are imported at once.
 	 */
-	private static ExecutorService newAsyncBuildImportExecutor() {
-		return new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+	private BuildImportScheduler newAsyncBuildImportScheduler() {
+		Configuration configuration = configurationRepository.getConfiguration();
+		return new BuildImportScheduler(configuration.getMaxConcurrentBuildImports(),
+				configuration.getMaxConcurrentBuildImportsPerBranch());
+	}
+
+	private static Set<BuildIdentifier> newConcurrentSet() {
+		return Collections.newSetFromMap(new ConcurrentHashMap<BuildIdentifier, Boolean>());
 	}
 
 }
@@ -0,0 +1,223 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.builds;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.scenarioo.api.util.files.FilesUtil;
+import org.scenarioo.rest.base.BuildIdentifier;
+
+/**
+ * Detects added, recreated and removed build directories in the documentation directory by comparing the directories
+ * with the state of the last scan. Only the directories are listed, no files of the builds are read.
+ *
+ * A build directory is only considered to be there as soon as its build description file exists. Directories created
+ * by the server itself (containing ".derived" in their name) are ignored.
+ */
+public class DocumentationDirectoryScanner {
+
+	private static final String BUILD_FILE_NAME = "build.xml";
+
+	private static final String DERIVED_NAME_PART = ".derived";
+
+	private final File documentationDirectory;
+
+	/**
+	 * Key of each build directory (to detect directories that have been deleted and created again) by build directory
+	 * name by branch directory name.
+	 */
+	private final Map<String, Map<String, Object>> buildDirectories = new HashMap<String, Map<String, Object>>();
+
+	/**
+	 * Branch directories containing build directories without a build description file yet.
+	 */
+	private final Set<String> branchesWithIncompleteBuilds = new HashSet<String>();
+
+	public DocumentationDirectoryScanner(final File documentationDirectory) {
+		this.documentationDirectory = documentationDirectory;
+	}
+
+	public File getDocumentationDirectory() {
+		return documentationDirectory;
+	}
+
+	/**
+	 * Scan all branch directories, without reporting any changes.
+	 */
+	public synchronized void scanAll() {
+		buildDirectories.clear();
+		branchesWithIncompleteBuilds.clear();
+		for (String branchDirectoryName : listBranchDirectoryNames()) {
+			buildDirectories.put(branchDirectoryName, scanBuildDirectories(branchDirectoryName));
+		}
+	}
+
+	/**
+	 * @return true if branch directories have been added or removed since the last scan.
+	 */
+	public synchronized boolean haveBranchesChanged() {
+		return !listBranchDirectoryNames().equals(buildDirectories.keySet());
+	}
+
+	public synchronized Set<String> getBranchDirectoryNames() {
+		return new HashSet<String>(buildDirectories.keySet());
+	}
+
+	public synchronized Set<String> getBranchesWithIncompleteBuilds() {
+		return new HashSet<String>(branchesWithIncompleteBuilds);
+	}
+
+	/**
+	 * Scan the build directories of one branch directory.
+	 *
+	 * @return the changes of the build directories of this branch since the last scan.
+	 */
+	public List<BuildDirectoryChange> scanBranch(final String branchDirectoryName) {
+		return scanBranch(branchDirectoryName, Collections.<String> emptySet());
+	}
+
+	/**
+	 * Scan the build directories of one branch directory.
+	 *
+	 * @param deletedBuildDirectoryNames
+	 *            build directories known to have been deleted since the last scan, they are reported as recreated if
+	 *            they exist again (even if the file system reused the same key for the new directory).
+	 * @return the changes of the build directories of this branch since the last scan.
+	 */
+	public synchronized List<BuildDirectoryChange> scanBranch(final String branchDirectoryName,
+			final Set<String> deletedBuildDirectoryNames) {
+		Map<String, Object> previousBuilds = buildDirectories.get(branchDirectoryName);
+		if (previousBuilds == null) {
+			previousBuilds = new HashMap<String, Object>();
+		}
+		Map<String, Object> currentBuilds = scanBuildDirectories(branchDirectoryName);
+		buildDirectories.put(branchDirectoryName, currentBuilds);
+
+		List<BuildDirectoryChange> changes = new ArrayList<BuildDirectoryChange>();
+		String branchName = FilesUtil.decodeName(branchDirectoryName);
+		for (Entry<String, Object> build : currentBuilds.entrySet()) {
+			BuildIdentifier buildIdentifier = new BuildIdentifier(branchName, FilesUtil.decodeName(build.getKey()));
+			if (!previousBuilds.containsKey(build.getKey())) {
+				changes.add(new BuildDirectoryChange(buildIdentifier, BuildDirectoryChange.Type.ADDED));
+			} else if (deletedBuildDirectoryNames.contains(build.getKey())
+					|| !build.getValue().equals(previousBuilds.get(build.getKey()))) {
+				changes.add(new BuildDirectoryChange(buildIdentifier, BuildDirectoryChange.Type.RECREATED));
+			}
+		}
+		for (String buildDirectoryName : previousBuilds.keySet()) {
+			if (!currentBuilds.containsKey(buildDirectoryName)) {
+				changes.add(new BuildDirectoryChange(new BuildIdentifier(branchName, FilesUtil
+						.decodeName(buildDirectoryName)), BuildDirectoryChange.Type.REMOVED));
+			}
+		}
+		return changes;
+	}
+
+	private Set<String> listBranchDirectoryNames() {
+		Set<String> branchDirectoryNames = new HashSet<String>();
+		for (File branchDirectory : listDirectories(documentationDirectory)) {
+			branchDirectoryNames.add(branchDirectory.getName());
+		}
+		return branchDirectoryNames;
+	}
+
+	private Map<String, Object> scanBuildDirectories(final String branchDirectoryName) {
+		Map<String, Object> builds = new HashMap<String, Object>();
+		branchesWithIncompleteBuilds.remove(branchDirectoryName);
+		for (File buildDirectory : listDirectories(new File(documentationDirectory, branchDirectoryName))) {
+			if (new File(buildDirectory, BUILD_FILE_NAME).exists()) {
+				builds.put(buildDirectory.getName(), getDirectoryKey(buildDirectory));
+			} else {
+				branchesWithIncompleteBuilds.add(branchDirectoryName);
+			}
+		}
+		return builds;
+	}
+
+	private List<File> listDirectories(final File directory) {
+		List<File> directories = new ArrayList<File>();
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return directories;
+		}
+		for (File file : files) {
+			if (file.isDirectory() && !file.getName().contains(DERIVED_NAME_PART)) {
+				directories.add(file);
+			}
+		}
+		return directories;
+	}
+
+	/**
+	 * @return the file key of the directory (e.g. the inode) or its creation time if the file system has no file keys.
+	 */
+	private Object getDirectoryKey(final File directory) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(directory.toPath(), BasicFileAttributes.class);
+			Object fileKey = attributes.fileKey();
+			return fileKey != null ? fileKey : attributes.creationTime();
+		} catch (IOException e) {
+			return directory.getName();
+		}
+	}
+
+	/**
+	 * Change of a build directory found by a scan.
+	 */
+	public static class BuildDirectoryChange {
+
+		public enum Type {
+			ADDED, RECREATED, REMOVED
+		}
+
+		private final BuildIdentifier buildIdentifier;
+
+		private final Type type;
+
+		public BuildDirectoryChange(final BuildIdentifier buildIdentifier, final Type type) {
+			this.buildIdentifier = buildIdentifier;
+			this.type = type;
+		}
+
+		public BuildIdentifier getBuildIdentifier() {
+			return buildIdentifier;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		@Override
+		public String toString() {
+			return type + " " + buildIdentifier;
+		}
+
+	}
+
+}
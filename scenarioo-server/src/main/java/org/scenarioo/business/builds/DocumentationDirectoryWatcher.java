@@ -0,0 +1,370 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.builds;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.scenarioo.business.builds.DocumentationDirectoryScanner.BuildDirectoryChange;
+
+/**
+ * Watches the documentation directory for added, recreated and removed build directories and reports them to a
+ * {@link Listener}, such that only the changed builds have to be updated.
+ *
+ * File system events of a directory are only processed after there was no further event for this directory for a short
+ * quiet period, such that a build that is still being copied is not reported several times. On file systems where
+ * events of changes made by other hosts are not available (e.g. network file systems) the directories can be polled
+ * instead, this is also done when the file system does not support watching directories at all.
+ *
+ * Builds without build description can not be watched without watching every build directory, their branches are
+ * scanned again less and less often while the builds stay incomplete (see {@link IncompleteBuildsRescanSchedule}).
+ */
+public class DocumentationDirectoryWatcher {
+
+	private static final Logger LOGGER = Logger.getLogger(DocumentationDirectoryWatcher.class);
+
+	private static final long QUIET_PERIOD_MILLIS = 5000;
+
+	private static final int DEFAULT_POLLING_INTERVAL_IN_SECONDS = 60;
+
+	private static final long STOP_TIMEOUT_MILLIS = 10000;
+
+	private static final long MAX_INCOMPLETE_BUILDS_RESCAN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	/**
+	 * Gets informed about changes in the documentation directory, on the thread of the watcher.
+	 */
+	public interface Listener {
+
+		/**
+		 * Branch directories have been added or removed.
+		 */
+		void branchesChanged();
+
+		void buildDirectoriesChanged(List<BuildDirectoryChange> changes);
+
+	}
+
+	private final DocumentationDirectoryScanner scanner;
+
+	private final Listener listener;
+
+	private final int pollingIntervalInSeconds;
+
+	private volatile boolean stopped = false;
+
+	private Thread watcherThread;
+
+	/**
+	 * @param pollingIntervalInSeconds
+	 *            0 to watch the directories using file system events, otherwise the interval to poll the directories.
+	 */
+	public DocumentationDirectoryWatcher(final DocumentationDirectoryScanner scanner, final Listener listener,
+			final int pollingIntervalInSeconds) {
+		this.scanner = scanner;
+		this.listener = listener;
+		this.pollingIntervalInSeconds = pollingIntervalInSeconds;
+	}
+
+	/**
+	 * Scans the current state of the documentation directory and then starts watching it in a separate thread.
+	 */
+	public synchronized void start() {
+		scanner.scanAll();
+		watcherThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					watchOrPoll();
+				} catch (InterruptedException e) {
+					LOGGER.info("Stopped watching documentation directory.");
+				}
+			}
+		}, "scenarioo-documentation-directory-watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+
+	/**
+	 * Stops the watcher thread, which closes the watch service of the documentation directory. Waits for the watcher
+	 * thread to finish, unless the watcher is stopped by its own listener.
+	 */
+	public void stop() {
+		Thread thread;
+		synchronized (this) {
+			stopped = true;
+			thread = watcherThread;
+		}
+		if (thread == null || thread == Thread.currentThread()) {
+			return;
+		}
+		thread.interrupt();
+		try {
+			thread.join(STOP_TIMEOUT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (thread.isAlive()) {
+			LOGGER.warn("Watcher of documentation directory " + scanner.getDocumentationDirectory()
+					+ " did not stop within " + STOP_TIMEOUT_MILLIS + " ms.");
+		}
+	}
+
+	synchronized boolean isRunning() {
+		return watcherThread != null && watcherThread.isAlive();
+	}
+
+	public File getDocumentationDirectory() {
+		return scanner.getDocumentationDirectory();
+	}
+
+	public int getPollingIntervalInSeconds() {
+		return pollingIntervalInSeconds;
+	}
+
+	private void watchOrPoll() throws InterruptedException {
+		if (pollingIntervalInSeconds > 0) {
+			poll(pollingIntervalInSeconds);
+			return;
+		}
+		try {
+			watch();
+		} catch (IOException e) {
+			LOGGER.warn("Could not watch documentation directory " + scanner.getDocumentationDirectory()
+					+ ", polling it every " + DEFAULT_POLLING_INTERVAL_IN_SECONDS + " seconds instead.", e);
+			poll(DEFAULT_POLLING_INTERVAL_IN_SECONDS);
+		} catch (UnsupportedOperationException e) {
+			LOGGER.warn("Watching directories is not supported for documentation directory "
+					+ scanner.getDocumentationDirectory() + ", polling it every "
+					+ DEFAULT_POLLING_INTERVAL_IN_SECONDS + " seconds instead.");
+			poll(DEFAULT_POLLING_INTERVAL_IN_SECONDS);
+		}
+	}
+
+	private void poll(final int intervalInSeconds) throws InterruptedException {
+		LOGGER.info("Polling documentation directory " + scanner.getDocumentationDirectory() + " every "
+				+ intervalInSeconds + " seconds for changed builds.");
+		while (!stopped) {
+			Thread.sleep(TimeUnit.SECONDS.toMillis(intervalInSeconds));
+			if (!updateBranchesIfChanged()) {
+				List<BuildDirectoryChange> changes = new ArrayList<BuildDirectoryChange>();
+				for (String branchDirectoryName : scanner.getBranchDirectoryNames()) {
+					changes.addAll(scanner.scanBranch(branchDirectoryName));
+				}
+				reportChanges(changes);
+			}
+		}
+	}
+
+	private void watch() throws IOException, InterruptedException {
+		WatchService watchService = FileSystems.getDefault().newWatchService();
+		try {
+			Path documentationDirectory = scanner.getDocumentationDirectory().toPath();
+			documentationDirectory.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+			Map<Path, WatchKey> branchKeys = new HashMap<Path, WatchKey>();
+			registerBranchDirectories(watchService, branchKeys);
+			LOGGER.info("Watching documentation directory " + documentationDirectory + " for changed builds.");
+
+			// time of the last event by changed directory
+			Map<Path, Long> changedDirectories = new HashMap<Path, Long>();
+			// names of the deleted build directories by branch directory
+			Map<Path, Set<String>> deletedBuildDirectories = new HashMap<Path, Set<String>>();
+			IncompleteBuildsRescanSchedule incompleteBuildsRescans = new IncompleteBuildsRescanSchedule(
+					QUIET_PERIOD_MILLIS, MAX_INCOMPLETE_BUILDS_RESCAN_INTERVAL_MILLIS);
+			while (!stopped) {
+				WatchKey key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					Path directory = (Path) key.watchable();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == ENTRY_DELETE) {
+							getDeletedBuildDirectories(deletedBuildDirectories, directory).add(
+									event.context().toString());
+						} else if (event.kind() == OVERFLOW) {
+							changedDirectories.put(documentationDirectory, System.currentTimeMillis());
+							for (Path branchDirectory : branchKeys.keySet()) {
+								changedDirectories.put(branchDirectory, System.currentTimeMillis());
+							}
+						}
+					}
+					changedDirectories.put(directory, System.currentTimeMillis());
+					if (!key.reset()) {
+						branchKeys.remove(directory);
+					}
+				}
+
+				long quietSince = System.currentTimeMillis() - QUIET_PERIOD_MILLIS;
+				List<BuildDirectoryChange> changes = new ArrayList<BuildDirectoryChange>();
+				Iterator<Entry<Path, Long>> changedDirectoriesIterator = changedDirectories.entrySet().iterator();
+				while (changedDirectoriesIterator.hasNext()) {
+					Entry<Path, Long> changedDirectory = changedDirectoriesIterator.next();
+					if (changedDirectory.getValue() > quietSince) {
+						continue;
+					}
+					changedDirectoriesIterator.remove();
+					if (changedDirectory.getKey().equals(documentationDirectory)) {
+						if (updateBranchesIfChanged()) {
+							registerBranchDirectories(watchService, branchKeys);
+						}
+					} else if (branchKeys.containsKey(changedDirectory.getKey())) {
+						String branchDirectoryName = changedDirectory.getKey().getFileName().toString();
+						changes.addAll(scanner.scanBranch(branchDirectoryName,
+								getDeletedBuildDirectories(deletedBuildDirectories, changedDirectory.getKey())));
+						incompleteBuildsRescans.branchChanged(branchDirectoryName);
+					}
+					deletedBuildDirectories.remove(changedDirectory.getKey());
+				}
+				// builds without build description are only reported when the description is written, which can not
+				// be watched without watching all build directories
+				Set<String> branchesWithIncompleteBuilds = scanner.getBranchesWithIncompleteBuilds();
+				incompleteBuildsRescans.retainBranches(branchesWithIncompleteBuilds);
+				long now = System.currentTimeMillis();
+				for (String branchDirectoryName : branchesWithIncompleteBuilds) {
+					if (!changedDirectories.containsKey(documentationDirectory.resolve(branchDirectoryName))
+							&& incompleteBuildsRescans.isRescanDue(branchDirectoryName, now)) {
+						changes.addAll(scanner.scanBranch(branchDirectoryName));
+						incompleteBuildsRescans.rescanned(branchDirectoryName, now);
+					}
+				}
+				reportChanges(changes);
+			}
+		} finally {
+			watchService.close();
+		}
+	}
+
+	private Set<String> getDeletedBuildDirectories(final Map<Path, Set<String>> deletedBuildDirectories,
+			final Path branchDirectory) {
+		Set<String> deletedBuildDirectoriesOfBranch = deletedBuildDirectories.get(branchDirectory);
+		if (deletedBuildDirectoriesOfBranch == null) {
+			deletedBuildDirectoriesOfBranch = new HashSet<String>();
+			deletedBuildDirectories.put(branchDirectory, deletedBuildDirectoriesOfBranch);
+		}
+		return deletedBuildDirectoriesOfBranch;
+	}
+
+	private void registerBranchDirectories(final WatchService watchService, final Map<Path, WatchKey> branchKeys)
+			throws IOException {
+		Path documentationDirectory = scanner.getDocumentationDirectory().toPath();
+		for (String branchDirectoryName : scanner.getBranchDirectoryNames()) {
+			Path branchDirectory = documentationDirectory.resolve(branchDirectoryName);
+			if (!branchKeys.containsKey(branchDirectory)) {
+				branchKeys.put(branchDirectory, branchDirectory.register(watchService, ENTRY_CREATE, ENTRY_DELETE));
+			}
+		}
+	}
+
+	/**
+	 * @return true if branches have been added or removed, all builds have been scanned again in this case.
+	 */
+	private boolean updateBranchesIfChanged() {
+		if (!scanner.haveBranchesChanged()) {
+			return false;
+		}
+		LOGGER.info("Branches in documentation directory have changed.");
+		scanner.scanAll();
+		notifyListener(new Runnable() {
+			@Override
+			public void run() {
+				listener.branchesChanged();
+			}
+		});
+		return true;
+	}
+
+	private void reportChanges(final List<BuildDirectoryChange> changes) {
+		if (changes.isEmpty()) {
+			return;
+		}
+		LOGGER.info("Builds in documentation directory have changed: " + changes);
+		notifyListener(new Runnable() {
+			@Override
+			public void run() {
+				listener.buildDirectoriesChanged(changes);
+			}
+		});
+	}
+
+	/**
+	 * Errors of the listener must not stop the watcher.
+	 */
+	private void notifyListener(final Runnable notification) {
+		try {
+			notification.run();
+		} catch (RuntimeException e) {
+			LOGGER.error("Unexpected error on updating changed builds.", e);
+		}
+	}
+
+	/**
+	 * When to scan branches with incomplete builds again: the interval doubles after each scan, up to a maximum, such
+	 * that abandoned build directories are not listed every few seconds forever. A branch starts over with the initial
+	 * interval when it changed or its builds got complete.
+	 */
+	static class IncompleteBuildsRescanSchedule {
+
+		private final long initialIntervalMillis;
+
+		private final long maxIntervalMillis;
+
+		private final Map<String, long[]> intervalAndNextRescanByBranch = new HashMap<String, long[]>();
+
+		IncompleteBuildsRescanSchedule(final long initialIntervalMillis, final long maxIntervalMillis) {
+			this.initialIntervalMillis = initialIntervalMillis;
+			this.maxIntervalMillis = maxIntervalMillis;
+		}
+
+		boolean isRescanDue(final String branchDirectoryName, final long now) {
+			long[] intervalAndNextRescan = intervalAndNextRescanByBranch.get(branchDirectoryName);
+			return intervalAndNextRescan == null || now >= intervalAndNextRescan[1];
+		}
+
+		void rescanned(final String branchDirectoryName, final long now) {
+			long[] intervalAndNextRescan = intervalAndNextRescanByBranch.get(branchDirectoryName);
+			long interval = intervalAndNextRescan == null ? initialIntervalMillis : Math.min(
+					intervalAndNextRescan[0] * 2, maxIntervalMillis);
+			intervalAndNextRescanByBranch.put(branchDirectoryName, new long[] { interval, now + interval });
+		}
+
+		void branchChanged(final String branchDirectoryName) {
+			intervalAndNextRescanByBranch.remove(branchDirectoryName);
+		}
+
+		void retainBranches(final Set<String> branchesWithIncompleteBuilds) {
+			intervalAndNextRescanByBranch.keySet().retainAll(branchesWithIncompleteBuilds);
+		}
+
+	}
+
+}
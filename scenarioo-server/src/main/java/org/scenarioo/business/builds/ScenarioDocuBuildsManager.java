@@ -26,6 +26,7 @@ import java.util.Map;
 import org.apache.log4j.Logger;
 import org.scenarioo.api.ScenarioDocuReader;
 import org.scenarioo.business.aggregator.ScenarioDocuAggregator;
+import org.scenarioo.business.builds.DocumentationDirectoryScanner.BuildDirectoryChange;
 import org.scenarioo.dao.aggregates.AggregatedDocuDataReader;
 import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
 import org.scenarioo.dao.search.FullTextSearch;
@@ -33,9 +34,11 @@ import org.scenarioo.model.configuration.BranchAlias;
 import org.scenarioo.model.configuration.Configuration;
 import org.scenarioo.model.docu.aggregates.branches.BranchBuilds;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportStatus;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportQueueEntry;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
 import org.scenarioo.model.docu.aggregates.objects.LongObjectNamesResolver;
 import org.scenarioo.model.docu.entities.Branch;
+import org.scenarioo.model.docu.entities.Build;
 import org.scenarioo.repository.ConfigurationRepository;
 import org.scenarioo.repository.RepositoryLocator;
 import org.scenarioo.rest.base.BuildIdentifier;
@@ -58,13 +61,13 @@ import org.scenarioo.rest.base.BuildIdentifier;
  */
 public class ScenarioDocuBuildsManager {
 
-	private final static ConfigurationRepository configurationRepository = RepositoryLocator.INSTANCE
-			.getConfigurationRepository();
-
 	public static ScenarioDocuBuildsManager INSTANCE = new ScenarioDocuBuildsManager();
 
 	private static final Logger LOGGER = Logger.getLogger(ScenarioDocuBuildsManager.class);
 
+	private final ConfigurationRepository configurationRepository = RepositoryLocator.INSTANCE
+			.getConfigurationRepository();
+
 	/**
 	 * Cached long object name resolver for most recently loaded builds and branches. Is cleared whenever new builds are
 	 * imported.
@@ -82,9 +85,16 @@ public class ScenarioDocuBuildsManager {
 	private final BuildImporter buildImporter = new BuildImporter();
 
 	/**
-	 * Is a singleton. Use {@link #INSTANCE}.
+	 * Watcher of the configured documentation directory, null if the directory is not watched.
+	 */
+	private DocumentationDirectoryWatcher documentationDirectoryWatcher;
+
+	private final Object documentationDirectoryWatcherLock = new Object();
+
+	/**
+	 * Is a singleton. Use {@link #INSTANCE}, only tests create their own instances.
 	 */
-	private ScenarioDocuBuildsManager() {
+	ScenarioDocuBuildsManager() {
 	}
 
 	/**
@@ -159,17 +169,166 @@ public class ScenarioDocuBuildsManager {
 	public void updateBuildsIfValidDirectoryConfigured() {
 		LOGGER.info("********************* update builds ********************************");
 		LOGGER.info("Updating available builds ...");
+		File docuDirectory = getValidDocumentationDirectory();
+		if (docuDirectory != null) {
+			updateAllBuildsAndSubmitNewBuildsForImport(docuDirectory);
+		}
+		LOGGER.info("******************** update finished *******************************");
+	}
+
+	/**
+	 * Makes the builds of the last saved build catalog available right away on server startup and then updates the
+	 * builds from the documentation directory in the background (see {@link #updateBuildsIfValidDirectoryConfigured()}
+	 * ), because reading all branches and builds can take quite a while on big documentation directories.
+	 */
+	public void loadBuildCatalogAndUpdateBuildsInBackground() {
+		final File docuDirectory = getValidDocumentationDirectory();
+		if (docuDirectory != null) {
+			loadBuildCatalog();
+		}
+		Thread updateThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					watchConfiguredDocumentationDirectory();
+					updateBuildsIfValidDirectoryConfigured();
+				} catch (Throwable e) {
+					LOGGER.error("Unexpected error on updating builds.", e);
+				}
+			}
+		}, "scenarioo-update-builds");
+		updateThread.setDaemon(true);
+		updateThread.start();
+	}
+
+	/**
+	 * @return false if no valid build catalog has been saved, then the builds are only available after
+	 *         {@link #updateBuildsIfValidDirectoryConfigured()} has read them from the documentation directory.
+	 */
+	synchronized boolean loadBuildCatalog() {
+		ScenarioDocuAggregationDao dao = new ScenarioDocuAggregationDao(
+				configurationRepository.getDocumentationDataDirectory());
+		List<BranchBuilds> branchBuildsList = dao.loadBuildCatalog();
+		if (branchBuildsList == null) {
+			LOGGER.info("No saved build catalog available, builds are available as soon as they have been read.");
+			return false;
+		}
+		buildImporter.restoreBuildImportStates(loadBuildImportSummaries());
+		availableBuilds.updateBuildsWithSuccessfullyImportedBuilds(branchBuildsList,
+				buildImporter.getBuildImportSummaries());
+		LOGGER.info("Builds of saved build catalog are available.");
+		return true;
+	}
+
+	/**
+	 * Starts watching the configured documentation directory, if watching is configured, and stops watching the
+	 * previously configured one. Nothing is restarted if neither the directory nor the way to watch it have been
+	 * reconfigured.
+	 * 
+	 * Builds that are changed in the documentation directory while the builds are updated are detected by the watcher
+	 * as well, therefore the watcher should be started before the builds are updated.
+	 */
+	public void watchConfiguredDocumentationDirectory() {
+		Configuration configuration = configurationRepository.getConfiguration();
+		File docuDirectory = configuration.isWatchDocumentationDirectory() ? getValidDocumentationDirectory() : null;
+		int pollingIntervalInSeconds = configuration.getDocumentationDirectoryPollingIntervalInSeconds();
+		synchronized (documentationDirectoryWatcherLock) {
+			if (docuDirectory != null && documentationDirectoryWatcher != null
+					&& docuDirectory.equals(documentationDirectoryWatcher.getDocumentationDirectory())
+					&& pollingIntervalInSeconds == documentationDirectoryWatcher.getPollingIntervalInSeconds()) {
+				return;
+			}
+			stopWatchingDocumentationDirectory();
+			if (docuDirectory == null) {
+				return;
+			}
+			documentationDirectoryWatcher = new DocumentationDirectoryWatcher(new DocumentationDirectoryScanner(
+					docuDirectory), new DocumentationDirectoryWatcher.Listener() {
+				@Override
+				public void branchesChanged() {
+					updateBuildsIfValidDirectoryConfigured();
+				}
+
+				@Override
+				public void buildDirectoriesChanged(final List<BuildDirectoryChange> changes) {
+					updateChangedBuilds(changes);
+				}
+			}, pollingIntervalInSeconds);
+			documentationDirectoryWatcher.start();
+		}
+	}
+
+	/**
+	 * Stops watching the documentation directory, must be called on shutdown of the server.
+	 */
+	public void stopWatchingDocumentationDirectory() {
+		synchronized (documentationDirectoryWatcherLock) {
+			if (documentationDirectoryWatcher != null) {
+				documentationDirectoryWatcher.stop();
+				documentationDirectoryWatcher = null;
+			}
+		}
+	}
+
+	/**
+	 * @return the watcher of the documentation directory, null if the directory is not watched.
+	 */
+	DocumentationDirectoryWatcher getDocumentationDirectoryWatcher() {
+		synchronized (documentationDirectoryWatcherLock) {
+			return documentationDirectoryWatcher;
+		}
+	}
+
+	/**
+	 * Update only the passed builds that have been added, recreated or removed in the documentation directory, without
+	 * reading all branches and builds again. Added and recreated builds are (re)imported.
+	 */
+	public synchronized void updateChangedBuilds(final List<BuildDirectoryChange> changes) {
+		ScenarioDocuReader reader = new ScenarioDocuReader(configurationRepository.getDocumentationDataDirectory());
+		boolean buildsAdded = false;
+		for (BuildDirectoryChange change : changes) {
+			BuildIdentifier buildIdentifier = change.getBuildIdentifier();
+			boolean knownBuild = buildImporter.getBuildImportSummaries().containsKey(buildIdentifier);
+			longObjectNamesResolvers.remove(buildIdentifier);
+			if (change.getType() == BuildDirectoryChange.Type.REMOVED) {
+				LOGGER.info("Removing build " + buildIdentifier + " that has been removed from documentation directory.");
+				buildImporter.removeBuild(availableBuilds, buildIdentifier);
+			} else if (knownBuild && change.getType() == BuildDirectoryChange.Type.RECREATED) {
+				LOGGER.info("Reimporting build " + buildIdentifier + " that has been replaced in documentation directory.");
+				buildImporter.submitBuildForReimport(availableBuilds, buildIdentifier);
+			} else if (!knownBuild) {
+				if (availableBuilds.getBranchBuilds(buildIdentifier.getBranchName()) == null) {
+					// builds of new branches are only available after reading all branches again
+					updateBuildsIfValidDirectoryConfigured();
+					return;
+				}
+				LOGGER.info("Adding build " + buildIdentifier + " that has been added to documentation directory.");
+				Build build = reader.loadBuild(buildIdentifier.getBranchName(), buildIdentifier.getBuildName());
+				buildImporter.addBuild(buildIdentifier.getBranchName(), new BuildLink(build,
+						buildIdentifier.getBuildName()));
+				buildsAdded = true;
+			}
+		}
+		if (buildsAdded) {
+			buildImporter.submitUnprocessedBuildsForImport(availableBuilds);
+		}
+	}
+
+	/**
+	 * @return the configured documentation directory, null if it is not configured or does not exist.
+	 */
+	private File getValidDocumentationDirectory() {
 		File docuDirectory = configurationRepository.getDocumentationDataDirectory();
 		if (docuDirectory == null) {
 			LOGGER.error("No documentation directory is configured.");
 			LOGGER.error("Please configure valid documentation directory in configuration UI");
+			return null;
 		} else if (!docuDirectory.exists()) {
 			LOGGER.error("No valid documentation directory is configured: " + docuDirectory.getAbsolutePath());
 			LOGGER.error("Please configure valid documentation directory in configuration UI");
-		} else {
-			updateAllBuildsAndSubmitNewBuildsForImport(docuDirectory);
+			return null;
 		}
-		LOGGER.info("******************** update finished *******************************");
+		return docuDirectory;
 	}
 
 	private void updateAllBuildsAndSubmitNewBuildsForImport(File docuDirectory) {
@@ -181,18 +340,25 @@ public class ScenarioDocuBuildsManager {
 		new FullTextSearch().updateAvailableBuilds(buildImporter.getBuildImportSummariesAsList());
 	}
 
-	private synchronized void updateBuildImportStatesAndAvailableBuildsList() {
+	synchronized void updateBuildImportStatesAndAvailableBuildsList() {
 		LOGGER.info("Updating the list of available builds and their states ...");
 		Map<BuildIdentifier, BuildImportSummary> loadedBuildImportSummaries = loadBuildImportSummaries();
 		List<BranchBuilds> branchBuildsList = loadBranchBuildsList();
 		buildImporter.updateBuildImportStates(branchBuildsList, loadedBuildImportSummaries);
 		availableBuilds.updateBuildsWithSuccessfullyImportedBuilds(branchBuildsList,
 				buildImporter.getBuildImportSummaries());
+		saveBuildCatalog(branchBuildsList);
 	}
 
-	public static Map<BuildIdentifier, BuildImportSummary> loadBuildImportSummaries() {
-		AggregatedDocuDataReader dao = new ScenarioDocuAggregationDao(
+	private void saveBuildCatalog(final List<BranchBuilds> branchBuildsList) {
+		ScenarioDocuAggregationDao dao = new ScenarioDocuAggregationDao(
 				configurationRepository.getDocumentationDataDirectory());
+		dao.saveBuildCatalog(branchBuildsList);
+	}
+
+	public static Map<BuildIdentifier, BuildImportSummary> loadBuildImportSummaries() {
+		AggregatedDocuDataReader dao = new ScenarioDocuAggregationDao(RepositoryLocator.INSTANCE
+				.getConfigurationRepository().getDocumentationDataDirectory());
 		List<BuildImportSummary> loadedSummaries = dao.loadBuildImportSummaries();
 		Map<BuildIdentifier, BuildImportSummary> result = new HashMap<BuildIdentifier, BuildImportSummary>();
 		for (BuildImportSummary buildImportSummary : loadedSummaries) {
@@ -202,7 +368,8 @@ public class ScenarioDocuBuildsManager {
 	}
 
 	public static List<BranchBuilds> loadBranchBuildsList() {
-		File documentationDataDirectory = configurationRepository.getDocumentationDataDirectory();
+		File documentationDataDirectory = RepositoryLocator.INSTANCE.getConfigurationRepository()
+				.getDocumentationDataDirectory();
 		final ScenarioDocuReader reader = new ScenarioDocuReader(documentationDataDirectory);
 		AggregatedDocuDataReader aggregatedDataReader = new ScenarioDocuAggregationDao(documentationDataDirectory);
 
@@ -225,6 +392,27 @@ public class ScenarioDocuBuildsManager {
 		buildImporter.submitBuildForReimport(availableBuilds, buildIdentifier);
 	}
 
+	/**
+	 * @return the running and the queued build imports, in the order they are started.
+	 */
+	public List<BuildImportQueueEntry> getImportQueue() {
+		return buildImporter.getImportQueue();
+	}
+
+	/**
+	 * @return false if the build is not queued for import.
+	 */
+	public boolean changeImportPriority(final BuildIdentifier buildIdentifier, final int priority) {
+		return buildImporter.changeImportPriority(buildIdentifier, priority);
+	}
+
+	/**
+	 * @return false if the build is neither queued for import nor beeing imported.
+	 */
+	public boolean cancelImport(final BuildIdentifier buildIdentifier) {
+		return buildImporter.cancelImport(buildIdentifier);
+	}
+
 	public LongObjectNamesResolver getLongObjectNameResolver(final BuildIdentifier buildIdentifier) {
 		AggregatedDocuDataReader dao = new ScenarioDocuAggregationDao(
 				configurationRepository.getDocumentationDataDirectory());
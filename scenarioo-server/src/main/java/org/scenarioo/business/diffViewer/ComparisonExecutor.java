@@ -21,7 +21,7 @@ import java.io.File;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 
 import org.apache.log4j.Logger;
 import org.scenarioo.api.ScenarioDocuReader;
@@ -55,10 +55,10 @@ public class ComparisonExecutor {
 	private ScenarioDocuReader docuReader = new ScenarioDocuReader(
 			configurationRepository.getDocumentationDataDirectory());
 
-	private ExecutorService asyncComparisonExecutor;
+	private Executor asyncComparisonExecutor;
 
-	public ComparisonExecutor(ExecutorService executorService) {
-		asyncComparisonExecutor = executorService;
+	public ComparisonExecutor(Executor executor) {
+		asyncComparisonExecutor = executor;
 		docuBuildsManager = ScenarioDocuBuildsManager.INSTANCE;
 	}
 
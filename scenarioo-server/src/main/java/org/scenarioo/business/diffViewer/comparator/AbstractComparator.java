@@ -30,8 +30,15 @@ import java.text.NumberFormat;
 public abstract class AbstractComparator {
 
 	protected static final String SCREENSHOT_FILE_EXTENSION = ".png";
-	protected static final NumberFormat THREE_DIGIT_NUM_FORMAT = NumberFormatCreator
-		.createNumberFormatWithMinimumIntegerDigits(3);
+	/**
+	 * One number format per thread, because number formats are not thread safe.
+	 */
+	protected static final ThreadLocal<NumberFormat> THREE_DIGIT_NUM_FORMAT = new ThreadLocal<NumberFormat>() {
+		@Override
+		protected NumberFormat initialValue() {
+			return NumberFormatCreator.createNumberFormatWithMinimumIntegerDigits(3);
+		}
+	};
 
 	protected static final ConfigurationRepository configurationRepository = RepositoryLocator.INSTANCE
 		.getConfigurationRepository();
@@ -53,4 +60,15 @@ public abstract class AbstractComparator {
 		this.comparisonConfiguration = comparisonConfiguration;
 	}
 
+	/**
+	 * Creates a comparator that reads and writes with the reader and writer of the given comparator.
+	 */
+	protected AbstractComparator(final AbstractComparator comparator) {
+		this.docuReader = comparator.docuReader;
+		this.diffWriter = comparator.diffWriter;
+		this.baseBranchName = comparator.baseBranchName;
+		this.baseBuildName = comparator.baseBuildName;
+		this.comparisonConfiguration = comparator.comparisonConfiguration;
+	}
+
 }
@@ -17,13 +17,24 @@
 
 package org.scenarioo.business.diffViewer.comparator;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import org.scenarioo.model.configuration.ComparisonConfiguration;
 import org.scenarioo.model.diffViewer.StructureDiffInfo;
 
 /**
+ * Elements are compared in parallel if the comparator allows it (see {@link #isElementComparisonParallel()}) and the
+ * comparison runs in a fork join pool (see {@link BuildComparator}), otherwise one after the other.
+ *
  * @param <ELEMENT_TYPE>
  *            Represents the element type. For example a feature.
  * @param <ADDED_ELEMENT_TYPE>
@@ -40,6 +51,10 @@ public abstract class AbstractStructureComparator<ELEMENT_TYPE, ADDED_ELEMENT_TY
 		super(baseBranchName, baseBuildName, comparisonConfiguration);
 	}
 
+	protected AbstractStructureComparator(final AbstractComparator comparator) {
+		super(comparator);
+	}
+
 	protected abstract double compareElementAndWrite(ELEMENT_TYPE baseElement, ELEMENT_TYPE comparisonElement, StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo);
 
 	protected abstract String getElementIdentifier(ELEMENT_TYPE element);
@@ -48,38 +63,76 @@ public abstract class AbstractStructureComparator<ELEMENT_TYPE, ADDED_ELEMENT_TY
 
 	protected abstract List<REMOVED_ELEMENT_TYPE> getRemovedElementValues(List<ELEMENT_TYPE> removedElements);
 
-	protected void handleAddedElements(final List<ELEMENT_TYPE> baseElements, final List<ELEMENT_TYPE> comparisonElements,
-									   final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo) {
-		final List<ELEMENT_TYPE> addedElements = getAddedElements(baseElements, comparisonElements);
-		setAddedDiffInfo(addedElements, diffInfo);
+	/**
+	 * @return true if {@link #compareElementAndWrite(Object, Object, StructureDiffInfo)} can be called for several
+	 *         elements at the same time.
+	 */
+	protected boolean isElementComparisonParallel() {
+		return false;
 	}
 
 	protected void calculateDiffInfo(final List<ELEMENT_TYPE> baseElements,
 									 final List<ELEMENT_TYPE> comparisonElements, final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo) {
-		handleAddedElements(baseElements, comparisonElements, diffInfo);
+		final ElementMatching elementMatching = new ElementMatching(baseElements, comparisonElements);
+
+		setAddedDiffInfo(elementMatching.addedElements, diffInfo);
 
-		final double elementChangeRateSum = compareElementsAndWrite(baseElements, comparisonElements, diffInfo);
+		final double elementChangeRateSum = compareElementsAndWrite(baseElements,
+				elementMatching.matchingComparisonElements, diffInfo);
 
-		handleRemovedElements(baseElements, comparisonElements, diffInfo);
+		setRemovedDiffInfo(elementMatching.removedElements, diffInfo);
 
 		diffInfo.setChangeRate(calculateChangeRate(baseElements.size(), diffInfo.getAdded(),
 				diffInfo.getRemoved(), elementChangeRateSum));
 	}
 
-	protected double compareElementsAndWrite(final List<ELEMENT_TYPE> baseElements, final List<ELEMENT_TYPE> comparisonElements,
-											 final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo) {
+	/**
+	 * @param matchingComparisonElements
+	 *            the comparison element with the same identifier for each base element, null if there is none.
+	 */
+	private double compareElementsAndWrite(final List<ELEMENT_TYPE> baseElements,
+			final List<ELEMENT_TYPE> matchingComparisonElements,
+			final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo) {
+		if (isElementComparisonParallel() && baseElements.size() > 1 && ForkJoinTask.inForkJoinPool()) {
+			return compareElementsAndWriteInParallel(baseElements, matchingComparisonElements, diffInfo);
+		}
 		double elementChangeRateSum = 0;
+		final Iterator<ELEMENT_TYPE> matchingComparisonElementIterator = matchingComparisonElements.iterator();
+		for (final ELEMENT_TYPE baseElement : baseElements) {
+			elementChangeRateSum += compareElementAndWrite(baseElement, matchingComparisonElementIterator.next(),
+					diffInfo);
+		}
+		return elementChangeRateSum;
+	}
+
+	/**
+	 * The change rates are summed up in the order of the base elements, to get exactly the same sum as when comparing
+	 * them one after the other.
+	 */
+	private double compareElementsAndWriteInParallel(final List<ELEMENT_TYPE> baseElements,
+			final List<ELEMENT_TYPE> matchingComparisonElements,
+			final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo) {
+		final List<ElementComparisonTask> elementTasks = new ArrayList<ElementComparisonTask>(baseElements.size());
+		final Iterator<ELEMENT_TYPE> matchingComparisonElementIterator = matchingComparisonElements.iterator();
 		for (final ELEMENT_TYPE baseElement : baseElements) {
-			final ELEMENT_TYPE comparisonElement = getElementByIdentifier(comparisonElements, getElementIdentifier(baseElement));
-			elementChangeRateSum += compareElementAndWrite(baseElement, comparisonElement, diffInfo);
+			elementTasks.add(new ElementComparisonTask(baseElement, matchingComparisonElementIterator.next(),
+					diffInfo));
+		}
+		ForkJoinTask.invokeAll(elementTasks);
+		double elementChangeRateSum = 0;
+		for (final ElementComparisonTask elementTask : elementTasks) {
+			elementChangeRateSum += elementTask.join();
 		}
 		return elementChangeRateSum;
 	}
 
-	protected void handleRemovedElements(final List<ELEMENT_TYPE> baseElements,
-										 final List<ELEMENT_TYPE> comparisonElements, final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo) {
-		final List<ELEMENT_TYPE> removedElements = getRemovedElements(baseElements, comparisonElements);
-		setRemovedDiffInfo(removedElements, diffInfo);
+	/**
+	 * Counts a changed element, also when elements are compared in parallel.
+	 */
+	protected void addChangedElement(final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo) {
+		synchronized (diffInfo) {
+			diffInfo.setChanged(diffInfo.getChanged() + 1);
+		}
 	}
 
 	private List<ADDED_ELEMENT_TYPE> getAddedElementValues(final List<ELEMENT_TYPE> addedElements) {
@@ -90,14 +143,6 @@ public abstract class AbstractStructureComparator<ELEMENT_TYPE, ADDED_ELEMENT_TY
 		return addedElementNames;
 	}
 
-	protected List<ELEMENT_TYPE> getAddedElements(final List<ELEMENT_TYPE> baseElements, final List<ELEMENT_TYPE> comparisonElements) {
-		return getRelativeComplement(baseElements, comparisonElements);
-	}
-
-	protected List<ELEMENT_TYPE> getRemovedElements(final List<ELEMENT_TYPE> baseElements, final List<ELEMENT_TYPE> comparisonElements) {
-		return getRelativeComplement(comparisonElements, baseElements);
-	}
-
 	protected void setAddedDiffInfo(final List<ELEMENT_TYPE> addedElements,
 			final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo) {
 		diffInfo.setAdded(addedElements.size());
@@ -110,15 +155,6 @@ public abstract class AbstractStructureComparator<ELEMENT_TYPE, ADDED_ELEMENT_TY
 		diffInfo.setRemovedElements(getRemovedElementValues(removedElements));
 	}
 
-	protected ELEMENT_TYPE getElementByIdentifier(final List<ELEMENT_TYPE> elements, final String identifier) {
-		for (final ELEMENT_TYPE element : elements) {
-			if (identifier.equals(getElementIdentifier(element))) {
-				return element;
-			}
-		}
-		return null;
-	}
-
 	protected double calculateChangeRate(final int numberOfBaseElements, final int numberOfAddedElements,
 			final int numberOfRemovedElements,
 			final double childChangeRateSum) {
@@ -144,19 +180,81 @@ public abstract class AbstractStructureComparator<ELEMENT_TYPE, ADDED_ELEMENT_TY
 	}
 
 	/**
-	 * Returns all elements of ADDED_ELEMENT_TYPE which aren't in elements B. --> (ADDED_ELEMENT_TYPE \ B) = {x is element of ADDED_ELEMENT_TYPE | x is not element of B}
+	 * Matches the base and comparison elements by their identifiers, with one hash index per side, such that the
+	 * identifier of each element is only calculated once.
 	 */
-	private List<ELEMENT_TYPE> getRelativeComplement(final List<ELEMENT_TYPE> elementsA, final List<ELEMENT_TYPE> elementsB) {
-		final List<ELEMENT_TYPE> relativeComplement = new LinkedList<ELEMENT_TYPE>();
-
-		for (final ELEMENT_TYPE elementA : elementsA) {
-			final ELEMENT_TYPE elementB = getElementByIdentifier(elementsB,
-					getElementIdentifier(elementA));
-			if (elementB == null) {
-				relativeComplement.add(elementA);
+	private class ElementMatching {
+
+		/**
+		 * Base elements without comparison element, in the order of the base elements.
+		 */
+		private final List<ELEMENT_TYPE> addedElements = new ArrayList<ELEMENT_TYPE>();
+
+		/**
+		 * Comparison elements without base element, in the order of the comparison elements.
+		 */
+		private final List<ELEMENT_TYPE> removedElements = new ArrayList<ELEMENT_TYPE>();
+
+		/**
+		 * The matching comparison element (or null) for each base element.
+		 */
+		private final List<ELEMENT_TYPE> matchingComparisonElements;
+
+		private ElementMatching(final List<ELEMENT_TYPE> baseElements, final List<ELEMENT_TYPE> comparisonElements) {
+			final List<String> comparisonIdentifiers = new ArrayList<String>(comparisonElements.size());
+			final Map<String, ELEMENT_TYPE> comparisonElementsByIdentifier = new HashMap<String, ELEMENT_TYPE>();
+			for (final ELEMENT_TYPE comparisonElement : comparisonElements) {
+				final String identifier = getElementIdentifier(comparisonElement);
+				comparisonIdentifiers.add(identifier);
+				// the first element with the same identifier matches
+				if (!comparisonElementsByIdentifier.containsKey(identifier)) {
+					comparisonElementsByIdentifier.put(identifier, comparisonElement);
+				}
+			}
+
+			final Set<String> baseIdentifiers = new HashSet<String>();
+			matchingComparisonElements = new ArrayList<ELEMENT_TYPE>(baseElements.size());
+			for (final ELEMENT_TYPE baseElement : baseElements) {
+				final String identifier = getElementIdentifier(baseElement);
+				if (identifier == null) {
+					throw new IllegalArgumentException("Base element without identifier can not be compared.");
+				}
+				baseIdentifiers.add(identifier);
+				final ELEMENT_TYPE comparisonElement = comparisonElementsByIdentifier.get(identifier);
+				if (comparisonElement == null) {
+					addedElements.add(baseElement);
+				}
+				matchingComparisonElements.add(comparisonElement);
+			}
+			final Iterator<String> comparisonIdentifierIterator = comparisonIdentifiers.iterator();
+			for (final ELEMENT_TYPE comparisonElement : comparisonElements) {
+				if (!baseIdentifiers.contains(comparisonIdentifierIterator.next())) {
+					removedElements.add(comparisonElement);
+				}
 			}
 		}
 
-		return relativeComplement;
+	}
+
+	private class ElementComparisonTask extends RecursiveTask<Double> {
+
+		private final ELEMENT_TYPE baseElement;
+
+		private final ELEMENT_TYPE comparisonElement;
+
+		private final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo;
+
+		private ElementComparisonTask(final ELEMENT_TYPE baseElement, final ELEMENT_TYPE comparisonElement,
+				final StructureDiffInfo<ADDED_ELEMENT_TYPE, REMOVED_ELEMENT_TYPE> diffInfo) {
+			this.baseElement = baseElement;
+			this.comparisonElement = comparisonElement;
+			this.diffInfo = diffInfo;
+		}
+
+		@Override
+		protected Double compute() {
+			return compareElementAndWrite(baseElement, comparisonElement, diffInfo);
+		}
+
 	}
 }
@@ -17,14 +17,27 @@
 
 package org.scenarioo.business.diffViewer.comparator;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.MDC;
 import org.scenarioo.model.configuration.ComparisonConfiguration;
 import org.scenarioo.model.diffViewer.BuildDiffInfo;
+import org.scenarioo.utils.ImportIoThrottle;
+import org.scenarioo.utils.ThreadLogAppender;
 
 /**
  * Comparison results are persisted in a xml file.
+ *
+ * The features are compared one after the other, their scenarios and steps in parallel by a fork join pool. The
+ * configured number of threads (by default one per processor) is shared by all comparisons running at the same time.
  */
 public class BuildComparator extends AbstractComparator {
 
+	private static final AtomicInteger runningComparisons = new AtomicInteger();
+
 	private FeatureComparator featureComparator = new FeatureComparator(baseBranchName, baseBuildName,
 			comparisonConfiguration);
 
@@ -34,11 +47,71 @@ public class BuildComparator extends AbstractComparator {
 	}
 
 	public BuildDiffInfo compareAndWrite() {
-		final BuildDiffInfo buildDiffInfo = featureComparator.compare();
+		final int comparisonsRunning = runningComparisons.incrementAndGet();
+		final BuildDiffInfo buildDiffInfo;
+		try {
+			buildDiffInfo = compare(getComparisonParallelism(getComparisonThreadBudget(), comparisonsRunning));
+		} finally {
+			runningComparisons.decrementAndGet();
+		}
 
 		diffWriter.saveBuildDiffInfo(buildDiffInfo);
 
 		return buildDiffInfo;
 	}
 
+	private BuildDiffInfo compare(final int parallelism) {
+		final ForkJoinPool pool = new ForkJoinPool(parallelism, new ComparisonWorkerThreadFactory(), null, false);
+		try {
+			return pool.invoke(new RecursiveTask<BuildDiffInfo>() {
+				@Override
+				protected BuildDiffInfo compute() {
+					return featureComparator.compare();
+				}
+			});
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private int getComparisonThreadBudget() {
+		final int configuredThreads = configurationRepository.getConfiguration().getThreadsPerBuildComparison();
+		return configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Comparisons started while others are running get their share of the thread budget, but at least one thread.
+	 */
+	static int getComparisonParallelism(final int threadBudget, final int comparisonsRunning) {
+		return Math.max(1, threadBudget / Math.max(1, comparisonsRunning));
+	}
+
+	/**
+	 * Creates the worker threads for comparing a build, such that their logs are written to the comparison log as well
+	 * and their file I/O is throttled like the I/O of the thread starting the comparison.
+	 */
+	private static class ComparisonWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+		private final Object logIdentifier = MDC.get(ThreadLogAppender.MDC_IDENTIFIER_KEY);
+
+		private final boolean ioThrottled = ImportIoThrottle.INSTANCE.isCurrentThreadThrottled();
+
+		@Override
+		public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+			return new ForkJoinWorkerThread(pool) {
+				@Override
+				protected void onStart() {
+					super.onStart();
+					if (logIdentifier != null) {
+						MDC.put(ThreadLogAppender.MDC_IDENTIFIER_KEY, logIdentifier);
+					}
+					if (ioThrottled) {
+						ImportIoThrottle.INSTANCE.throttleCurrentThread();
+					}
+				}
+			};
+		}
+
+	}
+
 }
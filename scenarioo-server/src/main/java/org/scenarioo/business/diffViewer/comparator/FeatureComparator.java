@@ -68,7 +68,7 @@ public class FeatureComparator extends AbstractStructureComparator<Feature, Stri
 			diffWriter.saveFeatureDiffInfo(featureDiffInfo);
 
 			if (featureDiffInfo.hasChanges()) {
-				diffInfo.setChanged(diffInfo.getChanged() + 1);
+				addChangedElement(diffInfo);
 			}
 			return featureDiffInfo.getChangeRate();
 		}
@@ -0,0 +1,178 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.diffViewer.comparator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Compares two screenshots inside the JVM with the same result as
+ * <code>gm compare -metric MAE -highlight-style Tint -highlight-color #ffb400</code>, without starting a process per
+ * screenshot.
+ *
+ * The comparison screenshot is the reference: the difference is calculated over its size, a base screenshot of a
+ * different size is extended by repeating its edge pixels (like GraphicsMagick does). The change rate is the square
+ * root of the normalized mean absolute error of all channels (including alpha if the reference has alpha) in percent.
+ * The diff screenshot is the reference with the different pixels tinted in the highlight color.
+ */
+public class JavaImageComparator {
+
+	private static final int HIGHLIGHT_COLOR_RED = 0xff;
+	private static final int HIGHLIGHT_COLOR_GREEN = 0xb4;
+	private static final int HIGHLIGHT_COLOR_BLUE = 0x00;
+
+	private static final double MAX_CHANNEL_VALUE = 255.0;
+
+	/**
+	 * @return the change rate in percent, 0.0 if the screenshots are equal (no diff screenshot is written then).
+	 * @throws IOException
+	 *             if a screenshot can not be read or the diff screenshot can not be written.
+	 */
+	public double compareScreenshots(final File baseScreenshot, final File comparisonScreenshot,
+			final File diffScreenshot) throws IOException {
+		BufferedImage reference = readImage(comparisonScreenshot);
+		BufferedImage compared = readImage(baseScreenshot);
+
+		int width = reference.getWidth();
+		int height = reference.getHeight();
+		int comparedWidth = compared.getWidth();
+		int comparedHeight = compared.getHeight();
+		boolean hasAlpha = reference.getColorModel().hasAlpha();
+		int[] referencePixels = getArgbPixels(reference);
+		int[] comparedPixels = getArgbPixels(compared);
+		int[] diffPixels = null;
+
+		long sumOfDifferences = 0;
+		for (int y = 0; y < height; y++) {
+			int referenceRowStart = y * width;
+			int comparedRowStart = Math.min(y, comparedHeight - 1) * comparedWidth;
+			for (int x = 0; x < width; x++) {
+				int referencePixel = referencePixels[referenceRowStart + x];
+				int comparedPixel = comparedPixels[comparedRowStart + Math.min(x, comparedWidth - 1)];
+				if (referencePixel == comparedPixel) {
+					continue;
+				}
+				int difference = Math.abs(((referencePixel >> 16) & 0xff) - ((comparedPixel >> 16) & 0xff))
+						+ Math.abs(((referencePixel >> 8) & 0xff) - ((comparedPixel >> 8) & 0xff))
+						+ Math.abs((referencePixel & 0xff) - (comparedPixel & 0xff));
+				if (hasAlpha) {
+					difference += Math.abs((referencePixel >>> 24) - (comparedPixel >>> 24));
+				}
+				if (difference == 0) {
+					continue;
+				}
+				sumOfDifferences += difference;
+				if (diffPixels == null) {
+					diffPixels = referencePixels.clone();
+				}
+				diffPixels[referenceRowStart + x] = tint(referencePixel);
+			}
+		}
+
+		if (sumOfDifferences == 0) {
+			diffScreenshot.delete();
+			return 0.0;
+		}
+
+		writeImage(diffPixels, width, height, hasAlpha, diffScreenshot);
+		int channels = hasAlpha ? 4 : 3;
+		double meanAbsoluteError = sumOfDifferences / (channels * MAX_CHANNEL_VALUE * width * height);
+		return Math.sqrt(meanAbsoluteError) * 100;
+	}
+
+	private BufferedImage readImage(final File file) throws IOException {
+		BufferedImage image = ImageIO.read(file);
+		if (image == null) {
+			throw new IOException("Unsupported image format of " + file.getAbsolutePath());
+		}
+		return image;
+	}
+
+	/**
+	 * @return the pixels as non-premultiplied ARGB values row by row, directly from the raster data for the image
+	 *         types read from usual PNG screenshots. The returned array must not be changed.
+	 */
+	private int[] getArgbPixels(final BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int numberOfPixels = width * height;
+		switch (image.getType()) {
+		case BufferedImage.TYPE_INT_ARGB: {
+			int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			if (data.length == numberOfPixels) {
+				return data;
+			}
+			break;
+		}
+		case BufferedImage.TYPE_4BYTE_ABGR: {
+			byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			if (data.length == numberOfPixels * 4) {
+				int[] pixels = new int[numberOfPixels];
+				for (int i = 0, j = 0; i < numberOfPixels; i++, j += 4) {
+					pixels[i] = ((data[j] & 0xff) << 24) | ((data[j + 3] & 0xff) << 16)
+							| ((data[j + 2] & 0xff) << 8) | (data[j + 1] & 0xff);
+				}
+				return pixels;
+			}
+			break;
+		}
+		case BufferedImage.TYPE_3BYTE_BGR: {
+			byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			if (data.length == numberOfPixels * 3) {
+				int[] pixels = new int[numberOfPixels];
+				for (int i = 0, j = 0; i < numberOfPixels; i++, j += 3) {
+					pixels[i] = 0xff000000 | ((data[j + 2] & 0xff) << 16) | ((data[j + 1] & 0xff) << 8)
+							| (data[j] & 0xff);
+				}
+				return pixels;
+			}
+			break;
+		}
+		default:
+			break;
+		}
+		return image.getRGB(0, 0, width, height, null, 0, width);
+	}
+
+	/**
+	 * Blends the pixel half with the highlight color, keeping its alpha.
+	 */
+	private int tint(final int pixel) {
+		int red = (((pixel >> 16) & 0xff) + HIGHLIGHT_COLOR_RED) / 2;
+		int green = (((pixel >> 8) & 0xff) + HIGHLIGHT_COLOR_GREEN) / 2;
+		int blue = ((pixel & 0xff) + HIGHLIGHT_COLOR_BLUE) / 2;
+		return (pixel & 0xff000000) | (red << 16) | (green << 8) | blue;
+	}
+
+	private void writeImage(final int[] pixels, final int width, final int height, final boolean hasAlpha,
+			final File file) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB
+				: BufferedImage.TYPE_INT_RGB);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(pixels, 0, data, 0, pixels.length);
+		if (!ImageIO.write(image, "png", file)) {
+			throw new IOException("No PNG writer available to write " + file.getAbsolutePath());
+		}
+	}
+
+}
@@ -34,6 +34,8 @@ import org.scenarioo.rest.base.BuildIdentifier;
 
 /**
  * Comparison results are persisted in a xml file.
+ *
+ * The scenarios of a feature are compared in parallel when running in the fork join pool of a build comparison.
  */
 public class ScenarioComparator extends AbstractStructureComparator<Scenario, String, ScenarioSummary> {
 
@@ -68,6 +70,11 @@ public class ScenarioComparator extends AbstractStructureComparator<Scenario, St
 		return featureDiffInfo;
 	}
 
+	@Override
+	protected boolean isElementComparisonParallel() {
+		return true;
+	}
+
 	@Override
 	protected double compareElementAndWrite(final Scenario baseElement, final Scenario comparisonElement,
 											final StructureDiffInfo<String, ScenarioSummary> diffInfo) {
@@ -80,7 +87,7 @@ public class ScenarioComparator extends AbstractStructureComparator<Scenario, St
 			diffWriter.saveScenarioDiffInfo(scenarioDiffInfo, baseFeatureName);
 
 			if (scenarioDiffInfo.hasChanges()) {
-				diffInfo.setChanged(diffInfo.getChanged() + 1);
+				addChangedElement(diffInfo);
 			}
 			return scenarioDiffInfo.getChangeRate();
 		}
@@ -26,43 +26,47 @@ import org.scenarioo.dao.diffViewer.DiffReader;
 import org.scenarioo.dao.diffViewer.GraphicsMagickConfiguration;
 import org.scenarioo.dao.diffViewer.impl.DiffReaderXmlImpl;
 import org.scenarioo.model.configuration.ComparisonConfiguration;
+import org.scenarioo.model.configuration.Configuration;
 import org.scenarioo.model.docu.aggregates.steps.StepLink;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Compares two Screenshots using GraphicsMagick
+ * Compares two Screenshots using GraphicsMagick (a process per comparison or long running batch processes), or inside
+ * the JVM if configured (see {@link JavaImageComparator}).
+ *
+ * Screenshots can be compared by several threads at the same time, with a GraphicsMagick process per comparison each
+ * comparison gets its own command and console output (see {@link GraphicsMagickCommandFactory}).
  */
 public class ScreenshotComparator extends AbstractComparator {
 
 	private static final Logger LOGGER = Logger.getLogger(ScreenshotComparator.class);
 	private static final int SCREENSHOT_DEFAULT_CHANGE_RATE = 0;
+	private static final String HIGHLIGHT_STYLE = "Tint";
+	private static final String HIGHLIGHT_COLOR = "#ffb400";
 	private DiffReader diffReader;
-	private ArrayListErrorConsumer gmConsoleErrorConsumer;
-	private ArrayListOutputConsumer gmConsoleOutputConsumer;
-	private CompareCmd gmConsole;
+	private GraphicsMagickCommandFactory gmCommandFactory = new GraphicsMagickCommandFactory();
+	private final JavaImageComparator javaImageComparator = new JavaImageComparator();
 
 	public ScreenshotComparator(final String baseBranchName, final String baseBuildName,
 			final ComparisonConfiguration comparisonConfiguration) {
 		super(baseBranchName, baseBuildName, comparisonConfiguration);
-		gmConsole = new CompareCmd(true);
-		gmConsoleErrorConsumer = new ArrayListErrorConsumer();
-		gmConsoleOutputConsumer = new ArrayListOutputConsumer();
-		gmConsole.setErrorConsumer(gmConsoleErrorConsumer);
-		gmConsole.setOutputConsumer(gmConsoleOutputConsumer);
 		diffReader = new DiffReaderXmlImpl();
 	}
 
 	public double compare(final String baseFeatureName, final String baseScenarioName, final StepLink baseStepLink,
 			final String comparisonScreenshotName) {
-		if(!isGraphicsMagickAvailable()) {
+		if(!isJavaImageComparisonConfigured() && !isGraphicsMagickAvailable()) {
 			return 0.0;
 		}
 
-		final String baseScreenshotName = THREE_DIGIT_NUM_FORMAT.format(baseStepLink.getStepIndex())
+		final String baseScreenshotName = THREE_DIGIT_NUM_FORMAT.get().format(baseStepLink.getStepIndex())
 				+ SCREENSHOT_FILE_EXTENSION;
 		final String diffScreenshotName = baseScreenshotName;
 
@@ -94,6 +98,16 @@ public class ScreenshotComparator extends AbstractComparator {
 		return GraphicsMagickConfiguration.isAvailable();
 	}
 
+	boolean isJavaImageComparisonConfigured() {
+		return Configuration.SCREENSHOT_COMPARISON_ENGINE_JAVA.equals(configurationRepository.getConfiguration()
+				.getScreenshotComparisonEngine());
+	}
+
+	boolean isGraphicsMagickBatchConfigured() {
+		return Configuration.SCREENSHOT_COMPARISON_ENGINE_GRAPHICS_MAGICK_BATCH.equals(configurationRepository
+				.getConfiguration().getScreenshotComparisonEngine());
+	}
+
 	/**
 	 * A Diff Screenshoot will be created and stored in the directory of the diffScreenshot path.
 	 * This directory, and all the parent directories, will be created if they do not exist.
@@ -103,14 +117,23 @@ public class ScreenshotComparator extends AbstractComparator {
 		if (diffScreenshot.getParentFile() != null) {
 			diffScreenshot.getParentFile().mkdirs();
 		}
-		final IMOperation gmOperation = new IMOperation();
-		gmOperation.metric("MAE");
-		gmOperation.addImage(comparisonScreenshot.getPath());
-		gmOperation.addImage(baseScreenshot.getPath());
-		gmOperation.addRawArgs("-highlight-style", "Tint");
-		gmOperation.addRawArgs("-highlight-color", "#ffb400");
-		gmOperation.addRawArgs("-file", diffScreenshot.getPath());
-		final double difference = runGraphicsMagickOperation(gmOperation);
+		if (isJavaImageComparisonConfigured()) {
+			return compareScreenshotsInJava(baseScreenshot, comparisonScreenshot, diffScreenshot);
+		}
+		final double difference;
+		if (isGraphicsMagickBatchConfigured() && canBeQuotedInBatchCommand(baseScreenshot, comparisonScreenshot,
+				diffScreenshot)) {
+			difference = runGraphicsMagickBatchCommand(baseScreenshot, comparisonScreenshot, diffScreenshot);
+		} else {
+			final IMOperation gmOperation = new IMOperation();
+			gmOperation.metric("MAE");
+			gmOperation.addImage(comparisonScreenshot.getPath());
+			gmOperation.addImage(baseScreenshot.getPath());
+			gmOperation.addRawArgs("-highlight-style", HIGHLIGHT_STYLE);
+			gmOperation.addRawArgs("-highlight-color", HIGHLIGHT_COLOR);
+			gmOperation.addRawArgs("-file", diffScreenshot.getPath());
+			difference = runGraphicsMagickOperation(gmOperation);
+		}
 		if (difference == 0.0) {
 			diffScreenshot.delete();
 		}
@@ -118,12 +141,62 @@ public class ScreenshotComparator extends AbstractComparator {
 	}
 
 	/**
-	 * The GraphicsMagick command will be initiated by the IM4Java framework
+	 * The same compare command as the one of {@link #runGraphicsMagickOperation(IMOperation)}, but executed by one of
+	 * the running GraphicsMagick batch processes.
+	 */
+	private double runGraphicsMagickBatchCommand(final File baseScreenshot, final File comparisonScreenshot,
+			final File diffScreenshot) {
+		final String commandLine = "compare -metric MAE " + quote(comparisonScreenshot) + " " + quote(baseScreenshot)
+				+ " -highlight-style " + HIGHLIGHT_STYLE + " -highlight-color \"" + HIGHLIGHT_COLOR + "\" -file "
+				+ quote(diffScreenshot);
+		try {
+			return getRmaeValueFromOutput(GraphicsMagickConfiguration.getBatchSessionPool().execute(commandLine));
+		} catch (final IOException | TimeoutException | RuntimeException e) {
+			LOGGER.warn("Graphics Magick operation failed. Default screenshot changerate '"
+					+ SCREENSHOT_DEFAULT_CHANGE_RATE + "' gets returned.");
+			LOGGER.warn("gmoperation:" + commandLine);
+			LOGGER.warn("EXCEPTION: ", e);
+			return SCREENSHOT_DEFAULT_CHANGE_RATE;
+		}
+	}
+
+	private boolean canBeQuotedInBatchCommand(final File... files) {
+		for (final File file : files) {
+			if (file.getPath().contains("\"") || file.getPath().contains("\n")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String quote(final File file) {
+		return "\"" + file.getPath() + "\"";
+	}
+
+	private double compareScreenshotsInJava(final File baseScreenshot, final File comparisonScreenshot,
+			final File diffScreenshot) {
+		try {
+			return javaImageComparator.compareScreenshots(baseScreenshot, comparisonScreenshot, diffScreenshot);
+		} catch (final IOException e) {
+			LOGGER.warn("Screenshot comparison failed. Default screenshot changerate '"
+					+ SCREENSHOT_DEFAULT_CHANGE_RATE + "' gets returned.", e);
+			return SCREENSHOT_DEFAULT_CHANGE_RATE;
+		}
+	}
+
+	/**
+	 * The GraphicsMagick command will be initiated by the IM4Java framework, with a new command and console output for
+	 * each operation.
 	 */
 	private double runGraphicsMagickOperation(final IMOperation gmOperation) {
+		final CompareCmd gmConsole = gmCommandFactory.createCompareCmd();
+		final ArrayListOutputConsumer gmConsoleOutputConsumer = gmCommandFactory.createOutputConsumer();
+		final ArrayListErrorConsumer gmConsoleErrorConsumer = gmCommandFactory.createErrorConsumer();
+		gmConsole.setOutputConsumer(gmConsoleOutputConsumer);
+		gmConsole.setErrorConsumer(gmConsoleErrorConsumer);
 		try {
 			gmConsole.run(gmOperation);
-			return getRmaeValueFromOutput();
+			return getRmaeValueFromOutput(gmConsoleOutputConsumer.getOutput());
 		} catch (final Exception e) {
 			LOGGER.warn("Graphics Magick operation failed. Default screenshot changerate '"
 					+ SCREENSHOT_DEFAULT_CHANGE_RATE + "' gets returned.");
@@ -134,17 +207,13 @@ public class ScreenshotComparator extends AbstractComparator {
 				LOGGER.warn(errorMessage);
 			}
 			return SCREENSHOT_DEFAULT_CHANGE_RATE;
-
-		} finally {
-			gmConsoleOutputConsumer.clear();
 		}
 	}
 
 	/**
-	 * Reads the result from the GraphicsMagick console and parses the difference value.
+	 * Reads the result from the GraphicsMagick console output and parses the difference value.
 	 */
-	double getRmaeValueFromOutput() {
-		final ArrayList<String> gmConsoleOutput = gmConsoleOutputConsumer.getOutput();
+	double getRmaeValueFromOutput(final List<String> gmConsoleOutput) {
 		String total = null;
 		for (final String line : gmConsoleOutput) {
 			if (line.contains("Total")) {
@@ -161,24 +230,35 @@ public class ScreenshotComparator extends AbstractComparator {
 		throw new RuntimeException("Cannot parse Graphics Magick console output");
 	}
 
-	public ArrayListOutputConsumer getCmdOutputConsumer() {
-		return gmConsoleOutputConsumer;
+	public GraphicsMagickCommandFactory getCommandFactory() {
+		return gmCommandFactory;
 	}
 
-	public void setCmdOutputConsumer(final ArrayListOutputConsumer cmdOutputConsumer) {
-		this.gmConsoleOutputConsumer = cmdOutputConsumer;
+	public void setCommandFactory(final GraphicsMagickCommandFactory commandFactory) {
+		this.gmCommandFactory = commandFactory;
 	}
 
-	public CompareCmd getCmd() {
-		return gmConsole;
+	public static Logger getLogger() {
+		return LOGGER;
 	}
 
-	public void setCmd(final CompareCmd cmd) {
-		this.gmConsole = cmd;
-	}
+	/**
+	 * Creates the GraphicsMagick command and the consumers of its console output for one comparison.
+	 */
+	public static class GraphicsMagickCommandFactory {
+
+		public CompareCmd createCompareCmd() {
+			return new CompareCmd(true);
+		}
+
+		public ArrayListOutputConsumer createOutputConsumer() {
+			return new ArrayListOutputConsumer();
+		}
+
+		public ArrayListErrorConsumer createErrorConsumer() {
+			return new ArrayListErrorConsumer();
+		}
 
-	public static Logger getLogger() {
-		return LOGGER;
 	}
 
 }
@@ -17,12 +17,18 @@
 
 package org.scenarioo.business.diffViewer.comparator;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.scenarioo.api.exception.ResourceNotFoundException;
 import org.scenarioo.business.aggregator.StepsAndPagesAggregator;
+import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
+import org.scenarioo.dao.aggregates.ScreenshotFingerprintsFile.ScreenshotFingerprint;
 import org.scenarioo.model.configuration.ComparisonConfiguration;
 import org.scenarioo.model.diffViewer.ScenarioDiffInfo;
 import org.scenarioo.model.diffViewer.StepDiffInfo;
@@ -31,30 +37,57 @@ import org.scenarioo.model.diffViewer.StructureDiffInfo;
 import org.scenarioo.model.docu.aggregates.steps.StepLink;
 import org.scenarioo.model.docu.entities.Step;
 import org.scenarioo.model.docu.entities.StepDescription;
+import org.scenarioo.rest.base.BuildIdentifier;
+import org.scenarioo.rest.base.ScenarioIdentifier;
 
 /**
  * Comparison results are persisted in a xml file.
+ *
+ * Scenarios can be compared at the same time, the steps of a scenario are compared in parallel when running in the
+ * fork join pool of a build comparison.
+ *
+ * Screenshots with equal fingerprints (calculated when the builds were imported) are not compared, they are unchanged.
  */
 public class StepComparator extends AbstractStructureComparator<StepLink, Integer, StepInfo> {
 
 	private static final Logger LOGGER = Logger.getLogger(StepComparator.class);
 
-	private ScreenshotComparator screenshotComparator = new ScreenshotComparator(baseBranchName, baseBuildName,
-			comparisonConfiguration);
+	private ScreenshotComparator screenshotComparator;
 	private String baseFeatureName;
 	private String baseScenarioName;
 	private List<Step> comparisonSteps;
-	private StepsAndPagesAggregator stepAndPagesAggregator = new StepsAndPagesAggregator(null, null);
+	private StepsAndPagesAggregator stepAndPagesAggregator;
+	private ScenarioDocuAggregationDao aggregatedDataDao;
+	private Map<String, ScreenshotFingerprint> baseScreenshotFingerprints;
+	private Map<String, ScreenshotFingerprint> comparisonScreenshotFingerprints;
 
 	public StepComparator(final String baseBranchName, final String baseBuildName,
 			final ComparisonConfiguration comparisonConfiguration) {
 		super(baseBranchName, baseBuildName, comparisonConfiguration);
+		screenshotComparator = new ScreenshotComparator(baseBranchName, baseBuildName, comparisonConfiguration);
+		stepAndPagesAggregator = new StepsAndPagesAggregator(null, null);
+		aggregatedDataDao = new ScenarioDocuAggregationDao(configurationRepository.getDocumentationDataDirectory());
 	}
 
-	public ScenarioDiffInfo compare(final String baseFeatureName, final String baseScenarioName) {
+	/**
+	 * Comparator for the steps of one scenario, sharing the reader, writer and screenshot comparator of the given
+	 * comparator.
+	 */
+	private StepComparator(final StepComparator stepComparator, final String baseFeatureName,
+			final String baseScenarioName) {
+		super(stepComparator);
+		this.screenshotComparator = stepComparator.screenshotComparator;
+		this.stepAndPagesAggregator = stepComparator.stepAndPagesAggregator;
+		this.aggregatedDataDao = stepComparator.aggregatedDataDao;
 		this.baseFeatureName = baseFeatureName;
 		this.baseScenarioName = baseScenarioName;
+	}
 
+	public ScenarioDiffInfo compare(final String baseFeatureName, final String baseScenarioName) {
+		return new StepComparator(this, baseFeatureName, baseScenarioName).compareSteps();
+	}
+
+	private ScenarioDiffInfo compareSteps() {
 		final List<Step> baseSteps = loadSteps(baseBranchName, baseBuildName);
 		this.comparisonSteps = loadSteps(comparisonConfiguration.getComparisonBranchName(),
 				comparisonConfiguration.getComparisonBuildName());
@@ -64,6 +97,10 @@ public class StepComparator extends AbstractStructureComparator<StepLink, Intege
 		final List<StepLink> comparisonStepLinks = stepAndPagesAggregator.calculateStepLinks(comparisonSteps,
 				baseFeatureName, baseScenarioName);
 
+		baseScreenshotFingerprints = loadScreenshotFingerprints(baseBranchName, baseBuildName);
+		comparisonScreenshotFingerprints = loadScreenshotFingerprints(
+				comparisonConfiguration.getComparisonBranchName(), comparisonConfiguration.getComparisonBuildName());
+
 		final ScenarioDiffInfo scenarioDiffInfo = new ScenarioDiffInfo(baseScenarioName);
 
 		calculateDiffInfo(baseStepLinks, comparisonStepLinks, scenarioDiffInfo);
@@ -74,30 +111,80 @@ public class StepComparator extends AbstractStructureComparator<StepLink, Intege
 		return scenarioDiffInfo;
 	}
 
+	@Override
+	protected boolean isElementComparisonParallel() {
+		return true;
+	}
+
 	@Override
 	protected double compareElementAndWrite(final StepLink baseElement, final StepLink comparisonElement,
 											final StructureDiffInfo<Integer, StepInfo> diffInfo) {
 		if (comparisonElement == null) {
 			return 0;
 		} else {
-			final String comparisonScreenshotName = THREE_DIGIT_NUM_FORMAT
+			final String comparisonScreenshotName = THREE_DIGIT_NUM_FORMAT.get()
 					.format(comparisonElement.getStepIndex())
 					+ SCREENSHOT_FILE_EXTENSION;
 
-			final double changeRate = screenshotComparator.compare(baseFeatureName, baseScenarioName,
-					baseElement, comparisonScreenshotName);
+			final double changeRate;
+			if (haveIdenticalScreenshots(baseElement, comparisonScreenshotName)) {
+				changeRate = 0;
+			} else {
+				changeRate = screenshotComparator.compare(baseFeatureName, baseScenarioName, baseElement,
+						comparisonScreenshotName);
+			}
 
 			final StepDiffInfo stepDiffInfo = getStepDiffInfo(baseElement, comparisonScreenshotName, changeRate);
 
 			diffWriter.saveStepDiffInfo(baseFeatureName, baseScenarioName, stepDiffInfo);
 
 			if (stepDiffInfo.hasChanges()) {
-				diffInfo.setChanged(diffInfo.getChanged() + 1);
+				addChangedElement(diffInfo);
 			}
 			return stepDiffInfo.getChangeRate();
 		}
 	}
 
+	/**
+	 * Decides by the fingerprints of the screenshots whether they are identical, without reading them.
+	 */
+	private boolean haveIdenticalScreenshots(final StepLink baseStepLink, final String comparisonScreenshotName) {
+		final String baseScreenshotName = THREE_DIGIT_NUM_FORMAT.get().format(baseStepLink.getStepIndex())
+				+ SCREENSHOT_FILE_EXTENSION;
+		final ScreenshotFingerprint baseFingerprint = baseScreenshotFingerprints.get(baseScreenshotName);
+		final ScreenshotFingerprint comparisonFingerprint = comparisonScreenshotFingerprints
+				.get(comparisonScreenshotName);
+		if (baseFingerprint == null || comparisonFingerprint == null) {
+			return false;
+		}
+		final File baseScreenshot = docuReader.getScreenshotFile(baseBranchName, baseBuildName, baseFeatureName,
+				baseScenarioName, baseScreenshotName);
+		final File comparisonScreenshot = docuReader.getScreenshotFile(
+				comparisonConfiguration.getComparisonBranchName(), comparisonConfiguration.getComparisonBuildName(),
+				baseFeatureName, baseScenarioName, comparisonScreenshotName);
+		if (isSameFile(baseScreenshot, comparisonScreenshot)) {
+			// deduplicated screenshot
+			return true;
+		}
+		return baseFingerprint.isUpToDate(baseScreenshot) && comparisonFingerprint.isUpToDate(comparisonScreenshot)
+				&& baseFingerprint.hasSameContent(comparisonFingerprint);
+	}
+
+	private boolean isSameFile(final File baseScreenshot, final File comparisonScreenshot) {
+		try {
+			return Files.isSameFile(baseScreenshot.toPath(), comparisonScreenshot.toPath());
+		} catch (final IOException e) {
+			return false;
+		}
+	}
+
+	private Map<String, ScreenshotFingerprint> loadScreenshotFingerprints(final String branchName,
+			final String buildName) {
+		return aggregatedDataDao.getScreenshotFingerprints(
+				new ScenarioIdentifier(new BuildIdentifier(branchName, buildName), baseFeatureName, baseScenarioName))
+				.read();
+	}
+
 	private List<StepInfo> getStepInfos(final List<StepLink> stepLinks) {
 		final List<StepInfo> stepInfos = new LinkedList<StepInfo>();
 		for (final StepLink stepLink : stepLinks) {
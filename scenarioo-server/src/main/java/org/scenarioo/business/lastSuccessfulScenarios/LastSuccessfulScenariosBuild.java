@@ -1,6 +1,8 @@
 package org.scenarioo.business.lastSuccessfulScenarios;
 
 import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 import org.scenarioo.business.builds.AvailableBuildsList;
@@ -27,6 +29,12 @@ public class LastSuccessfulScenariosBuild {
 	private final ConfigurationRepository configurationRepository = RepositoryLocator.INSTANCE
 			.getConfigurationRepository();
 	
+	/**
+	 * Builds of the same branch might be imported concurrently, but the "last successful scenarios" build of a branch
+	 * must only be updated by one of them at a time.
+	 */
+	private final ConcurrentMap<String, Object> branchLocks = new ConcurrentHashMap<String, Object>();
+	
 	public void updateLastSuccessfulScenarioBuild(final BuildImportSummary summary, final BuildImporter buildImporter,
 			final AvailableBuildsList availableBuilds) {
 		Preconditions.checkNotNull(summary, "summary must not be null");
@@ -52,10 +60,20 @@ public class LastSuccessfulScenariosBuild {
 			return;
 		}
 		
-		update(summary);
+		boolean changed = update(summary);
 		
-		buildImporter.submitBuildForReimport(availableBuilds, new BuildIdentifier(summary.getIdentifier()
-				.getBranchName(), LastSuccessfulScenariosBuildUpdater.LAST_SUCCESSFUL_SCENARIO_BUILD_NAME));
+		BuildIdentifier lastSuccessfulScenariosBuildIdentifier = new BuildIdentifier(summary.getIdentifier()
+				.getBranchName(), LastSuccessfulScenariosBuildUpdater.LAST_SUCCESSFUL_SCENARIO_BUILD_NAME);
+		if (changed || !isSuccessfullyImported(buildImporter, lastSuccessfulScenariosBuildIdentifier)) {
+			buildImporter.submitBuildForReimport(availableBuilds, lastSuccessfulScenariosBuildIdentifier);
+		} else {
+			LOGGER.info("Build \"last successful scenario\" is unchanged, it is not imported again.");
+		}
+	}
+	
+	private boolean isSuccessfullyImported(final BuildImporter buildImporter, final BuildIdentifier buildIdentifier) {
+		BuildImportSummary summary = buildImporter.getBuildImportSummaries().get(buildIdentifier);
+		return summary != null && BuildImportStatus.SUCCESS.equals(summary.getStatus());
 	}
 	
 	private LastSuccessfulScenariosBuildUpdater createLastSuccessfulScenariosBuildRepository(
@@ -64,13 +82,26 @@ public class LastSuccessfulScenariosBuild {
 		return new LastSuccessfulScenariosBuildUpdater(documentationDataDirectory, buildImportSummary);
 	}
 	
-	private void update(final BuildImportSummary buildImportSummary) {
+	/**
+	 * @return true if the "last successful scenarios" build has been changed.
+	 */
+	private boolean update(final BuildImportSummary buildImportSummary) {
 		LOGGER.info("Config value createLastSuccessfulScenarioBuild = true, starting update of build \"last successful scenario\".");
 		
 		LastSuccessfulScenariosBuildUpdater repository = createLastSuccessfulScenariosBuildRepository(buildImportSummary);
-		repository.enrichLastSuccessfulScenariosWithBuild();
+		boolean changed;
+		synchronized (getBranchLock(buildImportSummary.getIdentifier().getBranchName())) {
+			changed = repository.enrichLastSuccessfulScenariosWithBuild();
+		}
 		
 		LOGGER.info("Done updating build \"last successful scenario\".");
+		return changed;
+	}
+	
+	private Object getBranchLock(final String branchName) {
+		Object newLock = new Object();
+		Object existingLock = branchLocks.putIfAbsent(branchName, newLock);
+		return existingLock != null ? existingLock : newLock;
 	}
 	
 }
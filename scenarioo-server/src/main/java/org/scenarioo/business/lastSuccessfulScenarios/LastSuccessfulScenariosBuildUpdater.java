@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
@@ -13,9 +15,11 @@ import org.scenarioo.api.exception.ResourceNotFoundException;
 import org.scenarioo.dao.aggregates.LastSuccessfulScenariosIndexDao;
 import org.scenarioo.dao.aggregates.ScenarioDocuAggregationFiles;
 import org.scenarioo.dao.basic.FileSystemOperationsDao;
+import org.scenarioo.model.configuration.Configuration;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
 import org.scenarioo.model.docu.entities.*;
 import org.scenarioo.model.lastSuccessfulScenarios.LastSuccessfulScenariosIndex;
+import org.scenarioo.repository.RepositoryLocator;
 import org.scenarioo.rest.base.BuildIdentifier;
 import org.scenarioo.rest.base.ScenarioIdentifier;
 import org.scenarioo.utils.UrlEncoding;
@@ -24,6 +28,14 @@ import com.google.common.base.Preconditions;
 
 /**
  * This class has to be instantiated once for each build that is added to the "last successful scenarios" build.
+ *
+ * Only the scenarios that are newer in the added build are replaced, by copying the files of the added build or by
+ * linking them if screenshots are deduplicated (see {@link Configuration#isDeduplicateScreenshots()}). All other
+ * scenarios and features are not touched, such that the cached data of their last aggregation stays valid.
+ *
+ * Only updating the files is incremental: the changed "last successful scenarios" build is then imported again as a
+ * whole, all of its scenarios are aggregated again. Only the steps of the untouched scenarios are read from their steps
+ * cache (see {@link org.scenarioo.dao.aggregates.StepsCacheFile}) instead of from their step files.
  */
 public class LastSuccessfulScenariosBuildUpdater {
 
@@ -41,8 +53,18 @@ public class LastSuccessfulScenariosBuildUpdater {
 
 	private static final String FILE_NAME_FEATURE = "feature.xml";
 
+	private static final String FILE_NAME_BUILD = "build.xml";
+
+	private static final String TEMPORARY_DIRECTORY_SUFFIX = ".derived.tmp";
+
 	private final FileSystemOperationsDao fileSystemOperations = new FileSystemOperationsDao();
 
+	/**
+	 * Files are only shared between builds by hard links if this is configured by deduplicating screenshots.
+	 */
+	private final boolean linkFiles = RepositoryLocator.INSTANCE.getConfigurationRepository().getConfiguration()
+			.isDeduplicateScreenshots();
+
 	private final File documentationDataDirectory;
 	private final BuildImportSummary buildImportSummary;
 
@@ -54,6 +76,15 @@ public class LastSuccessfulScenariosBuildUpdater {
 
 	private final File importedBuildFolder;
 
+	/**
+	 * Feature directories in which scenarios have been added or replaced.
+	 */
+	private final Set<String> updatedFeatureDirectories = new HashSet<String>();
+
+	private int updatedScenarios = 0;
+
+	private boolean featuresOrScenariosRemoved = false;
+
 	public LastSuccessfulScenariosBuildUpdater(final File documentationDataDirectory,
 			final BuildImportSummary buildImportSummary) {
 		Preconditions.checkNotNull(buildImportSummary, "buildImportSummary must not be null");
@@ -73,7 +104,10 @@ public class LastSuccessfulScenariosBuildUpdater {
 		fileSystemOperations.deleteBuild(documentationDataDirectory, lastSuccessfulScenariosBuildIdentifier);
 	}
 
-	public void enrichLastSuccessfulScenariosWithBuild() {
+	/**
+	 * @return true if the "last successful scenarios" build has been changed and has to be imported again.
+	 */
+	public boolean enrichLastSuccessfulScenariosWithBuild() {
 		String branchName = buildImportSummary.getIdentifier().getBranchName();
 
 		LastSuccessfulScenariosIndexDao dao = new LastSuccessfulScenariosIndexDao(documentationDataDirectory,
@@ -81,7 +115,6 @@ public class LastSuccessfulScenariosBuildUpdater {
 		index = dao.loadLastSuccessfulScenariosIndex();
 
 		createLastSuccessfulBuildDirectoryIfItDoesNotExist(branchName);
-		createOrUpdateBuildXmlFile(branchName);
 
 		removeFeaturesAndScenariosThatDoNotExistAnymoreIfThisIsTheLatestBuild();
 
@@ -89,9 +122,18 @@ public class LastSuccessfulScenariosBuildUpdater {
 
 		copyFeatureXmlFilesWhereverNecessary();
 
+		boolean changed = featuresOrScenariosRemoved || !updatedFeatureDirectories.isEmpty();
+		if (changed || !new File(lastSuccessfulScenariosBuildFolder, FILE_NAME_BUILD).exists()) {
+			createOrUpdateBuildXmlFile(branchName);
+		}
+
 		index.setLatestImportedBuildDate(buildImportSummary.getBuildDescription().getDate());
 
 		dao.saveLastSuccessfulScenariosIndex(index);
+
+		LOGGER.info("Updated " + updatedScenarios + " scenarios in " + updatedFeatureDirectories.size()
+				+ " features of build \"last successful scenarios\".");
+		return changed;
 	}
 
 	private void removeFeaturesAndScenariosThatDoNotExistAnymoreIfThisIsTheLatestBuild() {
@@ -169,6 +211,7 @@ public class LastSuccessfulScenariosBuildUpdater {
 		}
 
 		index.removeFeature(UrlEncoding.decode(featureDirectory));
+		featuresOrScenariosRemoved = true;
 	}
 
 	private void removeScenarioFromLastSuccessfulScenarios(final File featureDirectoryFile,
@@ -182,6 +225,7 @@ public class LastSuccessfulScenariosBuildUpdater {
 		}
 
 		index.removeScenario(UrlEncoding.decode(featureDirectoryFile.getName()), UrlEncoding.decode(scenarioDirectory));
+		featuresOrScenariosRemoved = true;
 	}
 
 	private String[] getAllDirectoriesThatAreNotDerived(final File parentDirectory) {
@@ -223,6 +267,7 @@ public class LastSuccessfulScenariosBuildUpdater {
 				File destinationUsecaseFolder = new File(destinationBuildFolder, sourceDirectoryEntry);
 				if (!destinationUsecaseFolder.exists()) {
 					destinationUsecaseFolder.mkdirs();
+					updatedFeatureDirectories.add(sourceDirectoryEntry);
 					LOGGER.info("Created " + destinationUsecaseFolder);
 				}
 				copySuccessfulNewerScenarios(UrlEncoding.decode(sourceDirectoryEntry), sourceFile,
@@ -231,13 +276,14 @@ public class LastSuccessfulScenariosBuildUpdater {
 		}
 	}
 
+	/**
+	 * Only the features that got new scenarios from the imported build can get their description from it.
+	 */
 	private void copyFeatureXmlFilesWhereverNecessary() {
 		File sourceBuildFolder = getBuildFolder(documentationDataDirectory, buildImportSummary.getIdentifier());
 		File destinationBuildFolder = lastSuccessfulScenariosBuildFolder;
 
-		String[] featureDirectories = getAllDirectoriesThatAreNotDerived(destinationBuildFolder);
-
-		for (String featureDirectory : featureDirectories) {
+		for (String featureDirectory : updatedFeatureDirectories) {
 			copyFeatureXmlIfNecessary(sourceBuildFolder, destinationBuildFolder, featureDirectory);
 		}
 	}
@@ -292,6 +338,9 @@ public class LastSuccessfulScenariosBuildUpdater {
 
 		Date buildDate = buildImportSummary.getBuildDescription().getDate();
 		File[] scenarioFolders = sourceFile.listFiles();
+		if (scenarioFolders == null) {
+			return;
+		}
 
 		for (File scenarioFolder : scenarioFolders) {
 			if (!scenarioFolder.isDirectory() || scenarioFolder.getPath().contains(".derived")) {
@@ -300,42 +349,62 @@ public class LastSuccessfulScenariosBuildUpdater {
 
 			String scenarioName = UrlEncoding.decode(scenarioFolder.getName());
 
+			Date existingScenarioBuildDate = index.getScenarioBuildDate(featureName, scenarioName);
+			if (!isScenarioNewerThanExisting(existingScenarioBuildDate, buildDate)) {
+				continue;
+			}
+
 			ScenarioIdentifier scenarioIdentifier = new ScenarioIdentifier(buildImportSummary.getIdentifier(),
 					featureName, scenarioName);
 
-			Date existingScenarioBuildDate = index.getScenarioBuildDate(featureName, scenarioName);
-
-			if (isScenarioSuccessful(documentationDataDirectory, scenarioIdentifier)
-					&& isScenarioNewerThanExisting(existingScenarioBuildDate, buildDate)) {
-				copyDirectoryWithoutDerivedFilesAndDirectories(scenarioFolder, destinationUsecaseFolder);
-				index.setScenarioBuildDate(featureName, scenarioName, buildDate);
-				LOGGER.info("Copied successful scenario: " + scenarioFolder + " to " + destinationUsecaseFolder);
+			if (isScenarioSuccessful(documentationDataDirectory, scenarioIdentifier)) {
+				try {
+					replaceScenarioDirectory(scenarioFolder, destinationUsecaseFolder);
+					index.setScenarioBuildDate(featureName, scenarioName, buildDate);
+					updatedFeatureDirectories.add(sourceFile.getName());
+					updatedScenarios++;
+					LOGGER.debug("Linked successful scenario: " + scenarioFolder + " to " + destinationUsecaseFolder);
+				} catch (IOException e) {
+					LOGGER.warn("Linking " + scenarioFolder + " to " + destinationUsecaseFolder + " failed.", e);
+				}
 			}
 		}
 	}
 
-	private void copyDirectoryWithoutDerivedFilesAndDirectories(final File scenarioFolder,
-			final File destinationUsecaseFolder) {
+	/**
+	 * The scenario is prepared in a temporary directory first, such that no files of the replaced scenario (e.g. steps
+	 * that do not exist anymore) remain.
+	 */
+	private void replaceScenarioDirectory(final File scenarioFolder, final File destinationUsecaseFolder)
+			throws IOException {
 		File destinationScenarioFolder = new File(destinationUsecaseFolder, scenarioFolder.getName());
-		destinationScenarioFolder.mkdirs();
-
-		String[] filesAndDirectories = getFilesAndDirectoriesThatAreNotDerived(scenarioFolder);
-
-		copyListOfFiles(filesAndDirectories, scenarioFolder, destinationScenarioFolder);
+		File temporaryScenarioFolder = new File(destinationUsecaseFolder, scenarioFolder.getName()
+				+ TEMPORARY_DIRECTORY_SUFFIX);
+		FileUtils.deleteDirectory(temporaryScenarioFolder);
+		try {
+			linkOrCopyDirectoryWithoutDerivedFilesAndDirectories(scenarioFolder, temporaryScenarioFolder);
+			FileUtils.deleteDirectory(destinationScenarioFolder);
+			if (!temporaryScenarioFolder.renameTo(destinationScenarioFolder)) {
+				throw new IOException("Could not rename " + temporaryScenarioFolder + " to "
+						+ destinationScenarioFolder);
+			}
+		} finally {
+			FileUtils.deleteDirectory(temporaryScenarioFolder);
+		}
 	}
 
-	private void copyListOfFiles(final String[] filesAndDirectories, final File sourceDirectory,
-			final File destinationDirectory) {
-		for (String fileOrDirectoryString : filesAndDirectories) {
+	private void linkOrCopyDirectoryWithoutDerivedFilesAndDirectories(final File sourceDirectory,
+			final File destinationDirectory) throws IOException {
+		destinationDirectory.mkdirs();
+		for (String fileOrDirectoryString : getFilesAndDirectoriesThatAreNotDerived(sourceDirectory)) {
 			File fileOrDirectory = new File(sourceDirectory, fileOrDirectoryString);
-			try {
-				if (fileOrDirectory.isDirectory()) {
-					FileUtils.copyDirectoryToDirectory(fileOrDirectory, destinationDirectory);
-				} else {
-					FileUtils.copyFileToDirectory(fileOrDirectory, destinationDirectory);
-				}
-			} catch (IOException e) {
-				LOGGER.warn("Copying " + fileOrDirectory + " to " + destinationDirectory + " failed.");
+			File destination = new File(destinationDirectory, fileOrDirectoryString);
+			if (fileOrDirectory.isDirectory()) {
+				linkOrCopyDirectoryWithoutDerivedFilesAndDirectories(fileOrDirectory, destination);
+			} else if (linkFiles) {
+				fileSystemOperations.linkOrCopyFile(fileOrDirectory, destination);
+			} else {
+				FileUtils.copyFile(fileOrDirectory, destination);
 			}
 		}
 	}
@@ -1,17 +1,15 @@
 package org.scenarioo.business.uploadBuild;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Date;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.DirectoryFileFilter;
 import org.apache.log4j.Logger;
 import org.jboss.resteasy.plugins.providers.multipart.InputPart;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
@@ -19,10 +17,16 @@ import org.scenarioo.business.builds.ScenarioDocuBuildsManager;
 import org.scenarioo.repository.ConfigurationRepository;
 import org.scenarioo.repository.RepositoryLocator;
 import org.scenarioo.utils.ZipFileExtractor;
+import org.scenarioo.utils.ZipFileExtractor.EntryNameValidator;
 import org.scenarioo.utils.ZipFileExtractor.ZipFileExtractionException;
 
 import com.google.common.base.Preconditions;
 
+/**
+ * Adds an uploaded build (as ZIP file containing the branch directory with one build directory) to the documentation
+ * directory. The ZIP data is extracted while it is received into a staging directory next to the branches, and the
+ * build is then published by renaming its directory, such that it never appears partially.
+ */
 public class BuildUploader {
 
 	private final ConfigurationRepository configurationRepository = RepositoryLocator.INSTANCE
@@ -58,15 +62,40 @@ public class BuildUploader {
 		LOGGER.info("Receiving build by POST request.");
 
 		try {
-			saveAndExtractBuildAndStartImport(inputPart);
+			extractBuildAndStartImport(inputPart.getBody(InputStream.class, null));
+		} catch (IOException e) {
+			return createErrorResponse(new BuildUploaderException("Failed to read uploaded file.", e));
+		} catch (BuildUploaderException e) {
+			return createErrorResponse(e);
+		}
+
+		return createSuccessResponse();
+	}
+
+	/**
+	 * Upload of the ZIP file as the request body, which is not buffered anywhere but extracted while it is received.
+	 */
+	public Response uploadBuild(final InputStream zipStream) {
+		LOGGER.info("Receiving build as ZIP stream by POST request.");
+
+		try {
+			extractBuildAndStartImport(zipStream);
 		} catch (BuildUploaderException e) {
-			LOGGER.error("An error occured while adding a build by POST request.", e);
-			return Response.status(500).entity("Could not add build, see server log for details.\n").build();
+			return createErrorResponse(e);
 		}
 
+		return createSuccessResponse();
+	}
+
+	private Response createSuccessResponse() {
 		return Response.ok("Build successfully added to Scenarioo.\n").build();
 	}
 
+	private Response createErrorResponse(final BuildUploaderException e) {
+		LOGGER.error("An error occured while adding a build by POST request.", e);
+		return Response.status(500).entity("Could not add build, see server log for details.\n").build();
+	}
+
 	private InputPart validateFormDataAndGetInputPart(final MultipartFormDataInput formData) {
 		Preconditions.checkNotNull(formData);
 		Preconditions.checkNotNull(formData.getFormDataMap());
@@ -76,103 +105,135 @@ public class BuildUploader {
 		return formData.getFormDataMap().get("file").get(0);
 	}
 
-	private void saveAndExtractBuildAndStartImport(final InputPart inputPart) throws BuildUploaderException {
-		File documentationDataDirectory = configurationRepository.getDocumentationDataDirectory();
-		File temporaryWorkDirectory = new File(documentationDataDirectory, "uploadedBuild_"
-				+ Long.toString(new Date().getTime()));
-		File uploadedZipFile = new File(temporaryWorkDirectory, "uploadedFile.zip");
+	private void extractBuildAndStartImport(final InputStream zipStream) throws BuildUploaderException {
+		extractAndPublishBuild(zipStream, configurationRepository.getDocumentationDataDirectory());
+		ScenarioDocuBuildsManager.INSTANCE.updateBuildsIfValidDirectoryConfigured();
+	}
 
+	/**
+	 * Extracts the build into a staging directory and publishes it, without importing it. Nothing of the uploaded data
+	 * remains if the build is rejected.
+	 */
+	void extractAndPublishBuild(final InputStream zipStream, final File documentationDataDirectory)
+			throws BuildUploaderException {
+		// staged on the same file system to publish the build by renaming it, not visible as branch (".derived")
+		File stagingDirectory;
 		try {
-			InputStream inputStream = inputPart.getBody(InputStream.class, null);
-			FileUtils.copyInputStreamToFile(inputStream, uploadedZipFile);
+			stagingDirectory = Files.createTempDirectory(documentationDataDirectory.toPath(), "uploadedBuild.derived_")
+					.toFile();
 		} catch (IOException e) {
-			throw new BuildUploaderException("Failed to write file.", e);
+			throw new BuildUploaderException("Could not create staging directory in " + documentationDataDirectory, e);
 		}
+		BuildDirectoryLayout layout = new BuildDirectoryLayout();
 
 		try {
-			extractBuildAndStartImport(documentationDataDirectory, temporaryWorkDirectory, uploadedZipFile);
+			ZipFileExtractor.extractStream(zipStream, stagingDirectory, layout);
+			publishBuild(documentationDataDirectory, stagingDirectory, layout);
 		} catch (ZipFileExtractionException e) {
 			throw new BuildUploaderException("An error occured while extracting the Zip file.", e);
 		} catch (MoveBuildDataException e) {
 			throw new BuildUploaderException("An error occured while moving the build data.", e);
 		} finally {
 			try {
-				FileUtils.deleteDirectory(temporaryWorkDirectory);
+				FileUtils.deleteDirectory(stagingDirectory);
 			} catch (IOException e) {
-				throw new BuildUploaderException("Could not delete directory " + temporaryWorkDirectory, e);
+				throw new BuildUploaderException("Could not delete directory " + stagingDirectory, e);
 			}
 		}
 	}
 
-	private void extractBuildAndStartImport(final File documentationDataDirectory, final File temporaryWorkDirectory,
-			final File targetFileForUploadedData) throws ZipFileExtractionException, MoveBuildDataException {
-		File extractedZipFileDirectory = new File(temporaryWorkDirectory, "extracted");
+	private void publishBuild(final File documentationDataDirectory, final File stagingDirectory,
+			final BuildDirectoryLayout layout) throws MoveBuildDataException {
+		if (layout.buildDirectoryName == null) {
+			throw new MoveBuildDataException("The ZIP file must contain a branch directory with a build directory.");
+		}
+		if (!layout.buildDescriptionFound) {
+			throw new MoveBuildDataException("The build directory must contain the build description "
+					+ BuildDirectoryLayout.BUILD_FILE_NAME + ".");
+		}
 
-		ZipFileExtractor.extractFile(targetFileForUploadedData, extractedZipFileDirectory);
+		File sourceBranchDir = new File(stagingDirectory, layout.branchDirectoryName);
+		File targetBranchDir = new File(documentationDataDirectory, layout.branchDirectoryName);
 
-		moveDataIntoCorrectDirectory(documentationDataDirectory, extractedZipFileDirectory);
+		if (!targetBranchDir.exists()) {
+			LOGGER.info("Moving entire branch folder because it does not exist yet. Target: " + targetBranchDir);
+			try {
+				Files.move(sourceBranchDir.toPath(), targetBranchDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				return;
+			} catch (IOException e) {
+				if (!targetBranchDir.exists()) {
+					throw new MoveBuildDataException("Problem while moving build data.", e);
+				}
+				// the branch has been created concurrently, add the build to it
+			}
+		}
 
-		ScenarioDocuBuildsManager.INSTANCE.updateBuildsIfValidDirectoryConfigured();
+		LOGGER.info("Moving build to existing branch folder. Target: " + targetBranchDir);
+		File sourceBuildDir = new File(sourceBranchDir, layout.buildDirectoryName);
+		File targetBuildDir = new File(targetBranchDir, layout.buildDirectoryName);
+		if (!sourceBuildDir.isDirectory()) {
+			throw new MoveBuildDataException("The branch directory must only contain one build directory.");
+		}
+		if (targetBuildDir.exists()) {
+			throw new MoveBuildDataException("The target build directory already exists");
+		}
+		try {
+			Files.move(sourceBuildDir.toPath(), targetBuildDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new MoveBuildDataException("Problem while moving build data.", e);
+		}
 	}
 
-	private void moveDataIntoCorrectDirectory(final File documentationDataDirectory,
-			final File extractedZipFileDirectory)
-			throws MoveBuildDataException {
-		File[] dirs = extractedZipFileDirectory.listFiles((FileFilter) DirectoryFileFilter.INSTANCE);
+	/**
+	 * Checks the names of the ZIP entries while they are extracted, such that an upload with an invalid layout is
+	 * rejected as soon as the first unexpected entry is received: all entries must be in one branch directory, which
+	 * may only contain the branch description and one build directory. Files on the top level are ignored.
+	 */
+	static class BuildDirectoryLayout implements EntryNameValidator {
+
+		private static final String BRANCH_FILE_NAME = "branch.xml";
 
-		if (dirs.length > 1) {
-			throw new MoveBuildDataException(
-					"The ZIP file must only contain one directory, which has to be the branch directory.");
-		}
+		private static final String BUILD_FILE_NAME = "build.xml";
 
-		File sourceBranchDir = dirs[0];
-		File targetBranchDir = new File(documentationDataDirectory, sourceBranchDir.getName());
+		private String branchDirectoryName;
 
-		if (targetBranchDir.exists()) {
-			moveBuildToExistingBranchDir(sourceBranchDir, targetBranchDir);
-		} else {
-			moveEntireBranchDirectory(sourceBranchDir, targetBranchDir);
-		}
-	}
+		private String buildDirectoryName;
 
-	private void moveBuildToExistingBranchDir(final File sourceBranchDir, final File targetBranchDir)
-			throws MoveBuildDataException {
-		LOGGER.info("Moving build to existing branch folder. Target: " + targetBranchDir);
-		try {
-			File[] filesToMove = sourceBranchDir.listFiles(new FilenameFilter() {
-				@Override
-				public boolean accept(final File dir, final String name) {
-					// we don't want to copy branch.xml, it should already exist.
-					return !"branch.xml".equals(name);
-				}
-			});
+		private boolean buildDescriptionFound = false;
 
-			if (filesToMove.length != 1 || !filesToMove[0].isDirectory()) {
-				throw new MoveBuildDataException("The branch directory must only contain one build directory.");
+		@Override
+		public void validate(final String entryName) throws ZipFileExtractionException {
+			boolean isDirectory = entryName.endsWith("/");
+			String[] path = entryName.split("/");
+			for (String pathElement : path) {
+				if (pathElement.isEmpty() || pathElement.equals(".") || pathElement.equals("..")) {
+					throw new ZipFileExtractionException("Invalid ZIP entry name " + entryName);
+				}
+			}
+			if (path.length == 1 && !isDirectory) {
+				return;
 			}
 
-			if (targetBuildAlreadyExists(filesToMove[0].getName(), targetBranchDir)) {
-				throw new MoveBuildDataException("The target build directory already exists");
+			if (branchDirectoryName == null) {
+				branchDirectoryName = path[0];
+			} else if (!branchDirectoryName.equals(path[0])) {
+				throw new ZipFileExtractionException(
+						"The ZIP file must only contain one directory, which has to be the branch directory.");
+			}
+			if (path.length == 1 || (path.length == 2 && !isDirectory && BRANCH_FILE_NAME.equals(path[1]))) {
+				return;
 			}
 
-			FileUtils.moveToDirectory(filesToMove[0], targetBranchDir, false);
-		} catch (IOException e) {
-			throw new MoveBuildDataException("Problem while moving build data.", e);
+			if (buildDirectoryName == null && (path.length > 2 || isDirectory)) {
+				buildDirectoryName = path[1];
+			} else if (!path[1].equals(buildDirectoryName)) {
+				throw new ZipFileExtractionException("The branch directory must only contain one build directory.");
+			}
+			if (path.length == 3 && !isDirectory && BUILD_FILE_NAME.equals(path[2])) {
+				buildDescriptionFound = true;
+			}
 		}
-	}
-
-	private boolean targetBuildAlreadyExists(final String id, final File targetBranchDir) {
-		return new File(targetBranchDir, id).exists();
-	}
 
-	private void moveEntireBranchDirectory(final File sourceBranchDir, final File targetBranchDir)
-			throws MoveBuildDataException {
-		LOGGER.info("Moving entire branch folder because it does not exist yet. Target: " + targetBranchDir);
-		try {
-			FileUtils.moveDirectory(sourceBranchDir, targetBranchDir);
-		} catch (IOException e) {
-			throw new MoveBuildDataException("Problem while moving build data.", e);
-		}
 	}
 
 }
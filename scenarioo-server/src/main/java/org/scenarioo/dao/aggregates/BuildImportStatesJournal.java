@@ -0,0 +1,142 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.scenarioo.api.util.xml.ScenarioDocuXMLUtil;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
+import org.scenarioo.utils.ResourceUtils;
+
+/**
+ * An append-only file containing the changed import summaries of single builds, that have not yet been written to the
+ * build import summaries file. Each change of a build import state only appends the summary of this build, when
+ * loading the summaries the entries are applied to the summaries of the summaries file in the order they were appended.
+ *
+ * Each entry is stored as length (int) and XML of the summary. An incomplete entry at the end of the file (e.g. when
+ * the server was stopped while appending) is cut off when the entries are read, which happens on loading the build
+ * import summaries at startup, before anything is appended again. Otherwise the following entries would be appended
+ * behind the incomplete one and could not be read anymore.
+ */
+public class BuildImportStatesJournal {
+
+	private static final Logger LOGGER = Logger.getLogger(BuildImportStatesJournal.class);
+
+	private final File file;
+
+	public BuildImportStatesJournal(final File file) {
+		this.file = file;
+	}
+
+	public long getSize() {
+		return file.length();
+	}
+
+	public void append(final BuildImportSummary summary) {
+		ByteArrayOutputStream entry = new ByteArrayOutputStream();
+		ScenarioDocuXMLUtil.marshal(summary, entry, false);
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+			out.writeInt(entry.size());
+			entry.writeTo(out);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not append to build import states journal " + file.getAbsolutePath(),
+					e);
+		} finally {
+			ResourceUtils.close(out, file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * @return all summaries in the order they were appended, empty if there is no journal. An incomplete or unreadable
+	 *         entry and everything after it is removed from the journal.
+	 */
+	public List<BuildImportSummary> readEntries() {
+		List<BuildImportSummary> summaries = new ArrayList<BuildImportSummary>();
+		if (!file.exists()) {
+			return summaries;
+		}
+		long fileLength = file.length();
+		long completeEntriesLength = 0;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			while (completeEntriesLength < fileLength) {
+				int entryLength = in.readInt();
+				if (entryLength < 0 || entryLength > fileLength - completeEntriesLength - 4) {
+					break;
+				}
+				byte[] entry = new byte[entryLength];
+				in.readFully(entry);
+				summaries.add(ScenarioDocuXMLUtil.unmarshal(BuildImportSummary.class, new ByteArrayInputStream(entry)));
+				completeEntriesLength += 4 + entryLength;
+			}
+		} catch (EOFException e) {
+			// incomplete entry at the end
+		} catch (IOException e) {
+			LOGGER.error("Failed to read build import states journal " + file.getAbsolutePath()
+					+ ", only the entries read so far are applied.", e);
+			return summaries;
+		} catch (RuntimeException e) {
+			LOGGER.warn("Unreadable entry in build import states journal " + file.getAbsolutePath()
+					+ ", only the entries before it are applied.", e);
+		} finally {
+			ResourceUtils.close(in, file.getAbsolutePath());
+		}
+		if (completeEntriesLength < fileLength) {
+			truncate(completeEntriesLength);
+		}
+		return summaries;
+	}
+
+	private void truncate(final long length) {
+		LOGGER.warn("Removing incomplete entry at the end of build import states journal " + file.getAbsolutePath());
+		RandomAccessFile journalFile = null;
+		try {
+			journalFile = new RandomAccessFile(file, "rw");
+			journalFile.setLength(length);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not truncate build import states journal " + file.getAbsolutePath(), e);
+		} finally {
+			ResourceUtils.close(journalFile, file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Remove all entries, after they have been written to the build import summaries file.
+	 */
+	public void clear() {
+		file.delete();
+	}
+
+}
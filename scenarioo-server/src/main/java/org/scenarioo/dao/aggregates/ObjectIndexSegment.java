@@ -0,0 +1,205 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+
+import org.scenarioo.api.util.xml.ScenarioDocuXMLUtil;
+import org.scenarioo.model.docu.entities.generic.ObjectReference;
+import org.scenarioo.model.docu.entities.generic.ObjectTreeNode;
+import org.scenarioo.utils.FileAccessCounter;
+import org.scenarioo.utils.ResourceUtils;
+
+/**
+ * An append-only file containing reference trees for object indexes, sorted by object type and name.
+ *
+ * During aggregation one segment is written for each part of a build (e.g. a feature). At the end all segments are
+ * merged to write each object index file only once.
+ */
+public class ObjectIndexSegment {
+
+	/**
+	 * Order of the entries inside a segment.
+	 */
+	public static final Comparator<ObjectReference> ENTRY_ORDER = new Comparator<ObjectReference>() {
+		@Override
+		public int compare(final ObjectReference ref1, final ObjectReference ref2) {
+			int result = ref1.getType().compareTo(ref2.getType());
+			if (result == 0) {
+				result = ref1.getName().compareTo(ref2.getName());
+			}
+			return result;
+		}
+	};
+
+	private final File file;
+
+	public ObjectIndexSegment(final File file) {
+		this.file = file;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public Writer createWriter() {
+		return new Writer();
+	}
+
+	public Reader createReader() {
+		return new Reader();
+	}
+
+	public void delete() {
+		file.delete();
+	}
+
+	/**
+	 * Writes the entries of a segment, entries have to be added in {@link ObjectIndexSegment#ENTRY_ORDER}.
+	 */
+	public class Writer {
+
+		private final DataOutputStream out;
+
+		private ObjectReference lastObject;
+
+		private Writer() {
+			file.getParentFile().mkdirs();
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not create object index segment " + file.getAbsolutePath(), e);
+			}
+		}
+
+		public void add(final ObjectReference object, final ObjectTreeNode<ObjectReference> referenceTree) {
+			if (lastObject != null && ENTRY_ORDER.compare(lastObject, object) >= 0) {
+				throw new IllegalArgumentException("Object index segment entries have to be sorted, " + object
+						+ " was added after " + lastObject);
+			}
+			lastObject = object;
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			ScenarioDocuXMLUtil.marshal(referenceTree, record, false);
+			try {
+				writeString(object.getType());
+				writeString(object.getName());
+				out.writeInt(record.size());
+				record.writeTo(out);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write object index segment " + file.getAbsolutePath(), e);
+			}
+		}
+
+		private void writeString(final String value) throws IOException {
+			byte[] bytes = value.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		public void close() {
+			ResourceUtils.close(out, file.getAbsolutePath());
+			FileAccessCounter.fileWritten(file);
+		}
+
+	}
+
+	/**
+	 * Reads the entries of a segment one after the other.
+	 */
+	public class Reader {
+
+		private final DataInputStream in;
+
+		private ObjectReference object;
+
+		private byte[] referenceTree;
+
+		private Reader() {
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				FileAccessCounter.fileRead(file);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not open object index segment " + file.getAbsolutePath(), e);
+			}
+		}
+
+		/**
+		 * Move to the next entry.
+		 *
+		 * @return false if there are no more entries.
+		 */
+		public boolean next() {
+			try {
+				int typeLength;
+				try {
+					typeLength = in.readInt();
+				} catch (EOFException e) {
+					object = null;
+					referenceTree = null;
+					return false;
+				}
+				String type = readString(typeLength);
+				String name = readString(in.readInt());
+				object = new ObjectReference(type, name);
+				referenceTree = new byte[in.readInt()];
+				in.readFully(referenceTree);
+				return true;
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read object index segment " + file.getAbsolutePath(), e);
+			}
+		}
+
+		private String readString(final int length) throws IOException {
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+
+		/**
+		 * @return the object of the current entry.
+		 */
+		public ObjectReference getObject() {
+			return object;
+		}
+
+		/**
+		 * @return the reference tree of the current entry.
+		 */
+		@SuppressWarnings("unchecked")
+		public ObjectTreeNode<ObjectReference> getReferenceTree() {
+			return ScenarioDocuXMLUtil.unmarshal(ObjectTreeNode.class, new ByteArrayInputStream(referenceTree));
+		}
+
+		public void close() {
+			ResourceUtils.close(in, file.getAbsolutePath());
+		}
+
+	}
+
+}
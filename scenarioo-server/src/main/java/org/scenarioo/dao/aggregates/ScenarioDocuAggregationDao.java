@@ -18,6 +18,7 @@
 package org.scenarioo.dao.aggregates;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -26,9 +27,12 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.log4j.Logger;
 import org.scenarioo.api.ScenarioDocuReader;
 import org.scenarioo.api.ScenarioDocuWriter;
@@ -39,6 +43,8 @@ import org.scenarioo.api.util.xml.ScenarioDocuXMLFileUtil;
 import org.scenarioo.business.aggregator.ScenarioDocuAggregator;
 import org.scenarioo.business.builds.BuildLink;
 import org.scenarioo.business.lastSuccessfulScenarios.LastSuccessfulScenariosBuildUpdater;
+import org.scenarioo.model.docu.aggregates.branches.BranchBuilds;
+import org.scenarioo.model.docu.aggregates.branches.BuildCatalog;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportSummaries;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
 import org.scenarioo.model.docu.aggregates.objects.CustomObjectTabTree;
@@ -57,6 +63,7 @@ import org.scenarioo.model.docu.entities.generic.ObjectReference;
 import org.scenarioo.model.lastSuccessfulScenarios.LastSuccessfulScenariosIndex;
 import org.scenarioo.rest.base.BuildIdentifier;
 import org.scenarioo.rest.base.ScenarioIdentifier;
+import org.scenarioo.utils.FileAccessCounter;
 import org.scenarioo.utils.ResourceUtils;
 
 /**
@@ -82,6 +89,8 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 	private final ScenarioDocuReader scenarioDocuReader;
 
 	private LongObjectNamesResolver longObjectNameResolver = null;
+
+	private boolean formattedDerivedFiles = true;
 	DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm");
 
 	public ScenarioDocuAggregationDao(final File rootDirectory) {
@@ -95,6 +104,13 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 		this.longObjectNameResolver = longObjectNameResolver;
 	}
 
+	/**
+	 * Whether derived XML files are written with line breaks and indentation, true by default.
+	 */
+	public void setFormattedDerivedFiles(final boolean formattedDerivedFiles) {
+		this.formattedDerivedFiles = formattedDerivedFiles;
+	}
+
 	/**
 	 * @see org.scenarioo.dao.aggregates.AggregatedDocuDataReader#loadVersion(java.lang.String, java.lang.String)
 	 */
@@ -201,12 +217,12 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 	public void saveFeatureScenariosList(final BuildIdentifier buildIdentifier,
 										 final FeatureScenariosList featureScenariosList) {
 		File file = files.getFeaturesAndScenariosFile(buildIdentifier);
-		ScenarioDocuXMLFileUtil.marshal(featureScenariosList, file);
+		marshalDerivedFile(featureScenariosList, file);
 	}
 
 	public void saveFeatureScenarios(final BuildIdentifier buildIdentifier, final FeatureScenarios featureScenarios) {
 		File scenariosFile = files.getFeatureScenariosFile(buildIdentifier, featureScenarios.getFeature().getId());
-		ScenarioDocuXMLFileUtil.marshal(featureScenarios, scenariosFile);
+		marshalDerivedFile(featureScenarios, scenariosFile);
 	}
 
 	public void saveScenarioPageSteps(final BuildIdentifier buildIdentifier, final ScenarioPageSteps scenarioPageSteps) {
@@ -214,25 +230,34 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 		String scenarioName = scenarioPageSteps.getScenario().getName();
 		ScenarioIdentifier scenarioIdentifier = new ScenarioIdentifier(buildIdentifier, featureName, scenarioName);
 		File file = files.getScenarioStepsFile(scenarioIdentifier);
-		ScenarioDocuXMLFileUtil.marshal(scenarioPageSteps, file);
+		marshalDerivedFile(scenarioPageSteps, file);
 	}
 
 	public boolean isObjectDescriptionSaved(final BuildIdentifier buildIdentifier,
 			final ObjectDescription objectDescription) {
-		return isObjectDescriptionSaved(buildIdentifier, objectDescription.getType(),
-				resolveObjectFileName(objectDescription.getName()));
+		return isObjectDescriptionSaved(buildIdentifier, objectDescription.getType(), objectDescription.getName());
 	}
 
 	public boolean isObjectDescriptionSaved(final BuildIdentifier buildIdentifier, final String type, final String name) {
-		File objectFile = files.getObjectFile(buildIdentifier, type, resolveObjectFileName(name));
-		return objectFile.exists();
+		return getObjectFile(buildIdentifier, type, name).exists();
 	}
 
-	public void saveObjectDescription(final BuildIdentifier buildIdentifier, final ObjectDescription objectDescription) {
+	/**
+	 * File of the object description of the object with passed type and (not yet resolved) name.
+	 */
+	public File getObjectFile(final BuildIdentifier buildIdentifier, final String type, final String name) {
+		return files.getObjectFile(buildIdentifier, type, resolveObjectFileName(name));
+	}
+
+	/**
+	 * @return the file the object description was saved to.
+	 */
+	public File saveObjectDescription(final BuildIdentifier buildIdentifier, final ObjectDescription objectDescription) {
 		File objectFile = files.getObjectFile(buildIdentifier, objectDescription.getType(),
 				resolveObjectFileName(objectDescription.getName()));
 		objectFile.getParentFile().mkdirs();
-		ScenarioDocuXMLFileUtil.marshal(objectDescription, objectFile);
+		marshalDerivedFile(objectDescription, objectFile);
+		return objectFile;
 	}
 
 	/**
@@ -259,7 +284,7 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 		File objectFile = files.getObjectIndexFile(buildIdentifier, objectIndex.getObject().getType(),
 				resolveObjectFileName(objectIndex.getObject().getName()));
 		objectFile.getParentFile().mkdirs();
-		ScenarioDocuXMLFileUtil.marshal(objectIndex, objectFile);
+		marshalDerivedFile(objectIndex, objectFile);
 	}
 
 	/**
@@ -288,14 +313,14 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 	public void saveObjectsList(final BuildIdentifier buildIdentifier, final String type,
 			final ObjectList<ObjectDescription> objectList) {
 		File objectListFile = files.getObjectListFile(buildIdentifier, type);
-		ScenarioDocuXMLFileUtil.marshal(objectList, objectListFile);
+		marshalDerivedFile(objectList, objectListFile);
 	}
 
 	public void saveCustomObjectTabTree(final BuildIdentifier buildIdentifier, final String tabId,
 			final CustomObjectTabTree tree) {
 		File customObjectTabTreeFile = files.getCustomObjectTabTreeFile(buildIdentifier, tabId);
 		customObjectTabTreeFile.getParentFile().mkdirs();
-		ScenarioDocuXMLFileUtil.marshal(tree, customObjectTabTreeFile);
+		marshalDerivedFile(tree, customObjectTabTreeFile);
 	}
 
 	/**
@@ -348,7 +373,7 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 			try {
 				BuildImportSummaries summaries = ScenarioDocuXMLFileUtil.unmarshal(BuildImportSummaries.class,
 						buildImportSummariesFile);
-				return summaries.getBuildSummaries();
+				return applyBuildImportStatesJournal(summaries.getBuildSummaries());
 			} catch (Exception e) {
 				LOGGER.error(
 						"Failed to load saved build import states, the system is recovering by recreating the list from file system.",
@@ -358,15 +383,80 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 		}
 	}
 
+	private void marshalDerivedFile(final Object object, final File file) {
+		ScenarioDocuXMLFileUtil.marshal(object, file, formattedDerivedFiles);
+		FileAccessCounter.fileWritten(file);
+	}
+
+	private List<BuildImportSummary> applyBuildImportStatesJournal(final List<BuildImportSummary> savedSummaries) {
+		Map<BuildIdentifier, BuildImportSummary> summaries = new LinkedHashMap<BuildIdentifier, BuildImportSummary>();
+		for (BuildImportSummary summary : savedSummaries) {
+			summaries.put(summary.getIdentifier(), summary);
+		}
+		for (BuildImportSummary changedSummary : getBuildImportStatesJournal().readEntries()) {
+			summaries.put(changedSummary.getIdentifier(), changedSummary);
+		}
+		return new ArrayList<BuildImportSummary>(summaries.values());
+	}
+
+	/**
+	 * Save the import summaries of all builds and clear the journal of changed build import states.
+	 */
 	public void saveBuildImportSummaries(final List<BuildImportSummary> summariesToSave) {
 		BuildImportSummaries summaries = new BuildImportSummaries(summariesToSave);
 		ScenarioDocuXMLFileUtil.marshal(summaries, files.getBuildStatesFile());
+		getBuildImportStatesJournal().clear();
+	}
+
+	/**
+	 * Save the changed import summary of one build by appending it to the journal of changed build import states. As
+	 * soon as the journal gets bigger than the build import summaries file, the journal is compacted by saving all
+	 * passed summaries.
+	 */
+	public void saveBuildImportSummary(final BuildImportSummary changedSummary,
+			final List<BuildImportSummary> allSummaries) {
+		BuildImportStatesJournal journal = getBuildImportStatesJournal();
+		File buildImportSummariesFile = files.getBuildStatesFile();
+		if (!buildImportSummariesFile.exists()) {
+			saveBuildImportSummaries(allSummaries);
+			return;
+		}
+		journal.append(changedSummary);
+		if (journal.getSize() > buildImportSummariesFile.length()) {
+			saveBuildImportSummaries(allSummaries);
+		}
+	}
+
+	public void saveBuildCatalog(final List<BranchBuilds> branchBuildsList) {
+		marshalDerivedFile(new BuildCatalog(branchBuildsList), files.getBuildCatalogFile());
+	}
+
+	/**
+	 * @return the branches and builds of the last saved build catalog, null if there is no catalog or it can not be
+	 *         read.
+	 */
+	public List<BranchBuilds> loadBuildCatalog() {
+		File buildCatalogFile = files.getBuildCatalogFile();
+		if (!buildCatalogFile.exists()) {
+			return null;
+		}
+		try {
+			return ScenarioDocuXMLFileUtil.unmarshal(BuildCatalog.class, buildCatalogFile).getBranchBuildsList();
+		} catch (Exception e) {
+			LOGGER.error("Failed to load saved build catalog, the builds are only available after reading them from "
+					+ "the file system.", e);
+			return null;
+		}
+	}
+
+	private BuildImportStatesJournal getBuildImportStatesJournal() {
+		return new BuildImportStatesJournal(files.getBuildStatesJournalFile());
 	}
 
 	public void saveLongObjectNamesIndex(final BuildIdentifier buildIdentifier,
 			final LongObjectNamesResolver longObjectNamesResolver) {
 		File longObjectNamesFile = files.getLongObjectNamesIndexFile(buildIdentifier);
-		ScenarioDocuXMLFileUtil.marshal(longObjectNamesResolver, longObjectNamesFile);
+		marshalDerivedFile(longObjectNamesResolver, longObjectNamesFile);
 	}
 
 	/**
@@ -383,12 +473,12 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 		return files.getBuildImportLogFile(buildIdentifier);
 	}
 
-	public void saveStepNavigation(final BuildIdentifier buildIdentifier, final StepLink stepLink,
-			final StepNavigation stepNavigation) {
-		File stepNavigationFile = files.getStepNavigationFile(
-				ScenarioIdentifier.fromStepLink(buildIdentifier, stepLink), stepLink.getStepIndex());
-		stepNavigationFile.getParentFile().mkdirs();
-		ScenarioDocuXMLFileUtil.marshal(stepNavigation, stepNavigationFile);
+	/**
+	 * Save the navigations of all steps of a scenario, the navigation of step i has to be at index i.
+	 */
+	public void saveStepNavigations(final ScenarioIdentifier scenarioIdentifier,
+			final List<StepNavigation> stepNavigations) {
+		new StepNavigationsFile(files.getStepNavigationsFile(scenarioIdentifier)).write(stepNavigations);
 	}
 
 	/**
@@ -406,8 +496,59 @@ public class ScenarioDocuAggregationDao implements AggregatedDocuDataReader {
 	 */
 	@Override
 	public StepNavigation loadStepNavigation(final ScenarioIdentifier scenarioIdentifier, final int stepIndex) {
-		File stepNavigationFile = files.getStepNavigationFile(scenarioIdentifier, stepIndex);
-		return ScenarioDocuXMLFileUtil.unmarshal(StepNavigation.class, stepNavigationFile);
+		return new StepNavigationsFile(files.getStepNavigationsFile(scenarioIdentifier)).read(stepIndex);
+	}
+
+	public ScreenshotStore getScreenshotStore() {
+		return new ScreenshotStore(files.getScreenshotStoreDirectory());
+	}
+
+	public StepsCacheFile getStepsCache(final ScenarioIdentifier scenarioIdentifier) {
+		return new StepsCacheFile(files.getStepsCacheFile(scenarioIdentifier));
+	}
+
+	public ScreenshotFingerprintsFile getScreenshotFingerprints(final ScenarioIdentifier scenarioIdentifier) {
+		return new ScreenshotFingerprintsFile(files.getScreenshotFingerprintsFile(scenarioIdentifier));
+	}
+
+	/**
+	 * Fingerprint the screenshots of the scenario that have been added or changed since they were fingerprinted last.
+	 *
+	 * @return the number of screenshots that had to be read.
+	 */
+	public int updateScreenshotFingerprints(final ScenarioIdentifier scenarioIdentifier) {
+		return getScreenshotFingerprints(scenarioIdentifier).update(files.getScreenshotsDirectory(scenarioIdentifier));
+	}
+
+	/**
+	 * Fingerprint of the steps of a scenario, calculated from the content of the scenario file and the names, sizes and
+	 * modification dates of the step files, such that the step files do not have to be read.
+	 */
+	public String calculateStepsFingerprint(final ScenarioIdentifier scenarioIdentifier, final List<File> stepFiles) {
+		StringBuilder fileStates = new StringBuilder();
+		fileStates.append(calculateContentHash(files.getScenarioFile(scenarioIdentifier))).append(';');
+		for (File stepFile : stepFiles) {
+			fileStates.append(stepFile.getName()).append(':').append(stepFile.length()).append(':')
+					.append(stepFile.lastModified()).append(';');
+		}
+		return DigestUtils.md5Hex(fileStates.toString());
+	}
+
+	private String calculateContentHash(final File file) {
+		if (!file.exists()) {
+			return "";
+		}
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			String hash = DigestUtils.md5Hex(in);
+			FileAccessCounter.fileRead(file);
+			return hash;
+		} catch (IOException e) {
+			throw new RuntimeException("could not read " + file.getAbsolutePath(), e);
+		} finally {
+			ResourceUtils.close(in, file.getAbsolutePath());
+		}
 	}
 
 	/**
@@ -18,31 +18,30 @@
 package org.scenarioo.dao.aggregates;
 
 import java.io.File;
-import java.text.NumberFormat;
 import java.util.List;
 
 import org.scenarioo.api.files.ScenarioDocuFiles;
 import org.scenarioo.api.util.files.FilesUtil;
 import org.scenarioo.rest.base.BuildIdentifier;
 import org.scenarioo.rest.base.ScenarioIdentifier;
-import org.scenarioo.utils.NumberFormatCreator;
 
 /**
  * Defines locations of aggregated files containing aggregated (=derived) data from documentation input data.
  */
 public class ScenarioDocuAggregationFiles {
 
-	private static NumberFormat THREE_DIGIT_NUM_FORMAT = NumberFormatCreator
-			.createNumberFormatWithMinimumIntegerDigits(3);
-
 	private static final String DIRECTORY_NAME_OBJECT_INDEXES = "index";
 	private static final String DIRECTORY_NAME_OBJECTS = "objects.derived";
 	private static final String DIRECTORY_NAME_CUSTOM_OBJECT_TAB_TREES = "customObjectTabTrees.derived";
+	private static final String DIRECTORY_NAME_OBJECT_INDEX_SEGMENTS = "objectIndexSegments.derived";
 	private static final String FILENAME_VERSION_PROPERTIES = "version.derived.properties";
 	private static final String FILENAME_FEATURES_XML = "features.derived.xml";
 	private static final String FILENAME_SCENARIOS_XML = "scenarios.derived.xml";
 	private static final String FILENAME_SCENARIO_PAGE_STEPS_XML = "scenarioPageSteps.derived.xml";
 	private static final String FILENAME_LONG_OBJECT_NAMES_INDEX = "longObjectNamesIndex.derived.xml";
+	private static final String FILENAME_STEP_NAVIGATIONS = "stepNavigations.derived.dat";
+	private static final String FILENAME_STEPS_CACHE = "stepsCache.derived.dat";
+	private static final String FILENAME_SCREENSHOT_FINGERPRINTS = "screenshotFingerprints.derived.dat";
 
 	private final ScenarioDocuFiles docuFiles;
 
@@ -58,6 +57,28 @@ public class ScenarioDocuAggregationFiles {
 		return new File(docuFiles.getRootDirectory(), "builds.states.derived.xml");
 	}
 
+	/**
+	 * File to store the snapshot of all branches and builds in the documentation directory.
+	 */
+	public File getBuildCatalogFile() {
+		return new File(docuFiles.getRootDirectory(), "builds.catalog.derived.xml");
+	}
+
+	/**
+	 * File to store changed build import states until they are saved in the build states file (see
+	 * {@link BuildImportStatesJournal}).
+	 */
+	public File getBuildStatesJournalFile() {
+		return new File(docuFiles.getRootDirectory(), "builds.states.journal.derived.dat");
+	}
+
+	/**
+	 * Directory of the {@link ScreenshotStore}.
+	 */
+	public File getScreenshotStoreDirectory() {
+		return new File(docuFiles.getRootDirectory(), "screenshots.derived");
+	}
+
 	public File getVersionFile(final BuildIdentifier buildIdentifier) {
 		return new File(docuFiles.getBuildDirectory(buildIdentifier.getBranchName(), buildIdentifier.getBuildName()),
 				FILENAME_VERSION_PROPERTIES);
@@ -114,6 +135,18 @@ public class ScenarioDocuAggregationFiles {
 		return new File(objectsDir, FilesUtil.encodeName(name) + ".index.xml");
 	}
 
+	/**
+	 * Temporary directory to collect reference trees for object indexes during aggregation (see
+	 * {@link ObjectIndexSegment}).
+	 */
+	public File getObjectIndexSegmentsDirectory(final BuildIdentifier buildIdentifier) {
+		return new File(getObjectsDirectory(buildIdentifier), DIRECTORY_NAME_OBJECT_INDEX_SEGMENTS);
+	}
+
+	public File getObjectIndexSegmentFile(final BuildIdentifier buildIdentifier, final int segmentNumber) {
+		return new File(getObjectIndexSegmentsDirectory(buildIdentifier), segmentNumber + ".segment");
+	}
+
 	public File getCustomObjectTabTreeFile(final BuildIdentifier buildIdentifier, final String tabId) {
 		File customObjectTabTreesDir = getCustomObjectTabTreesDirectory(buildIdentifier);
 		return new File(customObjectTabTreesDir, FilesUtil.encodeName(tabId) + ".objectTree.derived.xml");
@@ -137,23 +170,50 @@ public class ScenarioDocuAggregationFiles {
 	}
 
 	/**
-	 * Directory to store additional step navigation details inside
+	 * File to store the navigation details of all steps of a scenario (see {@link StepNavigationsFile}).
 	 */
-	public File getStepNavigationsDirectory(final ScenarioIdentifier scenarioIdentifier) {
-		File stepsDir = docuFiles.getStepsDirectory(scenarioIdentifier.getBranchName(),
+	public File getStepNavigationsFile(final ScenarioIdentifier scenarioIdentifier) {
+		File scenarioDir = docuFiles.getScenarioDirectory(scenarioIdentifier.getBranchName(),
 				scenarioIdentifier.getBuildName(), scenarioIdentifier.getFeatureName(),
 				scenarioIdentifier.getScenarioName());
-		return new File(stepsDir, "navigation.derived");
+		return new File(scenarioDir, FILENAME_STEP_NAVIGATIONS);
 	}
 
 	/**
-	 * File to store navigation details of a step.
+	 * File to cache the steps of a scenario for the next aggregation (see {@link StepsCacheFile}).
 	 */
-	public File getStepNavigationFile(final ScenarioIdentifier scenarioIdentifier, final int stepIndex) {
-		File stepNavigationsDir = getStepNavigationsDirectory(scenarioIdentifier);
-		return new File(stepNavigationsDir, THREE_DIGIT_NUM_FORMAT.format(stepIndex) + ".navigation.xml");
+	public File getStepsCacheFile(final ScenarioIdentifier scenarioIdentifier) {
+		File scenarioDir = docuFiles.getScenarioDirectory(scenarioIdentifier.getBranchName(),
+				scenarioIdentifier.getBuildName(), scenarioIdentifier.getFeatureName(),
+				scenarioIdentifier.getScenarioName());
+		return new File(scenarioDir, FILENAME_STEPS_CACHE);
 	}
 
+	/**
+	 * File to store the fingerprints of the screenshots of a scenario (see {@link ScreenshotFingerprintsFile}).
+	 */
+	public File getScreenshotFingerprintsFile(final ScenarioIdentifier scenarioIdentifier) {
+		File scenarioDir = docuFiles.getScenarioDirectory(scenarioIdentifier.getBranchName(),
+				scenarioIdentifier.getBuildName(), scenarioIdentifier.getFeatureName(),
+				scenarioIdentifier.getScenarioName());
+		return new File(scenarioDir, FILENAME_SCREENSHOT_FINGERPRINTS);
+	}
+
+	public File getScreenshotsDirectory(final ScenarioIdentifier scenarioIdentifier) {
+		return docuFiles.getScreenshotsDirectory(scenarioIdentifier.getBranchName(),
+				scenarioIdentifier.getBuildName(), scenarioIdentifier.getFeatureName(),
+				scenarioIdentifier.getScenarioName());
+	}
+
+	public File getScenarioFile(final ScenarioIdentifier scenarioIdentifier) {
+		return docuFiles.getScenarioFile(scenarioIdentifier.getBranchName(), scenarioIdentifier.getBuildName(),
+				scenarioIdentifier.getFeatureName(), scenarioIdentifier.getScenarioName());
+	}
+
+	public List<File> getStepFiles(final ScenarioIdentifier scenarioIdentifier) {
+		return docuFiles.getStepFiles(scenarioIdentifier.getBranchName(), scenarioIdentifier.getBuildName(),
+				scenarioIdentifier.getFeatureName(), scenarioIdentifier.getScenarioName());
+	}
 
 	public File getBuildDirectory(final BuildIdentifier buildIdentifier) {
 		return docuFiles.getBuildDirectory(buildIdentifier.getBranchName(), buildIdentifier.getBuildName());
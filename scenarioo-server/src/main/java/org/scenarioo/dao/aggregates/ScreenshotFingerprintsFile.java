@@ -0,0 +1,217 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.scenarioo.utils.FileAccessCounter;
+import org.scenarioo.utils.ResourceUtils;
+
+/**
+ * Stores a fingerprint of each screenshot of one scenario: the SHA-256 hash of its content, together with the size and
+ * modification date of the file when the hash was calculated. Screenshots with equal fingerprints are identical
+ * without reading or decoding them again, e.g. when comparing builds.
+ *
+ * File layout:
+ * <ul>
+ * <li>number of screenshots (int)</li>
+ * <li>per screenshot: file name (UTF), size (long), modification date (long), hash (UTF)</li>
+ * </ul>
+ */
+public class ScreenshotFingerprintsFile {
+
+	private static final String SCREENSHOT_FILE_SUFFIX = ".png";
+
+	private final File file;
+
+	public ScreenshotFingerprintsFile(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Fingerprint the screenshots in the directory and write the fingerprints, screenshots that did not change since
+	 * the file was written last are not read again.
+	 *
+	 * @return the number of screenshots that had to be read.
+	 */
+	public int update(final File screenshotsDirectory) {
+		File[] screenshots = screenshotsDirectory.listFiles();
+		if (screenshots == null) {
+			file.delete();
+			return 0;
+		}
+		Arrays.sort(screenshots);
+		Map<String, ScreenshotFingerprint> previousFingerprints = read();
+		Map<String, ScreenshotFingerprint> fingerprints = new LinkedHashMap<String, ScreenshotFingerprint>();
+		int readScreenshots = 0;
+		for (File screenshot : screenshots) {
+			if (!screenshot.isFile() || !screenshot.getName().endsWith(SCREENSHOT_FILE_SUFFIX)) {
+				continue;
+			}
+			ScreenshotFingerprint fingerprint = previousFingerprints.get(screenshot.getName());
+			if (fingerprint == null || !fingerprint.isUpToDate(screenshot)) {
+				fingerprint = ScreenshotFingerprint.calculate(screenshot);
+				readScreenshots++;
+			}
+			fingerprints.put(screenshot.getName(), fingerprint);
+		}
+		if (readScreenshots > 0 || fingerprints.size() != previousFingerprints.size()) {
+			write(fingerprints);
+		}
+		return readScreenshots;
+	}
+
+	/**
+	 * @return the fingerprints by screenshot file name, empty if there are no fingerprints.
+	 */
+	public Map<String, ScreenshotFingerprint> read() {
+		if (!file.exists()) {
+			return Collections.emptyMap();
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			int numberOfScreenshots = in.readInt();
+			Map<String, ScreenshotFingerprint> fingerprints = new HashMap<String, ScreenshotFingerprint>();
+			for (int i = 0; i < numberOfScreenshots; i++) {
+				String name = in.readUTF();
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				fingerprints.put(name, new ScreenshotFingerprint(in.readUTF(), size, lastModified));
+			}
+			FileAccessCounter.fileRead(file);
+			return fingerprints;
+		} catch (IOException e) {
+			// incomplete or outdated file, the screenshots just have to be compared
+			return Collections.emptyMap();
+		} finally {
+			ResourceUtils.close(in, file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Writes the fingerprints into a temporary file that replaces the fingerprints file, such that a concurrent reader
+	 * or an interrupted write never leaves an incomplete file behind.
+	 */
+	private void write(final Map<String, ScreenshotFingerprint> fingerprints) {
+		file.getParentFile().mkdirs();
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		DataOutputStream out = null;
+		boolean written = false;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(fingerprints.size());
+			for (Map.Entry<String, ScreenshotFingerprint> fingerprint : fingerprints.entrySet()) {
+				out.writeUTF(fingerprint.getKey());
+				out.writeLong(fingerprint.getValue().size);
+				out.writeLong(fingerprint.getValue().lastModified);
+				out.writeUTF(fingerprint.getValue().hash);
+			}
+			out.close();
+			written = true;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write screenshot fingerprints file " + tempFile.getAbsolutePath(), e);
+		} finally {
+			ResourceUtils.close(out, tempFile.getAbsolutePath());
+			if (!written) {
+				tempFile.delete();
+			}
+		}
+		file.delete();
+		if (!tempFile.renameTo(file)) {
+			throw new RuntimeException("Could not rename " + tempFile.getAbsolutePath() + " to "
+					+ file.getAbsolutePath());
+		}
+		FileAccessCounter.fileWritten(file);
+	}
+
+	/**
+	 * @return the SHA-256 hash of the content of the screenshot, as hex string.
+	 */
+	public static String calculateContentHash(final File screenshot) {
+		InputStream in = null;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			in = new BufferedInputStream(new FileInputStream(screenshot));
+			byte[] buffer = new byte[8192];
+			int bytesRead;
+			while ((bytesRead = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, bytesRead);
+			}
+			FileAccessCounter.fileRead(screenshot);
+			return new String(Hex.encodeHex(digest.digest()));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read screenshot " + screenshot.getAbsolutePath(), e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported by this JVM.", e);
+		} finally {
+			ResourceUtils.close(in, screenshot.getAbsolutePath());
+		}
+	}
+
+	public static class ScreenshotFingerprint {
+
+		private final String hash;
+
+		private final long size;
+
+		private final long lastModified;
+
+		private ScreenshotFingerprint(final String hash, final long size, final long lastModified) {
+			this.hash = hash;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		private static ScreenshotFingerprint calculate(final File screenshot) {
+			long size = screenshot.length();
+			long lastModified = screenshot.lastModified();
+			return new ScreenshotFingerprint(calculateContentHash(screenshot), size, lastModified);
+		}
+
+		/**
+		 * @return true if the screenshot file has not been changed since this fingerprint was calculated (judged by
+		 *         its size and modification date, without reading it).
+		 */
+		public boolean isUpToDate(final File screenshot) {
+			return screenshot.length() == size && screenshot.lastModified() == lastModified;
+		}
+
+		public boolean hasSameContent(final ScreenshotFingerprint fingerprint) {
+			return size == fingerprint.size && hash.equals(fingerprint.hash);
+		}
+
+	}
+
+}
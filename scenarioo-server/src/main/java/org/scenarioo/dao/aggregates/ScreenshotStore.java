@@ -0,0 +1,186 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Content-addressed store of screenshots, to keep identical screenshots of different builds (and of the
+ * "last successful scenarios" build) only once on disk.
+ *
+ * The store contains one hard link per distinct screenshot content, named by the SHA-256 hash of the content. A
+ * screenshot of a build that has the same content as a stored one is replaced by a hard link to the stored file, such
+ * that the screenshot keeps its path in the build. Stored files that are not linked from any build anymore are removed
+ * by {@link #removeUnreferencedScreenshots()}.
+ *
+ * Screenshots can only be deduplicated on file systems supporting hard links, otherwise they are left untouched.
+ * Because all links share the same file, screenshots of imported builds must not be overwritten in place (builds are
+ * replaced as a whole directory instead).
+ */
+public class ScreenshotStore {
+
+	private static final Logger LOGGER = Logger.getLogger(ScreenshotStore.class);
+
+	private static final String SCREENSHOTS_DIRECTORY_NAME = "screenshots";
+
+	private static final String SCREENSHOT_FILE_SUFFIX = ".png";
+
+	private static final String DERIVED_NAME_PART = ".derived";
+
+	private static final String TEMPORARY_LINK_SUFFIX = ".link.derived.tmp";
+
+	private final File storeDirectory;
+
+	public ScreenshotStore(final File storeDirectory) {
+		this.storeDirectory = storeDirectory;
+	}
+
+	/**
+	 * Replace all screenshots of a build that have the same content as a stored screenshot by links to the stored
+	 * screenshot, and add the others to the store.
+	 *
+	 * @return the number of screenshots that have been replaced by links.
+	 */
+	public int deduplicateScreenshotsOfBuild(final File buildDirectory) {
+		int deduplicatedScreenshots = 0;
+		for (File featureDirectory : listDirectoriesThatAreNotDerived(buildDirectory)) {
+			for (File scenarioDirectory : listDirectoriesThatAreNotDerived(featureDirectory)) {
+				File[] screenshots = new File(scenarioDirectory, SCREENSHOTS_DIRECTORY_NAME).listFiles();
+				if (screenshots == null) {
+					continue;
+				}
+				for (File screenshot : screenshots) {
+					if (screenshot.isFile() && screenshot.getName().endsWith(SCREENSHOT_FILE_SUFFIX)
+							&& deduplicateScreenshot(screenshot)) {
+						deduplicatedScreenshots++;
+					}
+				}
+			}
+		}
+		return deduplicatedScreenshots;
+	}
+
+	/**
+	 * @return true if the screenshot has been replaced by a link to an identical stored screenshot.
+	 */
+	public boolean deduplicateScreenshot(final File screenshot) {
+		Path screenshotPath = screenshot.toPath();
+		File storedScreenshot = getStoredScreenshot(ScreenshotFingerprintsFile.calculateContentHash(screenshot));
+		Path storedScreenshotPath = storedScreenshot.toPath();
+		try {
+			if (!storedScreenshot.exists()) {
+				storedScreenshot.getParentFile().mkdirs();
+				try {
+					Files.createLink(storedScreenshotPath, screenshotPath);
+					return false;
+				} catch (FileAlreadyExistsException e) {
+					// stored by a concurrent import in the meantime, link to it
+				}
+			}
+			if (Files.isSameFile(storedScreenshotPath, screenshotPath)) {
+				return false;
+			}
+			if (storedScreenshot.length() != screenshot.length()) {
+				LOGGER.warn("Screenshot " + screenshot + " has the same hash as " + storedScreenshot
+						+ " but a different size, it is not deduplicated.");
+				return false;
+			}
+			replaceByLink(screenshot, storedScreenshot);
+			return true;
+		} catch (IOException e) {
+			LOGGER.debug("Could not deduplicate screenshot " + screenshot, e);
+			return false;
+		} catch (UnsupportedOperationException e) {
+			LOGGER.debug("File system does not support hard links, screenshot " + screenshot
+					+ " is not deduplicated.", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Delete all stored screenshots that are not linked from any build anymore.
+	 *
+	 * @return the number of deleted screenshots.
+	 */
+	public int removeUnreferencedScreenshots() {
+		int removedScreenshots = 0;
+		File[] hashDirectories = storeDirectory.listFiles();
+		if (hashDirectories == null) {
+			return 0;
+		}
+		for (File hashDirectory : hashDirectories) {
+			File[] storedScreenshots = hashDirectory.listFiles();
+			if (storedScreenshots == null) {
+				continue;
+			}
+			for (File storedScreenshot : storedScreenshots) {
+				try {
+					int numberOfLinks = (Integer) Files.getAttribute(storedScreenshot.toPath(), "unix:nlink");
+					if (numberOfLinks <= 1 && storedScreenshot.delete()) {
+						removedScreenshots++;
+					}
+				} catch (IOException e) {
+					LOGGER.warn("Could not check whether stored screenshot " + storedScreenshot + " is still used.", e);
+				} catch (UnsupportedOperationException e) {
+					LOGGER.debug("Number of links can not be read on this file system, no screenshots removed.");
+					return removedScreenshots;
+				} catch (IllegalArgumentException e) {
+					LOGGER.debug("Number of links can not be read on this file system, no screenshots removed.");
+					return removedScreenshots;
+				}
+			}
+		}
+		return removedScreenshots;
+	}
+
+	private void replaceByLink(final File screenshot, final File storedScreenshot) throws IOException {
+		Path temporaryLink = new File(screenshot.getParentFile(), screenshot.getName() + TEMPORARY_LINK_SUFFIX)
+				.toPath();
+		Files.deleteIfExists(temporaryLink);
+		Files.createLink(temporaryLink, storedScreenshot.toPath());
+		try {
+			Files.move(temporaryLink, screenshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.deleteIfExists(temporaryLink);
+			throw e;
+		}
+	}
+
+	private File getStoredScreenshot(final String hash) {
+		return new File(new File(storeDirectory, hash.substring(0, 2)), hash + SCREENSHOT_FILE_SUFFIX);
+	}
+
+	private File[] listDirectoriesThatAreNotDerived(final File parentDirectory) {
+		File[] directories = parentDirectory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(final File file) {
+				return file.isDirectory() && !file.getName().contains(DERIVED_NAME_PART);
+			}
+		});
+		return directories != null ? directories : new File[0];
+	}
+
+}
@@ -0,0 +1,125 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.scenarioo.api.exception.ResourceNotFoundException;
+import org.scenarioo.api.util.xml.ScenarioDocuXMLUtil;
+import org.scenarioo.model.docu.aggregates.steps.StepNavigation;
+import org.scenarioo.utils.FileAccessCounter;
+import org.scenarioo.utils.ResourceUtils;
+
+/**
+ * Stores the step navigations of all steps of one scenario in one file, such that the navigation of a single step can
+ * be read without parsing the whole file.
+ *
+ * File layout:
+ * <ul>
+ * <li>number of steps n (int)</li>
+ * <li>n + 1 offsets (long), offset i is the position of the navigation of step i, the last offset is the end of the
+ * file</li>
+ * <li>n XML documents, one per step navigation</li>
+ * </ul>
+ */
+class StepNavigationsFile {
+
+	private static final int OFFSET_SIZE = 8;
+
+	private static final int HEADER_SIZE = 4;
+
+	private final File file;
+
+	StepNavigationsFile(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Write the navigations of all steps of the scenario, the navigation of step i has to be at index i.
+	 */
+	void write(final List<StepNavigation> stepNavigations) {
+		List<byte[]> records = new ArrayList<byte[]>(stepNavigations.size());
+		for (StepNavigation stepNavigation : stepNavigations) {
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			ScenarioDocuXMLUtil.marshal(stepNavigation, record, false);
+			records.add(record.toByteArray());
+		}
+
+		file.getParentFile().mkdirs();
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(records.size());
+			long offset = HEADER_SIZE + (records.size() + 1) * OFFSET_SIZE;
+			for (byte[] record : records) {
+				out.writeLong(offset);
+				offset += record.length;
+			}
+			out.writeLong(offset);
+			for (byte[] record : records) {
+				out.write(record);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write step navigations file " + file.getAbsolutePath(), e);
+		} finally {
+			ResourceUtils.close(out, file.getAbsolutePath());
+		}
+		FileAccessCounter.fileWritten(file);
+	}
+
+	/**
+	 * Read the navigation of one step by looking up its offset in the file.
+	 *
+	 * @throws ResourceNotFoundException
+	 *             if there is no navigation for this step.
+	 */
+	StepNavigation read(final int stepIndex) {
+		if (!file.exists()) {
+			throw new ResourceNotFoundException(file.getAbsolutePath());
+		}
+		RandomAccessFile in = null;
+		try {
+			in = new RandomAccessFile(file, "r");
+			int stepsCount = in.readInt();
+			if (stepIndex < 0 || stepIndex >= stepsCount) {
+				throw new ResourceNotFoundException(file.getAbsolutePath() + " (step " + stepIndex + ")");
+			}
+			in.seek(HEADER_SIZE + (long) stepIndex * OFFSET_SIZE);
+			long start = in.readLong();
+			long end = in.readLong();
+			byte[] record = new byte[(int) (end - start)];
+			in.seek(start);
+			in.readFully(record);
+			return ScenarioDocuXMLUtil.unmarshal(StepNavigation.class, new ByteArrayInputStream(record));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read step navigations file " + file.getAbsolutePath(), e);
+		} finally {
+			ResourceUtils.close(in, file.getAbsolutePath());
+		}
+	}
+
+}
@@ -0,0 +1,332 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.SchemaOutputResolver;
+import javax.xml.transform.Result;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.scenarioo.api.util.xml.ScenarioDocuXMLUtil;
+import org.scenarioo.model.docu.entities.Step;
+import org.scenarioo.utils.FileAccessCounter;
+import org.scenarioo.utils.ResourceUtils;
+
+/**
+ * Caches the steps of a scenario in one file, together with a fingerprint of the step files they were read from. When a
+ * build is aggregated again, the steps of unchanged scenarios are read from this file instead of from all the step
+ * files. This only saves reading and parsing the step files: the data derived from the steps of the whole build is
+ * still calculated from all scenarios and written again.
+ *
+ * The cache is only valid for the XML schema of the steps it was written with, it stays valid when only the format of
+ * the aggregated data changes. The HTML source of the steps is only cached if it was needed (for the full text search),
+ * a cache without HTML source can not be used when it is needed.
+ *
+ * File layout:
+ * <ul>
+ * <li>fingerprint of the step schema (UTF)</li>
+ * <li>fingerprint of the step files (UTF)</li>
+ * <li>whether the HTML source of the steps is contained (boolean)</li>
+ * <li>one record per step: length (int) and XML of the step</li>
+ * <li>-1 (int) as end marker</li>
+ * </ul>
+ */
+public class StepsCacheFile {
+
+	private static final int END_OF_STEPS = -1;
+
+	private static final String HTML_ELEMENT_NAME = "html";
+
+	private static final String STEP_SCHEMA_FINGERPRINT = calculateStepSchemaFingerprint();
+
+	private final File file;
+
+	public StepsCacheFile(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @param htmlNeeded
+	 *            true if the steps are needed with their HTML source.
+	 * @return true if the file contains the steps for the passed fingerprint of the step files.
+	 */
+	public boolean isUpToDate(final String fingerprint, final boolean htmlNeeded) {
+		if (!file.exists()) {
+			return false;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			return STEP_SCHEMA_FINGERPRINT.equals(in.readUTF()) && fingerprint.equals(in.readUTF())
+					&& (in.readBoolean() || !htmlNeeded);
+		} catch (IOException e) {
+			return false;
+		} finally {
+			ResourceUtils.close(in, file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * @param withHtml
+	 *            false to read the steps without their HTML source.
+	 */
+	public Reader createReader(final boolean withHtml) {
+		return new Reader(withHtml);
+	}
+
+	/**
+	 * The file is only replaced when the writer is committed.
+	 *
+	 * @param withHtml
+	 *            false to not store the HTML source of the steps.
+	 */
+	public Writer createWriter(final String fingerprint, final boolean withHtml) {
+		return new Writer(fingerprint, withHtml);
+	}
+
+	/**
+	 * Reads the cached steps one after the other while iterating, can only be iterated once.
+	 */
+	public class Reader implements Iterable<Step> {
+
+		private final DataInputStream in;
+
+		private final boolean skipHtml;
+
+		private Reader(final boolean withHtml) {
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				in.readUTF();
+				in.readUTF();
+				skipHtml = in.readBoolean() && !withHtml;
+				FileAccessCounter.fileRead(file);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not open steps cache " + file.getAbsolutePath(), e);
+			}
+		}
+
+		@Override
+		public Iterator<Step> iterator() {
+			return new Iterator<Step>() {
+
+				private byte[] nextRecord = readRecord();
+
+				@Override
+				public boolean hasNext() {
+					return nextRecord != null;
+				}
+
+				@Override
+				public Step next() {
+					if (nextRecord == null) {
+						throw new NoSuchElementException();
+					}
+					Step step;
+					if (skipHtml) {
+						step = ScenarioDocuXMLUtil.unmarshalSkippingElements(Step.class, new ByteArrayInputStream(
+								nextRecord), HTML_ELEMENT_NAME);
+					} else {
+						step = ScenarioDocuXMLUtil.unmarshal(Step.class, new ByteArrayInputStream(nextRecord));
+					}
+					nextRecord = readRecord();
+					return step;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		private byte[] readRecord() {
+			try {
+				int length = in.readInt();
+				if (length == END_OF_STEPS) {
+					return null;
+				}
+				byte[] record = new byte[length];
+				in.readFully(record);
+				return record;
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read steps cache " + file.getAbsolutePath(), e);
+			}
+		}
+
+		public void close() {
+			ResourceUtils.close(in, file.getAbsolutePath());
+		}
+
+	}
+
+	/**
+	 * Writes the steps into a temporary file, that replaces the cache file on {@link #commit()}.
+	 */
+	public class Writer {
+
+		private final File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+		private final DataOutputStream out;
+
+		private final boolean withHtml;
+
+		private boolean closed = false;
+
+		private Writer(final String fingerprint, final boolean withHtml) {
+			this.withHtml = withHtml;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+				out.writeUTF(STEP_SCHEMA_FINGERPRINT);
+				out.writeUTF(fingerprint);
+				out.writeBoolean(withHtml);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not create steps cache " + tempFile.getAbsolutePath(), e);
+			}
+		}
+
+		/**
+		 * Add the step, the HTML source of the step is only stored if the cache is written with HTML.
+		 */
+		public void add(final Step step) {
+			Step stepWithoutHtml = step;
+			if (!withHtml && step.getHtml() != null) {
+				stepWithoutHtml = new Step();
+				stepWithoutHtml.setPage(step.getPage());
+				stepWithoutHtml.setStepDescription(step.getStepDescription());
+				stepWithoutHtml.setMetadata(step.getMetadata());
+				stepWithoutHtml.setScreenAnnotations(step.getScreenAnnotations());
+			}
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			ScenarioDocuXMLUtil.marshal(stepWithoutHtml, record, false);
+			try {
+				out.writeInt(record.size());
+				record.writeTo(out);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write steps cache " + tempFile.getAbsolutePath(), e);
+			}
+		}
+
+		/**
+		 * @return the passed steps, each step is added to the cache when it is reached while iterating.
+		 */
+		public Iterable<Step> addWhileIterating(final Iterable<Step> steps) {
+			return new Iterable<Step>() {
+				@Override
+				public Iterator<Step> iterator() {
+					final Iterator<Step> stepsIterator = steps.iterator();
+					return new Iterator<Step>() {
+						@Override
+						public boolean hasNext() {
+							return stepsIterator.hasNext();
+						}
+
+						@Override
+						public Step next() {
+							Step step = stepsIterator.next();
+							add(step);
+							return step;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+
+		/**
+		 * Replace the cache file with the written steps.
+		 */
+		public void commit() {
+			try {
+				out.writeInt(END_OF_STEPS);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write steps cache " + tempFile.getAbsolutePath(), e);
+			}
+			closeStream();
+			file.delete();
+			if (!tempFile.renameTo(file)) {
+				throw new RuntimeException("Could not rename " + tempFile.getAbsolutePath() + " to "
+						+ file.getAbsolutePath());
+			}
+			FileAccessCounter.fileWritten(file);
+		}
+
+		/**
+		 * Discards the written steps if the writer was not committed.
+		 */
+		public void close() {
+			if (!closed) {
+				closeStream();
+				tempFile.delete();
+			}
+		}
+
+		private void closeStream() {
+			closed = true;
+			ResourceUtils.close(out, tempFile.getAbsolutePath());
+		}
+
+	}
+
+	/**
+	 * Hash of the XML schemas of the steps, which changes whenever the model of the steps changes.
+	 */
+	private static String calculateStepSchemaFingerprint() {
+		final List<StringWriter> schemas = new ArrayList<StringWriter>();
+		try {
+			ScenarioDocuXMLUtil.createJAXBContext(Step.class).generateSchema(new SchemaOutputResolver() {
+				@Override
+				public Result createOutput(final String namespaceUri, final String suggestedFileName) {
+					StringWriter schema = new StringWriter();
+					schemas.add(schema);
+					StreamResult result = new StreamResult(schema);
+					result.setSystemId(suggestedFileName);
+					return result;
+				}
+			});
+		} catch (JAXBException | IOException e) {
+			throw new IllegalStateException("Could not generate the XML schema of the steps.", e);
+		}
+		StringBuilder allSchemas = new StringBuilder();
+		for (StringWriter schema : schemas) {
+			allSchemas.append(schema.toString());
+		}
+		return DigestUtils.md5Hex(allSchemas.toString());
+	}
+
+}
@@ -2,6 +2,7 @@ package org.scenarioo.dao.basic;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
@@ -51,6 +52,22 @@ public class FileSystemOperationsDao {
 		}
 	}
 	
+	/**
+	 * Link the destination to the source file if the file system supports hard links, otherwise copy it. The linked
+	 * file is shared, so it must only be replaced but never changed in place afterwards.
+	 */
+	public void linkOrCopyFile(final File source, final File destination) throws IOException {
+		destination.getParentFile().mkdirs();
+		Files.deleteIfExists(destination.toPath());
+		try {
+			Files.createLink(destination.toPath(), source.toPath());
+		} catch (IOException e) {
+			FileUtils.copyFile(source, destination);
+		} catch (UnsupportedOperationException e) {
+			FileUtils.copyFile(source, destination);
+		}
+	}
+	
 	private File getBuildFolder(final File documentationDataDirectory, final BuildIdentifier buildIdentifier) {
 		ScenarioDocuAggregationFiles files = new ScenarioDocuAggregationFiles(documentationDataDirectory);
 		return files.getBuildDirectory(buildIdentifier);
@@ -0,0 +1,147 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.diffViewer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * One running <code>gm batch</code> process, that executes GraphicsMagick commands sent to its standard input one after
+ * the other, without starting a new process per command.
+ *
+ * The end of the output of each command is recognized by the pass or fail feedback that the process is told to print
+ * after each command. Errors are merged into the output. The process ends by itself when its standard input is closed,
+ * also when the server stops.
+ */
+public class GraphicsMagickBatchSession {
+
+	private static final Logger LOGGER = Logger.getLogger(GraphicsMagickBatchSession.class);
+
+	private static final String PASS_FEEDBACK = "SCENARIOO_GM_COMMAND_PASSED";
+
+	private static final String FAIL_FEEDBACK = "SCENARIOO_GM_COMMAND_FAILED";
+
+	private static final String END_OF_OUTPUT = "SCENARIOO_GM_END_OF_OUTPUT";
+
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	/**
+	 * Thrown if GraphicsMagick reports that a command failed, the session can still be used afterwards.
+	 */
+	public static class CommandFailedException extends IOException {
+		public CommandFailedException(final String message) {
+			super(message);
+		}
+	}
+
+	private final Process process;
+
+	private final Writer commandWriter;
+
+	private final BlockingQueue<String> outputLines = new LinkedBlockingQueue<String>();
+
+	public GraphicsMagickBatchSession(final String graphicsMagickExecutable) throws IOException {
+		process = new ProcessBuilder(graphicsMagickExecutable, "batch", "-echo", "off", "-feedback", "on", "-pass",
+				PASS_FEEDBACK, "-fail", FAIL_FEEDBACK, "-prompt", "", "-").redirectErrorStream(true).start();
+		commandWriter = new OutputStreamWriter(process.getOutputStream(), CHARSET);
+		Thread outputReader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readOutput();
+			}
+		}, "scenarioo-graphicsmagick-batch-output");
+		outputReader.setDaemon(true);
+		outputReader.start();
+	}
+
+	private void readOutput() {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), CHARSET));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				outputLines.add(line);
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Reading output of GraphicsMagick batch process failed.", e);
+		} finally {
+			outputLines.add(END_OF_OUTPUT);
+		}
+	}
+
+	/**
+	 * @param commandLine
+	 *            a GraphicsMagick command line without the "gm" (arguments containing spaces have to be quoted).
+	 * @return the output lines of the command.
+	 * @throws CommandFailedException
+	 *             if the command failed (the session can still be used).
+	 * @throws IOException
+	 *             if the process ended or can not be written to (the session must be destroyed).
+	 * @throws TimeoutException
+	 *             if the command did not finish in time (the session must be destroyed).
+	 */
+	public synchronized List<String> execute(final String commandLine, final long timeoutMillis) throws IOException,
+			TimeoutException {
+		commandWriter.write(commandLine);
+		commandWriter.write('\n');
+		commandWriter.flush();
+
+		List<String> output = new ArrayList<String>();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		try {
+			while (true) {
+				String line = outputLines.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (line == null) {
+					throw new TimeoutException("GraphicsMagick command did not finish within " + timeoutMillis
+							+ " ms: " + commandLine);
+				} else if (line.equals(END_OF_OUTPUT)) {
+					throw new IOException("GraphicsMagick batch process ended unexpectedly, output: " + output);
+				} else if (line.contains(PASS_FEEDBACK)) {
+					return output;
+				} else if (line.contains(FAIL_FEEDBACK)) {
+					throw new CommandFailedException("GraphicsMagick command failed: " + commandLine + ", output: "
+							+ output);
+				}
+				output.add(line);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for GraphicsMagick command: " + commandLine);
+		}
+	}
+
+	/**
+	 * Kill the process, e.g. because it hangs.
+	 */
+	public void destroy() {
+		process.destroy();
+	}
+
+}
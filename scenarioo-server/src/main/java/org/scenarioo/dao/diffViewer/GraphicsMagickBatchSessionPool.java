@@ -0,0 +1,164 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.diffViewer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+import org.scenarioo.dao.diffViewer.GraphicsMagickBatchSession.CommandFailedException;
+
+/**
+ * Pool of {@link GraphicsMagickBatchSession}s, to execute GraphicsMagick commands of several threads in parallel.
+ * Sessions are started when they are needed first, a session that hangs or ended is destroyed and replaced by a new one
+ * for the next command. All sessions are ended when the pool is shut down.
+ */
+public class GraphicsMagickBatchSessionPool {
+
+	private static final Logger LOGGER = Logger.getLogger(GraphicsMagickBatchSessionPool.class);
+
+	private static final long WAIT_FOR_IDLE_SESSION_MILLIS = 1000;
+
+	private final String graphicsMagickExecutable;
+
+	private final int poolSize;
+
+	private final long commandTimeoutMillis;
+
+	private final BlockingQueue<GraphicsMagickBatchSession> idleSessions = new LinkedBlockingQueue<GraphicsMagickBatchSession>();
+
+	private int startedSessions = 0;
+
+	private volatile boolean shutDown = false;
+
+	public GraphicsMagickBatchSessionPool(final String graphicsMagickExecutable, final int poolSize,
+			final long commandTimeoutMillis) {
+		this.graphicsMagickExecutable = graphicsMagickExecutable;
+		this.poolSize = poolSize;
+		this.commandTimeoutMillis = commandTimeoutMillis;
+	}
+
+	/**
+	 * Executes the command in the next free session, waits for a session if all are busy.
+	 * 
+	 * @see GraphicsMagickBatchSession#execute(String, long)
+	 */
+	public List<String> execute(final String commandLine) throws IOException, TimeoutException {
+		GraphicsMagickBatchSession session = acquireSession();
+		boolean sessionUsable = false;
+		try {
+			List<String> output = session.execute(commandLine, commandTimeoutMillis);
+			sessionUsable = true;
+			return output;
+		} catch (CommandFailedException e) {
+			sessionUsable = true;
+			throw e;
+		} finally {
+			if (sessionUsable) {
+				idleSessions.add(session);
+				if (shutDown) {
+					destroyIdleSessions();
+				}
+			} else {
+				LOGGER.warn("Restarting GraphicsMagick batch process that hangs or ended.");
+				session.destroy();
+				sessionEnded();
+			}
+		}
+	}
+
+	/**
+	 * Ends all batch processes, the processes executing a command are ended as soon as the command is done. No more
+	 * commands can be executed afterwards.
+	 */
+	public void shutdown() {
+		shutDown = true;
+		destroyIdleSessions();
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	synchronized int getNumberOfStartedSessions() {
+		return startedSessions;
+	}
+
+	private void destroyIdleSessions() {
+		GraphicsMagickBatchSession session;
+		while ((session = idleSessions.poll()) != null) {
+			session.destroy();
+			sessionEnded();
+		}
+	}
+
+	/**
+	 * While waiting for an idle session, a new session is started as soon as a destroyed session has left a free place
+	 * in the pool.
+	 */
+	private GraphicsMagickBatchSession acquireSession() throws IOException {
+		try {
+			while (true) {
+				if (shutDown) {
+					throw new IOException("GraphicsMagick batch processes have been shut down.");
+				}
+				GraphicsMagickBatchSession session = idleSessions.poll();
+				if (session != null) {
+					return session;
+				}
+				if (reserveNewSession()) {
+					return startSession();
+				}
+				session = idleSessions.poll(WAIT_FOR_IDLE_SESSION_MILLIS, TimeUnit.MILLISECONDS);
+				if (session != null) {
+					return session;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a GraphicsMagick batch process.");
+		}
+	}
+
+	private GraphicsMagickBatchSession startSession() throws IOException {
+		try {
+			return new GraphicsMagickBatchSession(graphicsMagickExecutable);
+		} catch (IOException e) {
+			sessionEnded();
+			throw e;
+		}
+	}
+
+	private synchronized boolean reserveNewSession() {
+		if (startedSessions >= poolSize) {
+			return false;
+		}
+		startedSessions++;
+		return true;
+	}
+
+	private synchronized void sessionEnded() {
+		startedSessions--;
+	}
+
+}
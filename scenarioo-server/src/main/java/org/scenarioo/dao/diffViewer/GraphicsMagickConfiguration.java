@@ -1,5 +1,6 @@
 package org.scenarioo.dao.diffViewer;
 
+import java.io.File;
 import java.io.IOException;
 
 import org.apache.log4j.Logger;
@@ -7,12 +8,27 @@ import org.im4java.core.CompareCmd;
 import org.im4java.core.IM4JavaException;
 import org.im4java.core.IMOperation;
 import org.im4java.process.ArrayListOutputConsumer;
+import org.scenarioo.repository.RepositoryLocator;
 
 public class GraphicsMagickConfiguration {
 	private static final Logger LOGGER = Logger.getLogger(GraphicsMagickConfiguration.class);
 
+	/**
+	 * Time after which a command in a batch process is considered to hang, the process is restarted then.
+	 */
+	public static final long BATCH_COMMAND_TIMEOUT_MILLIS = 60000;
+
+	private static final String GRAPHICS_MAGICK_EXECUTABLE = "gm";
+
+	/**
+	 * Directory containing the GraphicsMagick executable, if it is not on the path (as for im4java).
+	 */
+	private static final String TOOL_PATH_ENVIRONMENT_VARIABLE = "IM4JAVA_TOOLPATH";
+
 	private static Boolean isAvailable;
 
+	private static GraphicsMagickBatchSessionPool batchSessionPool;
+
 	public static synchronized boolean isAvailable() {
 		if (isAvailable == null) {
 			isAvailable = isGraphicsMagickAvailable();
@@ -20,6 +36,52 @@ public class GraphicsMagickConfiguration {
 		return isAvailable;
 	}
 
+	/**
+	 * @return the pool of batch processes with the configured number of processes, the pool is replaced when this
+	 *         number has been reconfigured.
+	 */
+	public static synchronized GraphicsMagickBatchSessionPool getBatchSessionPool() {
+		int poolSize = getBatchSessionPoolSize();
+		if (batchSessionPool != null && batchSessionPool.getPoolSize() != poolSize) {
+			LOGGER.info("Number of GraphicsMagick batch processes has been reconfigured to " + poolSize + ".");
+			batchSessionPool.shutdown();
+			batchSessionPool = null;
+		}
+		if (batchSessionPool == null) {
+			batchSessionPool = new GraphicsMagickBatchSessionPool(getGraphicsMagickExecutable(), poolSize,
+					BATCH_COMMAND_TIMEOUT_MILLIS);
+		}
+		return batchSessionPool;
+	}
+
+	/**
+	 * Ends the batch processes, must be called on shutdown of the server.
+	 */
+	public static synchronized void shutdownBatchSessionPool() {
+		if (batchSessionPool != null) {
+			batchSessionPool.shutdown();
+			batchSessionPool = null;
+		}
+	}
+
+	public static int getBatchSessionPoolSize() {
+		return Math.max(1, RepositoryLocator.INSTANCE.getConfigurationRepository().getConfiguration()
+				.getGraphicsMagickBatchSessions());
+	}
+
+	private static String getGraphicsMagickExecutable() {
+		String toolPath = System.getenv(TOOL_PATH_ENVIRONMENT_VARIABLE);
+		if (toolPath != null) {
+			for (String directory : toolPath.split(File.pathSeparator)) {
+				File executable = new File(directory, GRAPHICS_MAGICK_EXECUTABLE);
+				if (executable.isFile() || new File(directory, GRAPHICS_MAGICK_EXECUTABLE + ".exe").isFile()) {
+					return executable.getPath();
+				}
+			}
+		}
+		return GRAPHICS_MAGICK_EXECUTABLE;
+	}
+
 	private static boolean isGraphicsMagickAvailable() {
 		CompareCmd gmConsole = new CompareCmd(true);
 		gmConsole.setOutputConsumer(new ArrayListOutputConsumer());
@@ -38,8 +38,16 @@ public class DiffFiles {
 	private static final String FILE_NAME_BUILD = "build.xml";
 	private static final String FILE_NAME_FEATURE = "feature.xml";
 	private static final String FILE_NAME_SCENARIO = "scenario.xml";
-	private static final NumberFormat THREE_DIGIT_NUM_FORMAT = NumberFormatCreator
-			.createNumberFormatWithMinimumIntegerDigits(3);
+
+	/**
+	 * One number format per thread, because number formats are not thread safe.
+	 */
+	private static final ThreadLocal<NumberFormat> THREE_DIGIT_NUM_FORMAT = new ThreadLocal<NumberFormat>() {
+		@Override
+		protected NumberFormat initialValue() {
+			return NumberFormatCreator.createNumberFormatWithMinimumIntegerDigits(3);
+		}
+	};
 
 	private final File diffViewerDirectory;
 
@@ -128,7 +136,7 @@ public class DiffFiles {
 			final String comparisonName, final String featureName,
 			final String scenarioName, final int stepIndex) {
 		return new File(getStepsDirectory(baseBranchName, baseBuildName, comparisonName, featureName, scenarioName),
-				THREE_DIGIT_NUM_FORMAT.format(stepIndex) + ".xml");
+				THREE_DIGIT_NUM_FORMAT.get().format(stepIndex) + ".xml");
 	}
 
 	public List<File> getStepFiles(final String baseBranchName, final String baseBuildName,
@@ -22,6 +22,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -37,6 +39,8 @@ import org.scenarioo.model.diffViewer.StepDiffInfo;
 
 /**
  * XML Diff Writer which writes the xml files in a separate thread.
+ *
+ * Diff infos can be saved by several threads at the same time, the files are written in the order they are saved.
  */
 public class DiffWriterXmlImpl implements DiffWriter {
 
@@ -181,7 +185,28 @@ public class DiffWriterXmlImpl implements DiffWriter {
 	private static ExecutorService newAsyncWriteExecutor() {
 		return new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
 				new LinkedBlockingQueue<Runnable>(
-						ScenarioDocuGeneratorConfiguration.INSTANCE.getAsyncWriteBufferSize()));
+						ScenarioDocuGeneratorConfiguration.INSTANCE.getAsyncWriteBufferSize()),
+				new WaitForFreeBufferPolicy());
+	}
+
+	/**
+	 * Blocks the saving thread until the write task fits into the buffer again, instead of rejecting it.
+	 */
+	private static class WaitForFreeBufferPolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(final Runnable writeTask, final ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("Diff writer has already been flushed.");
+			}
+			try {
+				executor.getQueue().put(writeTask);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting to write diff files.", e);
+			}
+		}
+
 	}
 
 }
@@ -39,6 +39,9 @@ public class Configuration {
 
 	public static final String DEFAULT_ALIAS_FOR_MOST_RECENT_BUILD = "most recent";
 	public static final String DEFAULT_ALIAS_FOR_LAST_SUCCESSFUL_BUILD = "last successful";
+	public static final String SCREENSHOT_COMPARISON_ENGINE_GRAPHICS_MAGICK = "graphicsMagick";
+	public static final String SCREENSHOT_COMPARISON_ENGINE_GRAPHICS_MAGICK_BATCH = "graphicsMagickBatch";
+	public static final String SCREENSHOT_COMPARISON_ENGINE_JAVA = "java";
 
 	private String testDocumentationDirPath;
 
@@ -67,6 +70,78 @@ public class Configuration {
 	 */
 	private boolean createLastSuccessfulScenarioBuild = false;
 
+	/**
+	 * Maximum number of builds that are imported at the same time.
+	 */
+	private int maxConcurrentBuildImports = 2;
+
+	/**
+	 * Maximum number of builds of the same branch that are imported at the same time.
+	 */
+	private int maxConcurrentBuildImportsPerBranch = 1;
+
+	/**
+	 * Number of threads to aggregate the features and scenarios of one build in parallel, 0 means one thread per
+	 * available processor.
+	 */
+	private int aggregationThreadsPerBuildImport = 0;
+
+	/**
+	 * Write the derived XML files of aggregated builds with line breaks and indentation, switch off to save space and
+	 * time when importing builds.
+	 */
+	private boolean formattedDerivedFiles = true;
+
+	/**
+	 * Watch the documentation directory to import added builds and to update changed or removed builds automatically.
+	 */
+	private boolean watchDocumentationDirectory = true;
+
+	/**
+	 * Interval to poll the documentation directory for changed builds instead of watching it with file system events,
+	 * e.g. for network file systems. 0 means file system events are used.
+	 */
+	private int documentationDirectoryPollingIntervalInSeconds = 0;
+
+	/**
+	 * Maximum number of megabytes per second read and written by build imports, 0 means no limit.
+	 */
+	private int importIoMegabytesPerSecond = 0;
+
+	/**
+	 * Maximum number of files per second read and written by build imports, 0 means no limit.
+	 */
+	private int importIoFileOperationsPerSecond = 0;
+
+	/**
+	 * Build imports slow down while requests for documentation data take longer than this, 0 means imports never slow
+	 * down.
+	 */
+	private int importBackOffRequestLatencyInMillis = 250;
+
+	/**
+	 * Replace identical screenshots of different builds by hard links to one file, when importing builds.
+	 */
+	private boolean deduplicateScreenshots = false;
+
+	/**
+	 * How screenshots of compared builds are compared: "graphicsMagick" runs a GraphicsMagick process per screenshot,
+	 * "graphicsMagickBatch" sends the comparisons to long running GraphicsMagick batch processes, "java" compares them
+	 * inside the server (much faster, and no GraphicsMagick installation needed).
+	 */
+	private String screenshotComparisonEngine = SCREENSHOT_COMPARISON_ENGINE_GRAPHICS_MAGICK;
+
+	/**
+	 * Number of GraphicsMagick batch processes kept running for the "graphicsMagickBatch" comparison engine.
+	 */
+	private int graphicsMagickBatchSessions = 2;
+
+	/**
+	 * Number of threads to compare the scenarios and steps of build comparisons in parallel, 0 means one thread per
+	 * available processor. Comparisons running at the same time share these threads.
+	 */
+	private int threadsPerBuildComparison = 0;
+
 	private boolean expandPagesInScenarioOverview = false;
 	@XmlElementWrapper(name = "branchAliases")
 	@XmlElement(name = "branchAlias")
@@ -226,4 +301,109 @@ public class Configuration {
 		this.createLastSuccessfulScenarioBuild = createLastSuccessfulScenarioBuild;
 	}
 
+	public int getMaxConcurrentBuildImports() {
+		return maxConcurrentBuildImports;
+	}
+
+	public void setMaxConcurrentBuildImports(final int maxConcurrentBuildImports) {
+		this.maxConcurrentBuildImports = maxConcurrentBuildImports;
+	}
+
+	public int getMaxConcurrentBuildImportsPerBranch() {
+		return maxConcurrentBuildImportsPerBranch;
+	}
+
+	public void setMaxConcurrentBuildImportsPerBranch(final int maxConcurrentBuildImportsPerBranch) {
+		this.maxConcurrentBuildImportsPerBranch = maxConcurrentBuildImportsPerBranch;
+	}
+
+	public int getAggregationThreadsPerBuildImport() {
+		return aggregationThreadsPerBuildImport;
+	}
+
+	public void setAggregationThreadsPerBuildImport(final int aggregationThreadsPerBuildImport) {
+		this.aggregationThreadsPerBuildImport = aggregationThreadsPerBuildImport;
+	}
+
+	public boolean isFormattedDerivedFiles() {
+		return formattedDerivedFiles;
+	}
+
+	public void setFormattedDerivedFiles(final boolean formattedDerivedFiles) {
+		this.formattedDerivedFiles = formattedDerivedFiles;
+	}
+
+	public boolean isWatchDocumentationDirectory() {
+		return watchDocumentationDirectory;
+	}
+
+	public void setWatchDocumentationDirectory(final boolean watchDocumentationDirectory) {
+		this.watchDocumentationDirectory = watchDocumentationDirectory;
+	}
+
+	public int getDocumentationDirectoryPollingIntervalInSeconds() {
+		return documentationDirectoryPollingIntervalInSeconds;
+	}
+
+	public void setDocumentationDirectoryPollingIntervalInSeconds(
+			final int documentationDirectoryPollingIntervalInSeconds) {
+		this.documentationDirectoryPollingIntervalInSeconds = documentationDirectoryPollingIntervalInSeconds;
+	}
+
+	public int getImportIoMegabytesPerSecond() {
+		return importIoMegabytesPerSecond;
+	}
+
+	public void setImportIoMegabytesPerSecond(final int importIoMegabytesPerSecond) {
+		this.importIoMegabytesPerSecond = importIoMegabytesPerSecond;
+	}
+
+	public int getImportIoFileOperationsPerSecond() {
+		return importIoFileOperationsPerSecond;
+	}
+
+	public void setImportIoFileOperationsPerSecond(final int importIoFileOperationsPerSecond) {
+		this.importIoFileOperationsPerSecond = importIoFileOperationsPerSecond;
+	}
+
+	public int getImportBackOffRequestLatencyInMillis() {
+		return importBackOffRequestLatencyInMillis;
+	}
+
+	public void setImportBackOffRequestLatencyInMillis(final int importBackOffRequestLatencyInMillis) {
+		this.importBackOffRequestLatencyInMillis = importBackOffRequestLatencyInMillis;
+	}
+
+	public boolean isDeduplicateScreenshots() {
+		return deduplicateScreenshots;
+	}
+
+	public void setDeduplicateScreenshots(final boolean deduplicateScreenshots) {
+		this.deduplicateScreenshots = deduplicateScreenshots;
+	}
+
+	public String getScreenshotComparisonEngine() {
+		return screenshotComparisonEngine;
+	}
+
+	public void setScreenshotComparisonEngine(final String screenshotComparisonEngine) {
+		this.screenshotComparisonEngine = screenshotComparisonEngine;
+	}
+
+	public int getGraphicsMagickBatchSessions() {
+		return graphicsMagickBatchSessions;
+	}
+
+	public void setGraphicsMagickBatchSessions(final int graphicsMagickBatchSessions) {
+		this.graphicsMagickBatchSessions = graphicsMagickBatchSessions;
+	}
+
+	public int getThreadsPerBuildComparison() {
+		return threadsPerBuildComparison;
+	}
+
+	public void setThreadsPerBuildComparison(final int threadsPerBuildComparison) {
+		this.threadsPerBuildComparison = threadsPerBuildComparison;
+	}
+
 }
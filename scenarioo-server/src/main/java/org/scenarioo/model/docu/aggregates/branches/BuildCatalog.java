@@ -0,0 +1,56 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.model.docu.aggregates.branches;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Snapshot of all branches and builds found in the documentation directory the last time it was read, to quickly
+ * provide the builds on startup of the server before the documentation directory is read again.
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class BuildCatalog {
+
+	@XmlElementWrapper(name = "branches")
+	@XmlElement(name = "branchBuilds")
+	private List<BranchBuilds> branchBuildsList = new ArrayList<BranchBuilds>();
+
+	public BuildCatalog() {
+	}
+
+	public BuildCatalog(final List<BranchBuilds> branchBuildsList) {
+		this.branchBuildsList = branchBuildsList;
+	}
+
+	public List<BranchBuilds> getBranchBuildsList() {
+		return branchBuildsList;
+	}
+
+	public void setBranchBuildsList(final List<BranchBuilds> branchBuildsList) {
+		this.branchBuildsList = branchBuildsList;
+	}
+
+}
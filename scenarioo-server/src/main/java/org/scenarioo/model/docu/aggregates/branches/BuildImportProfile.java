@@ -0,0 +1,123 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.model.docu.aggregates.branches;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+
+/**
+ * Time and resources used to aggregate a build, in total and for each phase of the aggregation, to compare imports of
+ * different builds and server versions.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class BuildImportProfile {
+
+	/**
+	 * Version of the server that imported the build.
+	 */
+	private String serverVersion;
+
+	/**
+	 * Format version of the aggregated data written by the import.
+	 */
+	private String internalFormatVersion;
+
+	private long wallTimeInMillis;
+
+	private long numberOfSteps;
+
+	private double stepsPerSecond;
+
+	private double megabytesReadPerSecond;
+
+	private double megabytesWrittenPerSecond;
+
+	@XmlElementWrapper(name = "phases")
+	@XmlElement(name = "phase")
+	private List<ImportPhaseProfile> phases = new ArrayList<ImportPhaseProfile>();
+
+	public String getServerVersion() {
+		return serverVersion;
+	}
+
+	public void setServerVersion(final String serverVersion) {
+		this.serverVersion = serverVersion;
+	}
+
+	public String getInternalFormatVersion() {
+		return internalFormatVersion;
+	}
+
+	public void setInternalFormatVersion(final String internalFormatVersion) {
+		this.internalFormatVersion = internalFormatVersion;
+	}
+
+	public long getWallTimeInMillis() {
+		return wallTimeInMillis;
+	}
+
+	public void setWallTimeInMillis(final long wallTimeInMillis) {
+		this.wallTimeInMillis = wallTimeInMillis;
+	}
+
+	public long getNumberOfSteps() {
+		return numberOfSteps;
+	}
+
+	public void setNumberOfSteps(final long numberOfSteps) {
+		this.numberOfSteps = numberOfSteps;
+	}
+
+	public double getStepsPerSecond() {
+		return stepsPerSecond;
+	}
+
+	public void setStepsPerSecond(final double stepsPerSecond) {
+		this.stepsPerSecond = stepsPerSecond;
+	}
+
+	public double getMegabytesReadPerSecond() {
+		return megabytesReadPerSecond;
+	}
+
+	public void setMegabytesReadPerSecond(final double megabytesReadPerSecond) {
+		this.megabytesReadPerSecond = megabytesReadPerSecond;
+	}
+
+	public double getMegabytesWrittenPerSecond() {
+		return megabytesWrittenPerSecond;
+	}
+
+	public void setMegabytesWrittenPerSecond(final double megabytesWrittenPerSecond) {
+		this.megabytesWrittenPerSecond = megabytesWrittenPerSecond;
+	}
+
+	public List<ImportPhaseProfile> getPhases() {
+		return phases;
+	}
+
+	public void setPhases(final List<ImportPhaseProfile> phases) {
+		this.phases = phases;
+	}
+
+}
@@ -0,0 +1,75 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.model.docu.aggregates.branches;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.scenarioo.rest.base.BuildIdentifier;
+
+/**
+ * A build import that is running or waiting in the import queue.
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class BuildImportQueueEntry {
+
+	private BuildIdentifier identifier;
+
+	/**
+	 * Imports with higher priority are started first.
+	 */
+	private int priority;
+
+	private boolean running;
+
+	public BuildImportQueueEntry() {
+	}
+
+	public BuildImportQueueEntry(final BuildIdentifier identifier, final int priority, final boolean running) {
+		this.identifier = identifier;
+		this.priority = priority;
+		this.running = running;
+	}
+
+	public BuildIdentifier getIdentifier() {
+		return identifier;
+	}
+
+	public void setIdentifier(final BuildIdentifier identifier) {
+		this.identifier = identifier;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public void setPriority(final int priority) {
+		this.priority = priority;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public void setRunning(final boolean running) {
+		this.running = running;
+	}
+
+}
@@ -24,6 +24,12 @@ public class BuildImportSummary {
 	private Date importDate = new Date();
 	
 	private BuildStatistics buildStatistics = new BuildStatistics();
+
+	/**
+	 * Time and resources used by the last aggregation of this build, null if the build has not been aggregated by this
+	 * server (e.g. when it was already aggregated before).
+	 */
+	private BuildImportProfile importProfile;
 	
 	public BuildImportSummary() {
 	}
@@ -80,6 +86,14 @@ public class BuildImportSummary {
 	public BuildStatistics getBuildStatistics() {
 		return buildStatistics;
 	}
+
+	public BuildImportProfile getImportProfile() {
+		return importProfile;
+	}
+
+	public void setImportProfile(BuildImportProfile importProfile) {
+		this.importProfile = importProfile;
+	}
 	
 	/*
 	 * (non-Javadoc)
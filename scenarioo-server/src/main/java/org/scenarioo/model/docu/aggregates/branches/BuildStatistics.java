@@ -57,5 +57,15 @@ public class BuildStatistics {
 		numberOfFailedFeatures++;
 	}
 
+	/**
+	 * Add the counts of statistics collected for another part of the same build.
+	 */
+	public void add(final BuildStatistics statistics) {
+		numberOfFailedScenarios += statistics.numberOfFailedScenarios;
+		numberOfSuccessfulScenarios += statistics.numberOfSuccessfulScenarios;
+		numberOfSuccessfulFeatures += statistics.numberOfSuccessfulFeatures;
+		numberOfFailedFeatures += statistics.numberOfFailedFeatures;
+	}
+
 
 }
@@ -0,0 +1,118 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.model.docu.aggregates.branches;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Resources used by one phase of a build import.
+ *
+ * Phases running on several threads at the same time (like step loading) sum up the times of all threads, therefore the
+ * wall time of a phase can be longer than the wall time of the whole import.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ImportPhaseProfile {
+
+	private String phase;
+
+	private long wallTimeInMillis;
+
+	/**
+	 * -1 if the JVM does not support measuring the CPU time of threads.
+	 */
+	private long cpuTimeInMillis;
+
+	/**
+	 * -1 if the JVM does not support measuring the memory allocated by threads.
+	 */
+	private long allocatedBytes;
+
+	private long filesRead;
+
+	private long bytesRead;
+
+	private long filesWritten;
+
+	private long bytesWritten;
+
+	public String getPhase() {
+		return phase;
+	}
+
+	public void setPhase(final String phase) {
+		this.phase = phase;
+	}
+
+	public long getWallTimeInMillis() {
+		return wallTimeInMillis;
+	}
+
+	public void setWallTimeInMillis(final long wallTimeInMillis) {
+		this.wallTimeInMillis = wallTimeInMillis;
+	}
+
+	public long getCpuTimeInMillis() {
+		return cpuTimeInMillis;
+	}
+
+	public void setCpuTimeInMillis(final long cpuTimeInMillis) {
+		this.cpuTimeInMillis = cpuTimeInMillis;
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	public void setAllocatedBytes(final long allocatedBytes) {
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	public long getFilesRead() {
+		return filesRead;
+	}
+
+	public void setFilesRead(final long filesRead) {
+		this.filesRead = filesRead;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public void setBytesRead(final long bytesRead) {
+		this.bytesRead = bytesRead;
+	}
+
+	public long getFilesWritten() {
+		return filesWritten;
+	}
+
+	public void setFilesWritten(final long filesWritten) {
+		this.filesWritten = filesWritten;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public void setBytesWritten(final long bytesWritten) {
+		this.bytesWritten = bytesWritten;
+	}
+
+}
@@ -0,0 +1,56 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.rest.application;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.scenarioo.utils.ImportIoThrottle;
+
+/**
+ * Measures the latency of requests for documentation data (like steps and screenshots), such that running build imports
+ * can back off when these requests get slow (see {@link ImportIoThrottle}).
+ */
+public class RequestLatencyFilter implements Filter {
+
+	@Override
+	public void init(final FilterConfig filterConfig) throws ServletException {
+	}
+
+	@Override
+	public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain)
+			throws IOException, ServletException {
+		long startTime = System.currentTimeMillis();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			ImportIoThrottle.INSTANCE.requestCompleted(System.currentTimeMillis() - startTime);
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+}
@@ -21,6 +21,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.scenarioo.business.builds.ScenarioDocuBuildsManager;
 import org.scenarioo.dao.context.ContextPathHolder;
+import org.scenarioo.dao.diffViewer.GraphicsMagickConfiguration;
 import org.scenarioo.dao.version.ApplicationVersionHolder;
 import org.scenarioo.model.configuration.Configuration;
 import org.scenarioo.repository.ConfigurationRepository;
@@ -50,7 +51,7 @@ public class ScenariooWebApplication implements ServletContextListener {
 		initializeContextPath(servletContextEvent.getServletContext());
 
 		LOGGER.info("  Updating documentation content directory (will be done asynchronously ...)");
-		ScenarioDocuBuildsManager.INSTANCE.updateBuildsIfValidDirectoryConfigured();
+		ScenarioDocuBuildsManager.INSTANCE.loadBuildCatalogAndUpdateBuildsInBackground();
 
 		LOGGER.info("====================================================");
 		LOGGER.info("Scenarioo Viewer started succesfully.");
@@ -143,6 +144,8 @@ public class ScenariooWebApplication implements ServletContextListener {
 
 	@Override
 	public void contextDestroyed(final ServletContextEvent arg0) {
+		ScenarioDocuBuildsManager.INSTANCE.stopWatchingDocumentationDirectory();
+		GraphicsMagickConfiguration.shutdownBatchSessionPool();
 		LOGGER.info("===================================================");
 		LOGGER.info("Scenarioo Viewer stopped.");
 		LOGGER.info("===================================================");
@@ -18,6 +18,7 @@
 package org.scenarioo.rest.builds;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.List;
 
 import javax.ws.rs.Consumes;
@@ -36,6 +37,7 @@ import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
 import org.scenarioo.business.builds.ScenarioDocuBuildsManager;
 import org.scenarioo.business.uploadBuild.BuildUploader;
 import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportQueueEntry;
 import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
 import org.scenarioo.repository.ConfigurationRepository;
 import org.scenarioo.repository.RepositoryLocator;
@@ -43,7 +45,7 @@ import org.scenarioo.rest.base.BuildIdentifier;
 
 /**
  * This path has a security constraint for POST requests (see web.xml).
- * Only authenticated users with the required role can post new builds.
+ * Only authenticated users with the required role can post new builds or change the import queue.
  */
 @Path("/rest/builds/")
 public class BuildsImporterResource {
@@ -57,6 +59,8 @@ public class BuildsImporterResource {
 	@Path("updateAndImport")
 	@Produces({ "application/xml", "application/json" })
 	public void updateAllBuildsAndSubmitNewBuildsForImport() {
+		// the documentation directory might have been created after it has been configured
+		ScenarioDocuBuildsManager.INSTANCE.watchConfiguredDocumentationDirectory();
 		ScenarioDocuBuildsManager.INSTANCE.updateBuildsIfValidDirectoryConfigured();
 	}
 
@@ -98,6 +102,41 @@ public class BuildsImporterResource {
 		ScenarioDocuBuildsManager.INSTANCE.reimportBuild(buildIdentifier);
 	}
 
+	@GET
+	@Path("importQueue")
+	@Produces({ "application/xml", "application/json" })
+	public List<BuildImportQueueEntry> listImportQueue() {
+		return ScenarioDocuBuildsManager.INSTANCE.getImportQueue();
+	}
+
+	@POST
+	@Path("importQueue/{branchName}/{buildName}/priority/{priority}")
+	public Response changeImportPriority(@PathParam("branchName") final String branchName,
+			@PathParam("buildName") final String buildName, @PathParam("priority") final int priority) {
+		LOGGER.info("REQUEST: changeImportPriority(" + branchName + ", " + buildName + ", " + priority + ")");
+
+		BuildIdentifier buildIdentifier = new BuildIdentifier(branchName, buildName);
+
+		if (!ScenarioDocuBuildsManager.INSTANCE.changeImportPriority(buildIdentifier, priority)) {
+			return Response.status(Status.NOT_FOUND).build();
+		}
+		return Response.ok().build();
+	}
+
+	@POST
+	@Path("importQueue/{branchName}/{buildName}/cancel")
+	public Response cancelImport(@PathParam("branchName") final String branchName,
+			@PathParam("buildName") final String buildName) {
+		LOGGER.info("REQUEST: cancelImport(" + branchName + ", " + buildName + ")");
+
+		BuildIdentifier buildIdentifier = new BuildIdentifier(branchName, buildName);
+
+		if (!ScenarioDocuBuildsManager.INSTANCE.cancelImport(buildIdentifier)) {
+			return Response.status(Status.NOT_FOUND).build();
+		}
+		return Response.ok().build();
+	}
+
 	@POST
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	@Produces("application/json")
@@ -105,4 +144,15 @@ public class BuildsImporterResource {
 		return new BuildUploader().uploadBuild(formData);
 	}
 
+	/**
+	 * Upload of a build as ZIP file in the request body, which is extracted while it is received (better for large
+	 * builds than the multipart upload).
+	 */
+	@POST
+	@Consumes({ "application/zip", MediaType.APPLICATION_OCTET_STREAM })
+	@Produces("application/json")
+	public Response uploadBuildAsZipStream(final InputStream zipStream) {
+		return new BuildUploader().uploadBuild(zipStream);
+	}
+
 }
@@ -24,6 +24,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 
 import org.apache.log4j.Logger;
+import org.scenarioo.business.builds.ScenarioDocuBuildsManager;
 import org.scenarioo.dao.diffViewer.GraphicsMagickConfiguration;
 import org.scenarioo.dao.version.ApplicationVersionHolder;
 import org.scenarioo.model.configuration.Configuration;
@@ -65,6 +66,7 @@ public class ConfigurationResource {
 	public void updateConfiguration(final Configuration configuration) {
 		LOGGER.info("Saving configuration.");
 		configurationRepository.updateConfiguration(configuration);
+		ScenarioDocuBuildsManager.INSTANCE.watchConfiguredDocumentationDirectory();
 	}
 	
 }
@@ -0,0 +1,72 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.utils;
+
+import java.io.File;
+
+/**
+ * Counts the files read and written by the current thread, to profile the file accesses of build imports.
+ *
+ * Only the places that read or write files while aggregating a build report their files, counting is cheap enough to
+ * be always on. The reported accesses are also limited by the {@link ImportIoThrottle} for threads importing builds.
+ */
+public class FileAccessCounter {
+
+	public static final int FILES_READ = 0;
+
+	public static final int BYTES_READ = 1;
+
+	public static final int FILES_WRITTEN = 2;
+
+	public static final int BYTES_WRITTEN = 3;
+
+	private static final ThreadLocal<long[]> COUNTS = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[4];
+		}
+	};
+
+	private FileAccessCounter() {
+	}
+
+	public static void fileRead(final File file) {
+		long[] counts = COUNTS.get();
+		long length = file.length();
+		counts[FILES_READ]++;
+		counts[BYTES_READ] += length;
+		ImportIoThrottle.INSTANCE.fileAccessed(length);
+	}
+
+	public static void fileWritten(final File file) {
+		long[] counts = COUNTS.get();
+		long length = file.length();
+		counts[FILES_WRITTEN]++;
+		counts[BYTES_WRITTEN] += length;
+		ImportIoThrottle.INSTANCE.fileAccessed(length);
+	}
+
+	/**
+	 * @return the counts of the current thread so far, indexed by {@link #FILES_READ}, {@link #BYTES_READ},
+	 *         {@link #FILES_WRITTEN} and {@link #BYTES_WRITTEN}.
+	 */
+	public static long[] getCountsOfCurrentThread() {
+		return COUNTS.get().clone();
+	}
+
+}
@@ -0,0 +1,163 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the file I/O of build imports, such that requests reading documentation data from the same disk are not
+ * slowed down too much by a running import.
+ *
+ * Only the file accesses of threads that have been registered by {@link #throttleCurrentThread()} are limited, they are
+ * reported through {@link FileAccessCounter}. The bytes and the number of file operations per second are limited by a
+ * token bucket each, as configured. In addition imports back off when requests get slow: as long as the latency of
+ * requests reported by {@link #requestCompleted(long)} exceeds the configured threshold, each file access of an import
+ * is delayed. The delay is doubled for every slow request and halved for every fast one.
+ */
+public class ImportIoThrottle {
+
+	public static final ImportIoThrottle INSTANCE = new ImportIoThrottle();
+
+	private static final long MAX_BACK_OFF_DELAY_MILLIS = 200;
+
+	/**
+	 * The back off ends when there was no slow request for this time, e.g. because no requests were made at all.
+	 */
+	private static final long BACK_OFF_EXPIRY_MILLIS = 5000;
+
+	private final ThreadLocal<Boolean> throttledThread = new ThreadLocal<Boolean>() {
+		@Override
+		protected Boolean initialValue() {
+			return Boolean.FALSE;
+		}
+	};
+
+	private final TokenBucket bytes = new TokenBucket();
+
+	private final TokenBucket fileOperations = new TokenBucket();
+
+	private volatile long latencyThresholdInMillis = 0;
+
+	private long backOffDelayInMillis = 0;
+
+	private long lastSlowRequestTime = 0;
+
+	/**
+	 * @param bytesPerSecond
+	 *            0 for no limit.
+	 * @param fileOperationsPerSecond
+	 *            0 for no limit.
+	 * @param latencyThresholdInMillis
+	 *            request latency above which imports back off, 0 to never back off.
+	 */
+	public void configure(final long bytesPerSecond, final long fileOperationsPerSecond,
+			final long latencyThresholdInMillis) {
+		bytes.setRate(bytesPerSecond);
+		fileOperations.setRate(fileOperationsPerSecond);
+		this.latencyThresholdInMillis = latencyThresholdInMillis;
+	}
+
+	public void throttleCurrentThread() {
+		throttledThread.set(Boolean.TRUE);
+	}
+
+	public void stopThrottlingCurrentThread() {
+		throttledThread.remove();
+	}
+
+	public boolean isCurrentThreadThrottled() {
+		return throttledThread.get();
+	}
+
+	/**
+	 * Wait as long as needed to stay within the limits, if the current thread is throttled.
+	 */
+	public void fileAccessed(final long numberOfBytes) {
+		if (!isCurrentThreadThrottled()) {
+			return;
+		}
+		long waitNanos = Math.max(bytes.take(numberOfBytes), fileOperations.take(1));
+		waitNanos += TimeUnit.MILLISECONDS.toNanos(getBackOffDelayInMillis());
+		if (waitNanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public synchronized void requestCompleted(final long latencyInMillis) {
+		long threshold = latencyThresholdInMillis;
+		if (threshold <= 0) {
+			backOffDelayInMillis = 0;
+		} else if (latencyInMillis > threshold) {
+			backOffDelayInMillis = Math.min(Math.max(1, backOffDelayInMillis * 2), MAX_BACK_OFF_DELAY_MILLIS);
+			lastSlowRequestTime = System.currentTimeMillis();
+		} else {
+			backOffDelayInMillis = backOffDelayInMillis / 2;
+		}
+	}
+
+	synchronized long getBackOffDelayInMillis() {
+		if (backOffDelayInMillis > 0 && System.currentTimeMillis() - lastSlowRequestTime > BACK_OFF_EXPIRY_MILLIS) {
+			backOffDelayInMillis = 0;
+		}
+		return backOffDelayInMillis;
+	}
+
+	/**
+	 * Allows a burst of up to one second of the rate, afterwards tokens are taken in advance and the taking thread has
+	 * to wait until they are refilled.
+	 */
+	static class TokenBucket {
+
+		private long ratePerSecond = 0;
+
+		private double tokens = 0;
+
+		private long lastRefillTime = System.nanoTime();
+
+		synchronized void setRate(final long ratePerSecond) {
+			if (this.ratePerSecond != ratePerSecond) {
+				this.ratePerSecond = ratePerSecond;
+				tokens = ratePerSecond;
+				lastRefillTime = System.nanoTime();
+			}
+		}
+
+		/**
+		 * @return the nanoseconds to wait until the taken tokens are available.
+		 */
+		synchronized long take(final long amount) {
+			if (ratePerSecond <= 0) {
+				return 0;
+			}
+			long now = System.nanoTime();
+			tokens = Math.min(ratePerSecond, tokens + (now - lastRefillTime) * ratePerSecond / 1e9);
+			lastRefillTime = now;
+			tokens -= amount;
+			if (tokens >= 0) {
+				return 0;
+			}
+			return (long) (-tokens * 1e9 / ratePerSecond);
+		}
+
+	}
+
+}
@@ -5,12 +5,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Enumeration;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 public class ZipFileExtractor {
@@ -26,57 +23,65 @@ public class ZipFileExtractor {
 	}
 
 	/**
-	 * Extracts the content of a ZIP file into a target directory. The target directory will be deleted first, if it
-	 * already exists. The ZIP file is not deleted.
+	 * Checks the name of each entry of a ZIP stream before it is extracted.
+	 */
+	public interface EntryNameValidator {
+
+		/**
+		 * @throws ZipFileExtractionException
+		 *             if the entry must not be extracted, this stops the extraction.
+		 */
+		void validate(String entryName) throws ZipFileExtractionException;
+
+	}
+
+	/**
+	 * Extracts the entries of a ZIP stream into a target directory while reading it, without storing the ZIP data
+	 * anywhere. The target directory must not exist yet or be empty, the stream is not closed.
 	 * 
 	 * @throws ZipFileExtractionException
-	 *             in case something goes wrong
+	 *             in case something goes wrong or an entry is rejected by the validator or points outside of the
+	 *             target directory. Entries extracted so far remain in the target directory.
 	 */
-	public static void extractFile(final File zipFileToExtract, final File targetDir) throws ZipFileExtractionException {
-		ZipFile zipFile = getZipFile(zipFileToExtract);
-
-		if (targetDir.exists()) {
-			try {
-				FileUtils.deleteDirectory(targetDir);
-			} catch (IOException e) {
-				throw new ZipFileExtractionException("Could not delete target directory.", e);
-			}
+	public static void extractStream(final InputStream zipStream, final File targetDir,
+			final EntryNameValidator validator) throws ZipFileExtractionException {
+		String[] existingFiles = targetDir.list();
+		if (existingFiles != null && existingFiles.length > 0) {
+			throw new ZipFileExtractionException("Target directory is not empty " + targetDir);
 		}
+		targetDir.mkdirs();
 
 		try {
-			Enumeration<? extends ZipEntry> entries = zipFile.entries();
-			while (entries.hasMoreElements()) {
-				ZipEntry entry = entries.nextElement();
+			String targetDirPath = targetDir.getCanonicalPath() + File.separator;
+			ZipInputStream zipInputStream = new ZipInputStream(zipStream);
+			int extractedEntries = 0;
+			ZipEntry entry;
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				validator.validate(entry.getName());
 				File entryDestination = new File(targetDir, entry.getName());
+				if (!entryDestination.getCanonicalPath().startsWith(targetDirPath)) {
+					throw new ZipFileExtractionException("ZIP entry " + entry.getName()
+							+ " is outside of the target directory.");
+				}
 				if (entry.isDirectory()) {
 					entryDestination.mkdirs();
 				} else {
 					entryDestination.getParentFile().mkdirs();
-					InputStream in = zipFile.getInputStream(entry);
 					OutputStream out = new FileOutputStream(entryDestination);
-					IOUtils.copy(in, out);
-					IOUtils.closeQuietly(in);
-					out.close();
+					try {
+						IOUtils.copy(zipInputStream, out);
+					} finally {
+						out.close();
+					}
 				}
+				extractedEntries++;
+			}
+			if (extractedEntries == 0) {
+				throw new ZipFileExtractionException("The ZIP data is empty or not in ZIP format.");
 			}
 		} catch (IOException e) {
-			throw new ZipFileExtractionException("IO Error while extracting ZIP file.", e);
-		}
-	}
-
-	private static ZipFile getZipFile(final File zipFileToExtract) throws ZipFileExtractionException {
-		if (!zipFileToExtract.exists()) {
-			throw new ZipFileExtractionException("Zip file does not exist " + zipFileToExtract);
-		}
-		ZipFile zipFile;
-		try {
-			zipFile = new ZipFile(zipFileToExtract);
-		} catch (ZipException e) {
-			throw new ZipFileExtractionException("Error while reading ZIP file " + zipFileToExtract, e);
-		} catch (IOException e) {
-			throw new ZipFileExtractionException("IO Error while reading ZIP file " + zipFileToExtract, e);
+			throw new ZipFileExtractionException("IO Error while extracting ZIP stream.", e);
 		}
-		return zipFile;
 	}
 
 }
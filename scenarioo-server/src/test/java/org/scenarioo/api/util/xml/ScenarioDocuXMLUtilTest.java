@@ -0,0 +1,172 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.api.util.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.scenarioo.model.docu.entities.Page;
+import org.scenarioo.model.docu.entities.Step;
+import org.scenarioo.model.docu.entities.StepDescription;
+import org.scenarioo.model.docu.entities.StepHtml;
+
+public class ScenarioDocuXMLUtilTest {
+
+	@Test
+	public void skippedChildElementsOfRootAreNotUnmarshalled() {
+		Step step = new Step();
+		step.setPage(new Page("startPage"));
+		step.setStepDescription(new StepDescription());
+		step.getStepDescription().setTitle("search");
+		step.getStepDescription().addDetail("html", "detail that is not skipped");
+		step.setHtml(new StepHtml("<html><body><html>nested</html></body></html>"));
+
+		Step loadedStep = ScenarioDocuXMLUtil.unmarshalSkippingElements(Step.class, marshal(step), "html");
+
+		assertNull(loadedStep.getHtml());
+		assertEquals("startPage", loadedStep.getPage().getName());
+		assertEquals("search", loadedStep.getStepDescription().getTitle());
+		assertEquals("detail that is not skipped", loadedStep.getStepDescription().getDetails().getDetail("html"));
+	}
+
+	@Test
+	public void unmarshalledWithoutSkippedElementsContainsAllData() {
+		Step step = new Step();
+		step.setHtml(new StepHtml("<html><body>content</body></html>"));
+
+		Step loadedStep = ScenarioDocuXMLUtil.unmarshalSkippingElements(Step.class, marshal(step));
+
+		assertEquals("<html><body>content</body></html>", loadedStep.getHtml().getHtmlSource());
+	}
+
+	@Test
+	public void formattedOutputCanBeSwitchedOff() throws IOException {
+		Step step = createStep("title");
+
+		ByteArrayOutputStream formatted = new ByteArrayOutputStream();
+		ScenarioDocuXMLUtil.marshal(step, formatted, true);
+		ByteArrayOutputStream unformatted = new ByteArrayOutputStream();
+		ScenarioDocuXMLUtil.marshal(step, unformatted, false);
+
+		String unformattedXml = unformatted.toString("UTF-8");
+		assertTrue(formatted.toString("UTF-8").contains("\n    <"));
+		assertFalse(unformattedXml.substring(unformattedXml.indexOf("?>") + 2).contains("\n"));
+		assertEquals("title", ScenarioDocuXMLUtil.unmarshal(Step.class,
+				new ByteArrayInputStream(unformatted.toByteArray())).getStepDescription().getTitle());
+		ByteArrayOutputStream formattedAgain = new ByteArrayOutputStream();
+		ScenarioDocuXMLUtil.marshal(step, formattedAgain, true);
+		assertTrue(formattedAgain.toString("UTF-8").contains("\n    <"));
+	}
+
+	@Test
+	public void marshallingWorksAgainAfterFailure() {
+		try {
+			ScenarioDocuXMLUtil.marshal(createStep("failing"), new OutputStream() {
+				@Override
+				public void write(final int b) throws IOException {
+					throw new IOException("disk full");
+				}
+			});
+			fail("marshalling to a failing stream must fail");
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		assertEquals("working", unmarshal(marshal(createStep("working"))).getStepDescription().getTitle());
+	}
+
+	@Test
+	public void unmarshallingWorksAgainAfterFailure() {
+		try {
+			ScenarioDocuXMLUtil.unmarshal(Step.class, new ByteArrayInputStream("<step><page>".getBytes()));
+			fail("unmarshalling incomplete XML must fail");
+		} catch (RuntimeException e) {
+			// expected
+		}
+		try {
+			ScenarioDocuXMLUtil.unmarshalSkippingElements(Step.class, new ByteArrayInputStream("<step><html>"
+					.getBytes()), "html");
+			fail("unmarshalling incomplete XML must fail");
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		assertEquals("working", unmarshal(marshal(createStep("working"))).getStepDescription().getTitle());
+		assertEquals("working", ScenarioDocuXMLUtil.unmarshalSkippingElements(Step.class,
+				marshal(createStep("working")), "html").getStepDescription().getTitle());
+	}
+
+	@Test
+	public void concurrentThreadsMarshalWithTheirOwnMarshallers() throws Exception {
+		int numberOfThreads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			List<Future<String>> titles = new ArrayList<Future<String>>();
+			for (int i = 0; i < 200; i++) {
+				final String title = "step " + i;
+				titles.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return unmarshal(marshal(createStep(title))).getStepDescription().getTitle();
+					}
+				}));
+			}
+
+			for (int i = 0; i < titles.size(); i++) {
+				assertEquals("step " + i, titles.get(i).get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		int maxIdleInstances = Runtime.getRuntime().availableProcessors();
+		assertTrue(ScenarioDocuXMLUtil.getNumberOfIdleMarshallers(Step.class) <= maxIdleInstances);
+		assertTrue(ScenarioDocuXMLUtil.getNumberOfIdleUnmarshallers(Step.class) <= maxIdleInstances);
+		assertTrue(ScenarioDocuXMLUtil.getNumberOfIdleUnmarshallers(Step.class) > 0);
+	}
+
+	private Step createStep(final String title) {
+		Step step = new Step();
+		step.setPage(new Page("page"));
+		step.setStepDescription(new StepDescription());
+		step.getStepDescription().setTitle(title);
+		return step;
+	}
+
+	private Step unmarshal(final ByteArrayInputStream in) {
+		return ScenarioDocuXMLUtil.unmarshal(Step.class, in);
+	}
+
+	private ByteArrayInputStream marshal(final Step step) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ScenarioDocuXMLUtil.marshal(step, out, false);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+}
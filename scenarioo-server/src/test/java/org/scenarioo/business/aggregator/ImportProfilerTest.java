@@ -0,0 +1,158 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.business.aggregator.ImportProfiler.Phase;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportProfile;
+import org.scenarioo.model.docu.aggregates.branches.ImportPhaseProfile;
+import org.scenarioo.utils.FileAccessCounter;
+
+public class ImportProfilerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void filesAccessedInNestedMeasurementAreOnlyCountedForTheNestedPhase() throws IOException {
+		File stepFile = folder.newFile("step.xml");
+		FileUtils.writeStringToFile(stepFile, "<step/>");
+		File objectFile = folder.newFile("object.xml");
+		FileUtils.writeStringToFile(objectFile, "<object/>");
+		ImportProfiler profiler = new ImportProfiler();
+
+		ImportProfiler.Measurement stepLoading = profiler.start(Phase.STEP_LOADING);
+		FileAccessCounter.fileRead(stepFile);
+		ImportProfiler.Measurement objectRepository = profiler.start(Phase.OBJECT_REPOSITORY);
+		FileAccessCounter.fileWritten(objectFile);
+		objectRepository.stop();
+		FileAccessCounter.fileRead(stepFile);
+		stepLoading.stop();
+		profiler.addSteps(2);
+
+		BuildImportProfile profile = profiler.createProfile();
+		assertEquals(2, profile.getNumberOfSteps());
+		ImportPhaseProfile stepLoadingProfile = getPhase(profile, Phase.STEP_LOADING);
+		assertEquals(2, stepLoadingProfile.getFilesRead());
+		assertEquals(2 * stepFile.length(), stepLoadingProfile.getBytesRead());
+		assertEquals(0, stepLoadingProfile.getFilesWritten());
+		ImportPhaseProfile objectRepositoryProfile = getPhase(profile, Phase.OBJECT_REPOSITORY);
+		assertEquals(0, objectRepositoryProfile.getFilesRead());
+		assertEquals(1, objectRepositoryProfile.getFilesWritten());
+		assertEquals(objectFile.length(), objectRepositoryProfile.getBytesWritten());
+	}
+
+	@Test
+	public void resumedMeasurementAddsUpAllPiecesWhenStopped() throws IOException {
+		File stepFile = folder.newFile("step.xml");
+		FileUtils.writeStringToFile(stepFile, "<step/>");
+		ImportProfiler profiler = new ImportProfiler();
+
+		ImportProfiler.Measurement stepAggregation = profiler.start(Phase.STEP_AGGREGATION);
+		ImportProfiler.Measurement objectRepository = profiler.createMeasurement(Phase.OBJECT_REPOSITORY);
+		for (int i = 0; i < 3; i++) {
+			objectRepository.resume();
+			FileAccessCounter.fileRead(stepFile);
+			objectRepository.pause();
+			FileAccessCounter.fileWritten(stepFile);
+		}
+		assertEquals(0, getPhase(profiler.createProfile(), Phase.OBJECT_REPOSITORY).getFilesRead());
+		objectRepository.stop();
+		stepAggregation.stop();
+
+		BuildImportProfile profile = profiler.createProfile();
+		assertEquals(3, getPhase(profile, Phase.OBJECT_REPOSITORY).getFilesRead());
+		assertEquals(0, getPhase(profile, Phase.OBJECT_REPOSITORY).getFilesWritten());
+		assertEquals(0, getPhase(profile, Phase.STEP_AGGREGATION).getFilesRead());
+		assertEquals(3, getPhase(profile, Phase.STEP_AGGREGATION).getFilesWritten());
+	}
+
+	@Test
+	public void measuredIterationOnlyContainsGettingTheElements() throws IOException {
+		final File stepFile = folder.newFile("step.xml");
+		FileUtils.writeStringToFile(stepFile, "<step/>");
+		Iterable<File> stepFiles = new Iterable<File>() {
+			@Override
+			public Iterator<File> iterator() {
+				final Iterator<File> iterator = Arrays.asList(stepFile, stepFile).iterator();
+				return new Iterator<File>() {
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public File next() {
+						File file = iterator.next();
+						FileAccessCounter.fileRead(file);
+						return file;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+		ImportProfiler profiler = new ImportProfiler();
+
+		ImportProfiler.Measurement stepAggregation = profiler.start(Phase.STEP_AGGREGATION);
+		ImportProfiler.Measurement stepLoading = profiler.createMeasurement(Phase.STEP_LOADING);
+		for (File file : stepLoading.measureIteration(stepFiles)) {
+			FileAccessCounter.fileWritten(file);
+		}
+		stepLoading.stop();
+		stepAggregation.stop();
+
+		BuildImportProfile profile = profiler.createProfile();
+		assertEquals(2, getPhase(profile, Phase.STEP_LOADING).getFilesRead());
+		assertEquals(0, getPhase(profile, Phase.STEP_LOADING).getFilesWritten());
+		assertEquals(0, getPhase(profile, Phase.STEP_AGGREGATION).getFilesRead());
+		assertEquals(2, getPhase(profile, Phase.STEP_AGGREGATION).getFilesWritten());
+	}
+
+	@Test
+	public void disabledProfilerMeasuresNothing() {
+		ImportProfiler.Measurement measurement = ImportProfiler.NONE.start(Phase.FEATURE_LOADING);
+		FileAccessCounter.fileRead(folder.getRoot());
+		measurement.stop();
+
+		assertEquals(0, getPhase(ImportProfiler.NONE.createProfile(), Phase.FEATURE_LOADING).getFilesRead());
+	}
+
+	private ImportPhaseProfile getPhase(final BuildImportProfile profile, final Phase phase) {
+		for (ImportPhaseProfile phaseProfile : profile.getPhases()) {
+			if (phaseProfile.getPhase().equals(phase.getName())) {
+				return phaseProfile;
+			}
+		}
+		throw new AssertionError("No profile for phase " + phase);
+	}
+
+}
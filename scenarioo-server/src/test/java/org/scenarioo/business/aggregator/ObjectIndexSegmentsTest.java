@@ -0,0 +1,94 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.dao.aggregates.ObjectIndexSegment;
+import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
+import org.scenarioo.model.docu.aggregates.objects.LongObjectNamesResolver;
+import org.scenarioo.model.docu.aggregates.objects.ObjectIndex;
+import org.scenarioo.model.docu.entities.generic.ObjectDescription;
+import org.scenarioo.model.docu.entities.generic.ObjectReference;
+import org.scenarioo.model.docu.entities.generic.ObjectTreeNode;
+import org.scenarioo.rest.base.BuildIdentifier;
+
+public class ObjectIndexSegmentsTest {
+
+	private static final BuildIdentifier BUILD = new BuildIdentifier("branch", "build");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ScenarioDocuAggregationDao dao;
+
+	@Before
+	public void setUp() {
+		dao = new ScenarioDocuAggregationDao(folder.getRoot(), new LongObjectNamesResolver());
+		dao.saveObjectDescription(BUILD, new ObjectDescription("page", "startPage"));
+		dao.saveObjectDescription(BUILD, new ObjectDescription("page", "resultPage"));
+	}
+
+	@Test
+	public void referencesOfAllSegmentsAreMergedInOrderOfTheSegments() {
+		ObjectIndexSegments segments = new ObjectIndexSegments(BUILD, dao);
+		int segmentsCount = 150;
+		for (int i = 0; i < segmentsCount; i++) {
+			SortedMap<ObjectReference, ObjectTreeNode<ObjectReference>> referenceTrees = new TreeMap<ObjectReference, ObjectTreeNode<ObjectReference>>(
+					ObjectIndexSegment.ENTRY_ORDER);
+			addReferenceTree(referenceTrees, "startPage", "feature" + i);
+			if (i % 2 == 0) {
+				addReferenceTree(referenceTrees, "resultPage", "feature" + i);
+			}
+			segments.writeSegment(referenceTrees);
+		}
+
+		segments.mergeAndSaveObjectIndexes();
+
+		assertReferencingFeatures("startPage", segmentsCount, 1);
+		assertReferencingFeatures("resultPage", segmentsCount / 2, 2);
+		assertFalse(dao.getFiles().getObjectIndexSegmentsDirectory(BUILD).exists());
+	}
+
+	private void addReferenceTree(final SortedMap<ObjectReference, ObjectTreeNode<ObjectReference>> referenceTrees,
+			final String pageName, final String featureName) {
+		ObjectReference page = new ObjectReference("page", pageName);
+		ObjectTreeNode<ObjectReference> referenceTree = new ObjectTreeNode<ObjectReference>(page);
+		referenceTree.addChild(new ObjectTreeNode<ObjectReference>(new ObjectReference("feature", featureName)));
+		referenceTrees.put(page, referenceTree);
+	}
+
+	private void assertReferencingFeatures(final String pageName, final int expectedCount, final int step) {
+		ObjectIndex index = dao.loadObjectIndex(BUILD, "page", pageName);
+		assertEquals(pageName, index.getObject().getName());
+		List<ObjectTreeNode<ObjectReference>> children = index.getReferenceTree().getChildren();
+		assertEquals(expectedCount, children.size());
+		for (int i = 0; i < expectedCount; i++) {
+			assertEquals("feature" + (i * step), children.get(i).getItem().getName());
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.scenarioo.model.docu.entities.Labels;
+import org.scenarioo.model.docu.entities.generic.ObjectReference;
+import org.scenarioo.model.docu.entities.generic.ObjectTreeNode;
+
+public class ObjectReferenceTreeBuilderTest {
+
+	private final ObjectReferenceSymbols symbols = new ObjectReferenceSymbols();
+
+	@Test
+	public void pathesWithSamePrefixAreMergedInOrderOfTheirOccurence() {
+		int page = symbols.getId(new ObjectReference("page", "startPage"));
+		ReferencePath featurePath = ReferencePath.EMPTY.extend(symbols.getId(new ObjectReferenceWithLabels("feature",
+				"search", new Labels().addLabel("important"))));
+		ReferencePath scenarioPath = featurePath.extend(symbols.getId(new ObjectReference("scenario", "find")));
+		ObjectReferenceTreeBuilder builder = new ObjectReferenceTreeBuilder(page);
+
+		builder.addPath(scenarioPath.extend(symbols.getId(new ObjectReference("step", "2"))));
+		builder.addPath(scenarioPath.extend(symbols.getId(new ObjectReference("step", "1"))));
+		builder.addPath(featurePath);
+
+		ObjectTreeNode<ObjectReference> tree = builder.build(symbols);
+		assertEquals("startPage", tree.getItem().getName());
+		assertEquals(1, tree.getChildren().size());
+		ObjectTreeNode<ObjectReference> feature = tree.<ObjectReference> getChildren().get(0);
+		assertEquals("search", feature.getItem().getName());
+		assertNotNull(feature.getDetails().getDetail("labels"));
+		List<ObjectTreeNode<ObjectReference>> steps = feature.<ObjectReference> getChildren().get(0).getChildren();
+		assertEquals("2", steps.get(0).getItem().getName());
+		assertEquals("1", steps.get(1).getItem().getName());
+	}
+
+	@Test
+	public void referencesWithLabelsGetOtherIdsThanPlainReferences() {
+		int plain = symbols.getId(new ObjectReference("feature", "search"));
+		int withLabels = symbols.getId(new ObjectReferenceWithLabels("feature", "search", new Labels()));
+
+		assertNotEquals(plain, withLabels);
+		assertEquals(plain, symbols.getId(new ObjectReference("feature", "search")));
+		assertEquals(withLabels, symbols.getId(new ObjectReferenceWithLabels("feature", "search", new Labels())));
+	}
+
+}
@@ -0,0 +1,282 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.api.ScenarioDocuWriter;
+import org.scenarioo.business.aggregator.ImportProfiler.Phase;
+import org.scenarioo.dao.version.ApplicationVersion;
+import org.scenarioo.dao.version.ApplicationVersionHolder;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportProfile;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
+import org.scenarioo.model.docu.aggregates.branches.BuildStatistics;
+import org.scenarioo.model.docu.aggregates.branches.ImportPhaseProfile;
+import org.scenarioo.model.docu.entities.Build;
+import org.scenarioo.model.docu.entities.Feature;
+import org.scenarioo.model.docu.entities.Page;
+import org.scenarioo.model.docu.entities.Scenario;
+import org.scenarioo.model.docu.entities.Status;
+import org.scenarioo.model.docu.entities.Step;
+import org.scenarioo.model.docu.entities.StepDescription;
+import org.scenarioo.model.docu.entities.generic.ObjectDescription;
+import org.scenarioo.repository.RepositoryLocator;
+import org.scenarioo.utils.TestFileUtils;
+
+/**
+ * Aggregating the features and scenarios of a build in parallel must produce exactly the same derived files as
+ * aggregating them one after the other.
+ */
+public class ScenarioDocuAggregatorParallelTest {
+
+	private static final String BRANCH_NAME = "branch";
+
+	private static final String BUILD_NAME = "build";
+
+	private static final String[] PAGES = new String[] { "start", "search", "results", "details" };
+
+	private static final int NUMBER_OF_FEATURES = 4;
+
+	private static final int SCENARIOS_PER_FEATURE = 3;
+
+	private static final int NUMBER_OF_SCENARIOS = NUMBER_OF_FEATURES * SCENARIOS_PER_FEATURE;
+
+	/**
+	 * Each scenario has 3 steps plus the index of its feature plus its own index.
+	 */
+	private static final int NUMBER_OF_STEPS = NUMBER_OF_SCENARIOS * 3 + SCENARIOS_PER_FEATURE * (0 + 1 + 2 + 3)
+			+ NUMBER_OF_FEATURES * (0 + 1 + 2);
+
+	/**
+	 * Derived files that contain the time they were written.
+	 */
+	private static final String[] FILES_WITH_TIMESTAMP = new String[] { "version.derived.properties",
+			"import.derived.log" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setupTest() {
+		TestFileUtils.createFolderAndSetItAsRootInConfigurationForUnitTest(folder.getRoot());
+		if (ApplicationVersionHolder.INSTANCE.getApplicationVersion() == null) {
+			ApplicationVersionHolder.INSTANCE.initialize("test", "now", "test", "test", "develop");
+		}
+		writeBuild();
+	}
+
+	@Test
+	public void parallelAggregationWritesSameDerivedFilesAsSequentialAggregation() throws IOException {
+		BuildStatistics sequentialStatistics = aggregateBuildWithThreads(1).getBuildStatistics();
+		Map<String, String> sequentialDerivedFiles = readAndDeleteDerivedFiles(folder.getRoot());
+
+		BuildStatistics parallelStatistics = aggregateBuildWithThreads(4).getBuildStatistics();
+		Map<String, String> parallelDerivedFiles = readAndDeleteDerivedFiles(folder.getRoot());
+
+		assertFalse(sequentialDerivedFiles.isEmpty());
+		assertTrue(containsFileWithName(sequentialDerivedFiles, "stepNavigations.derived.dat"));
+		assertTrue(containsFileWithName(sequentialDerivedFiles, "scenarioPageSteps.derived.xml"));
+		assertTrue(containsFileWithName(sequentialDerivedFiles, "/item/"));
+		assertTrue(containsFileWithName(sequentialDerivedFiles, ".index.xml"));
+		assertTrue(containsFileWithName(sequentialDerivedFiles, "item.list.xml"));
+		assertEquals(sequentialDerivedFiles.keySet(), parallelDerivedFiles.keySet());
+		for (Map.Entry<String, String> derivedFile : sequentialDerivedFiles.entrySet()) {
+			assertEquals("content of " + derivedFile.getKey(), derivedFile.getValue(),
+					parallelDerivedFiles.get(derivedFile.getKey()));
+		}
+
+		assertEquals(sequentialStatistics.getNumberOfSuccessfulFeatures(),
+				parallelStatistics.getNumberOfSuccessfulFeatures());
+		assertEquals(sequentialStatistics.getNumberOfFailedFeatures(), parallelStatistics.getNumberOfFailedFeatures());
+		assertEquals(sequentialStatistics.getNumberOfSuccessfulScenarios(),
+				parallelStatistics.getNumberOfSuccessfulScenarios());
+		assertEquals(sequentialStatistics.getNumberOfFailedScenarios(),
+				parallelStatistics.getNumberOfFailedScenarios());
+		assertEquals(2, parallelStatistics.getNumberOfFailedScenarios());
+	}
+
+	@Test
+	public void importProfileSeparatesLoadingStepsFromWritingAggregatedData() {
+		BuildImportProfile profile = aggregateBuildWithThreads(2).getImportProfile();
+
+		assertEquals(ApplicationVersionHolder.INSTANCE.getApplicationVersion().getVersion(),
+				profile.getServerVersion());
+		assertEquals(ApplicationVersionHolder.INSTANCE.getApplicationVersion().getAggregatedDataFormatVersion(),
+				profile.getInternalFormatVersion());
+		assertEquals(NUMBER_OF_STEPS, profile.getNumberOfSteps());
+		// the step files and the scenario file of each scenario for the fingerprint of the steps cache
+		ImportPhaseProfile stepLoading = getPhase(profile, Phase.STEP_LOADING);
+		assertEquals(NUMBER_OF_STEPS + NUMBER_OF_SCENARIOS, stepLoading.getFilesRead());
+		assertEquals(0, stepLoading.getFilesWritten());
+		assertEquals(NUMBER_OF_SCENARIOS, getPhase(profile, Phase.PAGE_STEPS_WRITES).getFilesWritten());
+	}
+
+	@Test
+	public void cachedStepsAreReadAfterFormatVersionChange() {
+		aggregateBuildWithThreads(2);
+		ApplicationVersion version = ApplicationVersionHolder.INSTANCE.getApplicationVersion();
+		ApplicationVersionHolder.INSTANCE.initialize(version.getVersion(), version.getBuildDate(),
+				version.getApiVersion(), version.getAggregatedDataFormatVersion() + ".changed", version
+						.getReleaseBranch());
+		try {
+			BuildImportProfile profile = aggregateBuildWithThreads(2).getImportProfile();
+
+			// the steps cache file and the scenario file of each scenario, but no step files
+			assertEquals(NUMBER_OF_SCENARIOS * 2, getPhase(profile, Phase.STEP_LOADING).getFilesRead());
+			assertEquals(NUMBER_OF_STEPS, profile.getNumberOfSteps());
+		} finally {
+			ApplicationVersionHolder.INSTANCE.initialize(version.getVersion(), version.getBuildDate(),
+					version.getApiVersion(), version.getAggregatedDataFormatVersion(), version.getReleaseBranch());
+		}
+	}
+
+	private BuildImportSummary aggregateBuildWithThreads(final int threads) {
+		RepositoryLocator.INSTANCE.getConfigurationRepository().getConfiguration()
+				.setAggregationThreadsPerBuildImport(threads);
+		BuildImportSummary summary = new BuildImportSummary(BRANCH_NAME, createBuild());
+		ScenarioDocuAggregator aggregator = new ScenarioDocuAggregator(summary);
+		aggregator.calculateAggregatedDataForBuild();
+		return summary;
+	}
+
+	private ImportPhaseProfile getPhase(final BuildImportProfile profile, final Phase phase) {
+		for (ImportPhaseProfile phaseProfile : profile.getPhases()) {
+			if (phaseProfile.getPhase().equals(phase.getName())) {
+				return phaseProfile;
+			}
+		}
+		throw new AssertionError("No profile for phase " + phase);
+	}
+
+	/**
+	 * @return the content of all derived files by their path relative to the passed directory.
+	 */
+	private Map<String, String> readAndDeleteDerivedFiles(final File directory) throws IOException {
+		Map<String, String> derivedFiles = new TreeMap<String, String>();
+		readDerivedFiles(directory, "", false, derivedFiles);
+		deleteDerivedFiles(directory);
+		return derivedFiles;
+	}
+
+	private void readDerivedFiles(final File directory, final String relativePath, final boolean derived,
+			final Map<String, String> derivedFiles) throws IOException {
+		for (File file : directory.listFiles()) {
+			String path = relativePath + "/" + file.getName();
+			boolean derivedFile = derived || file.getName().contains(".derived");
+			if (file.isDirectory()) {
+				readDerivedFiles(file, path, derivedFile, derivedFiles);
+			} else if (derivedFile && !isFileWithTimestamp(file)) {
+				// ISO-8859-1 to compare binary files without loss
+				derivedFiles.put(path, FileUtils.readFileToString(file, "ISO-8859-1"));
+			}
+		}
+	}
+
+	private void deleteDerivedFiles(final File directory) {
+		for (File file : directory.listFiles()) {
+			if (file.getName().contains(".derived")) {
+				FileUtils.deleteQuietly(file);
+			} else if (file.isDirectory()) {
+				deleteDerivedFiles(file);
+			}
+		}
+	}
+
+	private boolean isFileWithTimestamp(final File file) {
+		for (String fileName : FILES_WITH_TIMESTAMP) {
+			if (file.getName().equals(fileName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean containsFileWithName(final Map<String, String> files, final String namePart) {
+		for (String path : files.keySet()) {
+			if (path.contains(namePart)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Several features with scenarios of different length, visiting the same pages in different order and referencing
+	 * the same objects, such that page variants and object indexes span several features and scenarios.
+	 */
+	private void writeBuild() {
+		ScenarioDocuWriter writer = new ScenarioDocuWriter(folder.getRoot(), BRANCH_NAME, BUILD_NAME);
+		writer.saveBuildDescription(createBuild());
+		writer.flush();
+		for (int featureIndex = 0; featureIndex < NUMBER_OF_FEATURES; featureIndex++) {
+			Feature feature = new Feature("feature " + featureIndex, "description of feature " + featureIndex);
+			feature.addDetail("owner", new ObjectDescription("team", "team " + featureIndex % 2));
+			writer = new ScenarioDocuWriter(folder.getRoot(), BRANCH_NAME, BUILD_NAME);
+			writer.saveFeature(feature);
+			writer.flush();
+			for (int scenarioIndex = 0; scenarioIndex < SCENARIOS_PER_FEATURE; scenarioIndex++) {
+				writeScenario(feature, featureIndex, scenarioIndex);
+			}
+		}
+	}
+
+	/**
+	 * Each scenario is written with its own writer, because the write buffer of a writer is limited.
+	 */
+	private void writeScenario(final Feature feature, final int featureIndex, final int scenarioIndex) {
+		ScenarioDocuWriter writer = new ScenarioDocuWriter(folder.getRoot(), BRANCH_NAME, BUILD_NAME);
+		Scenario scenario = new Scenario("scenario " + scenarioIndex, "description");
+		boolean failed = featureIndex % 2 == 1 && scenarioIndex == 2;
+		scenario.setStatus(failed ? Status.FAILED : Status.SUCCESS);
+		writer.saveScenario(feature, scenario);
+		int numberOfSteps = 3 + featureIndex + scenarioIndex;
+		for (int stepIndex = 0; stepIndex < numberOfSteps; stepIndex++) {
+			writer.saveStep(feature, scenario, createStep(featureIndex + scenarioIndex, stepIndex));
+		}
+		writer.flush();
+	}
+
+	private Step createStep(final int pageOffset, final int stepIndex) {
+		Step step = new Step();
+		step.setPage(new Page(PAGES[(pageOffset + stepIndex / 2) % PAGES.length]));
+		StepDescription stepDescription = new StepDescription();
+		stepDescription.setIndex(stepIndex);
+		stepDescription.setTitle("step " + stepIndex);
+		stepDescription.addLabel("label-" + stepIndex % 3);
+		stepDescription.addDetail("item", new ObjectDescription("item", "item " + (pageOffset + stepIndex) % 5));
+		step.setStepDescription(stepDescription);
+		return step;
+	}
+
+	private Build createBuild() {
+		Build build = new Build(BUILD_NAME);
+		build.setStatus(Status.SUCCESS);
+		return build;
+	}
+
+}
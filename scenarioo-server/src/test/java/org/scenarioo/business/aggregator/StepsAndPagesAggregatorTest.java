@@ -0,0 +1,267 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.aggregator;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
+import org.scenarioo.model.docu.aggregates.steps.StepLink;
+import org.scenarioo.model.docu.aggregates.steps.StepNavigation;
+import org.scenarioo.model.docu.entities.Feature;
+import org.scenarioo.model.docu.entities.Page;
+import org.scenarioo.model.docu.entities.Scenario;
+import org.scenarioo.model.docu.entities.Step;
+import org.scenarioo.model.docu.entities.StepDescription;
+import org.scenarioo.rest.base.BuildIdentifier;
+import org.scenarioo.rest.base.ScenarioIdentifier;
+
+/**
+ * The page variant data of the step navigations must be the same as when each step navigation was written while
+ * processing the steps and completed in a second pass over the written files.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class StepsAndPagesAggregatorTest {
+
+	private static final BuildIdentifier BUILD = new BuildIdentifier("branch", "build");
+
+	@Mock
+	private ScenarioDocuAggregationDao dao;
+
+	@Mock
+	private ObjectRepository objectRepository;
+
+	/**
+	 * Pages of the steps by scenario, in the order of the build.
+	 */
+	private final Map<String, String[]> scenarioPages = new LinkedHashMap<String, String[]>();
+
+	@Test
+	public void pageVariantDataOfRepeatedPagesIsTheSameAsBefore() {
+		givenScenario("feature1", "scenario1", "A", "A", "B", "A");
+		givenScenario("feature1", "scenario2", "B", "A");
+		givenScenario("feature1", "scenario3", "A");
+		givenScenario("feature2", "scenario1", "C", "A", "B", "B");
+
+		Map<String, StepNavigation> stepNavigations = whenAggregatingScenariosInTwoPartsAndSavingNavigations();
+
+		Map<String, StepNavigation> expectedStepNavigations = calculateStepNavigationsLikeBefore();
+		assertEquals(expectedStepNavigations.keySet(), stepNavigations.keySet());
+		for (Map.Entry<String, StepNavigation> expected : expectedStepNavigations.entrySet()) {
+			assertSamePageVariantData(expected.getKey(), expected.getValue(), stepNavigations.get(expected.getKey()));
+		}
+	}
+
+	@Test
+	public void pageVariantDataOfStepInSecondScenarioOfPage() {
+		givenScenario("feature1", "scenario1", "A", "A", "B", "A");
+		givenScenario("feature1", "scenario2", "B", "A");
+		givenScenario("feature1", "scenario3", "A");
+		givenScenario("feature2", "scenario1", "C", "A", "B", "B");
+
+		Map<String, StepNavigation> stepNavigations = whenAggregatingScenariosInTwoPartsAndSavingNavigations();
+
+		StepNavigation stepNavigation = stepNavigations.get("feature1/scenario2/1");
+		assertEquals(3, stepNavigation.getPageVariantIndex());
+		assertEquals(1, stepNavigation.getPageVariantScenarioIndex());
+		assertEquals(6, stepNavigation.getPageVariantsCount());
+		assertEquals(4, stepNavigation.getPageVariantScenariosCount());
+		assertEquals("feature1/scenario1/3", describe(stepNavigation.getPreviousStepVariant()));
+		assertEquals("feature1/scenario1/3", describe(stepNavigation.getPreviousStepVariantInOtherScenario()));
+		assertEquals("feature1/scenario3/0", describe(stepNavigation.getNextStepVariant()));
+		assertEquals("feature1/scenario3/0", describe(stepNavigation.getNextStepVariantInOtherScenario()));
+
+		stepNavigation = stepNavigations.get("feature1/scenario1/1");
+		assertEquals(1, stepNavigation.getPageVariantIndex());
+		assertEquals(0, stepNavigation.getPageVariantScenarioIndex());
+		assertEquals("feature1/scenario1/0", describe(stepNavigation.getPreviousStepVariant()));
+		assertNull(stepNavigation.getPreviousStepVariantInOtherScenario());
+		assertEquals("feature1/scenario1/3", describe(stepNavigation.getNextStepVariant()));
+		assertEquals("feature1/scenario2/1", describe(stepNavigation.getNextStepVariantInOtherScenario()));
+	}
+
+	@Test
+	public void stepNavigationsOfEachScenarioAreSavedOnce() {
+		givenScenario("feature1", "scenario1", "A", "A", "B", "A");
+		givenScenario("feature1", "scenario2", "B", "A");
+		givenScenario("feature2", "scenario1", "C", "A", "B", "B");
+
+		whenAggregatingScenariosInTwoPartsAndSavingNavigations();
+
+		verify(dao, times(3)).saveStepNavigations(any(ScenarioIdentifier.class), anyListOf(StepNavigation.class));
+		verify(dao, never()).loadStepNavigation(any(BuildIdentifier.class), any(StepLink.class));
+	}
+
+	private void givenScenario(final String featureName, final String scenarioName, final String... pages) {
+		scenarioPages.put(featureName + "/" + scenarioName, pages);
+	}
+
+	/**
+	 * The first scenario is aggregated by the aggregator of the build, the following scenarios by a second aggregator
+	 * that is merged, like when aggregating the scenarios in parallel.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, StepNavigation> whenAggregatingScenariosInTwoPartsAndSavingNavigations() {
+		StepsAndPagesAggregator aggregator = new StepsAndPagesAggregator(BUILD, dao);
+		StepsAndPagesAggregator aggregatorOfFollowingScenarios = new StepsAndPagesAggregator(BUILD, dao);
+		boolean firstScenario = true;
+		for (Map.Entry<String, String[]> scenario : scenarioPages.entrySet()) {
+			String[] names = scenario.getKey().split("/");
+			Feature feature = new Feature(names[0], "");
+			(firstScenario ? aggregator : aggregatorOfFollowingScenarios).calculateScenarioPageSteps(feature,
+					new Scenario(names[1], ""), createSteps(scenario.getValue()), null, objectRepository, null);
+			firstScenario = false;
+		}
+		aggregator.merge(aggregatorOfFollowingScenarios);
+
+		aggregator.saveStepNavigations();
+
+		ArgumentCaptor<ScenarioIdentifier> scenarioIdentifiers = ArgumentCaptor.forClass(ScenarioIdentifier.class);
+		@SuppressWarnings("rawtypes")
+		ArgumentCaptor<List> savedStepNavigations = ArgumentCaptor.forClass(List.class);
+		verify(dao, atLeastOnce()).saveStepNavigations(scenarioIdentifiers.capture(), savedStepNavigations.capture());
+		Map<String, StepNavigation> stepNavigations = new HashMap<String, StepNavigation>();
+		for (int i = 0; i < scenarioIdentifiers.getAllValues().size(); i++) {
+			ScenarioIdentifier scenarioIdentifier = scenarioIdentifiers.getAllValues().get(i);
+			for (StepNavigation stepNavigation : (List<StepNavigation>) savedStepNavigations.getAllValues().get(i)) {
+				stepNavigations.put(scenarioIdentifier.getFeatureName() + "/" + scenarioIdentifier.getScenarioName()
+						+ "/" + stepNavigation.getStepIndex(), stepNavigation);
+			}
+		}
+		return stepNavigations;
+	}
+
+	private List<Step> createSteps(final String[] pages) {
+		List<Step> steps = new ArrayList<Step>();
+		for (int i = 0; i < pages.length; i++) {
+			StepDescription stepDescription = new StepDescription();
+			stepDescription.setIndex(i);
+			Step step = new Step();
+			step.setPage(new Page(pages[i]));
+			step.setStepDescription(stepDescription);
+			steps.add(step);
+		}
+		return steps;
+	}
+
+	/**
+	 * The page variant data as calculated before: in a first pass over all steps of the build the previous variants,
+	 * indexes and counts, and in a second pass backwards over the steps of each page the next variants.
+	 */
+	private Map<String, StepNavigation> calculateStepNavigationsLikeBefore() {
+		Map<String, StepNavigation> stepNavigations = new LinkedHashMap<String, StepNavigation>();
+		Map<String, List<StepLink>> stepsByPage = new LinkedHashMap<String, List<StepLink>>();
+		Map<String, StepLink> lastStepFromDifferentScenarioByPage = new HashMap<String, StepLink>();
+		Map<String, Integer> scenariosCountByPage = new HashMap<String, Integer>();
+
+		for (Map.Entry<String, String[]> scenario : scenarioPages.entrySet()) {
+			String[] names = scenario.getKey().split("/");
+			String[] pages = scenario.getValue();
+			for (int stepIndex = 0; stepIndex < pages.length; stepIndex++) {
+				String page = pages[stepIndex];
+				StepLink currentStep = new StepLink(names[0], names[1], stepIndex, 0, page, 0, 0);
+				List<StepLink> stepsOfPage = stepsByPage.get(page);
+				if (stepsOfPage == null) {
+					stepsOfPage = new ArrayList<StepLink>();
+					stepsByPage.put(page, stepsOfPage);
+					scenariosCountByPage.put(page, 0);
+				}
+				StepLink previousStepVariant = stepsOfPage.isEmpty() ? null : stepsOfPage.get(stepsOfPage.size() - 1);
+				if (previousStepVariant == null) {
+					scenariosCountByPage.put(page, scenariosCountByPage.get(page) + 1);
+				} else if (!isSameScenario(currentStep, previousStepVariant)) {
+					scenariosCountByPage.put(page, scenariosCountByPage.get(page) + 1);
+					lastStepFromDifferentScenarioByPage.put(page, previousStepVariant);
+				}
+				stepsOfPage.add(currentStep);
+
+				StepNavigation stepNavigation = new StepNavigation();
+				stepNavigation.setPreviousStepVariant(previousStepVariant);
+				stepNavigation.setPreviousStepVariantInOtherScenario(lastStepFromDifferentScenarioByPage.get(page));
+				stepNavigation.setPageVariantIndex(stepsOfPage.size() - 1);
+				stepNavigation.setPageVariantScenarioIndex(scenariosCountByPage.get(page) - 1);
+				stepNavigations.put(describe(currentStep), stepNavigation);
+			}
+		}
+
+		for (Map.Entry<String, List<StepLink>> page : stepsByPage.entrySet()) {
+			List<StepLink> stepsOfPage = page.getValue();
+			StepLink nextStepVariant = null;
+			StepLink nextStepVariantInOtherScenario = null;
+			for (int i = stepsOfPage.size() - 1; i >= 0; i--) {
+				StepLink step = stepsOfPage.get(i);
+				if (nextStepVariant != null && !isSameScenario(nextStepVariant, step)) {
+					nextStepVariantInOtherScenario = nextStepVariant;
+				}
+				StepNavigation stepNavigation = stepNavigations.get(describe(step));
+				stepNavigation.setPageVariantsCount(stepsOfPage.size());
+				stepNavigation.setPageVariantScenariosCount(scenariosCountByPage.get(page.getKey()));
+				stepNavigation.setNextStepVariant(nextStepVariant);
+				stepNavigation.setNextStepVariantInOtherScenario(nextStepVariantInOtherScenario);
+				nextStepVariant = step;
+			}
+		}
+		return stepNavigations;
+	}
+
+	private boolean isSameScenario(final StepLink step1, final StepLink step2) {
+		return step1.getFeatureName().equals(step2.getFeatureName())
+				&& step1.getScenarioName().equals(step2.getScenarioName());
+	}
+
+	private void assertSamePageVariantData(final String step, final StepNavigation expected,
+			final StepNavigation actual) {
+		assertEquals("page variant index of " + step, expected.getPageVariantIndex(), actual.getPageVariantIndex());
+		assertEquals("page variant scenario index of " + step, expected.getPageVariantScenarioIndex(),
+				actual.getPageVariantScenarioIndex());
+		assertEquals("page variants count of " + step, expected.getPageVariantsCount(),
+				actual.getPageVariantsCount());
+		assertEquals("page variant scenarios count of " + step, expected.getPageVariantScenariosCount(),
+				actual.getPageVariantScenariosCount());
+		assertEquals("previous step variant of " + step, describe(expected.getPreviousStepVariant()),
+				describe(actual.getPreviousStepVariant()));
+		assertEquals("previous step variant in other scenario of " + step,
+				describe(expected.getPreviousStepVariantInOtherScenario()),
+				describe(actual.getPreviousStepVariantInOtherScenario()));
+		assertEquals("next step variant of " + step, describe(expected.getNextStepVariant()),
+				describe(actual.getNextStepVariant()));
+		assertEquals("next step variant in other scenario of " + step,
+				describe(expected.getNextStepVariantInOtherScenario()),
+				describe(actual.getNextStepVariantInOtherScenario()));
+	}
+
+	private String describe(final StepLink stepLink) {
+		if (stepLink == null) {
+			return null;
+		}
+		return stepLink.getFeatureName() + "/" + stepLink.getScenarioName() + "/" + stepLink.getStepIndex();
+	}
+
+}
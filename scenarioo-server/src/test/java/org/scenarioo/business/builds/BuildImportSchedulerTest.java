@@ -0,0 +1,173 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.builds;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.scenarioo.rest.base.BuildIdentifier;
+
+public class BuildImportSchedulerTest {
+
+	private final List<String> startedTasks = Collections.synchronizedList(new ArrayList<String>());
+
+	@Test
+	public void importsOfDifferentBranchesAreRunningConcurrently() throws InterruptedException {
+		BuildImportScheduler scheduler = new BuildImportScheduler(2, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch bothStarted = new CountDownLatch(2);
+
+		scheduler.submitImport(new BuildIdentifier("trunk", "build1"), blockingTask("trunk1", bothStarted, release));
+		scheduler.submitImport(new BuildIdentifier("branch", "build1"), blockingTask("branch1", bothStarted, release));
+
+		assertTrue("Expected both imports to run at the same time", bothStarted.await(5, TimeUnit.SECONDS));
+		release.countDown();
+	}
+
+	@Test
+	public void importsOfSameBranchAreRunningOneAfterTheOtherInSubmittedOrder() throws InterruptedException {
+		BuildImportScheduler scheduler = new BuildImportScheduler(3, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch firstStarted = new CountDownLatch(1);
+		CountDownLatch allFinished = new CountDownLatch(1);
+
+		scheduler.submitImport(new BuildIdentifier("trunk", "build1"), blockingTask("build1", firstStarted, release));
+		scheduler.submitImport(new BuildIdentifier("trunk", "build2"), task("build2"));
+		scheduler.submitImport(new BuildIdentifier("trunk", "build3"), task("build3"));
+		scheduler.execute(countDownTask(allFinished));
+
+		assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+		assertEquals(1, scheduler.getNumberOfRunningTasks());
+		assertEquals(3, scheduler.getNumberOfPendingTasks());
+
+		release.countDown();
+		assertTrue(allFinished.await(5, TimeUnit.SECONDS));
+		assertEquals(3, startedTasks.size());
+		assertEquals("build1", startedTasks.get(0));
+		assertEquals("build2", startedTasks.get(1));
+		assertEquals("build3", startedTasks.get(2));
+	}
+
+	@Test
+	public void tasksNotBelongingToABranchWaitForAllPreviouslySubmittedTasks() throws InterruptedException {
+		BuildImportScheduler scheduler = new BuildImportScheduler(2, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch importStarted = new CountDownLatch(1);
+		CountDownLatch comparisonFinished = new CountDownLatch(1);
+
+		scheduler.submitImport(new BuildIdentifier("trunk", "build1"), blockingTask("import", importStarted, release));
+		scheduler.execute(countDownTask(comparisonFinished));
+
+		assertTrue(importStarted.await(5, TimeUnit.SECONDS));
+		assertFalse("Comparison must wait for the import", comparisonFinished.await(200, TimeUnit.MILLISECONDS));
+
+		release.countDown();
+		assertTrue(comparisonFinished.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void importsWithHigherPriorityAreStartedFirst() throws InterruptedException {
+		BuildImportScheduler scheduler = new BuildImportScheduler(1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch firstStarted = new CountDownLatch(1);
+		CountDownLatch allFinished = new CountDownLatch(1);
+
+		scheduler.submitImport(new BuildIdentifier("trunk", "build1"), blockingTask("build1", firstStarted, release));
+		assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+		scheduler.submitImport(new BuildIdentifier("trunk", "old"), task("old"));
+		scheduler.submitImport(new BuildIdentifier("branch", "newest"), 100, task("newest"));
+		scheduler.submitImport(new BuildIdentifier("trunk", "reprioritized"), task("reprioritized"));
+		assertTrue(scheduler.changePriority(new BuildIdentifier("trunk", "reprioritized"), 50));
+		scheduler.execute(countDownTask(allFinished));
+
+		List<BuildImportScheduler.ScheduledImport> scheduledImports = scheduler.getScheduledImports();
+		assertEquals(4, scheduledImports.size());
+		assertTrue(scheduledImports.get(0).isRunning());
+		assertEquals("newest", scheduledImports.get(1).getBuildIdentifier().getBuildName());
+		assertEquals(100, scheduledImports.get(1).getPriority());
+
+		release.countDown();
+		assertTrue(allFinished.await(5, TimeUnit.SECONDS));
+		assertEquals(4, startedTasks.size());
+		assertEquals("newest", startedTasks.get(1));
+		assertEquals("reprioritized", startedTasks.get(2));
+		assertEquals("old", startedTasks.get(3));
+	}
+
+	@Test
+	public void cancelledImportsAreNeverStarted() throws InterruptedException {
+		BuildImportScheduler scheduler = new BuildImportScheduler(1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch firstStarted = new CountDownLatch(1);
+		CountDownLatch allFinished = new CountDownLatch(1);
+
+		scheduler.submitImport(new BuildIdentifier("trunk", "build1"), blockingTask("build1", firstStarted, release));
+		scheduler.submitImport(new BuildIdentifier("trunk", "build2"), task("build2"));
+		scheduler.execute(countDownTask(allFinished));
+
+		assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+		assertTrue(scheduler.cancel(new BuildIdentifier("trunk", "build2")));
+		assertFalse("Running imports can not be removed from the queue",
+				scheduler.cancel(new BuildIdentifier("trunk", "build1")));
+
+		release.countDown();
+		assertTrue(allFinished.await(5, TimeUnit.SECONDS));
+		assertEquals(1, startedTasks.size());
+		assertEquals("build1", startedTasks.get(0));
+	}
+
+	private Runnable task(final String name) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				startedTasks.add(name);
+			}
+		};
+	}
+
+	private Runnable countDownTask(final CountDownLatch latch) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+	}
+
+	private Runnable blockingTask(final String name, final CountDownLatch started, final CountDownLatch release) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				startedTasks.add(name);
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+}
@@ -0,0 +1,108 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.builds;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.business.builds.DocumentationDirectoryScanner.BuildDirectoryChange;
+import org.scenarioo.rest.base.BuildIdentifier;
+
+public class DocumentationDirectoryScannerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DocumentationDirectoryScanner scanner;
+
+	@Before
+	public void setUp() throws IOException {
+		createBuildDirectory("trunk", "build1", true);
+		scanner = new DocumentationDirectoryScanner(folder.getRoot());
+		scanner.scanAll();
+	}
+
+	@Test
+	public void reportsAddedBuildAsSoonAsBuildDescriptionExists() throws IOException {
+		createBuildDirectory("trunk", "build2", false);
+
+		assertTrue(scanner.scanBranch("trunk").isEmpty());
+		assertTrue(scanner.getBranchesWithIncompleteBuilds().contains("trunk"));
+
+		createBuildDirectory("trunk", "build2", true);
+		List<BuildDirectoryChange> changes = scanner.scanBranch("trunk");
+
+		assertChange(changes, "build2", BuildDirectoryChange.Type.ADDED);
+		assertTrue(scanner.getBranchesWithIncompleteBuilds().isEmpty());
+	}
+
+	@Test
+	public void reportsRemovedBuild() throws IOException {
+		FileUtils.deleteDirectory(new File(new File(folder.getRoot(), "trunk"), "build1"));
+
+		assertChange(scanner.scanBranch("trunk"), "build1", BuildDirectoryChange.Type.REMOVED);
+	}
+
+	@Test
+	public void reportsBuildAsRecreatedWhenItWasDeleted() {
+		List<BuildDirectoryChange> changes = scanner.scanBranch("trunk", Collections.singleton("build1"));
+
+		assertChange(changes, "build1", BuildDirectoryChange.Type.RECREATED);
+	}
+
+	@Test
+	public void reportsNoChangesForUnchangedBuilds() {
+		assertTrue(scanner.scanBranch("trunk").isEmpty());
+	}
+
+	@Test
+	public void detectsAddedBranchesAndIgnoresDerivedDirectories() throws IOException {
+		folder.newFolder("last successful scenarios.derived");
+		assertFalse(scanner.haveBranchesChanged());
+
+		createBuildDirectory("release", "build1", true);
+
+		assertTrue(scanner.haveBranchesChanged());
+	}
+
+	private void createBuildDirectory(final String branchName, final String buildName,
+			final boolean withBuildDescription) throws IOException {
+		File buildDirectory = new File(new File(folder.getRoot(), branchName), buildName);
+		buildDirectory.mkdirs();
+		if (withBuildDescription) {
+			new File(buildDirectory, "build.xml").createNewFile();
+		}
+	}
+
+	private void assertChange(final List<BuildDirectoryChange> changes, final String buildName,
+			final BuildDirectoryChange.Type type) {
+		assertEquals(1, changes.size());
+		assertEquals(new BuildIdentifier("trunk", buildName), changes.get(0).getBuildIdentifier());
+		assertEquals(type, changes.get(0).getType());
+	}
+
+}
@@ -0,0 +1,102 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.builds;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.business.builds.DocumentationDirectoryScanner.BuildDirectoryChange;
+import org.scenarioo.business.builds.DocumentationDirectoryWatcher.IncompleteBuildsRescanSchedule;
+
+public class DocumentationDirectoryWatcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void stoppedWatcherStopsWatchingTheDirectory() {
+		assertWatcherStops(0);
+	}
+
+	@Test
+	public void stoppedWatcherStopsPollingTheDirectory() {
+		assertWatcherStops(60);
+	}
+
+	@Test
+	public void incompleteBuildsAreRescannedLessAndLessOften() {
+		IncompleteBuildsRescanSchedule schedule = new IncompleteBuildsRescanSchedule(5, 20);
+
+		assertTrue(schedule.isRescanDue("branch", 0));
+		schedule.rescanned("branch", 0);
+		assertFalse(schedule.isRescanDue("branch", 4));
+		assertTrue(schedule.isRescanDue("branch", 5));
+		schedule.rescanned("branch", 5);
+		assertFalse(schedule.isRescanDue("branch", 14));
+		assertTrue(schedule.isRescanDue("branch", 15));
+		schedule.rescanned("branch", 15);
+		assertFalse(schedule.isRescanDue("branch", 34));
+		assertTrue(schedule.isRescanDue("branch", 35));
+		schedule.rescanned("branch", 35);
+
+		assertFalse("interval is limited", schedule.isRescanDue("branch", 54));
+		assertTrue("interval is limited", schedule.isRescanDue("branch", 55));
+	}
+
+	@Test
+	public void changedOrCompletedBranchIsRescannedWithInitialIntervalAgain() {
+		IncompleteBuildsRescanSchedule schedule = new IncompleteBuildsRescanSchedule(5, 20);
+		schedule.rescanned("changed", 0);
+		schedule.rescanned("changed", 5);
+		schedule.rescanned("completed", 0);
+		schedule.rescanned("completed", 5);
+
+		schedule.branchChanged("changed");
+		schedule.retainBranches(Collections.singleton("changed"));
+
+		assertTrue(schedule.isRescanDue("changed", 6));
+		assertTrue(schedule.isRescanDue("completed", 6));
+		schedule.rescanned("changed", 6);
+		assertTrue(schedule.isRescanDue("changed", 11));
+	}
+
+	private void assertWatcherStops(final int pollingIntervalInSeconds) {
+		DocumentationDirectoryWatcher watcher = new DocumentationDirectoryWatcher(new DocumentationDirectoryScanner(
+				folder.getRoot()), new DocumentationDirectoryWatcher.Listener() {
+			@Override
+			public void branchesChanged() {
+			}
+
+			@Override
+			public void buildDirectoriesChanged(final List<BuildDirectoryChange> changes) {
+			}
+		}, pollingIntervalInSeconds);
+		watcher.start();
+		assertTrue(watcher.isRunning());
+
+		watcher.stop();
+
+		assertFalse(watcher.isRunning());
+	}
+
+}
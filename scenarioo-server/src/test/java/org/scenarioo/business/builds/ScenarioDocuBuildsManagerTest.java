@@ -0,0 +1,208 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.builds;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.api.ScenarioDocuWriter;
+import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
+import org.scenarioo.dao.aggregates.ScenarioDocuAggregationFiles;
+import org.scenarioo.dao.version.ApplicationVersionHolder;
+import org.scenarioo.model.configuration.Configuration;
+import org.scenarioo.model.docu.aggregates.branches.BranchBuilds;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportStatus;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
+import org.scenarioo.model.docu.entities.Branch;
+import org.scenarioo.model.docu.entities.Build;
+import org.scenarioo.repository.RepositoryLocator;
+import org.scenarioo.rest.base.BuildIdentifier;
+import org.scenarioo.utils.TestFileUtils;
+
+public class ScenarioDocuBuildsManagerTest {
+
+	private static final String BRANCH_NAME = "release";
+
+	private static final String IMPORTED_BUILD_NAME = "build1";
+
+	private static final String NOT_IMPORTED_BUILD_NAME = "build2";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setupTest() {
+		TestFileUtils.createFolderAndSetItAsRootInConfigurationForUnitTest(folder.getRoot());
+		if (ApplicationVersionHolder.INSTANCE.getApplicationVersion() == null) {
+			ApplicationVersionHolder.INSTANCE.initialize("test", "now", "test", "test", "develop");
+		}
+		writeBuild(IMPORTED_BUILD_NAME);
+		writeBuild(NOT_IMPORTED_BUILD_NAME);
+		new ScenarioDocuAggregationDao(folder.getRoot()).saveVersion(new BuildIdentifier(BRANCH_NAME,
+				IMPORTED_BUILD_NAME), ApplicationVersionHolder.INSTANCE.getApplicationVersion()
+				.getAggregatedDataFormatVersion());
+	}
+
+	@Test
+	public void buildsOfSavedBuildCatalogAreAvailableWithoutReadingTheBuilds() throws IOException {
+		new ScenarioDocuBuildsManager().updateBuildImportStatesAndAvailableBuildsList();
+		FileUtils.deleteDirectory(new File(folder.getRoot(), BRANCH_NAME));
+
+		ScenarioDocuBuildsManager restartedManager = new ScenarioDocuBuildsManager();
+		assertTrue(restartedManager.loadBuildCatalog());
+
+		assertEquals(1, restartedManager.getAvailableBuilds().size());
+		List<String> buildNames = getAvailableBuildNames(restartedManager);
+		assertTrue(buildNames.contains(IMPORTED_BUILD_NAME));
+		assertFalse(buildNames.contains(NOT_IMPORTED_BUILD_NAME));
+		assertEquals(2, restartedManager.getBuildImportSummaries().size());
+		assertEquals(BuildImportStatus.SUCCESS, getImportStatus(restartedManager, IMPORTED_BUILD_NAME));
+	}
+
+	@Test
+	public void missingBuildCatalogFallsBackToReadingTheBuilds() {
+		ScenarioDocuBuildsManager manager = new ScenarioDocuBuildsManager();
+
+		assertFalse(manager.loadBuildCatalog());
+		assertTrue(manager.getAvailableBuilds().isEmpty());
+		assertTrue(manager.getBuildImportSummaries().isEmpty());
+
+		manager.updateBuildImportStatesAndAvailableBuildsList();
+
+		assertTrue(getAvailableBuildNames(manager).contains(IMPORTED_BUILD_NAME));
+		assertTrue(getBuildCatalogFile().exists());
+	}
+
+	@Test
+	public void corruptBuildCatalogIsIgnored() throws IOException {
+		FileUtils.writeStringToFile(getBuildCatalogFile(), "<buildCatalog><branchBuilds>", "UTF-8");
+		ScenarioDocuBuildsManager manager = new ScenarioDocuBuildsManager();
+
+		assertFalse(manager.loadBuildCatalog());
+		assertTrue(manager.getAvailableBuilds().isEmpty());
+
+		manager.updateBuildImportStatesAndAvailableBuildsList();
+
+		assertTrue(getAvailableBuildNames(manager).contains(IMPORTED_BUILD_NAME));
+	}
+
+	@Test
+	public void watcherIsRestartedWhenDocumentationDirectoryIsReconfigured() throws IOException {
+		Configuration configuration = RepositoryLocator.INSTANCE.getConfigurationRepository().getConfiguration();
+		configuration.setWatchDocumentationDirectory(true);
+		ScenarioDocuBuildsManager manager = new ScenarioDocuBuildsManager();
+		try {
+			manager.watchConfiguredDocumentationDirectory();
+			DocumentationDirectoryWatcher watcher = manager.getDocumentationDirectoryWatcher();
+			assertTrue(watcher.isRunning());
+			assertEquals(folder.getRoot(), watcher.getDocumentationDirectory());
+
+			manager.watchConfiguredDocumentationDirectory();
+			assertSame(watcher, manager.getDocumentationDirectoryWatcher());
+
+			File otherDocuDirectory = folder.newFolder("otherDocumentation");
+			configuration.setTestDocumentationDirPath(otherDocuDirectory.getAbsolutePath());
+			manager.watchConfiguredDocumentationDirectory();
+			assertFalse(watcher.isRunning());
+			assertTrue(manager.getDocumentationDirectoryWatcher().isRunning());
+			assertEquals(otherDocuDirectory, manager.getDocumentationDirectoryWatcher().getDocumentationDirectory());
+		} finally {
+			manager.stopWatchingDocumentationDirectory();
+		}
+	}
+
+	@Test
+	public void watcherIsStartedWhenInvalidDocumentationDirectoryHasBeenCreated() {
+		Configuration configuration = RepositoryLocator.INSTANCE.getConfigurationRepository().getConfiguration();
+		configuration.setWatchDocumentationDirectory(true);
+		File docuDirectory = new File(folder.getRoot(), "notYetCreated");
+		configuration.setTestDocumentationDirPath(docuDirectory.getAbsolutePath());
+		ScenarioDocuBuildsManager manager = new ScenarioDocuBuildsManager();
+		try {
+			manager.watchConfiguredDocumentationDirectory();
+			assertNull(manager.getDocumentationDirectoryWatcher());
+
+			assertTrue(docuDirectory.mkdir());
+			manager.watchConfiguredDocumentationDirectory();
+			assertTrue(manager.getDocumentationDirectoryWatcher().isRunning());
+		} finally {
+			manager.stopWatchingDocumentationDirectory();
+		}
+	}
+
+	@Test
+	public void watcherIsStoppedWhenWatchingIsDisabledOrOnShutdown() {
+		Configuration configuration = RepositoryLocator.INSTANCE.getConfigurationRepository().getConfiguration();
+		configuration.setWatchDocumentationDirectory(true);
+		ScenarioDocuBuildsManager manager = new ScenarioDocuBuildsManager();
+		manager.watchConfiguredDocumentationDirectory();
+		DocumentationDirectoryWatcher watcher = manager.getDocumentationDirectoryWatcher();
+
+		configuration.setWatchDocumentationDirectory(false);
+		manager.watchConfiguredDocumentationDirectory();
+		assertFalse(watcher.isRunning());
+		assertNull(manager.getDocumentationDirectoryWatcher());
+
+		configuration.setWatchDocumentationDirectory(true);
+		manager.watchConfiguredDocumentationDirectory();
+		watcher = manager.getDocumentationDirectoryWatcher();
+		manager.stopWatchingDocumentationDirectory();
+		assertFalse(watcher.isRunning());
+		assertNull(manager.getDocumentationDirectoryWatcher());
+	}
+
+	private void writeBuild(final String buildName) {
+		ScenarioDocuWriter writer = new ScenarioDocuWriter(folder.getRoot(), BRANCH_NAME, buildName);
+		writer.saveBranchDescription(new Branch(BRANCH_NAME));
+		writer.saveBuildDescription(new Build(buildName));
+		writer.flush();
+	}
+
+	private File getBuildCatalogFile() {
+		return new ScenarioDocuAggregationFiles(folder.getRoot()).getBuildCatalogFile();
+	}
+
+	private BuildImportStatus getImportStatus(final ScenarioDocuBuildsManager manager, final String buildName) {
+		for (BuildImportSummary summary : manager.getBuildImportSummaries()) {
+			if (summary.getIdentifier().getBuildName().equals(buildName)) {
+				return summary.getStatus();
+			}
+		}
+		return null;
+	}
+
+	private List<String> getAvailableBuildNames(final ScenarioDocuBuildsManager manager) {
+		List<String> buildNames = new ArrayList<String>();
+		for (BranchBuilds branchBuilds : manager.getAvailableBuilds()) {
+			for (BuildLink buildLink : branchBuilds.getBuilds()) {
+				buildNames.add(buildLink.getLinkName());
+			}
+		}
+		return buildNames;
+	}
+
+}
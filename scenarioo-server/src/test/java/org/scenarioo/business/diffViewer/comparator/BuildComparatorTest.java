@@ -0,0 +1,56 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.business.diffViewer.comparator;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.utils.TestFileUtils;
+
+public class BuildComparatorTest {
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() throws IOException {
+		TestFileUtils.createFolderAndSetItAsRootInConfigurationForUnitTest(folder.newFolder());
+	}
+
+	@Test
+	public void singleComparisonGetsTheWholeThreadBudget() {
+		assertEquals(8, BuildComparator.getComparisonParallelism(8, 1));
+	}
+
+	@Test
+	public void runningComparisonsShareTheThreadBudget() {
+		assertEquals(4, BuildComparator.getComparisonParallelism(8, 2));
+		assertEquals(2, BuildComparator.getComparisonParallelism(8, 3));
+	}
+
+	@Test
+	public void everyComparisonGetsAtLeastOneThread() {
+		assertEquals(1, BuildComparator.getComparisonParallelism(2, 5));
+	}
+
+}
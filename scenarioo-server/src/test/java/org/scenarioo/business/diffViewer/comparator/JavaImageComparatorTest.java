@@ -0,0 +1,74 @@
+package org.scenarioo.business.diffViewer.comparator;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The expected differences are the results of GraphicsMagick (see {@link ScreenshotComparatorGraphicsMagickTest}).
+ */
+public class JavaImageComparatorTest {
+
+	private static final String FILEPATH = "src/test/resources/org/scenarioo/business/diffViewer/";
+	private static final File BASE_SCREENSHOT = new File(FILEPATH + "baseScreenshot.png");
+	private static final File COMPARISON_SCREENSHOT_SAME_SIZE = new File(FILEPATH + "comparisonScreenshot.png");
+	private static final File COMPARISON_SCREENSHOT_LARGE = new File(FILEPATH + "comparisonScreenshotLarge.png");
+	private static final double SCREENSHOT_DIFFERENCE_SAME_SIZE = 14.11;
+	private static final double SCREENSHOT_DIFFERENCE_LARGE = 17.81;
+	private static final double DOUBLE_TOLERANCE = 0.01;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final JavaImageComparator comparator = new JavaImageComparator();
+
+	@Test
+	public void compareEqualScreenshots() throws IOException {
+		File diffScreenshot = new File(folder.getRoot(), "diffScreenshot.png");
+
+		final double difference = comparator.compareScreenshots(BASE_SCREENSHOT, BASE_SCREENSHOT, diffScreenshot);
+
+		assertEquals("Difference of screenshots", 0, difference, DOUBLE_TOLERANCE);
+		assertFalse("No DiffScreenshot is saved", diffScreenshot.exists());
+	}
+
+	@Test
+	public void compareDifferentScreenshots() throws IOException {
+		File diffScreenshot = new File(folder.getRoot(), "diffScreenshot.png");
+
+		final double difference = comparator.compareScreenshots(BASE_SCREENSHOT, COMPARISON_SCREENSHOT_SAME_SIZE,
+				diffScreenshot);
+
+		assertEquals("Difference of screenshots", SCREENSHOT_DIFFERENCE_SAME_SIZE, difference, DOUBLE_TOLERANCE);
+		assertTrue("DiffScreenshot is saved", diffScreenshot.exists());
+	}
+
+	@Test
+	public void compareDifferentSizedScreenshots() throws IOException {
+		File diffScreenshot = new File(folder.getRoot(), "diffScreenshot.png");
+
+		final double difference = comparator.compareScreenshots(BASE_SCREENSHOT, COMPARISON_SCREENSHOT_LARGE,
+				diffScreenshot);
+
+		assertEquals("Difference of screenshots", SCREENSHOT_DIFFERENCE_LARGE, difference, DOUBLE_TOLERANCE);
+		BufferedImage diffImage = ImageIO.read(diffScreenshot);
+		BufferedImage comparisonImage = ImageIO.read(COMPARISON_SCREENSHOT_LARGE);
+		assertEquals(comparisonImage.getWidth(), diffImage.getWidth());
+		assertEquals(comparisonImage.getHeight(), diffImage.getHeight());
+	}
+
+	@Test(expected = IOException.class)
+	public void compareNonExistentScreenshots() throws IOException {
+		comparator.compareScreenshots(BASE_SCREENSHOT, new File(FILEPATH + "nonExistentScreenshot.png"), new File(
+				folder.getRoot(), "diffScreenshot.png"));
+	}
+
+}
@@ -209,7 +209,11 @@ public class ScenarioComparatorTest {
 		assertEquals(removedScenario2.getName(), featureDiffInfo.getRemovedElements().get(1).getScenario().getName());
 	}
 
-	@Test(expected = RuntimeException.class)
+	/**
+	 * A base scenario without name is rejected as invalid argument (before matching by identifiers it failed with a
+	 * NullPointerException).
+	 */
+	@Test(expected = IllegalArgumentException.class)
 	public void testCompareEmptyBaseScenarioName() {
 		List<Scenario> baseScenarios = getScenarios(SCENARIO_NAME_1, null);
 		List<Scenario> comparisonScenarios = getScenarios(SCENARIO_NAME_1, SCENARIO_NAME_2, SCENARIO_NAME_3);
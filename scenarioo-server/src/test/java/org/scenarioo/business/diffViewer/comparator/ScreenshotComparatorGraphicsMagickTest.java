@@ -18,6 +18,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.scenarioo.dao.diffViewer.GraphicsMagickConfiguration;
 import org.scenarioo.dao.diffViewer.impl.DiffFiles;
+import org.scenarioo.model.configuration.Configuration;
 import org.scenarioo.repository.RepositoryLocator;
 import org.scenarioo.utils.TestFileUtils;
 
@@ -79,6 +80,26 @@ public class ScreenshotComparatorGraphicsMagickTest {
 
 	}
 
+	@Test
+	public void compareDifferentScreenshotsInGraphicsMagickBatch() {
+		final Configuration configuration = getTestConfiguration();
+		configuration.setScreenshotComparisonEngine(Configuration.SCREENSHOT_COMPARISON_ENGINE_GRAPHICS_MAGICK_BATCH);
+		RepositoryLocator.INSTANCE.getConfigurationRepository().updateConfiguration(configuration);
+		try {
+			final double difference = screenshotComparator.compareScreenshots(BASE_SCREENSHOT,
+					COMPARISON_SCREENSHOT_SAME_SIZE, DIFF_SCREENSHOT);
+			if (IS_GRAPHICS_MAGICK_INSTALLED) {
+				assertEquals("Difference of screenshots", SCREENSHOT_DIFFERENCE_SAME_SIZE, difference,
+						DOUBLE_TOLERANCE);
+			} else {
+				assertEquals("Difference of screenshots", 0, difference, DOUBLE_TOLERANCE);
+			}
+		} finally {
+			configuration.setScreenshotComparisonEngine(Configuration.SCREENSHOT_COMPARISON_ENGINE_GRAPHICS_MAGICK);
+			RepositoryLocator.INSTANCE.getConfigurationRepository().updateConfiguration(configuration);
+		}
+	}
+
 	@Test
 	public void compareNonExistentScreenshots() {
 		Logger LOGGER = ScreenshotComparator.getLogger();
@@ -2,7 +2,10 @@ package org.scenarioo.business.diffViewer.comparator;
 
 import org.im4java.core.CompareCmd;
 import org.im4java.core.IMOperation;
+import org.im4java.core.Operation;
 import org.im4java.process.ArrayListOutputConsumer;
+import org.im4java.process.OutputConsumer;
+import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -11,14 +14,23 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.scenarioo.business.diffViewer.comparator.ScreenshotComparator.GraphicsMagickCommandFactory;
 import org.scenarioo.dao.diffViewer.impl.DiffFiles;
 import org.scenarioo.model.docu.aggregates.steps.StepLink;
 import org.scenarioo.repository.RepositoryLocator;
 import org.scenarioo.utils.TestFileUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -35,6 +47,9 @@ public class ScreenshotComparatorMockitoTest {
 	@Mock
 	private ArrayListOutputConsumer gmConsoleOutputConsumer;
 
+	@Mock
+	private GraphicsMagickCommandFactory gmCommandFactory;
+
 	@InjectMocks
 	private final ScreenshotComparator screenshotComparator = new ScreenshotComparator(BASE_BRANCH_NAME,
 		BASE_BUILD_NAME,
@@ -69,6 +84,13 @@ public class ScreenshotComparatorMockitoTest {
 		RepositoryLocator.INSTANCE.getConfigurationRepository().updateConfiguration(getTestConfiguration());
 	}
 
+	@Before
+	public void setUp() {
+		when(gmCommandFactory.createCompareCmd()).thenReturn(gmConsole);
+		when(gmCommandFactory.createOutputConsumer()).thenReturn(gmConsoleOutputConsumer);
+		when(gmCommandFactory.createErrorConsumer()).thenCallRealMethod();
+	}
+
 	@Test
 	public void testParseGmConsoleOutput() throws Exception {
 		File mockScreenshot = new File("mockScreenshot.png");
@@ -87,4 +109,78 @@ public class ScreenshotComparatorMockitoTest {
 
 		verify(comparator, never()).compareScreenshots(any(File.class), any(File.class), any(File.class));
 	}
+
+	/**
+	 * Both comparisons only finish if they run at the same time, as each waits for the other one inside its
+	 * GraphicsMagick command.
+	 */
+	@Test
+	public void screenshotsAreComparedConcurrently() throws Exception {
+		final CyclicBarrier bothComparisonsRunning = new CyclicBarrier(2);
+		final ScreenshotComparator comparator = new ScreenshotComparator(BASE_BRANCH_NAME, BASE_BUILD_NAME,
+				getComparisonConfiguration());
+		comparator.setCommandFactory(new GraphicsMagickCommandFactory() {
+			@Override
+			public CompareCmd createCompareCmd() {
+				return new ConcurrentCompareCmd(bothComparisonsRunning);
+			}
+		});
+		final File screenshot = new File(folder.getRoot(), "screenshot.png");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<Double>> differences = new ArrayList<Future<Double>>();
+			for (int i = 0; i < 2; i++) {
+				final File diffScreenshot = new File(folder.getRoot(), "diff" + i + ".png");
+				differences.add(executor.submit(new Callable<Double>() {
+					@Override
+					public Double call() {
+						return comparator.compareScreenshots(screenshot, screenshot, diffScreenshot);
+					}
+				}));
+			}
+
+			for (Future<Double> difference : differences) {
+				assertEquals(SCREENSHOT_DIFFERENCE, difference.get(10, TimeUnit.SECONDS), DOUBLE_TOLERANCE);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Prints the output of a GraphicsMagick comparison once the other comparison is running as well.
+	 */
+	private static class ConcurrentCompareCmd extends CompareCmd {
+
+		private final CyclicBarrier bothComparisonsRunning;
+
+		private OutputConsumer outputConsumer;
+
+		private ConcurrentCompareCmd(final CyclicBarrier bothComparisonsRunning) {
+			super(true);
+			this.bothComparisonsRunning = bothComparisonsRunning;
+		}
+
+		@Override
+		public void setOutputConsumer(final OutputConsumer outputConsumer) {
+			super.setOutputConsumer(outputConsumer);
+			this.outputConsumer = outputConsumer;
+		}
+
+		@Override
+		public void run(final Operation operation, final Object... images) throws IOException {
+			try {
+				bothComparisonsRunning.await(5, TimeUnit.SECONDS);
+			} catch (final Exception e) {
+				throw new IOException("Other comparison did not run at the same time.", e);
+			}
+			StringBuilder output = new StringBuilder();
+			for (String line : OUTPUT_CONSUMER_MOCK) {
+				output.append(line).append('\n');
+			}
+			outputConsumer.consumeOutput(new ByteArrayInputStream(output.toString().getBytes("UTF-8")));
+		}
+
+	}
+
 }
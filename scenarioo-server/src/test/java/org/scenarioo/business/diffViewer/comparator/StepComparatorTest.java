@@ -27,6 +27,8 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.scenarioo.api.ScenarioDocuReader;
 import org.scenarioo.business.builds.ScenarioDocuBuildsManager;
+import org.scenarioo.dao.aggregates.ScenarioDocuAggregationDao;
+import org.scenarioo.dao.aggregates.ScenarioDocuAggregationFiles;
 import org.scenarioo.dao.diffViewer.DiffWriter;
 import org.scenarioo.dao.diffViewer.impl.DiffFiles;
 import org.scenarioo.model.diffViewer.ScenarioDiffInfo;
@@ -36,16 +38,24 @@ import org.scenarioo.model.docu.entities.Step;
 import org.scenarioo.model.docu.entities.StepDescription;
 import org.scenarioo.repository.RepositoryLocator;
 import org.scenarioo.rest.base.BuildIdentifier;
+import org.scenarioo.rest.base.ScenarioIdentifier;
 import org.scenarioo.utils.TestFileUtils;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.scenarioo.business.diffViewer.comparator.ConfigurationFixture.*;
 
@@ -159,6 +169,29 @@ public class StepComparatorTest {
 		assertTrue(scenarioDiffInfo.getRemovedElements().isEmpty());
 	}
 
+	@Test
+	public void testCompareStepsChangedInParallel() {
+		double changeRatePerStep = 50.0;
+		List<Step> baseSteps = getSteps(PAGE_NAME_1, PAGE_NAME_1, PAGE_NAME_2, PAGE_NAME_2);
+		List<Step> comparisonSteps = getSteps(PAGE_NAME_1, PAGE_NAME_1, PAGE_NAME_2);
+
+		initMocks(baseSteps, comparisonSteps, changeRatePerStep);
+
+		ScenarioDiffInfo scenarioDiffInfo = new ForkJoinPool(4).invoke(new RecursiveTask<ScenarioDiffInfo>() {
+			@Override
+			protected ScenarioDiffInfo compute() {
+				return stepComparator.compare(USE_CASE_NAME, SCENARIO_NAME);
+			}
+		});
+
+		double expectedChangeRate = (3 * changeRatePerStep + 100.0) / 4.0;
+		assertEquals(expectedChangeRate, scenarioDiffInfo.getChangeRate(), 0.0);
+		assertEquals(1, scenarioDiffInfo.getAdded());
+		assertEquals(3, scenarioDiffInfo.getChanged());
+		assertEquals(0, scenarioDiffInfo.getRemoved());
+		assertEquals(new Integer(3), scenarioDiffInfo.getAddedElements().get(0));
+	}
+
 	@Test
 	public void testCompareOneStepRemoved() {
 		List<Step> baseSteps = getSteps(PAGE_NAME_1);
@@ -196,6 +229,139 @@ public class StepComparatorTest {
 		assertEquals(PAGE_NAME_2, scenarioDiffInfo.getRemovedElements().get(1).getStepLink().getPageName());
 	}
 
+	@Test
+	public void screenshotsWithSameFingerprintAreNotCompared() throws IOException {
+		String scenarioName = "sameFingerprints";
+		File baseScreenshot = createScreenshot(BASE_BRANCH_NAME, BASE_BUILD_NAME, scenarioName, "content");
+		File comparisonScreenshot = createScreenshot(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME, scenarioName,
+				"content");
+		updateScreenshotFingerprints(scenarioName);
+
+		initScreenshotMocks(scenarioName, baseScreenshot, comparisonScreenshot);
+
+		ScenarioDiffInfo scenarioDiffInfo = stepComparator.compare(USE_CASE_NAME, scenarioName);
+
+		assertEquals(0, scenarioDiffInfo.getChanged());
+		verify(screenshotComparator, never()).compare(anyString(), anyString(), any(StepLink.class), anyString());
+	}
+
+	@Test
+	public void hardLinkedScreenshotIsNotCompared() throws IOException {
+		String scenarioName = "hardLinkedScreenshot";
+		File baseScreenshot = createScreenshot(BASE_BRANCH_NAME, BASE_BUILD_NAME, scenarioName, "content");
+		File comparisonScreenshot = getScreenshotFile(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME, scenarioName);
+		assertTrue(comparisonScreenshot.getParentFile().mkdirs());
+		Files.createLink(comparisonScreenshot.toPath(), baseScreenshot.toPath());
+		updateScreenshotFingerprints(scenarioName);
+		// outdates both fingerprints, the screenshots are identical nevertheless
+		assertTrue(baseScreenshot.setLastModified(baseScreenshot.lastModified() + 2000));
+
+		initScreenshotMocks(scenarioName, baseScreenshot, comparisonScreenshot);
+
+		ScenarioDiffInfo scenarioDiffInfo = stepComparator.compare(USE_CASE_NAME, scenarioName);
+
+		assertEquals(0, scenarioDiffInfo.getChanged());
+		verify(screenshotComparator, never()).compare(anyString(), anyString(), any(StepLink.class), anyString());
+	}
+
+	@Test
+	public void screenshotWithOutdatedFingerprintIsCompared() throws IOException {
+		String scenarioName = "outdatedFingerprint";
+		File baseScreenshot = createScreenshot(BASE_BRANCH_NAME, BASE_BUILD_NAME, scenarioName, "content");
+		File comparisonScreenshot = createScreenshot(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME, scenarioName,
+				"content");
+		updateScreenshotFingerprints(scenarioName);
+		Files.write(comparisonScreenshot.toPath(), "changed content".getBytes("UTF-8"));
+
+		initScreenshotMocks(scenarioName, baseScreenshot, comparisonScreenshot);
+
+		stepComparator.compare(USE_CASE_NAME, scenarioName);
+
+		verify(screenshotComparator, times(1)).compare(anyString(), anyString(), any(StepLink.class), anyString());
+	}
+
+	@Test
+	public void screenshotWithOutdatedModificationDateIsCompared() throws IOException {
+		String scenarioName = "outdatedModificationDate";
+		File baseScreenshot = createScreenshot(BASE_BRANCH_NAME, BASE_BUILD_NAME, scenarioName, "content");
+		File comparisonScreenshot = createScreenshot(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME, scenarioName,
+				"content");
+		updateScreenshotFingerprints(scenarioName);
+		assertTrue(comparisonScreenshot.setLastModified(comparisonScreenshot.lastModified() + 2000));
+
+		initScreenshotMocks(scenarioName, baseScreenshot, comparisonScreenshot);
+
+		stepComparator.compare(USE_CASE_NAME, scenarioName);
+
+		verify(screenshotComparator, times(1)).compare(anyString(), anyString(), any(StepLink.class), anyString());
+	}
+
+	@Test
+	public void screenshotWithoutFingerprintIsCompared() throws IOException {
+		String scenarioName = "missingFingerprint";
+		File baseScreenshot = createScreenshot(BASE_BRANCH_NAME, BASE_BUILD_NAME, scenarioName, "content");
+		File comparisonScreenshot = createScreenshot(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME, scenarioName,
+				"content");
+		getAggregationDao().updateScreenshotFingerprints(getScenarioIdentifier(BASE_BRANCH_NAME, BASE_BUILD_NAME,
+				scenarioName));
+
+		initScreenshotMocks(scenarioName, baseScreenshot, comparisonScreenshot);
+
+		stepComparator.compare(USE_CASE_NAME, scenarioName);
+
+		verify(screenshotComparator, times(1)).compare(anyString(), anyString(), any(StepLink.class), anyString());
+	}
+
+	private void initScreenshotMocks(String scenarioName, File baseScreenshot, File comparisonScreenshot) {
+		when(docuBuildsManager.resolveBranchAndBuildAliases(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME))
+				.thenReturn(new BuildIdentifier(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME));
+		when(docuReader.loadSteps(BASE_BRANCH_NAME, BASE_BUILD_NAME, USE_CASE_NAME, scenarioName)).thenReturn(
+				getSteps(PAGE_NAME_1));
+		when(docuReader.loadSteps(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME, USE_CASE_NAME, scenarioName))
+				.thenReturn(getSteps(PAGE_NAME_1));
+		when(docuReader.getScreenshotFile(BASE_BRANCH_NAME, BASE_BUILD_NAME, USE_CASE_NAME, scenarioName,
+				baseScreenshot.getName())).thenReturn(baseScreenshot);
+		when(docuReader.getScreenshotFile(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME, USE_CASE_NAME, scenarioName,
+				comparisonScreenshot.getName())).thenReturn(comparisonScreenshot);
+		when(screenshotComparator.compare(anyString(), anyString(), any(StepLink.class), anyString())).thenReturn(0.0);
+	}
+
+	private File createScreenshot(String branchName, String buildName, String scenarioName, String content)
+			throws IOException {
+		File screenshot = getScreenshotFile(branchName, buildName, scenarioName);
+		assertTrue(screenshot.getParentFile().mkdirs());
+		Files.write(screenshot.toPath(), content.getBytes("UTF-8"));
+		return screenshot;
+	}
+
+	private File getScreenshotFile(String branchName, String buildName, String scenarioName) {
+		File screenshotsDirectory = new ScenarioDocuAggregationFiles(getDocumentationDataDirectory())
+				.getScreenshotsDirectory(getScenarioIdentifier(branchName, buildName, scenarioName));
+		return new File(screenshotsDirectory, "000.png");
+	}
+
+	private void updateScreenshotFingerprints(String scenarioName) {
+		getAggregationDao().updateScreenshotFingerprints(getScenarioIdentifier(BASE_BRANCH_NAME, BASE_BUILD_NAME,
+				scenarioName));
+		getAggregationDao().updateScreenshotFingerprints(getScenarioIdentifier(COMPARISON_BRANCH_NAME,
+				COMPARISON_BUILD_NAME, scenarioName));
+	}
+
+	private ScenarioDocuAggregationDao getAggregationDao() {
+		return new ScenarioDocuAggregationDao(getDocumentationDataDirectory());
+	}
+
+	/**
+	 * The directory the comparators read from, their configuration repository is shared by all comparator tests.
+	 */
+	private File getDocumentationDataDirectory() {
+		return AbstractComparator.configurationRepository.getDocumentationDataDirectory();
+	}
+
+	private ScenarioIdentifier getScenarioIdentifier(String branchName, String buildName, String scenarioName) {
+		return new ScenarioIdentifier(new BuildIdentifier(branchName, buildName), USE_CASE_NAME, scenarioName);
+	}
+
 	private void initMocks(List<Step> baseSteps, List<Step> comparisonSteps,
 			double changeRate) {
 		when(docuBuildsManager.resolveBranchAndBuildAliases(COMPARISON_BRANCH_NAME, COMPARISON_BUILD_NAME))
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -276,6 +277,44 @@ public class LastSuccessfulScenariosBuildTest {
 		expectOnlyTheSecondAndThirdScenarioAreAddedToTheLastSuccessfulBuild();
 	}
 
+	@Test
+	public void copiedScenariosAreLinkedToTheFilesOfTheImportedBuildIfScreenshotsAreDeduplicated()
+			throws IOException {
+		givenLastSuccessfulScenarioBuildIsEnabledInConfiguration();
+		givenScreenshotsAreDeduplicated(true);
+		givenBuildImportSummaryWithStatusSuccess();
+		givenFeatureWithASuccessfulAndAFailedScenario();
+
+		whenUpdatingLastSuccessfulScenarioBuild();
+
+		expectTheSuccessfulScenarioIsLinkedToTheImportedBuild();
+	}
+
+	@Test
+	public void copiedScenariosAreNotLinkedToTheFilesOfTheImportedBuildIfScreenshotsAreNotDeduplicated()
+			throws IOException {
+		givenLastSuccessfulScenarioBuildIsEnabledInConfiguration();
+		givenScreenshotsAreDeduplicated(false);
+		givenBuildImportSummaryWithStatusSuccess();
+		givenFeatureWithASuccessfulAndAFailedScenario();
+
+		whenUpdatingLastSuccessfulScenarioBuild();
+
+		expectTheSuccessfulScenarioIsACopyOfTheImportedBuild();
+	}
+
+	@Test
+	public void updatingWithABuildWithoutNewerScenariosDoesNotChangeTheBuild() {
+		givenLastSuccessfulScenarioBuildIsEnabledInConfiguration();
+		givenBuildImportSummaryWithStatusSuccess();
+		givenFeatureWithASuccessfulAndAFailedScenario();
+
+		assertTrue(new LastSuccessfulScenariosBuildUpdater(rootDirectory, buildImportSummary)
+				.enrichLastSuccessfulScenariosWithBuild());
+		assertFalse(new LastSuccessfulScenariosBuildUpdater(rootDirectory, buildImportSummary)
+				.enrichLastSuccessfulScenariosWithBuild());
+	}
+
 	private void givenBuildImportSummaryIsNull() {
 		buildImportSummary = null;
 	}
@@ -315,6 +354,12 @@ public class LastSuccessfulScenariosBuildTest {
 		setConfigValueCreateLastSuccessfulScenarioBuildTo(true);
 	}
 
+	private void givenScreenshotsAreDeduplicated(final boolean deduplicateScreenshots) {
+		Configuration configuration = configurationRepository.getConfiguration();
+		configuration.setDeduplicateScreenshots(deduplicateScreenshots);
+		configurationRepository.updateConfiguration(configuration);
+	}
+
 	private void givenFeatureWithASuccessfulAndAFailedScenario() {
 		String featureName = features[0];
 		createScenario(SCENARIO_FAILED, Status.FAILED, featureName);
@@ -775,6 +820,23 @@ public class LastSuccessfulScenariosBuildTest {
 		assertFalse(failedScenario.exists());
 	}
 
+	private void expectTheSuccessfulScenarioIsLinkedToTheImportedBuild() throws IOException {
+		String scenarioFilePath = encode(features[0]) + "/" + encode(SCENARIO_SUCCESS) + "/" + FILE_NAME_SCENARIO;
+		File importedScenarioFile = new File(getImportedBuildDirectory(BUILD_IDENTIFIER), scenarioFilePath);
+		File linkedScenarioFile = new File(getLastSuccessfulScenariosBuildDirectory(), scenarioFilePath);
+
+		assertTrue(Files.isSameFile(importedScenarioFile.toPath(), linkedScenarioFile.toPath()));
+	}
+
+	private void expectTheSuccessfulScenarioIsACopyOfTheImportedBuild() throws IOException {
+		String scenarioFilePath = encode(features[0]) + "/" + encode(SCENARIO_SUCCESS) + "/" + FILE_NAME_SCENARIO;
+		File importedScenarioFile = new File(getImportedBuildDirectory(BUILD_IDENTIFIER), scenarioFilePath);
+		File copiedScenarioFile = new File(getLastSuccessfulScenariosBuildDirectory(), scenarioFilePath);
+
+		assertFalse(Files.isSameFile(importedScenarioFile.toPath(), copiedScenarioFile.toPath()));
+		assertTrue(FileUtils.contentEquals(importedScenarioFile, copiedScenarioFile));
+	}
+
 	private void expectOnlyTheNewerBuildWasOverwritten() {
 		Calendar tomorrow = Calendar.getInstance();
 		tomorrow.setTime(DATE_NOW);
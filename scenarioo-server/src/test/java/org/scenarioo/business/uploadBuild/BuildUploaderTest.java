@@ -0,0 +1,250 @@
+package org.scenarioo.business.uploadBuild;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.business.uploadBuild.BuildUploader.BuildDirectoryLayout;
+import org.scenarioo.business.uploadBuild.BuildUploader.BuildUploaderException;
+import org.scenarioo.utils.TestFileUtils;
+import org.scenarioo.utils.ZipFileExtractor.ZipFileExtractionException;
+
+public class BuildUploaderTest {
+
+	private static final String BUILD_XML = "branch/build/build.xml";
+
+	private static final String BRANCH_XML = "branch/branch.xml";
+
+	private static final String FEATURE_XML = "branch/build/feature/feature.xml";
+
+	private static final String SCENARIO_XML = "branch/build/feature/scenario/scenario.xml";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File documentationDirectory;
+
+	private BuildUploader buildUploader;
+
+	@Before
+	public void setupTest() throws IOException {
+		documentationDirectory = folder.newFolder("documentation");
+		TestFileUtils.createFolderAndSetItAsRootInConfigurationForUnitTest(documentationDirectory);
+		buildUploader = new BuildUploader();
+	}
+
+	@Test
+	public void pathTraversalEntriesAreRejected() {
+		for (String entryName : new String[] { "../evil.xml", "branch/../../evil.xml",
+				"branch/build/../../../evil.xml", "/branch/build/build.xml", "branch/./build/build.xml",
+				"branch//build/build.xml" }) {
+			try {
+				new BuildDirectoryLayout().validate(entryName);
+				fail("entry " + entryName + " must be rejected");
+			} catch (ZipFileExtractionException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void entriesOfASecondBranchOrBuildAreRejected() throws ZipFileExtractionException {
+		BuildDirectoryLayout layout = new BuildDirectoryLayout();
+		layout.validate("readme.txt");
+		layout.validate(BRANCH_XML);
+		layout.validate(BUILD_XML);
+		layout.validate(FEATURE_XML);
+
+		assertRejected(layout, "otherBranch/build/build.xml");
+		assertRejected(layout, "branch/otherBuild/build.xml");
+		assertRejected(layout, "branch/otherBuild/");
+	}
+
+	@Test
+	public void buildIsPublishedAsNewBranch() throws Exception {
+		upload(zip(BRANCH_XML, BUILD_XML, FEATURE_XML, SCENARIO_XML));
+
+		assertTrue(new File(documentationDirectory, BRANCH_XML).isFile());
+		assertTrue(new File(documentationDirectory, BUILD_XML).isFile());
+		assertTrue(new File(documentationDirectory, SCENARIO_XML).isFile());
+		assertDocumentationDirectoryContains("branch");
+	}
+
+	@Test
+	public void buildIsAddedToExistingBranch() throws Exception {
+		File existingBranchFile = new File(documentationDirectory, BRANCH_XML);
+		FileUtils.writeStringToFile(existingBranchFile, "existing branch");
+		FileUtils.writeStringToFile(new File(documentationDirectory, "branch/otherBuild/build.xml"), "other build");
+
+		upload(zip(BRANCH_XML, BUILD_XML, FEATURE_XML, SCENARIO_XML));
+
+		assertTrue(new File(documentationDirectory, SCENARIO_XML).isFile());
+		assertTrue(new File(documentationDirectory, "branch/otherBuild/build.xml").isFile());
+		assertEquals("existing branch", FileUtils.readFileToString(existingBranchFile));
+		assertDocumentationDirectoryContains("branch");
+	}
+
+	@Test
+	public void featureWithoutScenariosIsAccepted() throws Exception {
+		upload(zip(BRANCH_XML, BUILD_XML, FEATURE_XML, "branch/build/emptyFeature/feature.xml"));
+
+		assertTrue(new File(documentationDirectory, "branch/build/emptyFeature/feature.xml").isFile());
+	}
+
+	@Test
+	public void buildWithoutBuildXmlIsRejected() throws IOException {
+		assertUploadRejected(zip(BRANCH_XML, FEATURE_XML, SCENARIO_XML));
+
+		assertDocumentationDirectoryContains();
+	}
+
+	@Test
+	public void zipWithoutBuildDirectoryIsRejected() throws IOException {
+		assertUploadRejected(zip(BRANCH_XML));
+
+		assertDocumentationDirectoryContains();
+	}
+
+	@Test
+	public void pathTraversalUploadIsRejectedWithoutLeavingAnything() throws IOException {
+		assertUploadRejected(zip(BRANCH_XML, BUILD_XML, "branch/../../evil.xml"));
+
+		assertFalse(new File(folder.getRoot(), "evil.xml").exists());
+		assertDocumentationDirectoryContains();
+	}
+
+	@Test
+	public void existingBuildIsNotReplaced() throws IOException {
+		File existingBuildFile = new File(documentationDirectory, BUILD_XML);
+		FileUtils.writeStringToFile(existingBuildFile, "existing build");
+
+		assertUploadRejected(zip(BRANCH_XML, BUILD_XML, FEATURE_XML));
+
+		assertEquals("existing build", FileUtils.readFileToString(existingBuildFile));
+		assertFalse(new File(documentationDirectory, FEATURE_XML).exists());
+		assertDocumentationDirectoryContains("branch");
+	}
+
+	@Test
+	public void buildIsStagedInDerivedDirectoryUntilItHasBeenReceivedCompletely() throws Exception {
+		final byte[] zip = zip(BRANCH_XML, BUILD_XML, FEATURE_XML, "branch/build/feature/scenario/screenshot.png");
+		final Set<String> filesWhileReceiving = new HashSet<String>();
+		InputStream zipStream = new FilterInputStream(new ByteArrayInputStream(zip)) {
+			private int bytesRead = 0;
+
+			@Override
+			public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+				int read = super.read(buffer, offset, length);
+				bytesRead += Math.max(read, 0);
+				if (bytesRead > zip.length / 2 && filesWhileReceiving.isEmpty()) {
+					filesWhileReceiving.addAll(Arrays.asList(documentationDirectory.list()));
+				}
+				return read;
+			}
+		};
+
+		buildUploader.extractAndPublishBuild(zipStream, documentationDirectory);
+
+		assertEquals(1, filesWhileReceiving.size());
+		String stagingDirectoryName = filesWhileReceiving.iterator().next();
+		assertTrue(stagingDirectoryName.contains(".derived"));
+		assertTrue(new File(documentationDirectory, "branch/build/feature/scenario/screenshot.png").isFile());
+		assertDocumentationDirectoryContains("branch");
+	}
+
+	@Test
+	public void interruptedUploadLeavesNothing() throws IOException {
+		final byte[] zip = zip(BRANCH_XML, BUILD_XML, FEATURE_XML, "branch/build/feature/scenario/screenshot.png");
+		InputStream zipStream = new FilterInputStream(new ByteArrayInputStream(zip)) {
+			private int bytesRead = 0;
+
+			@Override
+			public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+				if (bytesRead > zip.length / 2) {
+					throw new IOException("connection lost");
+				}
+				int read = super.read(buffer, offset, length);
+				bytesRead += Math.max(read, 0);
+				return read;
+			}
+		};
+
+		try {
+			buildUploader.extractAndPublishBuild(zipStream, documentationDirectory);
+			fail("interrupted upload must be rejected");
+		} catch (BuildUploaderException e) {
+			// expected
+		}
+
+		assertDocumentationDirectoryContains();
+	}
+
+	private void upload(final byte[] zip) throws BuildUploaderException {
+		buildUploader.extractAndPublishBuild(new ByteArrayInputStream(zip), documentationDirectory);
+	}
+
+	private void assertUploadRejected(final byte[] zip) {
+		try {
+			upload(zip);
+			fail("upload must be rejected");
+		} catch (BuildUploaderException e) {
+			// expected
+		}
+	}
+
+	private void assertRejected(final BuildDirectoryLayout layout, final String entryName) {
+		try {
+			layout.validate(entryName);
+			fail("entry " + entryName + " must be rejected");
+		} catch (ZipFileExtractionException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Also checks that no staging directory is left.
+	 */
+	private void assertDocumentationDirectoryContains(final String... fileNames) {
+		assertEquals(new HashSet<String>(Arrays.asList(fileNames)),
+				new HashSet<String>(Arrays.asList(documentationDirectory.list())));
+	}
+
+	/**
+	 * Screenshots are random data that can not be compressed, such that they make up most of the ZIP data.
+	 */
+	private byte[] zip(final String... entryNames) throws IOException {
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ZipOutputStream zipStream = new ZipOutputStream(zip);
+		Random random = new Random(42);
+		for (String entryName : entryNames) {
+			zipStream.putNextEntry(new ZipEntry(entryName));
+			if (entryName.endsWith(".png")) {
+				byte[] screenshot = new byte[100000];
+				random.nextBytes(screenshot);
+				zipStream.write(screenshot);
+			} else {
+				zipStream.write(("<" + new File(entryName).getName() + "/>").getBytes("UTF-8"));
+			}
+			zipStream.closeEntry();
+		}
+		zipStream.close();
+		return zip.toByteArray();
+	}
+
+}
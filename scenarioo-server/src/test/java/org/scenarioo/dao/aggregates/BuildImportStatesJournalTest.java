@@ -0,0 +1,119 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportStatus;
+import org.scenarioo.model.docu.aggregates.branches.BuildImportSummary;
+import org.scenarioo.model.docu.entities.Build;
+
+public class BuildImportStatesJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsAppendedSummariesInOrder() throws IOException {
+		BuildImportStatesJournal journal = new BuildImportStatesJournal(new File(folder.getRoot(), "journal.dat"));
+
+		journal.append(createSummary("build1", BuildImportStatus.PROCESSING));
+		journal.append(createSummary("build2", BuildImportStatus.SUCCESS));
+		journal.append(createSummary("build1", BuildImportStatus.FAILED));
+
+		List<BuildImportSummary> summaries = journal.readEntries();
+		assertEquals(3, summaries.size());
+		assertEquals("build2", summaries.get(1).getIdentifier().getBuildName());
+		assertEquals(BuildImportStatus.FAILED, summaries.get(2).getStatus());
+	}
+
+	@Test
+	public void ignoresIncompleteEntryAtTheEnd() throws IOException {
+		File file = new File(folder.getRoot(), "journal.dat");
+		BuildImportStatesJournal journal = new BuildImportStatesJournal(file);
+		journal.append(createSummary("build1", BuildImportStatus.SUCCESS));
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[] { 0, 0, 1, 0, '<' });
+		out.close();
+
+		assertEquals(1, journal.readEntries().size());
+	}
+
+	@Test
+	public void appendsAfterIncompleteEntryCanBeReadOnceItIsRemoved() throws IOException {
+		File file = new File(folder.getRoot(), "journal.dat");
+		BuildImportStatesJournal journal = new BuildImportStatesJournal(file);
+		journal.append(createSummary("build1", BuildImportStatus.SUCCESS));
+		long completeLength = file.length();
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[] { 0, 0, 1, 0, '<' });
+		out.close();
+
+		// on startup
+		assertEquals(1, journal.readEntries().size());
+		assertEquals(completeLength, file.length());
+
+		journal.append(createSummary("build2", BuildImportStatus.PROCESSING));
+		journal.append(createSummary("build2", BuildImportStatus.SUCCESS));
+
+		List<BuildImportSummary> summaries = journal.readEntries();
+		assertEquals(3, summaries.size());
+		assertEquals("build2", summaries.get(2).getIdentifier().getBuildName());
+		assertEquals(BuildImportStatus.SUCCESS, summaries.get(2).getStatus());
+	}
+
+	@Test
+	public void unreadableEntryAndEverythingAfterItIsRemoved() throws IOException {
+		File file = new File(folder.getRoot(), "journal.dat");
+		BuildImportStatesJournal journal = new BuildImportStatesJournal(file);
+		journal.append(createSummary("build1", BuildImportStatus.SUCCESS));
+		long completeLength = file.length();
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[] { 0, 0, 0, 3, '<', 'x', '>' });
+		out.close();
+		journal.append(createSummary("build2", BuildImportStatus.SUCCESS));
+
+		assertEquals(1, journal.readEntries().size());
+		assertEquals(completeLength, file.length());
+	}
+
+	@Test
+	public void clearedJournalHasNoEntries() {
+		BuildImportStatesJournal journal = new BuildImportStatesJournal(new File(folder.getRoot(), "journal.dat"));
+		journal.append(createSummary("build1", BuildImportStatus.SUCCESS));
+
+		journal.clear();
+
+		assertTrue(journal.readEntries().isEmpty());
+	}
+
+	private BuildImportSummary createSummary(final String buildName, final BuildImportStatus status) {
+		BuildImportSummary summary = new BuildImportSummary("branch", new Build(buildName));
+		summary.setStatus(status);
+		return summary;
+	}
+
+}
@@ -0,0 +1,108 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.business.builds.BuildLink;
+import org.scenarioo.model.docu.aggregates.branches.BranchBuilds;
+import org.scenarioo.model.docu.entities.Branch;
+import org.scenarioo.model.docu.entities.Build;
+import org.scenarioo.model.docu.entities.Status;
+
+public class ScenarioDocuAggregationDaoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ScenarioDocuAggregationDao dao;
+
+	@Before
+	public void setupTest() {
+		dao = new ScenarioDocuAggregationDao(folder.getRoot());
+	}
+
+	@Test
+	public void loadsSavedBuildCatalog() {
+		List<BranchBuilds> branchBuildsList = new ArrayList<BranchBuilds>();
+		branchBuildsList.add(createBranchBuilds("release", "build1", "build2"));
+		branchBuildsList.add(createBranchBuilds("develop", "build3"));
+
+		dao.saveBuildCatalog(branchBuildsList);
+		List<BranchBuilds> loadedBranchBuildsList = dao.loadBuildCatalog();
+
+		assertEquals(2, loadedBranchBuildsList.size());
+		for (int i = 0; i < branchBuildsList.size(); i++) {
+			BranchBuilds branchBuilds = branchBuildsList.get(i);
+			BranchBuilds loadedBranchBuilds = loadedBranchBuildsList.get(i);
+			assertEquals(branchBuilds.getBranch().getName(), loadedBranchBuilds.getBranch().getName());
+			assertEquals(branchBuilds.getBranch().getDescription(), loadedBranchBuilds.getBranch().getDescription());
+			assertEquals(branchBuilds.getBuilds().size(), loadedBranchBuilds.getBuilds().size());
+			for (int j = 0; j < branchBuilds.getBuilds().size(); j++) {
+				BuildLink buildLink = branchBuilds.getBuilds().get(j);
+				BuildLink loadedBuildLink = loadedBranchBuilds.getBuilds().get(j);
+				assertEquals(buildLink.getLinkName(), loadedBuildLink.getLinkName());
+				assertEquals(buildLink.getBuild().getName(), loadedBuildLink.getBuild().getName());
+				assertEquals(buildLink.getBuild().getRevision(), loadedBuildLink.getBuild().getRevision());
+				assertEquals(buildLink.getBuild().getDate(), loadedBuildLink.getBuild().getDate());
+				assertEquals(buildLink.getBuild().getStatus(), loadedBuildLink.getBuild().getStatus());
+			}
+		}
+	}
+
+	@Test
+	public void missingBuildCatalogIsNotLoaded() {
+		assertNull(dao.loadBuildCatalog());
+	}
+
+	@Test
+	public void corruptBuildCatalogIsNotLoaded() throws IOException {
+		dao.saveBuildCatalog(new ArrayList<BranchBuilds>());
+		File buildCatalogFile = new ScenarioDocuAggregationFiles(folder.getRoot()).getBuildCatalogFile();
+		FileUtils.writeStringToFile(buildCatalogFile, "<buildCatalog><branchBuilds>", "UTF-8");
+
+		assertNull(dao.loadBuildCatalog());
+	}
+
+	private BranchBuilds createBranchBuilds(final String branchName, final String... buildNames) {
+		BranchBuilds branchBuilds = new BranchBuilds();
+		branchBuilds.setBranch(new Branch(branchName, "description of " + branchName));
+		List<BuildLink> buildLinks = new ArrayList<BuildLink>();
+		for (String buildName : buildNames) {
+			Build build = new Build(buildName);
+			build.setRevision("revision of " + buildName);
+			build.setDate(new Date(1400000000000L + buildLinks.size() * 1000L));
+			build.setStatus(Status.SUCCESS);
+			buildLinks.add(new BuildLink(build, buildName));
+		}
+		branchBuilds.setBuilds(buildLinks);
+		return branchBuilds;
+	}
+
+}
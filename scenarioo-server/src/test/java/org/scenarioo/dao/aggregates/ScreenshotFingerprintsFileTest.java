@@ -0,0 +1,101 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.dao.aggregates.ScreenshotFingerprintsFile.ScreenshotFingerprint;
+
+public class ScreenshotFingerprintsFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void screenshotsWithSameContentHaveSameFingerprint() throws IOException {
+		File screenshotsDirectory = folder.newFolder("screenshots");
+		createScreenshot(screenshotsDirectory, "000.png", "content");
+		createScreenshot(screenshotsDirectory, "001.png", "content");
+		createScreenshot(screenshotsDirectory, "002.png", "other content");
+		ScreenshotFingerprintsFile file = new ScreenshotFingerprintsFile(new File(folder.getRoot(),
+				"screenshotFingerprints.dat"));
+
+		assertEquals(3, file.update(screenshotsDirectory));
+
+		Map<String, ScreenshotFingerprint> fingerprints = file.read();
+		assertEquals(3, fingerprints.size());
+		assertTrue(fingerprints.get("000.png").hasSameContent(fingerprints.get("001.png")));
+		assertFalse(fingerprints.get("000.png").hasSameContent(fingerprints.get("002.png")));
+		assertTrue(fingerprints.get("000.png").isUpToDate(new File(screenshotsDirectory, "000.png")));
+	}
+
+	@Test
+	public void onlyChangedScreenshotsAreReadOnUpdate() throws IOException {
+		File screenshotsDirectory = folder.newFolder("screenshots");
+		createScreenshot(screenshotsDirectory, "000.png", "content");
+		File changedScreenshot = createScreenshot(screenshotsDirectory, "001.png", "content");
+		ScreenshotFingerprintsFile file = new ScreenshotFingerprintsFile(new File(folder.getRoot(),
+				"screenshotFingerprints.dat"));
+		file.update(screenshotsDirectory);
+
+		assertEquals(0, file.update(screenshotsDirectory));
+		createScreenshot(screenshotsDirectory, "001.png", "changed content");
+		changedScreenshot.setLastModified(changedScreenshot.lastModified() + 2000);
+
+		assertEquals(1, file.update(screenshotsDirectory));
+		Map<String, ScreenshotFingerprint> fingerprints = file.read();
+		assertFalse(fingerprints.get("000.png").hasSameContent(fingerprints.get("001.png")));
+	}
+
+	@Test
+	public void fingerprintsReplaceFileWithoutLeavingTemporaryFile() throws IOException {
+		File screenshotsDirectory = folder.newFolder("screenshots");
+		createScreenshot(screenshotsDirectory, "000.png", "content");
+		File fingerprintsFile = new File(folder.getRoot(), "screenshotFingerprints.dat");
+		ScreenshotFingerprintsFile file = new ScreenshotFingerprintsFile(fingerprintsFile);
+		file.update(screenshotsDirectory);
+
+		createScreenshot(screenshotsDirectory, "001.png", "other content");
+		assertEquals(1, file.update(screenshotsDirectory));
+
+		assertEquals(2, file.read().size());
+		assertFalse(new File(folder.getRoot(), "screenshotFingerprints.dat.tmp").exists());
+	}
+
+	@Test
+	public void missingFileHasNoFingerprints() {
+		ScreenshotFingerprintsFile file = new ScreenshotFingerprintsFile(new File(folder.getRoot(), "missing.dat"));
+
+		assertTrue(file.read().isEmpty());
+	}
+
+	private File createScreenshot(final File directory, final String name, final String content) throws IOException {
+		File screenshot = new File(directory, name);
+		Files.write(screenshot.toPath(), content.getBytes("UTF-8"));
+		return screenshot;
+	}
+
+}
@@ -0,0 +1,82 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScreenshotStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ScreenshotStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		store = new ScreenshotStore(folder.newFolder("screenshots.derived"));
+	}
+
+	@Test
+	public void identicalScreenshotsOfDifferentBuildsAreLinkedToTheSameFile() throws IOException {
+		File build1 = folder.newFolder("build1");
+		File build2 = folder.newFolder("build2");
+		File screenshot1 = createScreenshot(build1, "000.png", "content");
+		File screenshot2 = createScreenshot(build2, "000.png", "content");
+		File otherScreenshot = createScreenshot(build2, "001.png", "other content");
+
+		assertEquals(0, store.deduplicateScreenshotsOfBuild(build1));
+		assertEquals(1, store.deduplicateScreenshotsOfBuild(build2));
+
+		assertTrue(Files.isSameFile(screenshot1.toPath(), screenshot2.toPath()));
+		assertFalse(Files.isSameFile(screenshot1.toPath(), otherScreenshot.toPath()));
+		assertEquals("content", FileUtils.readFileToString(screenshot2));
+	}
+
+	@Test
+	public void storedScreenshotsAreRemovedWhenNoBuildLinksToThemAnymore() throws IOException {
+		File build1 = folder.newFolder("build1");
+		File build2 = folder.newFolder("build2");
+		createScreenshot(build1, "000.png", "content");
+		createScreenshot(build2, "000.png", "content");
+		createScreenshot(build2, "001.png", "other content");
+		store.deduplicateScreenshotsOfBuild(build1);
+		store.deduplicateScreenshotsOfBuild(build2);
+
+		FileUtils.deleteDirectory(build2);
+
+		assertEquals(1, store.removeUnreferencedScreenshots());
+	}
+
+	private File createScreenshot(final File buildDirectory, final String fileName, final String content)
+			throws IOException {
+		File screenshot = new File(buildDirectory, "feature/scenario/screenshots/" + fileName);
+		FileUtils.writeStringToFile(screenshot, content);
+		return screenshot;
+	}
+
+}
@@ -0,0 +1,78 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.api.exception.ResourceNotFoundException;
+import org.scenarioo.model.docu.aggregates.steps.StepLink;
+import org.scenarioo.model.docu.aggregates.steps.StepNavigation;
+
+public class StepNavigationsFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsSingleStepNavigationsFromPackedFile() throws IOException {
+		StepNavigationsFile file = new StepNavigationsFile(new File(folder.newFolder("steps"), "navigations.dat"));
+		List<StepNavigation> stepNavigations = new ArrayList<StepNavigation>();
+		for (int i = 0; i < 3; i++) {
+			stepNavigations.add(createStepNavigation(i, "page" + i));
+		}
+
+		file.write(stepNavigations);
+
+		StepNavigation secondStep = file.read(1);
+		assertEquals(1, secondStep.getStepIndex());
+		assertEquals("page1", secondStep.getPageName());
+		assertEquals("page0", secondStep.getPreviousStepVariant().getPageName());
+		assertEquals(2, file.read(2).getStepIndex());
+		assertEquals(0, file.read(0).getStepIndex());
+	}
+
+	@Test(expected = ResourceNotFoundException.class)
+	public void readingStepThatDoesNotExistFails() throws IOException {
+		StepNavigationsFile file = new StepNavigationsFile(new File(folder.newFolder("steps"), "navigations.dat"));
+		List<StepNavigation> stepNavigations = new ArrayList<StepNavigation>();
+		stepNavigations.add(createStepNavigation(0, "page"));
+		file.write(stepNavigations);
+
+		file.read(1);
+	}
+
+	private StepNavigation createStepNavigation(final int stepIndex, final String pageName) {
+		StepNavigation stepNavigation = new StepNavigation();
+		stepNavigation.setStepIndex(stepIndex);
+		stepNavigation.setPageName(pageName);
+		if (stepIndex > 0) {
+			stepNavigation.setPreviousStepVariant(new StepLink("feature", "scenario", stepIndex - 1, 0, "page"
+					+ (stepIndex - 1), 0, 0));
+		}
+		return stepNavigation;
+	}
+
+}
@@ -0,0 +1,113 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.aggregates;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.model.docu.entities.Page;
+import org.scenarioo.model.docu.entities.Step;
+import org.scenarioo.model.docu.entities.StepDescription;
+import org.scenarioo.model.docu.entities.StepHtml;
+
+public class StepsCacheFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsCachedStepsWithoutHtml() throws IOException {
+		StepsCacheFile file = new StepsCacheFile(new File(folder.newFolder("scenario"), "stepsCache.dat"));
+		List<Step> steps = new ArrayList<Step>();
+		for (int i = 0; i < 3; i++) {
+			steps.add(createStep(i, "page" + i));
+		}
+
+		StepsCacheFile.Writer writer = file.createWriter("fingerprint", false);
+		for (Step step : writer.addWhileIterating(steps)) {
+			assertNotNull(step.getHtml());
+		}
+		writer.commit();
+		writer.close();
+
+		assertTrue(file.isUpToDate("fingerprint", false));
+		assertFalse(file.isUpToDate("otherFingerprint", false));
+		assertFalse("HTML source is not cached", file.isUpToDate("fingerprint", true));
+		List<Step> cachedSteps = readSteps(file, false);
+		assertEquals(3, cachedSteps.size());
+		assertEquals("page1", cachedSteps.get(1).getPage().getName());
+		assertEquals("step 2", cachedSteps.get(2).getStepDescription().getTitle());
+		assertNull(cachedSteps.get(0).getHtml());
+	}
+
+	@Test
+	public void stepsOfWriterThatIsNotCommittedAreDiscarded() throws IOException {
+		StepsCacheFile file = new StepsCacheFile(new File(folder.newFolder("scenario"), "stepsCache.dat"));
+
+		StepsCacheFile.Writer writer = file.createWriter("fingerprint", false);
+		writer.add(createStep(0, "page"));
+		writer.close();
+
+		assertFalse(file.isUpToDate("fingerprint", false));
+	}
+
+	@Test
+	public void readsCachedStepsWithHtmlOnlyIfNeeded() throws IOException {
+		StepsCacheFile file = new StepsCacheFile(new File(folder.newFolder("scenario"), "stepsCache.dat"));
+		StepsCacheFile.Writer writer = file.createWriter("fingerprint", true);
+		writer.add(createStep(0, "page"));
+		writer.commit();
+		writer.close();
+
+		assertTrue(file.isUpToDate("fingerprint", true));
+		assertTrue(file.isUpToDate("fingerprint", false));
+		assertEquals("<html></html>", readSteps(file, true).get(0).getHtml().getHtmlSource());
+		Step stepWithoutHtml = readSteps(file, false).get(0);
+		assertNull(stepWithoutHtml.getHtml());
+		assertEquals("page", stepWithoutHtml.getPage().getName());
+	}
+
+	private List<Step> readSteps(final StepsCacheFile file, final boolean withHtml) {
+		List<Step> cachedSteps = new ArrayList<Step>();
+		StepsCacheFile.Reader reader = file.createReader(withHtml);
+		for (Step step : reader) {
+			cachedSteps.add(step);
+		}
+		reader.close();
+		return cachedSteps;
+	}
+
+	private Step createStep(final int index, final String pageName) {
+		Step step = new Step();
+		step.setPage(new Page(pageName));
+		StepDescription stepDescription = new StepDescription();
+		stepDescription.setIndex(index);
+		stepDescription.setTitle("step " + index);
+		step.setStepDescription(stepDescription);
+		step.setHtml(new StepHtml("<html></html>"));
+		return step;
+	}
+
+}
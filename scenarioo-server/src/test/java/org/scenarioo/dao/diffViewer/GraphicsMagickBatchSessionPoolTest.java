@@ -0,0 +1,194 @@
+/* scenarioo-server
+ * Copyright (C) 2014, scenarioo.org Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.scenarioo.dao.diffViewer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scenarioo.dao.diffViewer.GraphicsMagickBatchSession.CommandFailedException;
+import org.scenarioo.model.configuration.Configuration;
+import org.scenarioo.repository.RepositoryLocator;
+import org.scenarioo.utils.TestFileUtils;
+
+/**
+ * Runs the pool with a stub of <code>gm batch</code> (a shell script), that prints the pass or fail feedback it is told
+ * to print after each command, and that can be told to hang or to end.
+ */
+public class GraphicsMagickBatchSessionPoolTest {
+
+	private static final String STUB_SCRIPT = "#!/bin/sh\n" //
+			+ "while [ $# -gt 0 ]; do\n" //
+			+ "  case \"$1\" in\n" //
+			+ "    -pass) pass=\"$2\"; shift ;;\n" //
+			+ "    -fail) fail=\"$2\"; shift ;;\n" //
+			+ "  esac\n" //
+			+ "  shift\n" //
+			+ "done\n" //
+			+ "while read -r command; do\n" //
+			+ "  case \"$command\" in\n" //
+			+ "    hang*) exec sleep 60 ;;\n" //
+			+ "    exit*) exit 1 ;;\n" //
+			+ "    fail*) echo \"gm $command: unable to open image\"; echo \"$fail\" ;;\n" //
+			+ "    *) echo \"output of $command\"; echo \"process $$\"; echo \"$pass\" ;;\n" //
+			+ "  esac\n" //
+			+ "done\n";
+
+	private static final long TIMEOUT_MILLIS = 2000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String stubExecutable;
+
+	@Before
+	public void setupTest() throws IOException {
+		Assume.assumeTrue(new File("/bin/sh").canExecute());
+		File stub = folder.newFile("gm");
+		FileUtils.writeStringToFile(stub, STUB_SCRIPT, "US-ASCII");
+		assertTrue(stub.setExecutable(true));
+		stubExecutable = stub.getAbsolutePath();
+	}
+
+	@Test
+	public void outputOfCommandEndsWithPassFeedback() throws Exception {
+		GraphicsMagickBatchSessionPool pool = new GraphicsMagickBatchSessionPool(stubExecutable, 1, TIMEOUT_MILLIS);
+		try {
+			List<String> output = pool.execute("compare a.png b.png");
+			String process = output.get(1);
+
+			assertEquals("output of compare a.png b.png", output.get(0));
+			assertEquals(2, output.size());
+			assertEquals(process, pool.execute("compare c.png d.png").get(1));
+			assertEquals(1, pool.getNumberOfStartedSessions());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void failedCommandKeepsTheSession() throws Exception {
+		GraphicsMagickBatchSessionPool pool = new GraphicsMagickBatchSessionPool(stubExecutable, 1, TIMEOUT_MILLIS);
+		try {
+			String process = pool.execute("compare a.png b.png").get(1);
+			try {
+				pool.execute("fail a.png");
+				fail("failed command must throw");
+			} catch (CommandFailedException e) {
+				assertTrue(e.getMessage().contains("unable to open image"));
+			}
+
+			assertEquals(process, pool.execute("compare a.png b.png").get(1));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void hangingSessionIsReplacedAfterTimeout() throws Exception {
+		GraphicsMagickBatchSessionPool pool = new GraphicsMagickBatchSessionPool(stubExecutable, 1, 500);
+		try {
+			String process = pool.execute("compare a.png b.png").get(1);
+			try {
+				pool.execute("hang");
+				fail("hanging command must time out");
+			} catch (TimeoutException e) {
+				// expected
+			}
+			assertEquals(0, pool.getNumberOfStartedSessions());
+
+			assertFalse(process.equals(pool.execute("compare a.png b.png").get(1)));
+			assertEquals(1, pool.getNumberOfStartedSessions());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void endedSessionIsReplaced() throws Exception {
+		GraphicsMagickBatchSessionPool pool = new GraphicsMagickBatchSessionPool(stubExecutable, 1, TIMEOUT_MILLIS);
+		try {
+			String process = pool.execute("compare a.png b.png").get(1);
+			try {
+				pool.execute("exit");
+				fail("ended process must throw");
+			} catch (CommandFailedException e) {
+				fail("ended process is no failed command");
+			} catch (IOException e) {
+				// expected
+			}
+
+			assertFalse(process.equals(pool.execute("compare a.png b.png").get(1)));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void shutdownEndsTheSessions() throws Exception {
+		GraphicsMagickBatchSessionPool pool = new GraphicsMagickBatchSessionPool(stubExecutable, 2, TIMEOUT_MILLIS);
+		pool.execute("compare a.png b.png");
+
+		pool.shutdown();
+
+		assertEquals(0, pool.getNumberOfStartedSessions());
+		try {
+			pool.execute("compare a.png b.png");
+			fail("pool that has been shut down must not execute commands");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void poolIsReplacedWhenItsSizeIsReconfigured() throws IOException {
+		TestFileUtils.createFolderAndSetItAsRootInConfigurationForUnitTest(folder.newFolder("documentation"));
+		Configuration configuration = RepositoryLocator.INSTANCE.getConfigurationRepository().getConfiguration();
+		configuration.setGraphicsMagickBatchSessions(2);
+		try {
+			GraphicsMagickBatchSessionPool pool = GraphicsMagickConfiguration.getBatchSessionPool();
+			assertSame(pool, GraphicsMagickConfiguration.getBatchSessionPool());
+
+			configuration.setGraphicsMagickBatchSessions(3);
+			GraphicsMagickBatchSessionPool reconfiguredPool = GraphicsMagickConfiguration.getBatchSessionPool();
+
+			assertNotSame(pool, reconfiguredPool);
+			assertEquals(3, reconfiguredPool.getPoolSize());
+			try {
+				pool.execute("compare a.png b.png");
+				fail("replaced pool must be shut down");
+			} catch (IOException e) {
+				// expected
+			}
+		} catch (TimeoutException e) {
+			fail("replaced pool must not execute commands");
+		} finally {
+			GraphicsMagickConfiguration.shutdownBatchSessionPool();
+		}
+	}
+
+}
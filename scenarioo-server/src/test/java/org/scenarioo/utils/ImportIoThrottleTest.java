@@ -0,0 +1,55 @@
+package org.scenarioo.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ImportIoThrottleTest {
+
+	@Test
+	public void tokensTakenBeyondTheRateHaveToBeWaitedFor() {
+		ImportIoThrottle.TokenBucket bucket = new ImportIoThrottle.TokenBucket();
+		bucket.setRate(1000);
+
+		assertEquals(0, bucket.take(1000));
+		long waitNanos = bucket.take(500);
+		assertTrue("Expected to wait about half a second but was " + waitNanos + " ns",
+				waitNanos > TimeUnit.MILLISECONDS.toNanos(400) && waitNanos <= TimeUnit.MILLISECONDS.toNanos(500));
+	}
+
+	@Test
+	public void unlimitedBucketNeverWaits() {
+		ImportIoThrottle.TokenBucket bucket = new ImportIoThrottle.TokenBucket();
+
+		assertEquals(0, bucket.take(Long.MAX_VALUE / 2));
+	}
+
+	@Test
+	public void importsBackOffWhileRequestsAreSlow() {
+		ImportIoThrottle throttle = new ImportIoThrottle();
+		throttle.configure(0, 0, 100);
+
+		throttle.requestCompleted(50);
+		assertEquals(0, throttle.getBackOffDelayInMillis());
+		throttle.requestCompleted(500);
+		throttle.requestCompleted(500);
+		assertEquals(2, throttle.getBackOffDelayInMillis());
+		throttle.requestCompleted(50);
+		throttle.requestCompleted(50);
+		assertEquals(0, throttle.getBackOffDelayInMillis());
+	}
+
+	@Test
+	public void threadsAreOnlyThrottledWhenRegistered() {
+		ImportIoThrottle throttle = new ImportIoThrottle();
+		assertFalse(throttle.isCurrentThreadThrottled());
+
+		throttle.throttleCurrentThread();
+		assertTrue(throttle.isCurrentThreadThrottled());
+		throttle.stopThrottlingCurrentThread();
+		assertFalse(throttle.isCurrentThreadThrottled());
+	}
+
+}
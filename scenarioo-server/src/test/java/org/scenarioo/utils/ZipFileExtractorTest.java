@@ -1,12 +1,15 @@
 package org.scenarioo.utils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.scenarioo.utils.ZipFileExtractor.EntryNameValidator;
 import org.scenarioo.utils.ZipFileExtractor.ZipFileExtractionException;
 
 public class ZipFileExtractorTest {
@@ -22,40 +25,62 @@ public class ZipFileExtractorTest {
 	}
 
 	@Test
-	public void extractFile_withFileThatExists_successful() throws IOException, ZipFileExtractionException {
-		File extractedFolder = new File(targetFolder, "aFolder");
-		FileUtils.deleteDirectory(extractedFolder);
-		Assert.assertTrue(!extractedFolder.exists());
+	public void extractStream_withValidEntries_successful() throws IOException, ZipFileExtractionException {
+		FileUtils.deleteDirectory(targetFolder);
 
-		ZipFileExtractor.extractFile(zipFile, targetFolder);
+		InputStream zipStream = new FileInputStream(zipFile);
+		try {
+			ZipFileExtractor.extractStream(zipStream, targetFolder, new EntryNameValidator() {
+				@Override
+				public void validate(final String entryName) {
+				}
+			});
+		} finally {
+			zipStream.close();
+		}
 
-		assertAllFoldersAndFilesAreExtracted(extractedFolder);
-		assertZipFileStillExists(zipFile);
+		assertAllFoldersAndFilesAreExtracted(new File(targetFolder, "aFolder"));
 	}
 
 	@Test
-	public void extractFile_withFileThatDoesNotExists_throwsException() {
-		File zipFile = new File(currentFolder, "InexistentFile.zip");
+	public void extractStream_withRejectedEntry_throwsException() throws IOException {
+		FileUtils.deleteDirectory(targetFolder);
+
+		InputStream zipStream = new FileInputStream(zipFile);
 		try {
-			ZipFileExtractor.extractFile(zipFile, targetFolder);
+			ZipFileExtractor.extractStream(zipStream, targetFolder, new EntryNameValidator() {
+				@Override
+				public void validate(final String entryName) throws ZipFileExtractionException {
+					throw new ZipFileExtractionException("rejected " + entryName);
+				}
+			});
 			Assert.fail();
 		} catch (ZipFileExtractionException e) {
-			Assert.assertTrue(e.getMessage().startsWith("Zip file does not exist "));
+			Assert.assertTrue(e.getMessage().startsWith("rejected "));
+		} finally {
+			zipStream.close();
 		}
 	}
 
 	@Test
-	public void extractFile_andTargetFolderExistsWithExistingFile_successfulAndExistingFilesAreRemoved()
-			throws IOException, ZipFileExtractionException {
-		File extractedFolder = new File(targetFolder, "aFolder");
-		File existingFileInTargetFolder = new File(extractedFolder, "existingFile.txt");
-		givenTargetFolderWithExistingFile(extractedFolder, existingFileInTargetFolder);
-
-		ZipFileExtractor.extractFile(zipFile, targetFolder);
+	public void extractStream_intoTargetFolderWithExistingFile_throwsException() throws IOException {
+		File existingFileInTargetFolder = new File(targetFolder, "existingFile.txt");
+		givenTargetFolderWithExistingFile(targetFolder, existingFileInTargetFolder);
 
-		assertAllFoldersAndFilesAreExtracted(extractedFolder);
-		assertZipFileStillExists(zipFile);
-		Assert.assertTrue(!existingFileInTargetFolder.exists());
+		InputStream zipStream = new FileInputStream(zipFile);
+		try {
+			ZipFileExtractor.extractStream(zipStream, targetFolder, new EntryNameValidator() {
+				@Override
+				public void validate(final String entryName) {
+				}
+			});
+			Assert.fail();
+		} catch (ZipFileExtractionException e) {
+			Assert.assertTrue(e.getMessage().startsWith("Target directory is not empty "));
+		} finally {
+			zipStream.close();
+		}
+		Assert.assertFalse(new File(targetFolder, "aFolder").exists());
 	}
 
 	private void givenTargetFolderWithExistingFile(final File extractedFolder, final File existingFileInTargetFolder)
@@ -74,8 +99,4 @@ public class ZipFileExtractorTest {
 		Assert.assertTrue(new File(extractedFolder, "aFile.txt").exists());
 	}
 
-	private void assertZipFileStillExists(final File zipFile) {
-		Assert.assertTrue(zipFile.exists());
-	}
-
 }